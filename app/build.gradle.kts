@@ -176,6 +176,13 @@ android {
             isIncludeAndroidResources = true
         }
     }
+
+    // Timing benchmarks are not part of the unit test run, add them with -Pbenchmarks
+    sourceSets {
+        getByName("test") {
+            if (project.hasProperty("benchmarks")) java.srcDir("src/benchmark/java")
+        }
+    }
     dynamicFeatures += setOf(":ubuntufs")
 
     kotlinter {
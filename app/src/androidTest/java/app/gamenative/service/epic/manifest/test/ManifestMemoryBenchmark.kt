@@ -0,0 +1,74 @@
+package app.gamenative.service.epic.manifest.test
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import app.gamenative.service.epic.manifest.EpicManifest
+import app.gamenative.service.epic.manifest.ManifestUtils
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import timber.log.Timber
+
+/**
+ * Parse time and retained heap of the test manifests. "materialized" copies every chunk and
+ * chunk part into plain object lists, which is the object graph the parser used to build.
+ */
+@RunWith(AndroidJUnit4::class)
+class ManifestMemoryBenchmark {
+
+    companion object {
+        private const val WARMUP_RUNS = 3
+        private const val TIMED_RUNS = 9
+    }
+
+    private fun getManifestBytes(assetName: String): ByteArray {
+        return InstrumentationRegistry.getInstrumentation().context.assets.open(assetName).use { it.readBytes() }
+    }
+
+    private fun usedHeap(): Long {
+        val runtime = Runtime.getRuntime()
+        repeat(3) {
+            runtime.gc()
+            Thread.sleep(50)
+        }
+        return runtime.totalMemory() - runtime.freeMemory()
+    }
+
+    private fun materialize(manifest: EpicManifest) {
+        // The first edit of a decoded list turns it into a plain list of objects
+        manifest.chunkDataList?.elements?.let { chunks -> if (chunks.isNotEmpty()) chunks[0] = chunks[0] }
+        manifest.fileManifestList?.elements?.forEach { it.chunkParts = ArrayList(it.chunkParts) }
+    }
+
+    private fun retainedHeap(bytes: ByteArray, prepare: (EpicManifest) -> Unit): Pair<Long, EpicManifest> {
+        val before = usedHeap()
+        val manifest = ManifestUtils.loadFromBytes(bytes).also(prepare)
+        return (usedHeap() - before) to manifest
+    }
+
+    @Test
+    fun benchmarkManifestParsing() {
+        listOf("binary-control-file.manifest", "test-manifest.json", "test-v3-manifest.json").forEach { asset ->
+            val bytes = getManifestBytes(asset)
+
+            repeat(WARMUP_RUNS) { ManifestUtils.loadFromBytes(bytes) }
+            val times = List(TIMED_RUNS) {
+                val start = System.nanoTime()
+                ManifestUtils.loadFromBytes(bytes)
+                (System.nanoTime() - start) / 1_000_000.0
+            }.sorted()
+
+            val (compactHeap, compact) = retainedHeap(bytes) {}
+            val (materializedHeap, materialized) = retainedHeap(bytes, ::materialize)
+
+            val parts = compact.fileManifestList?.elements?.sumOf { it.chunkParts.size } ?: 0
+            assertEquals(materialized.chunkDataList?.elements, compact.chunkDataList?.elements)
+            assertEquals(parts, materialized.fileManifestList?.elements?.sumOf { it.chunkParts.size } ?: 0)
+
+            val result = "$asset: ${compact.chunkDataList?.elements?.size} chunks, $parts parts, " +
+                "parse median %.1f ms, retained %d KB (materialized %d KB)".format(times[TIMED_RUNS / 2], compactHeap / 1024, materializedHeap / 1024)
+            Timber.i(result)
+            println(result)
+        }
+    }
+}
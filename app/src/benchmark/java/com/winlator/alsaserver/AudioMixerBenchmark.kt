@@ -0,0 +1,64 @@
+package com.winlator.alsaserver
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import org.junit.Test
+
+class AudioMixerBenchmark {
+    private val sampleRate = 48000
+    private val framesPerBurst = 192
+
+    private class Client(val ringBuffer: AudioRingBuffer, val source: AudioMixer.Source, val chunk: ByteBuffer) {
+        var consumedBytes = 0L
+
+        fun refill() {
+            while (ringBuffer.free() >= chunk.capacity()) {
+                chunk.clear()
+                ringBuffer.write(chunk)
+            }
+        }
+    }
+
+    private fun addClient(mixer: AudioMixer, dataType: ALSAClient.DataType, channels: Int, clientRate: Int, fill: (ByteBuffer) -> Unit): Client {
+        val frameBytes = channels * dataType.byteCount
+        val ringBuffer = AudioRingBuffer(framesPerBurst * frameBytes * 8)
+        val chunk = ByteBuffer.allocate(framesPerBurst * frameBytes).order(ByteOrder.LITTLE_ENDIAN)
+        fill(chunk)
+        lateinit var client: Client
+        val source = AudioMixer.Source(ringBuffer, dataType, channels, clientRate) { client.consumedBytes += it }
+        client = Client(ringBuffer, source, chunk)
+        mixer.addSource(source)
+        client.refill()
+        return client
+    }
+
+    @Test
+    fun mixCostPerClient() {
+        val iterations = 20000
+        println("clients  ns/burst  ns/burst/client (burst = $framesPerBurst frames)")
+        for (clientCount in intArrayOf(1, 2, 4, 8)) {
+            val mixer = AudioMixer(sampleRate, framesPerBurst)
+            val clients = List(clientCount) { i ->
+                if (i % 2 == 0) {
+                    addClient(mixer, ALSAClient.DataType.S16LE, 2, sampleRate) { while (it.hasRemaining()) it.putShort((it.position() * 31).toShort()) }
+                } else {
+                    addClient(mixer, ALSAClient.DataType.FLOATLE, 2, 44100) { while (it.hasRemaining()) it.putFloat(it.position() / 4096.0f - 0.5f) }
+                }
+            }
+
+            repeat(iterations / 4) {
+                clients.forEach { it.refill() }
+                mixer.mix(framesPerBurst)
+            }
+            var elapsed = 0L
+            repeat(iterations) {
+                clients.forEach { it.refill() }
+                val start = System.nanoTime()
+                mixer.mix(framesPerBurst)
+                elapsed += System.nanoTime() - start
+            }
+            val perBurst = elapsed / iterations
+            println(String.format("%7d  %8d  %15d", clientCount, perBurst, perBurst / clientCount))
+        }
+    }
+}
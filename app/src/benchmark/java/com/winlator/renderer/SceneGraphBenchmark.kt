@@ -0,0 +1,79 @@
+package com.winlator.renderer
+
+import com.winlator.xserver.ScreenInfo
+import com.winlator.xserver.ShadowDrawable
+import com.winlator.xserver.Window
+import com.winlator.xserver.WindowAttributes
+import com.winlator.xserver.XServer
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Compares rebuilding the render list from the whole window tree with patching the subtree of
+ * the modified window, for growing window counts.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(
+    sdk = [28],
+    shadows = [ShadowDrawable::class],
+    instrumentedPackages = ["com.winlator.xserver"],
+)
+class SceneGraphBenchmark {
+
+    private class Scene(windowCount: Int) {
+        val xServer = XServer(ScreenInfo(1280, 720))
+        val windows = ArrayList<Window>()
+        val sceneGraph = SceneGraph(xServer.windowManager, DirtyRegion())
+
+        init {
+            val windowManager = xServer.windowManager
+            var id = xServer.resourceIDs.idMask + 1
+            for (i in 0 until windowCount) {
+                val parent = if (i < TOPLEVEL_COUNT) windowManager.rootWindow else windows[(i - TOPLEVEL_COUNT) / CHILDREN_PER_WINDOW]
+                val window = windowManager.createWindow(id++, parent, (i % 64).toShort(), (i % 48).toShort(), 32, 32,
+                    WindowAttributes.WindowClass.INPUT_OUTPUT, null, 0, null)
+                windowManager.mapWindow(window)
+                windows.add(window)
+            }
+            sceneGraph.rebuild()
+        }
+
+        fun toggleMapped(window: Window) {
+            if (window.attributes.isMapped) xServer.windowManager.unmapWindow(window) else xServer.windowManager.mapWindow(window)
+        }
+    }
+
+    @Test
+    fun rebuildVersusUpdate() {
+        for (windowCount in intArrayOf(64, 256, 1024)) {
+            val scene = Scene(windowCount)
+            val leaf = scene.windows.last()
+
+            val rebuildNanos = measure {
+                scene.toggleMapped(leaf)
+                scene.sceneGraph.rebuild()
+            }
+            val updateNanos = measure {
+                scene.toggleMapped(leaf)
+                scene.sceneGraph.update(leaf)
+            }
+            println("SceneGraphBenchmark: %d windows, rebuild %.1f us, update %.1f us".format(windowCount, rebuildNanos / 1e3, updateNanos / 1e3))
+        }
+    }
+
+    private inline fun measure(block: () -> Unit): Double {
+        for (i in 0 until WARMUP_ITERATIONS) block()
+        val startTime = System.nanoTime()
+        for (i in 0 until MEASURE_ITERATIONS) block()
+        return (System.nanoTime() - startTime).toDouble() / MEASURE_ITERATIONS
+    }
+
+    companion object {
+        private const val TOPLEVEL_COUNT = 16
+        private const val CHILDREN_PER_WINDOW = 4
+        private const val WARMUP_ITERATIONS = 200
+        private const val MEASURE_ITERATIONS = 1000
+    }
+}
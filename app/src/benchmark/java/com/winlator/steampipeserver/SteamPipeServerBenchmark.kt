@@ -0,0 +1,88 @@
+package com.winlator.steampipeserver
+
+import java.lang.management.ManagementFactory
+import java.net.InetSocketAddress
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.SocketChannel
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Measures IS_RUNNING round trips over loopback and the CPU time of the server thread while
+ * a connected client is idle.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class SteamPipeServerBenchmark {
+    private lateinit var server: SteamPipeServer
+
+    private class Client(port: Int) : AutoCloseable {
+        val channel: SocketChannel = SocketChannel.open(InetSocketAddress("127.0.0.1", port)).apply { socket().tcpNoDelay = true }
+        private val request = ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN)
+        private val reply = ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN)
+
+        fun send(vararg ints: Int) {
+            request.clear()
+            ints.forEach { request.putInt(it) }
+            request.flip()
+            while (request.hasRemaining()) channel.write(request)
+        }
+
+        fun receive(count: Int): IntArray {
+            reply.clear().limit(count * 4)
+            while (reply.hasRemaining()) check(channel.read(reply) >= 0) { "connection closed" }
+            reply.flip()
+            return IntArray(count) { reply.getInt() }
+        }
+
+        override fun close() = channel.close()
+    }
+
+    @Before
+    fun setUp() {
+        server = SteamPipeServer(0)
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop()
+    }
+
+    @Test
+    fun roundTripLatencyAndIdleCpu() {
+        val threads = ManagementFactory.getThreadMXBean()
+        val serverThread = Thread.getAllStackTraces().keys.first { it.name == "SteamPipeServer" }
+        fun cpuNanos() = threads.getThreadCpuTime(serverThread.id)
+
+        Client(server.port).use { client ->
+            client.send(RequestCodes.MSG_INIT)
+            client.receive(1)
+
+            val iterations = 20000
+            val samples = LongArray(iterations)
+            repeat(iterations) {
+                val start = System.nanoTime()
+                client.send(RequestCodes.MSG_IS_RUNNING)
+                client.receive(1)
+                samples[it] = System.nanoTime() - start
+            }
+            samples.sort()
+            println("IS_RUNNING round trip: p50 ${samples[iterations / 2] / 1000} us, p99 ${samples[iterations * 99 / 100] / 1000} us")
+
+            val cpuBefore = cpuNanos()
+            val wallBefore = System.nanoTime()
+            Thread.sleep(1000)
+            val idleCpu = cpuNanos() - cpuBefore
+            val wall = System.nanoTime() - wallBefore
+            println("Server thread CPU while a client is connected and idle: ${idleCpu * 100 / wall}% of one core")
+            assertTrue("server should not spin while idle, used ${idleCpu / 1000000} ms", idleCpu < wall / 10)
+        }
+    }
+}
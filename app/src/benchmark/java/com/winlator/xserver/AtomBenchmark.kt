@@ -0,0 +1,99 @@
+package com.winlator.xserver
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Compares the lock-free atom table with the previous synchronized ArrayList scan
+ * while several X clients intern and look up atoms at the same time.
+ */
+class AtomBenchmark {
+
+    private interface AtomTable {
+        fun getId(name: String): Int
+
+        fun internAtom(name: String): Int
+    }
+
+    private class SynchronizedAtomTable : AtomTable {
+        private val atoms = ArrayList<String?>()
+
+        init {
+            atoms.add(null)
+            for (id in 1..68) atoms.add(Atom.getName(id))
+        }
+
+        @Synchronized
+        override fun getId(name: String): Int {
+            for (i in atoms.indices) if (name == atoms[i]) return i
+            return -1
+        }
+
+        @Synchronized
+        override fun internAtom(name: String): Int {
+            var id = getId(name)
+            if (id == -1) {
+                id = atoms.size
+                atoms.add(name)
+            }
+            return id
+        }
+    }
+
+    private object LockFreeAtomTable : AtomTable {
+        override fun getId(name: String): Int = Atom.getId(name)
+
+        override fun internAtom(name: String): Int = Atom.internAtom(name)
+    }
+
+    @Test
+    fun concurrentInternAtom() {
+        val names = (0 until 300).map { "ATOM_BENCHMARK_$it" }
+        val legacy = measure(SynchronizedAtomTable(), names)
+        val lockFree = measure(LockFreeAtomTable, names)
+
+        println("AtomBenchmark: synchronized scan %.1f ops/ms, lock-free %.1f ops/ms".format(legacy, lockFree))
+        assertTrue(legacy > 0 && lockFree > 0)
+    }
+
+    private fun measure(table: AtomTable, names: List<String>): Double {
+        for (iteration in 0 until WARMUP_ITERATIONS) run(table, names)
+
+        var totalOps = 0L
+        var totalNanos = 0L
+        for (iteration in 0 until MEASURE_ITERATIONS) {
+            val startTime = System.nanoTime()
+            totalOps += run(table, names)
+            totalNanos += System.nanoTime() - startTime
+        }
+        return totalOps / (totalNanos / 1_000_000.0)
+    }
+
+    private fun run(table: AtomTable, names: List<String>): Long {
+        val start = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(CLIENTS)
+        for (client in 0 until CLIENTS) {
+            executor.execute {
+                start.await()
+                for (i in 0 until OPS_PER_CLIENT) {
+                    val name = names[(i + client * 31) % names.size]
+                    if (i and 7 == 0) table.internAtom(name) else table.getId(name)
+                }
+            }
+        }
+        start.countDown()
+        executor.shutdown()
+        executor.awaitTermination(1, TimeUnit.MINUTES)
+        return CLIENTS.toLong() * OPS_PER_CLIENT
+    }
+
+    companion object {
+        private const val CLIENTS = 8
+        private const val OPS_PER_CLIENT = 20_000
+        private const val WARMUP_ITERATIONS = 3
+        private const val MEASURE_ITERATIONS = 5
+    }
+}
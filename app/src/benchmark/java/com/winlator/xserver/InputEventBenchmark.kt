@@ -0,0 +1,74 @@
+package com.winlator.xserver
+
+import com.winlator.xconnector.XOutputStream
+import com.winlator.xserver.events.MotionNotify
+import java.lang.management.ManagementFactory
+import org.junit.Test
+
+/**
+ * Measures heap allocation per MotionNotify on the pointer path: a new event object and
+ * Bitmask per move, as InputDeviceManager used to do, against one reused event filled from
+ * primitives. Flushes are deferred to this thread so nothing touches a socket.
+ */
+class InputEventBenchmark {
+
+    private val root = Window(1, null, 0, 0, 1280, 720, null)
+    private val window = Window(2, null, 100, 50, 640, 480, null).also { root.addChild(it) }
+    private val otherWindow = Window(3, null, 0, 0, 64, 64, null).also { root.addChild(it) }
+
+    private fun newOutputStream(): XOutputStream {
+        val outputStream = XOutputStream(64 * 1024)
+        outputStream.setDeferredFlushThread(Thread.currentThread()) {}
+        return outputStream
+    }
+
+    @Test
+    fun motionNotifyAllocation() {
+        val outputStream = newOutputStream()
+        val reused = MotionNotify()
+
+        val allocating = measure(outputStream) { i ->
+            val x = (i and 1023).toShort()
+            val target = if (i and 1 == 0) window else otherWindow
+            MotionNotify(false, root, target, null, x, x, x, x, Bitmask(0x100)).send(i.toShort(), outputStream)
+        }
+        val reusing = measure(outputStream) { i ->
+            val x = (i and 1023).toShort()
+            val target = if (i and 1 == 0) window else otherWindow
+            reused.set(0, root, target, null, x, x, x, x, 0x100).send(i.toShort(), outputStream)
+        }
+
+        println("InputEventBenchmark: new event per move %.1f bytes/event, reused event %.1f bytes/event".format(allocating, reusing))
+    }
+
+    private fun measure(outputStream: XOutputStream, sendEvent: (Int) -> Unit): Double {
+        val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val threadId = Thread.currentThread().id
+
+        for (i in 0 until WARMUP_EVENTS) {
+            sendEvent(i)
+            if (i and 1023 == 0) outputStream.buffer.clear()
+        }
+
+        var totalBytes = 0L
+        for (iteration in 0 until MEASURE_ITERATIONS) {
+            outputStream.buffer.clear()
+            val startBytes = threadMXBean.getThreadAllocatedBytes(threadId)
+            val startTime = System.nanoTime()
+            for (i in 0 until EVENTS) {
+                sendEvent(i)
+                if (i and 1023 == 0) outputStream.buffer.clear()
+            }
+            val elapsedMillis = (System.nanoTime() - startTime) / 1_000_000.0
+            totalBytes += threadMXBean.getThreadAllocatedBytes(threadId) - startBytes
+            println("InputEventBenchmark: %.1f events/ms".format(EVENTS / elapsedMillis))
+        }
+        return totalBytes.toDouble() / (MEASURE_ITERATIONS * EVENTS)
+    }
+
+    companion object {
+        private const val EVENTS = 200_000
+        private const val WARMUP_EVENTS = 200_000
+        private const val MEASURE_ITERATIONS = 3
+    }
+}
@@ -0,0 +1,113 @@
+package com.winlator.xserver
+
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Reproduces the pixmap churn of PixmapRequests.createPixmap/freePixmap: a client keeps a
+ * window of live pixmaps and keeps creating new ones while freeing the oldest. The binary
+ * search table mirrors the insert/remove behaviour of android.util.SparseArray.
+ */
+class ResourceMapBenchmark {
+
+    private interface Table {
+        fun put(key: Int, value: Any)
+
+        fun get(key: Int): Any?
+
+        fun remove(key: Int)
+    }
+
+    private class SortedArrayTable : Table {
+        private var keys = IntArray(16)
+        private var values = arrayOfNulls<Any>(16)
+        private var size = 0
+
+        override fun put(key: Int, value: Any) {
+            var index = keys.binarySearch(key, 0, size)
+            if (index >= 0) {
+                values[index] = value
+                return
+            }
+            index = index.inv()
+            if (size == keys.size) {
+                keys = keys.copyOf(size * 2)
+                values = values.copyOf(size * 2)
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index)
+            System.arraycopy(values, index, values, index + 1, size - index)
+            keys[index] = key
+            values[index] = value
+            size++
+        }
+
+        override fun get(key: Int): Any? {
+            val index = keys.binarySearch(key, 0, size)
+            return if (index >= 0) values[index] else null
+        }
+
+        override fun remove(key: Int) {
+            val index = keys.binarySearch(key, 0, size)
+            if (index < 0) return
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1)
+            System.arraycopy(values, index + 1, values, index, size - index - 1)
+            values[--size] = null
+        }
+    }
+
+    private class ResourceMapTable : Table {
+        private val map = ResourceMap<Any>()
+
+        override fun put(key: Int, value: Any) {
+            map.put(key, value)
+        }
+
+        override fun get(key: Int): Any? = map.get(key)
+
+        override fun remove(key: Int) {
+            map.remove(key)
+        }
+    }
+
+    @Test
+    fun pixmapChurn() {
+        for (livePixmaps in intArrayOf(256, 4096, 16384)) {
+            val sparseArray = measure(livePixmaps) { SortedArrayTable() }
+            val resourceMap = measure(livePixmaps) { ResourceMapTable() }
+            println("ResourceMapBenchmark: %d live pixmaps, sorted array %.1f ops/ms, ResourceMap %.1f ops/ms".format(livePixmaps, sparseArray, resourceMap))
+            assertTrue(sparseArray > 0 && resourceMap > 0)
+        }
+    }
+
+    private fun measure(livePixmaps: Int, factory: () -> Table): Double {
+        for (iteration in 0 until WARMUP_ITERATIONS) churn(factory(), livePixmaps)
+
+        var totalNanos = 0L
+        for (iteration in 0 until MEASURE_ITERATIONS) {
+            val table = factory()
+            val startTime = System.nanoTime()
+            churn(table, livePixmaps)
+            totalNanos += System.nanoTime() - startTime
+        }
+        return MEASURE_ITERATIONS * OPERATIONS * 3L / (totalNanos / 1_000_000.0)
+    }
+
+    private fun churn(table: Table, livePixmaps: Int) {
+        val idBase = 1 shl 22
+        var nextId = 1
+        for (i in 0 until livePixmaps) table.put(idBase or nextId++, i)
+
+        for (i in 0 until OPERATIONS) {
+            val pixmapId = idBase or nextId++
+            table.put(pixmapId, i)
+            table.get(pixmapId)
+            table.remove(pixmapId - livePixmaps)
+        }
+    }
+
+    companion object {
+        private const val OPERATIONS = 200_000
+        private const val WARMUP_ITERATIONS = 2
+        private const val MEASURE_ITERATIONS = 3
+    }
+}
@@ -0,0 +1,46 @@
+package com.winlator.xserver
+
+import com.winlator.xconnector.ShadowClientSocket
+import java.io.File
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Replays X11 traffic against a headless XServer and reports throughput and latency. Uses the
+ * recording given with -Dxserver.replay.file (see the x11TrafficRecord container extra) when
+ * set, otherwise a synthetic session of window, pixmap, drawing and property requests.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(
+    sdk = [28],
+    shadows = [ShadowDrawable::class, ShadowClientSocket::class],
+    instrumentedPackages = ["com.winlator.xserver", "com.winlator.xconnector"],
+)
+class XServerReplayBenchmark {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private fun newXServer() = XServer(ScreenInfo(1280, 720))
+
+    @Test
+    fun replaySession() {
+        val recording = System.getProperty("xserver.replay.file")?.let { File(it) }
+            ?: SyntheticSession.write(tempFolder.newFile("session.xtrc"), newXServer())
+
+        for (i in 0 until WARMUP_ITERATIONS) XServerReplay(newXServer()).replay(recording)
+
+        for (i in 0 until MEASURE_ITERATIONS) {
+            println("XServerReplayBenchmark: ${XServerReplay(newXServer()).replay(recording)}")
+        }
+    }
+
+    companion object {
+        private const val WARMUP_ITERATIONS = 2
+        private const val MEASURE_ITERATIONS = 3
+    }
+}
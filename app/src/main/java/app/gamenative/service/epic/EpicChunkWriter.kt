@@ -0,0 +1,157 @@
+package app.gamenative.service.epic
+
+import app.gamenative.service.epic.manifest.ChunkInfo
+import app.gamenative.service.epic.manifest.ChunkPart
+import app.gamenative.service.epic.manifest.FileManifest
+import java.io.File
+import java.io.FileWriter
+import java.io.RandomAccessFile
+import java.io.Writer
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Writes inflated Epic chunks straight into the install directory.
+ *
+ * Every [ChunkPart] carries its absolute offset in the destination file, so all parts of a chunk
+ * are written with positional [FileChannel] writes as soon as the chunk is inflated and the chunk
+ * never has to be kept around, not even when several files share it. Each destination file is
+ * reference counted by the parts it still waits for: its channel is opened on the first write and
+ * closed after the last one. At most [MAX_OPEN_FILES] idle channels stay open.
+ *
+ * Completed chunks are appended to [journalFile] so an interrupted install of the same
+ * [buildVersion] only fetches the chunks that are still missing.
+ */
+class EpicChunkWriter(
+    installDir: File,
+    files: List<FileManifest>,
+    chunks: List<ChunkInfo>,
+    private val journalFile: File,
+    private val buildVersion: String,
+) {
+    companion object {
+        private const val MAX_OPEN_FILES = 64
+    }
+
+    private class Target(val file: File, val size: Long, var remainingParts: Int) {
+        var channel: FileChannel? = null
+        var pins = 0
+    }
+
+    private val targets = files.map { Target(File(installDir, it.filename), it.fileSize, it.chunkParts.size) }
+    private val partsByChunk = HashMap<String, MutableList<Pair<Target, ChunkPart>>>()
+    private val openTargets = LinkedHashSet<Target>()
+    private val completedChunks = HashSet<String>()
+    private var journal: Writer? = null
+
+    /** Chunks in the order the file list first uses them, chunks no file references are left out. */
+    val chunkOrder: List<ChunkInfo>
+
+    init {
+        val chunksByGuid = chunks.associateBy { it.guidStr }
+        val order = LinkedHashMap<String, ChunkInfo>()
+        files.forEachIndexed { index, fileManifest ->
+            for (part in fileManifest.chunkParts) {
+                val chunk = chunksByGuid[part.guidStr]
+                    ?: throw IllegalStateException("${fileManifest.filename} references unknown chunk ${part.guidStr}")
+                order.getOrPut(part.guidStr) { chunk }
+                partsByChunk.getOrPut(part.guidStr) { mutableListOf() }.add(targets[index] to part)
+            }
+        }
+        chunkOrder = order.values.toList()
+    }
+
+    /**
+     * Creates the destination files at their final size and returns the chunks still to download.
+     * Without a journal from an earlier attempt every chunk is written again, so stale contents
+     * of a previous install are always overwritten.
+     */
+    fun prepare(): List<ChunkInfo> {
+        val journalLines = if (journalFile.exists()) journalFile.readLines() else emptyList()
+        if (journalLines.firstOrNull() == buildVersion) {
+            journalLines.drop(1).filterTo(completedChunks) { it.isNotBlank() }
+        } else {
+            journalFile.writeText(buildVersion + "\n")
+        }
+
+        for (target in targets) {
+            target.file.parentFile?.mkdirs()
+            RandomAccessFile(target.file, "rw").use { it.setLength(target.size) }
+        }
+
+        for (guid in completedChunks) {
+            partsByChunk[guid]?.forEach { (target, _) -> target.remainingParts-- }
+        }
+
+        journal = FileWriter(journalFile, true).buffered()
+        return chunkOrder.filter { it.guidStr !in completedChunks }
+    }
+
+    /**
+     * Writes every part of [chunk] to its destination. Safe to call from several threads at
+     * once since parts of different chunks never overlap.
+     */
+    fun write(chunk: ChunkInfo, data: ByteArray) {
+        val parts = partsByChunk[chunk.guidStr] ?: return
+        for ((target, targetParts) in parts.groupBy({ it.first }, { it.second })) {
+            val channel = acquire(target)
+            try {
+                for (part in targetParts) {
+                    if (part.offset + part.size > data.size) {
+                        throw IllegalStateException("Chunk part ${part.guidStr} exceeds chunk size ${data.size}")
+                    }
+                    val buffer = ByteBuffer.wrap(data, part.offset, part.size)
+                    var position = part.fileOffset
+                    while (buffer.hasRemaining()) position += channel.write(buffer, position)
+                }
+            } finally {
+                release(target, targetParts.size)
+            }
+        }
+
+        synchronized(this) {
+            journal?.apply {
+                write(chunk.guidStr)
+                write("\n")
+                flush()
+            }
+        }
+    }
+
+    /** Closes every destination file, [completed] also drops the journal. */
+    fun close(completed: Boolean) {
+        synchronized(this) {
+            openTargets.forEach { it.channel?.close(); it.channel = null }
+            openTargets.clear()
+            journal?.close()
+            journal = null
+        }
+        if (completed) journalFile.delete()
+    }
+
+    private fun acquire(target: Target): FileChannel = synchronized(this) {
+        val channel = target.channel ?: RandomAccessFile(target.file, "rw").channel.also { target.channel = it }
+        openTargets.remove(target)
+        openTargets.add(target)
+        target.pins++
+
+        if (openTargets.size > MAX_OPEN_FILES) {
+            openTargets.firstOrNull { it.pins == 0 }?.let { idle ->
+                idle.channel?.close()
+                idle.channel = null
+                openTargets.remove(idle)
+            }
+        }
+        channel
+    }
+
+    private fun release(target: Target, parts: Int) = synchronized(this) {
+        target.pins--
+        target.remainingParts -= parts
+        if (target.remainingParts <= 0 && target.pins == 0) {
+            target.channel?.close()
+            target.channel = null
+            openTargets.remove(target)
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package app.gamenative.service.epic
+
+import app.gamenative.service.epic.manifest.ChunkDataList
+import app.gamenative.service.epic.manifest.ChunkInfo
+import app.gamenative.service.epic.manifest.ChunkPart
+import app.gamenative.service.epic.manifest.EpicManifest
+import app.gamenative.service.epic.manifest.FileManifest
+import app.gamenative.service.epic.manifest.FileManifestList
+import app.gamenative.utils.InstallVerifier
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import timber.log.Timber
+
+/**
+ * Updates an installed Epic game from its installed manifest to a new one.
+ *
+ * Files whose hash did not change are left alone. Every changed file is rebuilt next to the
+ * original as `<name>.epicupdate`: byte ranges the old manifest already placed on disk are copied
+ * from the old files, only the remaining parts come from downloaded chunks through an
+ * [EpicChunkWriter]. Nothing in the install is touched until all new versions are complete and
+ * [verify] matched them against their manifest hashes; then the new manifest is stored as pending,
+ * the files are renamed over the originals and the manifest is promoted. [finishPending]
+ * completes that last step if the app died during it.
+ */
+class EpicDeltaUpdate(
+    private val installDir: File,
+    private val appName: String,
+    oldFiles: FileManifestList,
+    oldChunks: ChunkDataList,
+    newFiles: List<FileManifest>,
+    newChunks: List<ChunkInfo>,
+    private val buildVersion: String,
+) {
+    companion object {
+        const val UPDATE_SUFFIX = ".epicupdate"
+
+        /** The manifest of the installed build, written once an install or update completed. */
+        fun manifestFile(installDir: File, appName: String) = File(installDir, ".epic_manifest_$appName")
+
+        private fun pendingManifestFile(installDir: File, appName: String) = File(installDir, ".epic_manifest_$appName.pending")
+
+        /**
+         * Finishes an update that was interrupted while its files were moved into place.
+         * Returns false if there was none.
+         */
+        fun finishPending(installDir: File, appName: String, oldFiles: FileManifestList?, readFiles: (ByteArray) -> FileManifestList): Boolean {
+            val pending = pendingManifestFile(installDir, appName)
+            if (!pending.exists()) return false
+
+            val pendingBytes = pending.readBytes()
+            apply(installDir, oldFiles?.elements ?: emptyList(), readFiles(pendingBytes).elements)
+            Files.move(pending.toPath(), manifestFile(installDir, appName).toPath(), StandardCopyOption.REPLACE_EXISTING)
+            Timber.tag("Epic").i("Finished interrupted update of $appName")
+            return true
+        }
+
+        /** [finishPending] with the manifests stored in [installDir]. */
+        fun finishPending(installDir: File, appName: String): Boolean {
+            if (!pendingManifestFile(installDir, appName).exists()) return false
+            val installed = manifestFile(installDir, appName)
+            val oldFiles = if (installed.exists()) EpicManifest.readAll(installed.readBytes()).fileManifestList else null
+            return finishPending(installDir, appName, oldFiles) { bytes ->
+                EpicManifest.readAll(bytes).fileManifestList ?: throw IllegalStateException("Pending manifest of $appName has no file list")
+            }
+        }
+
+        private fun apply(installDir: File, oldFiles: List<FileManifest>, newFiles: List<FileManifest>) {
+            for (file in newFiles) {
+                val update = File(installDir, file.filename + UPDATE_SUFFIX)
+                if (update.exists()) {
+                    Files.move(update.toPath(), File(installDir, file.filename).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+                }
+            }
+
+            val newPaths = newFiles.mapTo(HashSet()) { it.filename }
+            for (file in oldFiles) {
+                if (file.filename !in newPaths) File(installDir, file.filename).delete()
+            }
+        }
+    }
+
+    /** A byte range of an installed file that a new file version reuses. */
+    private class CopyRange(val source: File, var sourceOffset: Long, val targetOffset: Long, var size: Long)
+
+    private val oldFileList = oldFiles.elements
+    private val newFileList = newFiles
+    private val newChunkList = newChunks
+    private val changedFiles = mutableListOf<FileManifest>()
+    private val copyRanges = HashMap<FileManifest, MutableList<CopyRange>>()
+    private val journalFile = File(installDir, ".epic_update_$appName")
+    private var writer: EpicChunkWriter
+    private var unverifiedFiles: List<FileManifest> = changedFiles
+    private var downloadedOnly = false
+
+    /** Bytes of the new build that are copied from the old files instead of downloaded. */
+    var reusedBytes = 0L
+        private set
+
+    init {
+        val oldParts = HashMap<String, MutableList<Pair<FileManifest, ChunkPart>>>()
+        for (file in oldFiles.elements) {
+            // Only files that are still on disk as the old manifest describes them can be reused
+            if (File(installDir, file.filename).length() != file.fileSize) continue
+            for (part in file.chunkParts) oldParts.getOrPut(part.guidStr) { mutableListOf() }.add(file to part)
+        }
+
+        val downloadFiles = mutableListOf<FileManifest>()
+        val chunksByGuid = newChunks.associateBy { it.guidStr }
+        for (file in newFiles) {
+            val oldFile = oldFiles.getFileByPath(file.filename)
+            if (oldFile != null && oldFile.hash.contentEquals(file.hash) && oldFile.fileSize == file.fileSize &&
+                File(installDir, file.filename).length() == file.fileSize
+            ) {
+                continue
+            }
+
+            changedFiles.add(file)
+            val ranges = mutableListOf<CopyRange>()
+            val downloadParts = mutableListOf<ChunkPart>()
+            for (part in file.chunkParts) {
+                val chunk = chunksByGuid[part.guidStr]
+                val source = if (chunk != null && oldChunks.getChunkByGuidNum(chunk.guidNum) != null) {
+                    oldParts[part.guidStr]?.firstOrNull { (_, old) ->
+                        old.offset <= part.offset && part.offset + part.size <= old.offset + old.size
+                    }
+                } else {
+                    null
+                }
+
+                if (source == null) {
+                    downloadParts.add(part)
+                    continue
+                }
+
+                val (oldFile, oldPart) = source
+                val sourceFile = File(installDir, oldFile.filename)
+                val sourceOffset = oldPart.fileOffset + (part.offset - oldPart.offset)
+                val last = ranges.lastOrNull()
+                if (last != null && last.source == sourceFile && last.sourceOffset + last.size == sourceOffset &&
+                    last.targetOffset + last.size == part.fileOffset
+                ) {
+                    last.size += part.size
+                } else {
+                    ranges.add(CopyRange(sourceFile, sourceOffset, part.fileOffset, part.size.toLong()))
+                }
+                reusedBytes += part.size
+            }
+
+            copyRanges[file] = ranges
+            downloadFiles.add(file.copy(filename = file.filename + UPDATE_SUFFIX, chunkParts = downloadParts))
+        }
+
+        writer = EpicChunkWriter(installDir, downloadFiles, newChunks, journalFile, buildVersion)
+    }
+
+    /** The files that have to be rebuilt, unchanged files are not listed. */
+    val changedFileCount: Int get() = changedFiles.size
+
+    /**
+     * Creates the new file versions, fills in every range the old files already have and returns
+     * the chunks that still have to be downloaded and passed to [write].
+     */
+    fun prepare(): List<ChunkInfo> {
+        val pendingChunks = writer.prepare()
+        for (file in changedFiles) {
+            val ranges = copyRanges[file] ?: continue
+            if (ranges.isEmpty()) continue
+
+            RandomAccessFile(File(installDir, file.filename + UPDATE_SUFFIX), "rw").channel.use { target ->
+                for ((source, sourceRanges) in ranges.groupBy { it.source }) {
+                    RandomAccessFile(source, "r").channel.use { input ->
+                        for (range in sourceRanges) {
+                            var copied = 0L
+                            while (copied < range.size) {
+                                target.position(range.targetOffset + copied)
+                                val count = input.transferTo(range.sourceOffset + copied, range.size - copied, target)
+                                if (count <= 0) throw IllegalStateException("${source.name} ended before offset ${range.sourceOffset + copied}")
+                                copied += count
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return pendingChunks
+    }
+
+    /** All chunks the new file versions need from the CDN, in first-use order. */
+    val neededChunks: List<ChunkInfo> get() = writer.chunkOrder
+
+    fun write(chunk: ChunkInfo, data: ByteArray) = writer.write(chunk, data)
+
+    /**
+     * Hashes the rebuilt files that were not verified yet against the new manifest. A file that
+     * does not match, e.g. because an old file it copies from changed on disk, is rebuilt from
+     * downloaded chunks alone: the returned chunks have to be passed to [write] before calling
+     * [verify] again. Returns an empty list once every file matches.
+     */
+    fun verify(verifier: InstallVerifier, isActive: () -> Boolean = { true }): List<ChunkInfo> {
+        writer.close(completed = downloadedOnly)
+
+        val regions = unverifiedFiles.filter { file -> file.hash.any { it != 0.toByte() } }.map { file ->
+            InstallVerifier.Region(file, "SHA-1", file.hash, File(installDir, file.filename + UPDATE_SUFFIX), 0, file.fileSize)
+        }
+        val mismatched = verifier.verify(regions, isActive)
+        unverifiedFiles = mismatched
+        if (mismatched.isEmpty()) return emptyList()
+        if (downloadedOnly) throw IllegalStateException("${mismatched.first().filename} does not match the manifest after downloading it")
+
+        Timber.tag("Epic").w("${mismatched.size} rebuilt files of $appName do not match the manifest, downloading them")
+        downloadedOnly = true
+        val fullJournal = File(installDir, journalFile.name + ".full").apply { delete() }
+        writer = EpicChunkWriter(
+            installDir,
+            mismatched.map { it.copy(filename = it.filename + UPDATE_SUFFIX) },
+            newChunkList,
+            fullJournal,
+            buildVersion,
+        )
+        return writer.prepare()
+    }
+
+    /** Drops the open files after a failed or cancelled update, the next attempt resumes. */
+    fun abort() = writer.close(completed = downloadedOnly)
+
+    /** Moves every new file version into place and records [manifestBytes] as installed. */
+    fun commit(manifestBytes: ByteArray) {
+        check(unverifiedFiles.isEmpty()) { "Update of $appName has unverified files" }
+        writer.close(completed = true)
+        journalFile.delete()
+
+        val pending = pendingManifestFile(installDir, appName)
+        val pendingTmp = File(installDir, pending.name + ".tmp")
+        pendingTmp.writeBytes(manifestBytes)
+        Files.move(pendingTmp.toPath(), pending.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+
+        apply(installDir, oldFileList, newFileList)
+        Files.move(pending.toPath(), manifestFile(installDir, appName).toPath(), StandardCopyOption.REPLACE_EXISTING)
+    }
+}
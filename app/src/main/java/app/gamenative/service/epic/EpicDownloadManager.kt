@@ -1,13 +1,15 @@
 package app.gamenative.service.epic
 
 import android.content.Context
-import android.util.Log
 import app.gamenative.data.DownloadInfo
 import app.gamenative.enums.Marker
 import app.gamenative.utils.MarkerUtils
 import app.gamenative.data.EpicGame
+import app.gamenative.service.epic.manifest.ChunkInfo
 import app.gamenative.service.epic.manifest.EpicManifest
-import java.io.ByteArrayInputStream
+import app.gamenative.service.epic.manifest.FileManifest
+import app.gamenative.utils.InstallVerifier
+import java.io.ByteArrayOutputStream
 import java.io.File
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
@@ -191,9 +193,8 @@ class EpicDownloadManager @Inject constructor(
             downloadInfo.setTotalExpectedBytes(totalDownloadSize)
             downloadInfo.updateStatusMessage("Downloading base game...")
 
-            // Download chunks in parallel
-            val chunkCacheDir = File(installPath, ".chunks")
-            chunkCacheDir.mkdirs()
+            // Drop the chunk cache an older version of the downloader may have left behind
+            File(installPath, ".chunks").deleteRecursively()
 
             Timber.tag("Epic").d(
                 """
@@ -206,36 +207,22 @@ class EpicDownloadManager @Inject constructor(
                 """.trimMargin(),
             )
 
-            // Download chunks in batches to avoid overwhelming the system
-            var downloadedChunks = 0
-            val totalChunks = chunks.size
-
             // Initialize progress tracking
             downloadInfo.setProgress(0.0f)
             downloadInfo.emitProgressChange()
 
-            chunks.chunked(MAX_PARALLEL_DOWNLOADS).forEach { chunkBatch ->
-                if (!downloadInfo.isActive()) {
-                    Timber.tag("Epic").w("Download cancelled by user")
-                    return@withContext Result.failure(Exception("Download cancelled"))
-                }
-
-                // Download batch in parallel
-                val results = chunkBatch.map { chunk ->
-                    async {
-                        downloadChunkWithRetry(chunk, chunkCacheDir, chunkDir, cdnUrls, downloadInfo)
-                    }
-                }.awaitAll()
-
-                // Check if any download failed
-                results.firstOrNull { it.isFailure }?.let { failedResult ->
-                    return@withContext Result.failure(
-                        failedResult.exceptionOrNull() ?: Exception("Failed to download chunk"),
-                    )
-                }
-
-                // Update progress after each batch completes
-                downloadedChunks += chunkBatch.size
+            // Chunks are written straight to their files, so installing and downloading finish together
+            val installDir = File(installPath)
+            val installResult = installFiles(
+                files = files,
+                chunks = chunks,
+                chunkDir = chunkDir,
+                cdnUrls = cdnUrls,
+                installDir = installDir,
+                appName = game.appName,
+                buildVersion = manifest.meta?.buildVersion ?: "",
+                downloadInfo = downloadInfo,
+            ) { downloadedChunks, totalChunks ->
                 val progress = downloadedChunks.toFloat() / totalChunks
                 downloadInfo.setProgress(progress)
                 val statusMsg = if (dlcManifestData.isNotEmpty()) {
@@ -248,39 +235,10 @@ class EpicDownloadManager @Inject constructor(
 
                 Timber.tag("Epic").d("Download progress: $downloadedChunks/$totalChunks chunks (${(progress * 100).toInt()}%)")
             }
-
-            downloadInfo.updateStatusMessage("Assembling files...")
-
-            // Assemble files from chunks in parallel batches
-            val installDir = File(installPath)
-            installDir.mkdirs()
-
-            var assembledFiles = 0
-            val totalFiles = files.size
-
-            // Process files in batches for better parallelism
-            files.chunked(4).forEach { fileBatch ->
-                val assembleResults = fileBatch.map { fileManifest ->
-                    async {
-                        assembleFile(fileManifest, chunkCacheDir, installDir)
-                    }
-                }.awaitAll()
-
-                // Check if any assembly failed
-                assembleResults.firstOrNull { it.isFailure }?.let { failedResult ->
-                    return@withContext Result.failure(
-                        failedResult.exceptionOrNull() ?: Exception("Failed to assemble file"),
-                    )
-                }
-
-                assembledFiles += fileBatch.size
-                val assemblyProgress = assembledFiles.toFloat() / totalFiles
-                downloadInfo.updateStatusMessage("Assembling files ($assembledFiles/$totalFiles)")
-                Timber.tag("Epic").d("File assembly progress: $assembledFiles/$totalFiles (${(assemblyProgress * 100).toInt()}%)")
+            if (installResult.isFailure) {
+                return@withContext installResult
             }
-
-            // Cleanup chunk directory
-            chunkCacheDir.deleteRecursively()
+            saveInstalledManifest(installDir, game.appName, manifestData.manifestBytes)
 
             // Log final directory structure
             Timber.tag("Epic").i("Download completed successfully for ${game.title}")
@@ -398,84 +356,445 @@ class EpicDownloadManager @Inject constructor(
             val files = fileManifestList.elements
             val chunkDir = manifest.getChunkDir()
 
-            // Download chunks
-            val chunkCacheDir = File(installPath, ".chunks")
-            chunkCacheDir.mkdirs()
+            val installResult = installFiles(
+                files = files,
+                chunks = chunks,
+                chunkDir = chunkDir,
+                cdnUrls = cdnUrls,
+                installDir = File(installPath),
+                appName = game.appName,
+                buildVersion = manifest.meta?.buildVersion ?: "",
+                downloadInfo = downloadInfo,
+            )
+            if (installResult.isFailure) {
+                return@withContext installResult
+            }
+            saveInstalledManifest(File(installPath), game.appName, manifestData.manifestBytes)
+
+            // Update database
+            try {
+                epicManager.updateGame(game.copy(isInstalled = true, installPath = installPath))
+                Timber.tag("Epic").i("Updated database: DLC ${game.title} marked as installed")
+            } catch (e: Exception) {
+                Timber.tag("Epic").e(e, "Failed to update database for DLC ${game.id}")
+            }
 
-            var downloadedChunks = 0
-            val totalChunks = chunks.size
+            Result.success(Unit)
+        } catch (e: Exception) {
+            Timber.tag("Epic").e(e, "DLC download failed: ${e.message}")
+            Result.failure(e)
+        }
+    }
 
-            chunks.chunked(MAX_PARALLEL_DOWNLOADS).forEach { chunkBatch ->
-                if (!downloadInfo.isActive()) {
-                    Timber.tag("Epic").w("Download cancelled by user")
-                    return@withContext Result.failure(Exception("Download cancelled"))
+    /**
+     * Update an installed Epic game to its latest build
+     *
+     * The manifest saved with the install is compared with the current one: unchanged files are
+     * kept, changed files reuse every byte range already on disk and only the chunks nothing on
+     * disk provides are downloaded. Installs without a saved manifest are updated in place.
+     */
+    suspend fun updateGame(
+        context: Context,
+        game: EpicGame,
+        installPath: String,
+        downloadInfo: DownloadInfo,
+    ): Result<Unit> = withContext(Dispatchers.IO) {
+        val gameId = game.id ?: 0
+        try {
+            Timber.tag("Epic").i("Starting update for ${game.title} in $installPath")
+            app.gamenative.PluviaApp.events.emitJava(
+                app.gamenative.events.AndroidEvent.DownloadStatusChanged(gameId, true),
+            )
+
+            val installDir = File(installPath)
+            val installed = readInstalledManifest(installDir, game.appName)?.let { EpicManifest.readAll(it) }
+
+            downloadInfo.updateStatusMessage("Checking for updates...")
+            val manifestResult = epicManager.fetchManifestFromEpic(
+                context,
+                game.namespace,
+                game.catalogId,
+                game.appName,
+            )
+            if (manifestResult.isFailure) {
+                return@withContext Result.failure(
+                    manifestResult.exceptionOrNull() ?: Exception("Failed to fetch manifest"),
+                )
+            }
+
+            val manifestData = manifestResult.getOrNull()!!
+            val cdnUrls = manifestData.cdnUrls.filter { !it.baseUrl.startsWith("https://cloudflare.epicgamescdn.com") }
+            val manifest = EpicManifest.readAll(manifestData.manifestBytes)
+
+            val chunks = manifest.chunkDataList?.elements
+                ?: return@withContext Result.failure(Exception("No chunk data in manifest"))
+            val files = manifest.fileManifestList?.elements
+                ?: return@withContext Result.failure(Exception("No file manifest in manifest"))
+            val chunkDir = manifest.getChunkDir()
+            val buildVersion = manifest.meta?.buildVersion ?: ""
+
+            val oldFiles = installed?.fileManifestList
+            val oldChunks = installed?.chunkDataList
+            val onProgress = { downloadedChunks: Int, totalChunks: Int ->
+                downloadInfo.setProgress(downloadedChunks.toFloat() / totalChunks)
+                downloadInfo.updateStatusMessage("Updating ($downloadedChunks/$totalChunks chunks)")
+                downloadInfo.emitProgressChange()
+            }
+
+            if (installed?.meta?.buildVersion == buildVersion) {
+                Timber.tag("Epic").i("${game.title} is already at build $buildVersion")
+            } else if (oldFiles == null || oldChunks == null) {
+                Timber.tag("Epic").w("No installed manifest for ${game.title}, updating all files in place")
+                downloadInfo.setTotalExpectedBytes(chunks.sumOf { it.fileSize })
+                val installResult = installFiles(
+                    files = files,
+                    chunks = chunks,
+                    chunkDir = chunkDir,
+                    cdnUrls = cdnUrls,
+                    installDir = installDir,
+                    appName = game.appName,
+                    buildVersion = buildVersion,
+                    downloadInfo = downloadInfo,
+                    onProgress = onProgress,
+                )
+                if (installResult.isFailure) {
+                    return@withContext installResult
                 }
+                saveInstalledManifest(installDir, game.appName, manifestData.manifestBytes)
+            } else {
+                val update = EpicDeltaUpdate(installDir, game.appName, oldFiles, oldChunks, files, chunks, buildVersion)
+                downloadInfo.setTotalExpectedBytes(update.neededChunks.sumOf { it.fileSize })
+                downloadInfo.updateStatusMessage("Copying unchanged data...")
 
-                val results = chunkBatch.map { chunk ->
-                    async {
-                        downloadChunkWithRetry(chunk, chunkCacheDir, chunkDir, cdnUrls, downloadInfo)
-                    }
-                }.awaitAll()
+                var committed = false
+                try {
+                    val pendingChunks = update.prepare()
+                    Timber.tag("Epic").i(
+                        "Updating ${game.title} to $buildVersion: ${update.changedFileCount} changed files, " +
+                            "${update.neededChunks.size} chunks to download, ${update.reusedBytes / 1_000_000} MB reused from disk",
+                    )
 
-                results.firstOrNull { it.isFailure }?.let { failedResult ->
-                    return@withContext Result.failure(
-                        failedResult.exceptionOrNull() ?: Exception("Failed to download chunk"),
+                    val result = downloadChunks(
+                        pendingChunks,
+                        update.neededChunks,
+                        chunkDir,
+                        cdnUrls,
+                        game.appName,
+                        downloadInfo,
+                        update::write,
+                        onProgress,
                     )
+                    if (result.isFailure) {
+                        return@withContext result
+                    }
+
+                    downloadInfo.updateStatusMessage("Checking updated files...")
+                    val repairChunks = InstallVerifier().use { update.verify(it, downloadInfo::isActive) }
+                    if (repairChunks.isNotEmpty()) {
+                        downloadInfo.setTotalExpectedBytes(repairChunks.sumOf { it.fileSize })
+                        downloadInfo.setProgress(0f)
+                        val repairResult = downloadChunks(
+                            repairChunks,
+                            update.neededChunks,
+                            chunkDir,
+                            cdnUrls,
+                            game.appName,
+                            downloadInfo,
+                            update::write,
+                            onProgress,
+                        )
+                        if (repairResult.isFailure) {
+                            return@withContext repairResult
+                        }
+                        // Throws if a file still does not match after downloading all of it
+                        InstallVerifier().use { update.verify(it, downloadInfo::isActive) }
+                    }
+
+                    downloadInfo.updateStatusMessage("Applying update...")
+                    update.commit(manifestData.manifestBytes)
+                    committed = true
+                } finally {
+                    if (!committed) update.abort()
                 }
+            }
 
-                downloadedChunks += chunkBatch.size
+            try {
+                epicManager.updateGame(
+                    game.copy(
+                        isInstalled = true,
+                        installPath = installPath,
+                        installSize = files.sumOf { it.fileSize },
+                        version = buildVersion,
+                    ),
+                )
+            } catch (e: Exception) {
+                Timber.tag("Epic").e(e, "Failed to update database for game ${game.id}")
             }
 
-            // Assemble files
+            downloadInfo.updateStatusMessage("Complete")
+            downloadInfo.setProgress(1.0f)
+            downloadInfo.setActive(false)
+            downloadInfo.emitProgressChange()
+            app.gamenative.PluviaApp.events.emitJava(
+                app.gamenative.events.AndroidEvent.LibraryInstallStatusChanged(gameId),
+            )
+
+            Timber.tag("Epic").i("Update completed successfully for ${game.title}")
+            Result.success(Unit)
+        } catch (e: Exception) {
+            Timber.tag("Epic").e(e, "Update failed: ${e.message}")
+            downloadInfo.updateStatusMessage("Failed: ${e.message}")
+            downloadInfo.setProgress(-1.0f)
+            downloadInfo.setActive(false)
+            Result.failure(e)
+        } finally {
+            app.gamenative.PluviaApp.events.emitJava(
+                app.gamenative.events.AndroidEvent.DownloadStatusChanged(gameId, false),
+            )
+        }
+    }
+
+    /**
+     * Check every installed file of a game and download again only the chunks of damaged ranges
+     *
+     * Files are verified against the manifest of the installed build, see [EpicInstallVerification].
+     * The damaged parts are rewritten in place, intact bytes are never downloaded, and the repaired
+     * files are checked again. The CDN is only contacted when something has to be downloaded.
+     * Installs from before manifests were saved cannot be verified, the latest build on the CDN
+     * may not be the one on disk.
+     */
+    suspend fun verifyGame(
+        context: Context,
+        game: EpicGame,
+        installPath: String,
+        downloadInfo: DownloadInfo,
+    ): Result<EpicInstallVerification.Result> = withContext(Dispatchers.IO) {
+        val gameId = game.id ?: 0
+        try {
+            Timber.tag("Epic").i("Verifying ${game.title} in $installPath")
+            app.gamenative.PluviaApp.events.emitJava(
+                app.gamenative.events.AndroidEvent.DownloadStatusChanged(gameId, true),
+            )
+
             val installDir = File(installPath)
-            installDir.mkdirs()
+            val manifestBytes = readInstalledManifest(installDir, game.appName)
+                ?: return@withContext Result.failure(
+                    Exception("The manifest of the installed build was not saved, update or reinstall the game to verify it"),
+                )
+
+            // The CDN is only needed for a repair, an intact install verifies offline
+            var fetchedManifest: EpicManager.ManifestResult? = null
+            suspend fun fetchManifest(): EpicManager.ManifestResult = fetchedManifest ?: run {
+                downloadInfo.updateStatusMessage("Fetching manifest...")
+                epicManager.fetchManifestFromEpic(context, game.namespace, game.catalogId, game.appName)
+                    .getOrThrow()
+                    .also { fetchedManifest = it }
+            }
+
+            val manifest = EpicManifest.readAll(manifestBytes)
+
+            val chunks = manifest.chunkDataList?.elements
+                ?: return@withContext Result.failure(Exception("No chunk data in manifest"))
+            val files = manifest.fileManifestList?.elements
+                ?: return@withContext Result.failure(Exception("No file manifest in manifest"))
+            val buildVersion = manifest.meta?.buildVersion ?: ""
 
-            files.chunked(4).forEach { fileBatch ->
-                val assembleResults = fileBatch.map { fileManifest ->
-                    async {
-                        assembleFile(fileManifest, chunkCacheDir, installDir)
+            downloadInfo.updateStatusMessage("Verifying files...")
+            val verification = InstallVerifier().use { verifier ->
+                EpicInstallVerification(installDir, files, chunks).run(verifier, downloadInfo::isActive) { verifiedBytes, totalBytes ->
+                    downloadInfo.setProgress(verifiedBytes.toFloat() / totalBytes)
+                    downloadInfo.emitProgressChange()
+                }
+            }
+
+            if (verification.isValid) {
+                Timber.tag("Epic").i("Verification PASSED: ${verification.verifiedOk}/${verification.totalFiles} files OK")
+            } else {
+                Timber.tag("Epic").w(
+                    "Verification FAILED: ${verification.verifiedOk}/${verification.totalFiles} OK, " +
+                        "${verification.missingFiles.size} missing, ${verification.sizeMismatch.size} size mismatch, " +
+                        "${verification.hashMismatch.size} hash mismatch, ${verification.damagedBytes / 1_000_000} MB damaged",
+                )
+                verification.damagedParts.forEach { (file, parts) ->
+                    parts.forEach { part ->
+                        Timber.tag("Epic").d("Damaged ${file.filename} [${part.fileOffset}, ${part.fileOffset + part.size}) from chunk ${part.guidStr}")
                     }
-                }.awaitAll()
+                }
 
-                assembleResults.firstOrNull { it.isFailure }?.let { failedResult ->
+                // A journal of an earlier repair describes other damage, this verification is what counts
+                val journal = File(installDir, ".epic_repair_${game.appName}")
+                journal.delete()
+                val repairFiles = verification.repairFiles()
+                val repairChunks = repairFiles.flatMapTo(HashSet()) { file -> file.chunkParts.map { it.guidStr } }
+                downloadInfo.setTotalExpectedBytes(chunks.filter { it.guidStr in repairChunks }.sumOf { it.fileSize })
+                downloadInfo.setProgress(0f)
+
+                val cdnUrls = fetchManifest().cdnUrls.filter { !it.baseUrl.startsWith("https://cloudflare.epicgamescdn.com") }
+                val repairResult = installFiles(
+                    files = repairFiles,
+                    chunks = chunks,
+                    chunkDir = manifest.getChunkDir(),
+                    cdnUrls = cdnUrls,
+                    installDir = installDir,
+                    appName = game.appName,
+                    buildVersion = buildVersion,
+                    downloadInfo = downloadInfo,
+                    journal = journal,
+                ) { downloadedChunks, totalChunks ->
+                    downloadInfo.setProgress(downloadedChunks.toFloat() / totalChunks)
+                    downloadInfo.updateStatusMessage("Repairing ($downloadedChunks/$totalChunks chunks)")
+                    downloadInfo.emitProgressChange()
+                }
+                if (repairResult.isFailure) {
+                    return@withContext Result.failure(repairResult.exceptionOrNull() ?: Exception("Repair failed"))
+                }
+
+                downloadInfo.updateStatusMessage("Checking repaired files...")
+                val recheck = InstallVerifier().use { verifier ->
+                    EpicInstallVerification(installDir, verification.damagedFiles, chunks).run(verifier, downloadInfo::isActive)
+                }
+                if (!recheck.isValid) {
                     return@withContext Result.failure(
-                        failedResult.exceptionOrNull() ?: Exception("Failed to assemble file"),
+                        Exception("${recheck.damagedFiles.size} files are still damaged after the repair"),
                     )
                 }
+                Timber.tag("Epic").i("Repaired ${verification.damagedFiles.size} files of ${game.title}")
             }
 
-            // Cleanup
-            chunkCacheDir.deleteRecursively()
+            downloadInfo.updateStatusMessage("Complete")
+            downloadInfo.setProgress(1.0f)
+            downloadInfo.setActive(false)
+            downloadInfo.emitProgressChange()
+            Result.success(verification)
+        } catch (e: Exception) {
+            Timber.tag("Epic").e(e, "Verification failed: ${e.message}")
+            downloadInfo.updateStatusMessage("Failed: ${e.message}")
+            downloadInfo.setProgress(-1.0f)
+            downloadInfo.setActive(false)
+            Result.failure(e)
+        } finally {
+            app.gamenative.PluviaApp.events.emitJava(
+                app.gamenative.events.AndroidEvent.DownloadStatusChanged(gameId, false),
+            )
+        }
+    }
+
+    /**
+     * Returns the manifest saved with the install, after finishing an update that was interrupted
+     * while its files were moved into place. Null for installs from before manifests were saved.
+     */
+    private fun readInstalledManifest(installDir: File, appName: String): ByteArray? {
+        EpicDeltaUpdate.finishPending(installDir, appName)
+        val manifestFile = EpicDeltaUpdate.manifestFile(installDir, appName)
+        return if (manifestFile.exists()) manifestFile.readBytes() else null
+    }
 
-            // Update database
-            try {
-                epicManager.updateGame(game.copy(isInstalled = true, installPath = installPath))
-                Timber.tag("Epic").i("Updated database: DLC ${game.title} marked as installed")
-            } catch (e: Exception) {
-                Timber.tag("Epic").e(e, "Failed to update database for DLC ${game.id}")
-            }
+    /**
+     * Keep the manifest of the installed build so a later update only fetches what changed
+     */
+    private fun saveInstalledManifest(installDir: File, appName: String, manifestBytes: ByteArray) {
+        try {
+            EpicDeltaUpdate.manifestFile(installDir, appName).writeBytes(manifestBytes)
+        } catch (e: Exception) {
+            Timber.tag("Epic").w(e, "Failed to save installed manifest for $appName")
+        }
+    }
 
-            Result.success(Unit)
+    /**
+     * Downloads the chunks of a manifest and writes their parts straight into [installDir].
+     * Chunks are fetched in the order the file list first uses them and are only held in memory
+     * while their parts are written, so the install never needs more space than the game itself.
+     */
+    private suspend fun installFiles(
+        files: List<FileManifest>,
+        chunks: List<ChunkInfo>,
+        chunkDir: String,
+        cdnUrls: List<EpicManager.CdnUrl>,
+        installDir: File,
+        appName: String,
+        buildVersion: String,
+        downloadInfo: DownloadInfo,
+        journal: File = File(installDir, ".epic_install_$appName"),
+        onProgress: (downloadedChunks: Int, totalChunks: Int) -> Unit = { _, _ -> },
+    ): Result<Unit> = withContext(Dispatchers.IO) {
+        val writer = EpicChunkWriter(installDir, files, chunks, journal, buildVersion)
+        var completed = false
+        try {
+            val pendingChunks = writer.prepare()
+            val result = downloadChunks(pendingChunks, writer.chunkOrder, chunkDir, cdnUrls, appName, downloadInfo, writer::write, onProgress)
+            completed = result.isSuccess
+            result
         } catch (e: Exception) {
-            Timber.tag("Epic").e(e, "DLC download failed: ${e.message}")
+            Timber.tag("Epic").e(e, "Failed to install files for $appName")
             Result.failure(e)
+        } finally {
+            writer.close(completed)
         }
     }
 
+    /**
+     * Downloads [pendingChunks] in parallel batches and hands every inflated chunk to [write].
+     * [allChunks] is the full set of the install, the ones not pending count as already done.
+     */
+    private suspend fun downloadChunks(
+        pendingChunks: List<ChunkInfo>,
+        allChunks: List<ChunkInfo>,
+        chunkDir: String,
+        cdnUrls: List<EpicManager.CdnUrl>,
+        appName: String,
+        downloadInfo: DownloadInfo,
+        write: (ChunkInfo, ByteArray) -> Unit,
+        onProgress: (downloadedChunks: Int, totalChunks: Int) -> Unit,
+    ): Result<Unit> = withContext(Dispatchers.IO) {
+        val totalChunks = allChunks.size
+        var downloadedChunks = totalChunks - pendingChunks.size
+        if (downloadedChunks > 0) {
+            Timber.tag("Epic").i("Resuming $appName with $downloadedChunks/$totalChunks chunks already installed")
+            downloadInfo.updateBytesDownloaded(allChunks.sumOf { it.fileSize } - pendingChunks.sumOf { it.fileSize })
+        }
+
+        pendingChunks.chunked(MAX_PARALLEL_DOWNLOADS).forEach { chunkBatch ->
+            if (!downloadInfo.isActive()) {
+                Timber.tag("Epic").w("Download cancelled by user")
+                return@withContext Result.failure(Exception("Download cancelled"))
+            }
+
+            // Download batch in parallel, every chunk is written as soon as it is inflated
+            val results = chunkBatch.map { chunk ->
+                async {
+                    downloadChunkWithRetry(chunk, chunkDir, cdnUrls, downloadInfo).mapCatching { data ->
+                        write(chunk, data)
+                    }
+                }
+            }.awaitAll()
+
+            // Check if any download failed
+            results.firstOrNull { it.isFailure }?.let { failedResult ->
+                return@withContext Result.failure(
+                    failedResult.exceptionOrNull() ?: Exception("Failed to download chunk"),
+                )
+            }
+
+            downloadedChunks += chunkBatch.size
+            onProgress(downloadedChunks, totalChunks)
+        }
+
+        Result.success(Unit)
+    }
+
     /**
      * Download a single chunk with retry logic
      */
     private suspend fun downloadChunkWithRetry(
-        chunk: app.gamenative.service.epic.manifest.ChunkInfo,
-        chunkCacheDir: File,
+        chunk: ChunkInfo,
         chunkDir: String,
         cdnUrls: List<EpicManager.CdnUrl>,
         downloadInfo: DownloadInfo,
-    ): Result<File> = withContext(Dispatchers.IO) {
+    ): Result<ByteArray> = withContext(Dispatchers.IO) {
         var lastException: Exception? = null
 
         repeat(MAX_CHUNK_RETRIES) { attempt ->
-            val result = downloadChunk(chunk, chunkCacheDir, chunkDir, cdnUrls, downloadInfo)
+            val result = downloadChunk(chunk, chunkDir, cdnUrls, downloadInfo)
 
             if (result.isSuccess) {
                 if (attempt > 0) {
@@ -498,32 +817,15 @@ class EpicDownloadManager @Inject constructor(
     }
 
     /**
-     * Download a single chunk from Epic CDN with decompression
+     * Download a single chunk from Epic CDN and inflate it in memory
      */
     private suspend fun downloadChunk(
-        chunk: app.gamenative.service.epic.manifest.ChunkInfo,
-        chunkCacheDir: File,
+        chunk: ChunkInfo,
         chunkDir: String,
         cdnUrls: List<EpicManager.CdnUrl>,
         downloadInfo: DownloadInfo,
-    ): Result<File> = withContext(Dispatchers.IO) {
+    ): Result<ByteArray> = withContext(Dispatchers.IO) {
         try {
-            val chunkFile = File(chunkCacheDir, "${chunk.guidStr}.chunk")
-            val decompressedFile = File(chunkCacheDir, chunk.guidStr)
-
-            // Skip if already downloaded and decompressed
-            if (decompressedFile.exists() && decompressedFile.length() == chunk.windowSize.toLong()) {
-                // Quick verification - only verify if size matches
-                if (verifyChunkHashBytes(decompressedFile.readBytes(), chunk.shaHash)) {
-                    Timber.tag("Epic").d("Chunk ${chunk.guidStr} already exists and verified, skipping")
-                    downloadInfo.updateBytesDownloaded(chunk.fileSize)
-                    return@withContext Result.success(decompressedFile)
-                } else {
-                    Timber.tag("Epic").w("Chunk ${chunk.guidStr} exists but failed verification, re-downloading")
-                    decompressedFile.delete()
-                }
-            }
-
             // Get chunk path for downloading
             val chunkPath = chunk.getPath(chunkDir)
 
@@ -546,31 +848,24 @@ class EpicDownloadManager @Inject constructor(
                             return@use // Exit use block, response will be closed automatically
                         }
 
-                        // Download and decompress Epic chunk file using streaming to avoid OOM exceptions
-                        val responseBody = response.body!!
-                        val tempChunkFile = File(chunkCacheDir, "${chunk.guidStr}.tmp")
-
-                        try {
-                            // Stream download to temp file
-                            responseBody.byteStream().use { input ->
-                                tempChunkFile.outputStream().use { output ->
-                                    val buffer = ByteArray(8192)
-                                    var bytesRead: Int
-                                    while (input.read(buffer).also { bytesRead = it } != -1) {
-                                        output.write(buffer, 0, bytesRead)
-                                        downloadInfo.updateBytesDownloaded(bytesRead.toLong())
-                                    }
-                                }
+                        val chunkBytes = ByteArrayOutputStream(chunk.fileSize.toInt().coerceAtLeast(0))
+                        response.body!!.byteStream().use { input ->
+                            val buffer = ByteArray(65536)
+                            var bytesRead: Int
+                            while (input.read(buffer).also { bytesRead = it } != -1) {
+                                chunkBytes.write(buffer, 0, bytesRead)
+                                downloadInfo.updateBytesDownloaded(bytesRead.toLong())
                             }
-
-                            // Decompress from temp file directly to output file with streaming hash calculation
-                            // This avoids allocating 1.5GB in memory
-                            decompressStreamingChunkToFile(tempChunkFile, decompressedFile, chunk.windowSize.toLong(), chunk.shaHash)
-                        } finally {
-                            tempChunkFile.delete()
                         }
 
-                        return@withContext Result.success(decompressedFile)
+                        val data = readEpicChunk(chunkBytes.toByteArray(), chunk.windowSize)
+                        if (data.size != chunk.windowSize) {
+                            throw Exception("Decompressed size mismatch: expected ${chunk.windowSize}, got ${data.size}")
+                        }
+                        if (!verifyChunkHashBytes(data, chunk.shaHash)) {
+                            throw Exception("Chunk hash verification failed for ${chunk.guidStr}")
+                        }
+                        return@withContext Result.success(data)
                     }
 
                     // If we get here, response was unsuccessful, try next CDN
@@ -599,18 +894,17 @@ class EpicDownloadManager @Inject constructor(
      *
      * Format (from legendary/models/chunk.py):
      * - Magic: 0xB1FE3AA2 (4 bytes)
-     * - Header version: 3 (4 bytes)
-     * - Header size: 66 (4 bytes)
+     * - Header version (4 bytes)
+     * - Header size: 62 or 66 (4 bytes)
      * - Compressed size (4 bytes)
      * - GUID (16 bytes)
      * - Hash (8 bytes)
      * - Stored as flags (1 byte) - bit 0 = compressed
-     * - SHA hash (20 bytes)
-     * - Hash type (1 byte)
-     * - Uncompressed size (4 bytes)
+     * - Version 2+: SHA hash (20 bytes), hash type (1 byte)
+     * - Version 3+: Uncompressed size (4 bytes)
      * - Data (compressed_size bytes)
      */
-    private fun readEpicChunk(chunkBytes: ByteArray): ByteArray {
+    private fun readEpicChunk(chunkBytes: ByteArray, expectedSize: Int): ByteArray {
         val buffer = ByteBuffer.wrap(chunkBytes).order(ByteOrder.LITTLE_ENDIAN)
 
         // Read header
@@ -622,6 +916,9 @@ class EpicDownloadManager @Inject constructor(
         val headerVersion = buffer.int
         val headerSize = buffer.int
         val compressedSize = buffer.int
+        if (headerSize < 41 || headerSize + compressedSize > chunkBytes.size) {
+            throw Exception("Invalid chunk header: size=$headerSize, compressedSize=$compressedSize, chunk=${chunkBytes.size}")
+        }
 
         // Skip GUID (16 bytes), hash (8 bytes)
         buffer.position(buffer.position() + 24)
@@ -630,24 +927,26 @@ class EpicDownloadManager @Inject constructor(
         val storedAs = buffer.get().toInt() and 0xFF
         val isCompressed = (storedAs and 0x1) == 0x1
 
-        // Skip SHA hash (20 bytes), hash type (1 byte)
-        buffer.position(buffer.position() + 21)
-
-        // Read uncompressed size (4 bytes)
-        val uncompressedSize = buffer.int
-
-        // Read chunk data starting from header end
-        val dataStart = headerSize
-        //! Note: This may require adjustments if we see chunks bigger than 2GB - Unlikely but worth Observing
-        val dataBytes = chunkBytes.copyOfRange(dataStart, dataStart + compressedSize)
+        val uncompressedSize = if (headerVersion >= 3 && headerSize >= 66) {
+            // Skip SHA hash (20 bytes), hash type (1 byte)
+            buffer.position(buffer.position() + 21)
+            buffer.int
+        } else {
+            expectedSize
+        }
 
         return if (isCompressed) {
-            // Decompress using zlib
+            // Decompress using zlib straight from the downloaded bytes
             val inflater = Inflater()
             try {
-                inflater.setInput(dataBytes)
+                inflater.setInput(chunkBytes, headerSize, compressedSize)
                 val result = ByteArray(uncompressedSize)
-                val resultLength = inflater.inflate(result)
+                var resultLength = 0
+                while (resultLength < uncompressedSize && !inflater.finished()) {
+                    val inflated = inflater.inflate(result, resultLength, uncompressedSize - resultLength)
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break
+                    resultLength += inflated
+                }
                 if (resultLength != uncompressedSize) {
                     throw IllegalStateException("Decompressed chunk size mismatch: expected $uncompressedSize, got $resultLength")
                 }
@@ -657,263 +956,7 @@ class EpicDownloadManager @Inject constructor(
             }
         } else {
             // Already uncompressed
-            dataBytes
-        }
-    }
-
-    /**
-     * Decompress an Epic chunk file directly to output file with streaming hash verification
-     * This avoids allocating huge ByteArrays (1.5GB) in memory
-     */
-    private fun decompressStreamingChunkToFile(
-        chunkFile: File,
-        outputFile: File,
-        expectedSize: Long,
-        expectedHash: ByteArray
-    ) {
-        val digest = MessageDigest.getInstance("SHA-1")
-        var totalBytesWritten = 0L
-
-        chunkFile.inputStream().buffered().use { input ->
-            // Read the entire header - determine size dynamically
-            val headerStart = ByteArray(12)
-            if (input.read(headerStart) != 12) {
-                throw Exception("Failed to read chunk header start")
-            }
-
-            val startBuffer = ByteBuffer.wrap(headerStart).order(ByteOrder.LITTLE_ENDIAN)
-            val magic = startBuffer.int
-            if (magic != 0xB1FE3AA2.toInt()) {
-                throw Exception("Invalid chunk magic: 0x${magic.toString(16)}")
-            }
-
-            val headerVersion = startBuffer.int
-            val headerSize = startBuffer.int
-
-            // Epic chunks can have different header sizes (62 or 66 bytes)
-            // Minimum viable header is 62 bytes
-            if (headerSize < 62 || headerSize > 66) {
-                throw Exception("Invalid header size: $headerSize (expected 62-66 bytes)")
-            }
-
-            // Read the remaining header bytes
-            val remainingSize = headerSize - 12
-            val remainingBytes = ByteArray(remainingSize)
-            if (input.read(remainingBytes) != remainingSize) {
-                throw Exception("Failed to read remaining header: expected $remainingSize bytes")
-            }
-
-            // Parse the header fields from the remaining bytes sequentially
-            // This matches the format in legendary/models/chunk.py
-            val buffer = ByteBuffer.wrap(remainingBytes).order(ByteOrder.LITTLE_ENDIAN)
-
-            // Chunk header format (after magic/version/headerSize):
-            // compressedSize: 4 bytes (file offset 12-15)
-            // GUID: 16 bytes (file offset 16-31)
-            // hash: 8 bytes (file offset 32-39)
-            // storedAs: 1 byte (file offset 40)
-            // SHA hash: 20 bytes (file offset 41-60)
-            // For 66-byte headers:
-            //   hash type: 1 byte (file offset 61)
-            //   uncompressedSize: 4 bytes (file offset 62-65)
-            // For 62-byte headers (older format):
-            //   uncompressedSize: 4 bytes (file offset 58-61) - replaces hash type + padding
-
-            // Ensure we have minimum required fields (up to SHA hash)
-            if (buffer.remaining() < 50) {
-                throw Exception("Buffer underflow: only ${buffer.remaining()} bytes available, need at least 50")
-            }
-
-            val compressedSize = buffer.int  // Read compressed size
-            buffer.position(buffer.position() + 16)  // Skip GUID (16 bytes)
-            buffer.position(buffer.position() + 8)   // Skip hash (8 bytes)
-            val storedAs = buffer.get().toInt() and 0xFF  // Read storedAs flag
-            val isCompressed = (storedAs and 0x1) == 0x1
-
-            // Version Check to understand header spacing
-            // Header version 2: includes sha_hash (20 bytes) + hash_type (1 byte) = 62 total bytes
-            // Header version 3: adds uncompressed_size (4 bytes) = 66 total bytes
-            if (headerVersion >= 2) {
-                buffer.position(buffer.position() + 20)  // Skip SHA hash (20 bytes)
-                if (buffer.remaining() >= 1) {
-                    buffer.position(buffer.position() + 1)   // Skip hash type (1 byte)
-                }
-            }
-
-            val uncompressedSize = if (headerVersion >= 3 && buffer.remaining() >= 4) {
-                // Version 3+: uncompressedSize field is present (4 bytes)
-                buffer.int
-            } else {
-                // Version 2 or no uncompressedSize field: use expectedSize parameter
-                Timber.tag("Epic").d("Header version $headerVersion doesn't include uncompressedSize field, using expectedSize=$expectedSize")
-                expectedSize.toInt()
-            }
-
-            Timber.tag("Epic").d("Chunk header: magic=0x${magic.toString(16)}, headerVersion=$headerVersion, headerSize=$headerSize, compressedSize=$compressedSize, uncompressedSize=$uncompressedSize, storedAs=0x${storedAs.toString(16)}, isCompressed=$isCompressed, expectedSize=$expectedSize")
-
-            outputFile.outputStream().buffered().use { output ->
-                if (isCompressed) {
-                    // Streaming decompression
-                    val inflater = Inflater()
-                    try {
-                        val inputBuffer = ByteArray(65536) // 64KB compressed read buffer
-                        val outputBuffer = ByteArray(65536) // 64KB decompressed write buffer
-                        var endOfStream = false
-                        var firstRead = true
-
-                        while (totalBytesWritten < uncompressedSize && !endOfStream) {
-                            // Feed more input if needed
-                            if (inflater.needsInput() && !endOfStream) {
-                                val bytesRead = input.read(inputBuffer)
-                                if (bytesRead == -1) {
-                                    endOfStream = true
-                                    Timber.tag("Epic").d("Unexpected end of stream: read=$totalBytesWritten, expected=$uncompressedSize")
-                                } else {
-                                    if (firstRead) {
-                                        Log.d("Epic", "First compressed data bytes: ${inputBuffer.take(16).joinToString(" ") { "%02x".format(it) }}")
-                                        firstRead = false
-                                    }
-                                    inflater.setInput(inputBuffer, 0, bytesRead)
-                                }
-                            }
-
-                            // Try to decompress
-                            try {
-                                val decompressed = inflater.inflate(outputBuffer)
-                                if (decompressed > 0) {
-                                    output.write(outputBuffer, 0, decompressed)
-                                    digest.update(outputBuffer, 0, decompressed)
-                                    totalBytesWritten += decompressed
-                                } else if (inflater.finished() || endOfStream) {
-                                    // No more data available
-                                    break
-                                }
-                            } catch (e: java.util.zip.DataFormatException) {
-                                Timber.tag("Epic").d("DataFormatException during inflate: ${e.message}")
-                                Timber.tag("Epic").d("  totalBytesWritten=$totalBytesWritten, expectedSize=$uncompressedSize")
-                                Timber.tag("Epic").d("  inflater: finished=${inflater.finished()}, needsInput=${inflater.needsInput()}")
-                                throw Exception("Failed to decompress chunk: ${e.message}", e)
-                            }
-                        }
-                    } finally {
-                        inflater.end()
-                    }
-                } else {
-                    // Already uncompressed - stream directly
-                    val buffer = ByteArray(65536)
-                    var remaining = compressedSize
-                    while (remaining > 0) {
-                        val toRead = minOf(remaining, buffer.size)
-                        val bytesRead = input.read(buffer, 0, toRead)
-                        if (bytesRead == -1) break
-                        output.write(buffer, 0, bytesRead)
-                        digest.update(buffer, 0, bytesRead)
-                        totalBytesWritten += bytesRead
-                        remaining -= bytesRead
-                    }
-                }
-            }
-        }
-
-        // Verify size
-        if (totalBytesWritten != expectedSize) {
-            Timber.tag("Epic").d("Size mismatch: expected=$expectedSize, actual=$totalBytesWritten, diff=${expectedSize - totalBytesWritten}")
-            outputFile.delete()
-            throw Exception("Decompressed size mismatch: expected $expectedSize, got $totalBytesWritten")
-        }
-
-        // Verify hash
-        val actualHash = digest.digest()
-        if (!actualHash.contentEquals(expectedHash)) {
-            val expectedHex = expectedHash.joinToString("") { "%02x".format(it) }
-            val actualHex = actualHash.joinToString("") { "%02x".format(it) }
-            outputFile.delete()
-            throw Exception("Chunk hash verification failed: expected $expectedHex, got $actualHex")
-        }
-    }
-
-    /**
-     * Read and decompress an Epic Chunk file from disk using streaming to avoid OOM
-     * This version reads from a file input stream and decompresses in chunks
-     */
-    private fun readEpicChunkFromFile(chunkFile: File, expectedSize: Long): ByteArray {
-        chunkFile.inputStream().buffered().use { input ->
-            // Read header (66 bytes)
-            val headerBytes = ByteArray(66)
-            val headerRead = input.read(headerBytes)
-            if (headerRead != 66) {
-                throw Exception("Failed to read chunk header")
-            }
-
-            val buffer = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN)
-
-            // Parse header
-            val magic = buffer.int
-            if (magic != 0xB1FE3AA2.toInt()) {
-                throw Exception("Invalid chunk magic: 0x${magic.toString(16)}")
-            }
-
-            val headerVersion = buffer.int
-            val headerSize = buffer.int
-            val compressedSize = buffer.int
-
-            // Skip GUID (16 bytes), hash (8 bytes)
-            buffer.position(buffer.position() + 24)
-
-            // Read stored_as flag
-            val storedAs = buffer.get().toInt() and 0xFF
-            val isCompressed = (storedAs and 0x1) == 0x1
-
-            // Skip SHA hash (20 bytes), hash type (1 byte)
-            buffer.position(buffer.position() + 21)
-
-            // Read uncompressed size (4 bytes)
-            val uncompressedSize = buffer.int
-
-            // Skip to data start if header is larger than 66 bytes
-            if (headerSize > 66) {
-                input.skip((headerSize - 66).toLong())
-            }
-
-            return if (isCompressed) {
-                // Decompress using streaming to avoid loading entire compressed data into memory
-                val inflater = Inflater()
-                try {
-                    val result = ByteArray(uncompressedSize)
-                    var resultOffset = 0
-                    val inputBuffer = ByteArray(65536) // 64KB buffer for reading compressed data
-
-                    while (resultOffset < uncompressedSize) {
-                        if (inflater.needsInput()) {
-                            val bytesRead = input.read(inputBuffer)
-                            if (bytesRead == -1) break
-                            inflater.setInput(inputBuffer, 0, bytesRead)
-                        }
-
-                        val decompressed = inflater.inflate(result, resultOffset, uncompressedSize - resultOffset)
-                        resultOffset += decompressed
-
-                        if (inflater.finished()) break
-                    }
-
-                    if (resultOffset != uncompressedSize) {
-                        throw IllegalStateException("Decompressed chunk size mismatch: expected $uncompressedSize, got $resultOffset")
-                    }
-                    result
-                } finally {
-                    inflater.end()
-                }
-            } else {
-                // Already uncompressed - read directly
-                val result = ByteArray(compressedSize)
-                var totalRead = 0
-                while (totalRead < compressedSize) {
-                    val bytesRead = input.read(result, totalRead, compressedSize - totalRead)
-                    if (bytesRead == -1) break
-                    totalRead += bytesRead
-                }
-                result
-            }
+            chunkBytes.copyOfRange(headerSize, headerSize + compressedSize)
         }
     }
 
@@ -940,53 +983,6 @@ class EpicDownloadManager @Inject constructor(
         }
     }
 
-    /**
-     * Assemble a file from its chunks
-     */
-    private suspend fun assembleFile(
-        fileManifest: app.gamenative.service.epic.manifest.FileManifest,
-        chunkCacheDir: File,
-        installDir: File,
-    ): Result<File> = withContext(Dispatchers.IO) {
-        try {
-            val outputFile = File(installDir, fileManifest.filename)
-            outputFile.parentFile?.mkdirs()
-
-            outputFile.outputStream().use { output ->
-                for (chunkPart in fileManifest.chunkParts) {
-                    val chunkFile = File(chunkCacheDir, chunkPart.guidStr)
-
-                    if (!chunkFile.exists()) {
-                        return@withContext Result.failure(Exception("Chunk file missing: ${chunkPart.guidStr}"))
-                    }
-
-                    // Read chunk data at specified offset
-                    chunkFile.inputStream().use { input ->
-                        input.skip(chunkPart.offset.toLong())
-
-                        val buffer = ByteArray(65536) // Increased to 64KB for better I/O performance
-                        var remaining = chunkPart.size.toLong()
-
-                        while (remaining > 0) {
-                            val toRead = minOf(remaining, buffer.size.toLong()).toInt()
-                            val bytesRead = input.read(buffer, 0, toRead)
-
-                            if (bytesRead == -1) break
-
-                            output.write(buffer, 0, bytesRead)
-                            remaining -= bytesRead
-                        }
-                    }
-                }
-            }
-
-            Result.success(outputFile)
-        } catch (e: Exception) {
-            Timber.tag("Epic").e(e, "Failed to assemble file ${fileManifest.filename}")
-            Result.failure(e)
-        }
-    }
-
     /**
      * Log the directory structure of the installed game
      */
@@ -0,0 +1,151 @@
+package app.gamenative.service.epic
+
+import app.gamenative.service.epic.manifest.ChunkInfo
+import app.gamenative.service.epic.manifest.ChunkPart
+import app.gamenative.service.epic.manifest.FileManifest
+import app.gamenative.utils.InstallVerifier
+import java.io.File
+
+/**
+ * Finds the damaged byte ranges of an installed Epic game.
+ *
+ * Every file is checked against its SHA-1 first. For a file that fails, the chunk behind each of
+ * its parts is rebuilt from disk, taking that part first, then parts of intact files, the file's
+ * other parts and zeros for the rest, and checked against the chunk's SHA-1. Only the parts that
+ * fail there are reported, so a repair downloads those chunks and nothing else. A file whose hash
+ * fails while every part checks out is reported with all of its parts.
+ */
+class EpicInstallVerification(
+    private val installDir: File,
+    private val files: List<FileManifest>,
+    chunks: List<ChunkInfo>,
+) {
+    class Result(
+        val totalFiles: Int,
+        val missingFiles: List<FileManifest>,
+        val sizeMismatch: List<FileManifest>,
+        val hashMismatch: List<FileManifest>,
+        /** Parts of every damaged file whose bytes on disk are wrong, in file order. */
+        val damagedParts: Map<FileManifest, List<ChunkPart>>,
+    ) {
+        val damagedFiles: List<FileManifest> get() = missingFiles + sizeMismatch + hashMismatch
+        val verifiedOk: Int get() = totalFiles - damagedFiles.size
+        val isValid: Boolean get() = damagedFiles.isEmpty()
+        val damagedBytes: Long get() = damagedParts.values.sumOf { parts -> parts.sumOf { it.size.toLong() } }
+
+        /** Damaged files reduced to their damaged parts, for an [EpicChunkWriter] that repairs them in place. */
+        fun repairFiles(): List<FileManifest> =
+            damagedFiles.map { it.copy(chunkParts = damagedParts[it].orEmpty().toMutableList()) }
+    }
+
+    private val chunksByGuid = chunks.associateBy { it.guidStr }
+
+    fun run(
+        verifier: InstallVerifier,
+        isActive: () -> Boolean = { true },
+        onProgress: (verifiedBytes: Long, totalBytes: Long) -> Unit = { _, _ -> },
+    ): Result {
+        val missing = mutableListOf<FileManifest>()
+        val wrongSize = mutableListOf<FileManifest>()
+        val fileRegions = mutableListOf<InstallVerifier.Region<FileManifest>>()
+        for (file in files) {
+            val target = File(installDir, file.filename)
+            when {
+                !target.isFile -> missing.add(file)
+                target.length() != file.fileSize -> wrongSize.add(file)
+                file.hash.any { it != 0.toByte() } -> fileRegions.add(InstallVerifier.Region(file, "SHA-1", file.hash, target, 0, file.fileSize))
+            }
+        }
+
+        val hashMismatch = verifier.verify(fileRegions, isActive, onProgress)
+        val damagedParts = LinkedHashMap<FileManifest, List<ChunkPart>>()
+        missing.forEach { damagedParts[it] = it.chunkParts.toList() }
+
+        val suspects = wrongSize + hashMismatch
+        if (suspects.isNotEmpty()) {
+            val damaged = findDamagedParts(suspects, (missing + suspects).toHashSet(), verifier, isActive)
+            for (file in suspects) {
+                val parts = file.chunkParts.filterIndexed { index, _ -> (file to index) in damaged }
+                // The damage is somewhere no chunk hash can see it, only a full rewrite is safe
+                damagedParts[file] = if (parts.isEmpty() && file in hashMismatch) file.chunkParts.toList() else parts
+            }
+        }
+
+        return Result(files.size, missing, wrongSize, hashMismatch, damagedParts)
+    }
+
+    /** The (file, part index) pairs whose part in that file does not rebuild its chunk. */
+    private fun findDamagedParts(
+        suspects: List<FileManifest>,
+        damagedFiles: Set<FileManifest>,
+        verifier: InstallVerifier,
+        isActive: () -> Boolean,
+    ): Set<Pair<FileManifest, Int>> {
+        val suspectChunks = suspects.flatMapTo(HashSet()) { file -> file.chunkParts.map { it.guidStr } }
+        val intactParts = HashMap<String, MutableList<Pair<FileManifest, ChunkPart>>>()
+        for (file in files) {
+            if (file in damagedFiles) continue
+            for (part in file.chunkParts) {
+                if (part.guidStr in suspectChunks) intactParts.getOrPut(part.guidStr) { mutableListOf() }.add(file to part)
+            }
+        }
+
+        val damaged = HashSet<Pair<FileManifest, Int>>()
+        val regions = mutableListOf<InstallVerifier.Region<Pair<FileManifest, Int>>>()
+        for (file in suspects) {
+            val partsByChunk = file.chunkParts.withIndex().groupBy { it.value.guidStr }
+            for ((guid, ownParts) in partsByChunk) {
+                val chunk = chunksByGuid[guid]
+                for ((index, part) in ownParts) {
+                    if (chunk == null || chunk.shaHash.all { it == 0.toByte() }) {
+                        // Nothing to check the part against, download it again
+                        damaged.add(file to index)
+                        continue
+                    }
+                    // Every use of a chunk is checked on its own, another copy of the same range may be intact
+                    val sources = listOf(file to part) + intactParts[guid].orEmpty() +
+                        ownParts.filter { it.index != index }.map { file to it.value }
+                    regions.add(InstallVerifier.Region(file to index, "SHA-1", chunk.shaHash, chunkSegments(chunk, sources, 1)))
+                }
+            }
+        }
+
+        damaged.addAll(verifier.verify(regions, isActive))
+        return damaged
+    }
+
+    /**
+     * Lays out the bytes of [chunk] from the parts in [sources]: the first [preferred] sources
+     * win wherever they cover the chunk, other sources fill the gaps and anything no part covers
+     * reads as zeros.
+     */
+    private fun chunkSegments(chunk: ChunkInfo, sources: List<Pair<FileManifest, ChunkPart>>, preferred: Int): List<InstallVerifier.Segment> {
+        val segments = mutableListOf<InstallVerifier.Segment>()
+        val own = sources.take(preferred)
+        val others = sources.drop(preferred)
+        val end = chunk.windowSize.toLong()
+        fun ChunkPart.covers(position: Long) = offset <= position && position < offset.toLong() + size
+        fun List<Pair<FileManifest, ChunkPart>>.nextStart(position: Long) =
+            map { it.second.offset.toLong() }.filter { it > position }.minOrNull() ?: end
+
+        var cursor = 0L
+        while (cursor < end) {
+            val ownSource = own.firstOrNull { it.second.covers(cursor) }
+            val source = ownSource ?: others.firstOrNull { it.second.covers(cursor) }
+            if (source == null) {
+                val stop = minOf(sources.nextStart(cursor), end)
+                segments.add(InstallVerifier.Segment(null, 0, stop - cursor))
+                cursor = stop
+                continue
+            }
+
+            val (file, part) = source
+            var stop = minOf(part.offset.toLong() + part.size, end)
+            // A preferred part starting inside another part takes over from there
+            if (ownSource == null) stop = minOf(stop, own.nextStart(cursor))
+            segments.add(InstallVerifier.Segment(File(installDir, file.filename), part.fileOffset + (cursor - part.offset), stop - cursor))
+            cursor = stop
+        }
+        return segments
+    }
+}
@@ -384,6 +384,13 @@ class EpicManager @Inject constructor(
             return ""
         }
 
+        // Never scan or launch a half-applied update, finish moving its files into place first
+        try {
+            EpicDeltaUpdate.finishPending(installDir, game.appName)
+        } catch (e: Exception) {
+            Timber.tag("Epic").w(e, "Failed to finish pending update of ${game.appName}")
+        }
+
         // Try to find the main executable
         // Common patterns: Game.exe, GameName.exe, or in Binaries/Win64/
         val exeFiles = installDir.walk()
@@ -322,6 +322,60 @@ class EpicService : Service() {
         }
 
         fun downloadGame(context: Context, appId: Int, dlcGameIds: List<Int>, installPath: String): Result<DownloadInfo> {
+            return startDownload(context, appId) { instance, game, downloadInfo ->
+                val commonRedistDir = File(installPath, "_CommonRedist")
+                Timber.tag("Epic").i("Starting download for game: ${game.title}, gameId: ${game.id}")
+
+                instance.epicDownloadManager.downloadGame(
+                    context,
+                    game,
+                    installPath,
+                    downloadInfo,
+                    "en-US",
+                    dlcGameIds,
+                    commonRedistDir,
+                )
+            }
+        }
+
+        /**
+         * Updates an installed game to its latest build, downloading only what changed
+         */
+        fun updateGame(context: Context, appId: Int): Result<DownloadInfo> {
+            val installPath = getInstallPath(appId) ?: return Result.failure(Exception("Game is not installed: $appId"))
+            return startDownload(context, appId) { instance, game, downloadInfo ->
+                instance.epicDownloadManager.updateGame(context, game, installPath, downloadInfo)
+            }
+        }
+
+        /**
+         * Verify an installed game and download again only the chunks of damaged files
+         */
+        fun verifyGame(context: Context, appId: Int): Result<DownloadInfo> {
+            val installPath = getInstallPath(appId) ?: return Result.failure(Exception("Game is not installed: $appId"))
+            return startDownload(
+                context,
+                appId,
+                operation = "Verification",
+                successMessage = { verification: EpicInstallVerification.Result ->
+                    if (verification.isValid) {
+                        "Verification complete, all ${verification.totalFiles} files are intact"
+                    } else {
+                        "Verification complete, repaired ${verification.damagedFiles.size} of ${verification.totalFiles} files"
+                    }
+                },
+            ) { instance, game, downloadInfo ->
+                instance.epicDownloadManager.verifyGame(context, game, installPath, downloadInfo)
+            }
+        }
+
+        private fun <T> startDownload(
+            context: Context,
+            appId: Int,
+            operation: String = "Download",
+            successMessage: (T) -> String = { "Download completed successfully!" },
+            download: suspend (EpicService, EpicGame, DownloadInfo) -> Result<T>,
+        ): Result<DownloadInfo> {
             val instance = getInstance() ?: return Result.failure(Exception("Service not available"))
 
             val game = runBlocking { instance.epicManager.getGameById(appId) }
@@ -347,18 +401,7 @@ class EpicService : Service() {
             // Start download in background
             val job = instance.scope.launch {
                 try {
-                    val commonRedistDir = File(installPath, "_CommonRedist")
-                    Timber.tag("Epic").i("Starting download for game: ${game.title}, gameId: ${game.id}")
-
-                    val result = instance.epicDownloadManager.downloadGame(
-                        context,
-                        game,
-                        installPath,
-                        downloadInfo,
-                        "en-US",
-                        dlcGameIds,
-                        commonRedistDir,
-                    )
+                    val result = download(instance, game, downloadInfo)
 
                     Timber.tag("Epic").d("Download result: ${if (result.isSuccess) "SUCCESS" else "FAILURE: ${result.exceptionOrNull()?.message}"}")
 
@@ -371,7 +414,7 @@ class EpicService : Service() {
                         withContext(Dispatchers.Main) {
                             android.widget.Toast.makeText(
                                 context,
-                                "Download completed successfully!",
+                                successMessage(result.getOrThrow()),
                                 android.widget.Toast.LENGTH_SHORT,
                             ).show()
                         }
@@ -385,7 +428,7 @@ class EpicService : Service() {
                         withContext(Dispatchers.Main) {
                             android.widget.Toast.makeText(
                                 context,
-                                "Download failed: ${error?.message ?: "Unknown error"}",
+                                "$operation failed: ${error?.message ?: "Unknown error"}",
                                 android.widget.Toast.LENGTH_LONG,
                             ).show()
                         }
@@ -399,7 +442,7 @@ class EpicService : Service() {
                     withContext(Dispatchers.Main) {
                         android.widget.Toast.makeText(
                             context,
-                            "Download error: ${e.message ?: "Unknown error"}",
+                            "$operation error: ${e.message ?: "Unknown error"}",
                             android.widget.Toast.LENGTH_LONG,
                         ).show()
                     }
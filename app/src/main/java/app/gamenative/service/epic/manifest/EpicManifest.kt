@@ -1,6 +1,5 @@
 package app.gamenative.service.epic.manifest
 
-import java.io.ByteArrayInputStream
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
 import java.security.MessageDigest
@@ -92,18 +91,17 @@ class BinaryManifest : EpicManifest() {
      * 1) Read the fixed 41-byte header in little-endian order:
      *    - magic, header size, uncompressed size, compressed size,
      *      SHA-1 of the uncompressed body, storage flags, manifest version.
-     * 2) Seek to `headerSize` and read the remaining bytes as the body payload.
-     * 3) If `storedAs` indicates compression, inflate with zlib to `sizeUncompressed`.
+     * 2) The body payload starts at `headerSize`.
+     * 3) If `storedAs` indicates compression, inflate it with zlib to `sizeUncompressed`
+     *    directly from the input array.
      * 4) Validate integrity by comparing SHA-1(uncompressedBody) with header hash.
      * 5) Keep the verified body in `data`; later `parseContents()` decodes sections
      *    in strict order: `ManifestMeta` -> `ChunkDataList` -> `FileManifestList`
      *    -> `CustomFields`.
      */
     override fun read(data: ByteArray) {
-        val input = ByteArrayInputStream(data)
-        val buffer = ByteBuffer.allocate(data.size).order(ByteOrder.LITTLE_ENDIAN)
-        buffer.put(data)
-        buffer.flip()
+        // Read the header straight from the caller's array, the body is inflated from it in place
+        val buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN)
 
         // Read header
         val magic = buffer.int.toUInt()
@@ -118,19 +116,12 @@ class BinaryManifest : EpicManifest() {
         storedAs = buffer.get()
         version = buffer.int
 
-        // Seek to end of header if we didn't read it all
-        if (buffer.position() != headerSize) {
-            buffer.position(headerSize)
-        }
-
-        // Read body data
-        val bodyData = ByteArray(buffer.remaining())
-        buffer.get(bodyData)
+        val bodyLength = data.size - headerSize
 
         // Decompress if necessary
         this.data = if (isCompressed) {
             val inflater = Inflater()
-            inflater.setInput(bodyData)
+            inflater.setInput(data, headerSize, bodyLength)
             val decompressed = ByteArray(sizeUncompressed)
             val resultLength = inflater.inflate(decompressed)
             inflater.end()
@@ -149,7 +140,7 @@ class BinaryManifest : EpicManifest() {
 
             decompressed
         } else {
-            bodyData
+            data.copyOfRange(headerSize, data.size)
         }
     }
 
@@ -414,6 +405,9 @@ data class ManifestMeta(
 
 /**
  * Chunk Data List - contains all downloadable chunks
+ *
+ * Lists read from a binary manifest keep their chunks in primitive columns and decode
+ * [ChunkInfo] objects on access, see [ColumnList].
  */
 data class ChunkDataList(
     var version: Byte = 0,
@@ -423,11 +417,11 @@ data class ChunkDataList(
     private var manifestVersion: Int = 18
 ) {
     private val guidMap: MutableMap<String, Int> by lazy {
-        elements.mapIndexed { index, chunk -> chunk.guidStr to index }.toMap(mutableMapOf())
+        elements.withIndex().associateTo(HashMap(elements.size * 2)) { (index, chunk) -> chunk.guidStr to index }
     }
 
     private val guidIntMap: MutableMap<Pair<ULong, ULong>, Int> by lazy {
-        elements.mapIndexed { index, chunk -> chunk.guidNum to index }.toMap(mutableMapOf())
+        elements.withIndex().associateTo(HashMap(elements.size * 2)) { (index, chunk) -> chunk.guidNum to index }
     }
 
     fun getChunkByGuid(guid: String): ChunkInfo? {
@@ -440,56 +434,44 @@ data class ChunkDataList(
 
     companion object {
         fun read(buffer: ByteBuffer, manifestVersion: Int): ChunkDataList {
-            val cdl = ChunkDataList(manifestVersion = manifestVersion)
             val startPos = buffer.position()
 
-            cdl.size = buffer.int
-            cdl.version = buffer.get()
-            cdl.count = buffer.int
+            val size = buffer.int
+            val version = buffer.get()
+            val count = buffer.int
 
-            // Pre-allocate chunk list
-            repeat(cdl.count) {
-                cdl.elements.add(ChunkInfo(manifestVersion = manifestVersion))
-            }
+            // Read data in columnar format (all GUIDs, then all hashes, etc.) straight into
+            // primitive columns, ChunkInfo objects are only created when elements are accessed
+            val table = ChunkTable(count, manifestVersion)
 
-            // Read data in columnar format (all GUIDs, then all hashes, etc.)
             // GUIDs (128-bit each)
-            cdl.elements.forEach { chunk ->
-                chunk.guid = intArrayOf(buffer.int, buffer.int, buffer.int, buffer.int)
+            for (i in 0 until count) {
+                table.guidHigh[i] = guidHalf(buffer.int, buffer.int)
+                table.guidLow[i] = guidHalf(buffer.int, buffer.int)
             }
 
             // Hashes (64-bit each)
-            cdl.elements.forEach { chunk ->
-                chunk.hash = buffer.long.toULong()
-            }
+            for (i in 0 until count) table.hashes[i] = buffer.long
 
             // SHA1 hashes (160-bit each)
-            cdl.elements.forEach { chunk ->
-                buffer.get(chunk.shaHash)
-            }
+            buffer.get(table.shaHashes)
 
             // Group numbers (8-bit each)
-            cdl.elements.forEach { chunk ->
-                chunk.groupNum = buffer.get().toInt() and 0xFF
-            }
+            buffer.get(table.groupNums)
 
             // Window sizes (32-bit each) - uncompressed size
-            cdl.elements.forEach { chunk ->
-                chunk.windowSize = buffer.int
-            }
+            for (i in 0 until count) table.windowSizes[i] = buffer.int
 
             // File sizes (64-bit each) - compressed download size
-            cdl.elements.forEach { chunk ->
-                chunk.fileSize = buffer.long
-            }
+            for (i in 0 until count) table.fileSizes[i] = buffer.long
 
             // Verify size
             val bytesRead = buffer.position() - startPos
-            if (bytesRead != cdl.size) {
-                buffer.position(startPos + cdl.size)
+            if (bytesRead != size) {
+                buffer.position(startPos + size)
             }
 
-            return cdl
+            return ChunkDataList(version, size, count, table.elements(), manifestVersion)
         }
     }
 
@@ -554,16 +536,14 @@ data class ChunkInfo(
     var useHashPrefixForV3: Boolean = false,
     private val manifestVersion: Int = 18
 ) {
-    val guidStr: String by lazy {
-        guid.joinToString("-") { "%08x".format(it) }
-    }
+    private var cachedGuidStr: String? = null
+
+    val guidStr: String
+        get() = cachedGuidStr ?: formatGuid(guid).also { cachedGuidStr = it }
 
     // 128-bit GUID represented as Pair<ULong, ULong> (high 64 bits, low 64 bits)
-    val guidNum: Pair<ULong, ULong> by lazy {
-        val high = (guid[0].toULong() shl 32) or guid[1].toULong()
-        val low = (guid[2].toULong() shl 32) or guid[3].toULong()
-        Pair(high, low)
-    }
+    val guidNum: Pair<ULong, ULong>
+        get() = Pair(guidHalf(guid[0], guid[1]).toULong(), guidHalf(guid[2], guid[3]).toULong())
 
     /**
      * Get the download path for this chunk
@@ -607,6 +587,9 @@ data class ChunkInfo(
 
 /**
  * File Manifest List - contains all game files
+ *
+ * For lists read from a binary manifest the chunk parts of all files live in one
+ * [ChunkPartTable] and every [FileManifest.chunkParts] is a view of its range.
  */
 data class FileManifestList(
     var version: Byte = 0,
@@ -636,6 +619,9 @@ data class FileManifestList(
                 fml.elements.add(FileManifest())
             }
 
+            // Symlink targets, tags and MIME types repeat across files, keep one copy of each
+            val strings = StringPool()
+
             // Read in columnar format
             // Filenames
             fml.elements.forEach { fm ->
@@ -644,7 +630,7 @@ data class FileManifestList(
 
             // Symlink targets
             fml.elements.forEach { fm ->
-                fm.symlinkTarget = readFString(buffer)
+                fm.symlinkTarget = strings.intern(readFString(buffer))
             }
 
             // SHA1 hashes
@@ -657,30 +643,35 @@ data class FileManifestList(
                 fm.flags = buffer.get().toInt() and 0xFF
             }
 
-            // Install tags
+            // Install tags, most files share the same few tag lists
+            val tagLists = HashMap<List<String>, List<String>>()
             fml.elements.forEach { fm ->
                 val tagCount = buffer.int
-                fm.installTags = List(tagCount) { readFString(buffer) }
+                if (tagCount > 0) {
+                    val tags = List(tagCount) { strings.intern(readFString(buffer)) }
+                    fm.installTags = tagLists.getOrPut(tags) { tags }
+                }
             }
 
-            // Chunk parts
+            // Chunk parts go into one table for the whole list, each file gets a view of its range
+            val parts = ChunkPartTable(fml.count)
             fml.elements.forEach { fm ->
                 val partCount = buffer.int
+                val start = parts.size
                 var fileOffset = 0L
 
                 repeat(partCount) {
                     val partStartPos = buffer.position()
                     val partSize = buffer.int
 
-                    val part = ChunkPart(
-                        guid = intArrayOf(buffer.int, buffer.int, buffer.int, buffer.int),
+                    val size = parts.add(
+                        guidHigh = guidHalf(buffer.int, buffer.int),
+                        guidLow = guidHalf(buffer.int, buffer.int),
                         offset = buffer.int,
                         size = buffer.int,
-                        fileOffset = fileOffset
+                        fileOffset = fileOffset,
                     )
-
-                    fm.chunkParts.add(part)
-                    fileOffset += part.size.toLong()
+                    fileOffset += size.toLong()
 
                     // Ensure we read the expected size
                     val partBytesRead = buffer.position() - partStartPos
@@ -689,8 +680,10 @@ data class FileManifestList(
                     }
                 }
 
+                fm.chunkParts = parts.elements(start, partCount)
                 fm.fileSize = fileOffset
             }
+            parts.trim()
 
             // Version 1+: MD5 hashes and MIME types
             if (fml.version >= 1) {
@@ -702,7 +695,7 @@ data class FileManifestList(
                 }
 
                 fml.elements.forEach { fm ->
-                    fm.mimeType = readFString(buffer)
+                    fm.mimeType = strings.intern(readFString(buffer))
                 }
             }
 
@@ -852,9 +845,10 @@ data class ChunkPart(
     val size: Int,
     val fileOffset: Long
 ) {
-    val guidStr: String by lazy {
-        guid.joinToString("-") { "%08x".format(it) }
-    }
+    private var cachedGuidStr: String? = null
+
+    val guidStr: String
+        get() = cachedGuidStr ?: formatGuid(guid).also { cachedGuidStr = it }
 
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
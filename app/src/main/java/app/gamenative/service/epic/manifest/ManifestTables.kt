@@ -0,0 +1,141 @@
+package app.gamenative.service.epic.manifest
+
+/**
+ * Compact storage behind the element lists of binary manifests. Large games list tens of thousands
+ * of chunks and chunk parts; keeping them as primitive columns instead of one object (plus GUID
+ * array and cached strings) per entry keeps the parsed manifest small, and callers still see
+ * ordinary [ChunkInfo] and [ChunkPart] lists.
+ */
+
+private val HEX_DIGITS = "0123456789abcdef".toCharArray()
+
+/** Formats a GUID as four lowercase 8-digit hex groups joined by '-'. */
+internal fun formatGuid(guid: IntArray): String {
+    if (guid.isEmpty()) return ""
+    val chars = CharArray(guid.size * 9 - 1)
+    var pos = 0
+    guid.forEachIndexed { index, value ->
+        if (index > 0) chars[pos++] = '-'
+        for (shift in 28 downTo 0 step 4) {
+            chars[pos++] = HEX_DIGITS[(value ushr shift) and 0xF]
+        }
+    }
+    return String(chars)
+}
+
+/** Packs two GUID ints into one 64-bit half, [high] first. */
+internal fun guidHalf(high: Int, low: Int): Long = (high.toLong() shl 32) or (low.toLong() and 0xFFFFFFFFL)
+
+private fun unpackGuid(high: Long, low: Long) = intArrayOf((high ushr 32).toInt(), high.toInt(), (low ushr 32).toInt(), low.toInt())
+
+/** Hands out one instance per distinct string read from a manifest. */
+internal class StringPool {
+    private val strings = HashMap<String, String>()
+
+    fun intern(value: String): String = if (value.isEmpty()) "" else strings.getOrPut(value) { value }
+}
+
+/**
+ * Mutable list whose elements are decoded from columns on every access. The first structural
+ * change copies the decoded elements into a plain list, so callers can edit it as before; changing
+ * the fields of a decoded element does not write back.
+ */
+internal abstract class ColumnList<T>(private val columnSize: Int) : AbstractMutableList<T>() {
+    private var edited: ArrayList<T>? = null
+
+    protected abstract fun decode(index: Int): T
+
+    override val size: Int
+        get() = edited?.size ?: columnSize
+
+    override fun get(index: Int): T {
+        edited?.let { return it[index] }
+        if (index < 0 || index >= columnSize) throw IndexOutOfBoundsException("Index: $index, Size: $columnSize")
+        return decode(index)
+    }
+
+    override fun set(index: Int, element: T): T = edit().set(index, element)
+
+    override fun add(index: Int, element: T) {
+        edit().add(index, element)
+        modCount++
+    }
+
+    override fun removeAt(index: Int): T {
+        val removed = edit().removeAt(index)
+        modCount++
+        return removed
+    }
+
+    private fun edit(): ArrayList<T> = edited ?: ArrayList<T>(columnSize + 1).also { list ->
+        for (i in 0 until columnSize) list.add(decode(i))
+        edited = list
+    }
+}
+
+/** Chunk columns of a [ChunkDataList], filled in the order the binary format stores them. */
+internal class ChunkTable(private val count: Int, private val manifestVersion: Int) {
+    val guidHigh = LongArray(count)
+    val guidLow = LongArray(count)
+    val hashes = LongArray(count)
+    val shaHashes = ByteArray(count * 20)
+    val groupNums = ByteArray(count)
+    val windowSizes = IntArray(count)
+    val fileSizes = LongArray(count)
+
+    fun elements(): MutableList<ChunkInfo> = object : ColumnList<ChunkInfo>(count) {
+        override fun decode(index: Int) = ChunkInfo(
+            guid = unpackGuid(guidHigh[index], guidLow[index]),
+            hash = hashes[index].toULong(),
+            shaHash = shaHashes.copyOfRange(index * 20, index * 20 + 20),
+            groupNum = groupNums[index].toInt() and 0xFF,
+            windowSize = windowSizes[index],
+            fileSize = fileSizes[index],
+            manifestVersion = manifestVersion,
+        )
+    }
+}
+
+/** Chunk parts of all files of a [FileManifestList]; each file views a contiguous range. */
+internal class ChunkPartTable(fileCount: Int) {
+    private var guidHigh = LongArray(maxOf(16, fileCount * 2))
+    private var guidLow = LongArray(guidHigh.size)
+    private var offsets = IntArray(guidHigh.size)
+    private var sizes = IntArray(guidHigh.size)
+    private var fileOffsets = LongArray(guidHigh.size)
+
+    var size = 0
+        private set
+
+    /** Appends a part and returns its [size] for the caller's running file offset. */
+    fun add(guidHigh: Long, guidLow: Long, offset: Int, size: Int, fileOffset: Long): Int {
+        if (this.size == this.guidHigh.size) resize(this.size * 2)
+        val index = this.size++
+        this.guidHigh[index] = guidHigh
+        this.guidLow[index] = guidLow
+        offsets[index] = offset
+        sizes[index] = size
+        fileOffsets[index] = fileOffset
+        return size
+    }
+
+    /** Drops the spare capacity once all parts are read. */
+    fun trim() {
+        if (size < guidHigh.size) resize(size)
+    }
+
+    private fun resize(capacity: Int) {
+        guidHigh = guidHigh.copyOf(capacity)
+        guidLow = guidLow.copyOf(capacity)
+        offsets = offsets.copyOf(capacity)
+        sizes = sizes.copyOf(capacity)
+        fileOffsets = fileOffsets.copyOf(capacity)
+    }
+
+    fun elements(start: Int, count: Int): MutableList<ChunkPart> = object : ColumnList<ChunkPart>(count) {
+        override fun decode(index: Int): ChunkPart {
+            val part = start + index
+            return ChunkPart(unpackGuid(guidHigh[part], guidLow[part]), offsets[part], sizes[part], fileOffsets[part])
+        }
+    }
+}
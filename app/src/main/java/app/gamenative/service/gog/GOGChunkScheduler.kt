@@ -0,0 +1,183 @@
+package app.gamenative.service.gog
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import timber.log.Timber
+
+/**
+ * Concurrency limit tuned additive-increase/multiplicative-decrease style from finished transfers.
+ * Transfers are grouped into windows of [limit] completions: a window with failures halves the
+ * limit, one whose throughput fell clearly below the previous window takes a quarter off, and
+ * every other window adds one more connection.
+ *
+ * Not thread-safe, [GOGChunkScheduler] only touches it from its control loop.
+ */
+class AimdConcurrencyLimit(
+    private val minLimit: Int,
+    private val maxLimit: Int,
+    initialLimit: Int,
+    private val clock: () -> Long = System::nanoTime,
+) {
+    companion object {
+        private const val MIN_WINDOW = 4
+        private const val THROUGHPUT_DROP = 0.9
+    }
+
+    var limit = initialLimit.coerceIn(minLimit, maxLimit)
+        private set
+
+    private var windowStart = clock()
+    private var windowBytes = 0L
+    private var windowCompletions = 0
+    private var windowFailures = 0
+    private var previousThroughput = 0.0
+
+    fun onSuccess(bytes: Long) {
+        windowBytes += bytes
+        windowCompletions++
+        adjust()
+    }
+
+    fun onFailure() {
+        windowFailures++
+        windowCompletions++
+        adjust()
+    }
+
+    private fun adjust() {
+        if (windowCompletions < maxOf(limit, MIN_WINDOW)) return
+
+        val now = clock()
+        val throughput = windowBytes * 1e9 / maxOf(1L, now - windowStart)
+        limit = when {
+            windowFailures > 0 -> maxOf(minLimit, limit / 2)
+            throughput < previousThroughput * THROUGHPUT_DROP -> maxOf(minLimit, limit - maxOf(1, limit / 4))
+            else -> minOf(maxLimit, limit + 1)
+        }
+        previousThroughput = if (windowFailures > 0) 0.0 else throughput
+
+        windowStart = now
+        windowBytes = 0
+        windowCompletions = 0
+        windowFailures = 0
+    }
+}
+
+/**
+ * Keeps up to [AimdConcurrencyLimit.limit] chunk downloads in flight and starts the next one as
+ * soon as any finishes, instead of waiting for the slowest chunk of a batch. Failed chunks are
+ * retried with exponential backoff. Chunks that fail with an expired secure link wait while the
+ * links are refreshed once for all of them; downloads already in flight keep going meanwhile.
+ */
+class GOGChunkScheduler(
+    private val concurrency: AimdConcurrencyLimit,
+    private val maxAttempts: Int,
+    private val retryDelayMs: Long,
+) {
+    private sealed class Event<K> {
+        class Finished<K>(val key: K, val attempt: Int, val result: Result<Long>) : Event<K>()
+        class Refreshed<K>(val result: Result<Unit>) : Event<K>()
+    }
+
+    /**
+     * Downloads every key and returns the first unrecoverable failure, if any.
+     *
+     * @param download Fetches one chunk and returns the number of bytes transferred
+     * @param isExpiredLink Whether a failure means the secure links have to be refreshed
+     * @param refreshLinks Refreshes the links [download] uses
+     * @param onProgress Called after every finished chunk with the finished and total count
+     * @param isActive Polled between completions, the download is cancelled once it returns false
+     */
+    suspend fun <K> run(
+        keys: List<K>,
+        download: suspend (K) -> Result<Long>,
+        isExpiredLink: (Throwable) -> Boolean = { false },
+        refreshLinks: suspend () -> Result<Unit> = { Result.success(Unit) },
+        onProgress: (finished: Int, total: Int) -> Unit = { _, _ -> },
+        isActive: () -> Boolean = { true },
+    ): Result<Unit> = coroutineScope {
+        val events = Channel<Event<K>>(Channel.UNLIMITED)
+        val queue = ArrayDeque(keys.map { it to 0 })
+        val waitingForLinks = mutableListOf<Pair<K, Int>>()
+        val refreshedKeys = HashSet<K>()
+        var inFlight = 0
+        var refreshing = false
+        var finished = 0
+
+        fun fail(error: Throwable): Result<Unit> {
+            coroutineContext.cancelChildren()
+            return Result.failure(error)
+        }
+
+        while (finished < keys.size) {
+            if (!isActive()) {
+                Timber.tag("GOG").w("Download cancelled by user")
+                return@coroutineScope fail(Exception("Download cancelled"))
+            }
+
+            while (!refreshing && inFlight < concurrency.limit && queue.isNotEmpty()) {
+                val (key, attempt) = queue.removeFirst()
+                inFlight++
+                launch {
+                    if (attempt > 0) delay(retryDelayMs * (1 shl (attempt - 1)))
+                    val result = try {
+                        download(key)
+                    } catch (e: CancellationException) {
+                        throw e
+                    } catch (e: Exception) {
+                        Result.failure(e)
+                    }
+                    events.send(Event.Finished(key, attempt, result))
+                }
+            }
+
+            when (val event = events.receive()) {
+                is Event.Finished -> {
+                    inFlight--
+                    val error = event.result.exceptionOrNull()
+                    when {
+                        error == null -> {
+                            concurrency.onSuccess(event.result.getOrThrow())
+                            finished++
+                            onProgress(finished, keys.size)
+                        }
+                        isExpiredLink(error) && refreshedKeys.add(event.key) -> {
+                            waitingForLinks.add(event.key to event.attempt)
+                            if (!refreshing) {
+                                Timber.tag("GOG").w("Secure link expired for chunk ${event.key}, refreshing...")
+                                refreshing = true
+                                launch { events.send(Event.Refreshed(refreshLinks())) }
+                            }
+                        }
+                        event.attempt + 1 < maxAttempts && !isExpiredLink(error) -> {
+                            concurrency.onFailure()
+                            Timber.tag("GOG").w("Chunk ${event.key} download failed (attempt ${event.attempt + 1}/$maxAttempts): ${error.message}, concurrency now ${concurrency.limit}")
+                            queue.addLast(event.key to event.attempt + 1)
+                        }
+                        else -> {
+                            Timber.tag("GOG").e(error, "Failed to download chunk ${event.key} after ${event.attempt + 1} attempts")
+                            return@coroutineScope fail(error)
+                        }
+                    }
+                }
+                is Event.Refreshed -> {
+                    refreshing = false
+                    val error = event.result.exceptionOrNull()
+                    if (error != null) {
+                        Timber.tag("GOG").e("Failed to refresh secure links: ${error.message}")
+                        return@coroutineScope fail(error)
+                    }
+                    Timber.tag("GOG").i("Secure links refreshed, retrying ${waitingForLinks.size} chunk(s)")
+                    waitingForLinks.asReversed().forEach { queue.addFirst(it) }
+                    waitingForLinks.clear()
+                }
+            }
+        }
+
+        Result.success(Unit)
+    }
+}
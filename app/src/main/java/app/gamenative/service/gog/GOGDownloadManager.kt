@@ -5,9 +5,11 @@ import app.gamenative.data.DownloadInfo
 import app.gamenative.service.gog.api.DepotFile
 import app.gamenative.service.gog.api.FileChunk
 import app.gamenative.service.gog.api.GOGApiClient
+import app.gamenative.service.gog.api.GOGBuild
 import app.gamenative.service.gog.api.GOGManifestMeta
 import app.gamenative.service.gog.api.GOGManifestParser
 import app.gamenative.service.gog.api.V1DepotFile
+import app.gamenative.utils.InstallVerifier
 import app.gamenative.utils.Net
 import org.json.JSONArray
 import org.json.JSONObject
@@ -16,15 +18,15 @@ import java.io.ByteArrayOutputStream
 import java.io.BufferedOutputStream
 import java.io.File
 import java.io.FileOutputStream
+import java.io.RandomAccessFile
 import java.security.DigestOutputStream
 import java.security.MessageDigest
 import java.util.zip.Inflater
 import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicReference
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.async
-import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.withContext
 import okhttp3.Request
 import timber.log.Timber
@@ -73,13 +75,43 @@ class GOGDownloadManager @Inject constructor(
     )
 
     companion object {
-        private const val MAX_PARALLEL_DOWNLOADS = 4
+        private const val INITIAL_PARALLEL_DOWNLOADS = 4
+        private const val MIN_PARALLEL_DOWNLOADS = 2
+        private const val MAX_PARALLEL_DOWNLOADS = 16
         private const val CHUNK_BUFFER_SIZE = 1024 * 1024 // 1MB buffer
         private const val MAX_CHUNK_RETRIES = 3 // Maximum retries per chunk
         private const val RETRY_DELAY_MS = 1000L // Initial retry delay in milliseconds
         private const val DEPENDENCY_URL = "https://content-system.gog.com/dependencies/repository?generation=2"
     }
 
+    /** Game files checked by [verifyGame] and how many of them had to be repaired. */
+    data class VerifyResult(val totalFiles: Int, val repairedFiles: Int)
+
+    /**
+     * Check an installed game against the build it was installed from and download again only
+     * what is damaged or missing. The build is read from the manifest saved with the install, so
+     * a verification never turns into an update.
+     *
+     * @param installPath Directory the game is installed in
+     * @param downloadInfo Progress tracker
+     * @param language Container language name, see [downloadGame]
+     * @param supportDir Optional directory for support files (redistributables)
+     */
+    suspend fun verifyGame(
+        gameId: String,
+        installPath: File,
+        downloadInfo: DownloadInfo,
+        language: String = GOGConstants.GOG_FALLBACK_DOWNLOAD_LANGUAGE,
+        supportDir: File? = null,
+    ): Result<VerifyResult> {
+        val buildId = GOGManifestUtils.readInstalledBuildId(installPath)
+            ?: return Result.failure(Exception("The installed build is unknown, reinstall the game to verify it"))
+        var verifyResult = VerifyResult(0, 0)
+        return downloadGame(gameId, installPath, downloadInfo, language, true, supportDir, buildId) { totalFiles, damagedFiles ->
+            verifyResult = VerifyResult(totalFiles, damagedFiles)
+        }.map { verifyResult }
+    }
+
     /**
      * Download and install a GOG game
      *
@@ -89,6 +121,8 @@ class GOGDownloadManager @Inject constructor(
      * @param language Container language name (e.g. "english", "german"). Used to resolve GOG manifest language codes when filtering depots. See [GOGConstants.containerLanguageToGogCodes].
      * @param withDlcs Whether to include DLC content
      * @param supportDir Optional directory for support files (redistributables)
+     * @param buildId Build to install, the latest Windows build when null
+     * @param onChecked Called with the number of game files and how many of them were missing or damaged on disk
      * @return Result indicating success or failure
      */
     suspend fun downloadGame(
@@ -98,6 +132,8 @@ class GOGDownloadManager @Inject constructor(
         language: String = GOGConstants.GOG_FALLBACK_DOWNLOAD_LANGUAGE,
         withDlcs: Boolean = false,
         supportDir: File? = null,
+        buildId: String? = null,
+        onChecked: (totalFiles: Int, damagedFiles: Int) -> Unit = { _, _ -> },
     ): Result<Unit> = withContext(Dispatchers.IO) {
         try {
             Timber.tag("GOG").i("Starting download for game $gameId to ${installPath.absolutePath}")
@@ -125,6 +161,13 @@ class GOGDownloadManager @Inject constructor(
             downloadInfo.updateStatusMessage("Fetching builds...")
 
             // Step 1: Get available builds — prefer Gen 2, fall back to Gen 1 (legacy)
+            fun selectBuild(builds: List<GOGBuild>, generation: Int): GOGBuild? =
+                if (buildId == null) {
+                    parser.selectBuild(builds, preferredGeneration = generation, platform = WINDOWS_OS_VERSION)
+                } else {
+                    builds.firstOrNull { it.buildId == buildId && it.generation == generation }
+                }
+
             val selectedBuild = run {
                 val gen2Result = apiClient.getBuildsForGame(gameId, WINDOWS_OS_VERSION, generation = 2)
                 if (gen2Result.isFailure) {
@@ -132,7 +175,7 @@ class GOGDownloadManager @Inject constructor(
                         gen2Result.exceptionOrNull() ?: Exception("Failed to fetch Gen 2 builds"),
                     )
                 }
-                parser.selectBuild(gen2Result.getOrThrow().items, preferredGeneration = 2, platform = WINDOWS_OS_VERSION)
+                selectBuild(gen2Result.getOrThrow().items, generation = 2)
                     ?.let { return@run it }
                 val gen1Result = apiClient.getBuildsForGame(gameId, WINDOWS_OS_VERSION, generation = 1)
                 if (gen1Result.isFailure) {
@@ -141,8 +184,11 @@ class GOGDownloadManager @Inject constructor(
                     )
                 }
                 val builds = gen1Result.getOrThrow()
-                parser.selectBuild(builds.items, preferredGeneration = 1, platform = WINDOWS_OS_VERSION)
+                selectBuild(builds.items, generation = 1)
                     ?: run {
+                        if (buildId != null) {
+                            return@withContext Result.failure(Exception("The installed build $buildId is no longer available"))
+                        }
                         val hint = when {
                             builds.items.isEmpty() -> "No builds returned for Windows (game may be Linux/Mac only)."
                             else -> "No Windows build. Available: ${builds.items.joinToString { "Gen ${it.generation}/${it.platform}" }}."
@@ -186,6 +232,7 @@ class GOGDownloadManager @Inject constructor(
                     language = language,
                     withDlcs = withDlcs,
                     supportDir = supportDir,
+                    onChecked = onChecked,
                 )
             }
 
@@ -251,15 +298,14 @@ class GOGDownloadManager @Inject constructor(
             val filesToDownload = if (withDlcs) baseFiles + dlcFiles else baseFiles
             var (gameFiles, supportFiles) = parser.separateSupportFiles(filesToDownload)
 
-            // Filter out files that already exist with correct size (incremental download)
+            // Check existing files chunk by chunk so only damaged or missing chunks are downloaded again
             val gameInstallDir = installPath
             val beforeCount = gameFiles.size
-            gameFiles = gameFiles.filter { file ->
-                val outputFile = File(gameInstallDir, file.path)
-                val expectedSize = file.chunks.sumOf { it.size }
-                !fileExistsWithCorrectSize(outputFile, expectedSize, file.md5)
-            }
-            Timber.tag("GOG").d("Skipping ${beforeCount - gameFiles.size} existing file(s), downloading ${gameFiles.size}")
+            val repairChunks = findDamagedChunks(gameFiles, gameInstallDir, downloadInfo)
+            gameFiles = gameFiles.filter { it in repairChunks }
+            val downloadFiles = gameFiles.map { file -> file.copy(chunks = repairChunks.getValue(file).map { file.chunks[it] }) }
+            Timber.tag("GOG").d("Skipping ${beforeCount - gameFiles.size} existing file(s), repairing ${gameFiles.size}")
+            onChecked(beforeCount, gameFiles.size)
 
             // Calculate sizes separately for transparency
             val (baseGameFiles, _) = parser.separateSupportFiles(baseFiles)
@@ -285,8 +331,8 @@ class GOGDownloadManager @Inject constructor(
             )
 
             // Step 6: Calculate sizes and extract chunk hashes
-            val totalSize = parser.calculateTotalSize(gameFiles)
-            val chunkHashes = parser.extractChunkHashes(gameFiles)
+            val totalSize = parser.calculateTotalSize(downloadFiles)
+            val chunkHashes = parser.extractChunkHashes(downloadFiles)
 
             Timber.tag("GOG").d(
                 """
@@ -308,7 +354,7 @@ class GOGDownloadManager @Inject constructor(
 
             Timber.tag("GOG").d("Mapping chunks to products. gameId parameter: $gameId, realGameId: $realGameId, manifest baseProductId: ${gameManifest.baseProductId}")
 
-            val filesToDownloadPaths = gameFiles.map { it.path }.toSet()
+            val filesToDownloadPaths = downloadFiles.map { it.path }.toSet()
             // Map each chunk to its product ID using depot info
             allFilesWithDepots.forEach { (file, depotProductId) ->
                 if (file.path !in filesToDownloadPaths) return@forEach
@@ -400,7 +446,7 @@ class GOGDownloadManager @Inject constructor(
             // Use installPath directly since it already includes the game-specific folder
             gameInstallDir.mkdirs()
 
-            val assembleResult = assembleFiles(gameFiles, chunkCacheDir, gameInstallDir, downloadInfo)
+            val assembleResult = assembleFiles(gameFiles, chunkCacheDir, gameInstallDir, downloadInfo, repairChunks)
             if (assembleResult.isFailure) {
                 return@withContext assembleResult
             }
@@ -525,6 +571,7 @@ class GOGDownloadManager @Inject constructor(
         language: String,
         withDlcs: Boolean,
         supportDir: File?,
+        onChecked: (totalFiles: Int, damagedFiles: Int) -> Unit,
     ): Result<Unit> = withContext(Dispatchers.IO) {
         try {
             val timestamp = gameManifest.productTimestamp ?: return@withContext Result.failure(Exception("Gen 1 manifest missing productTimestamp"))
@@ -573,15 +620,13 @@ class GOGDownloadManager @Inject constructor(
 
             var gameFiles = allV1Files.filter { !it.file.isSupport }
             var supportFiles = allV1Files.filter { it.file.isSupport }
-            gameFiles = gameFiles.filter { f ->
-                val outFile = File(installPath, f.file.path)
-                !fileExistsWithCorrectSize(outFile, f.file.size, f.file.hash.takeIf { it.isNotEmpty() })
-            }
+            // Gen 1 only has whole-file hashes, so a damaged file is fetched again in full
+            downloadInfo.updateStatusMessage("Verifying existing files...")
+            val checkedCount = gameFiles.size
+            gameFiles = filterIntactFiles(gameFiles, downloadInfo) { File(installPath, it.file.path) to it.file }
+            onChecked(checkedCount, gameFiles.size)
             if (supportDir != null) {
-                supportFiles = supportFiles.filter { f ->
-                    val outFile = File(supportDir, f.file.path)
-                    !fileExistsWithCorrectSize(outFile, f.file.size, f.file.hash.takeIf { it.isNotEmpty() })
-                }
+                supportFiles = filterIntactFiles(supportFiles, downloadInfo) { File(supportDir, it.file.path) to it.file }
             }
             val totalSize = gameFiles.sumOf { it.file.size } +
                 if (supportDir != null) supportFiles.sumOf { it.file.size } else 0L
@@ -728,10 +773,8 @@ class GOGDownloadManager @Inject constructor(
         chunkToProductMap: Map<String, String>,
     ): Result<Unit> = withContext(Dispatchers.IO) {
         try {
-            var currentChunkUrlMap = chunkUrlMap
             val chunks = chunkUrlMap.entries.toList()
             val totalChunks = chunks.size
-            var downloadedChunks = 0
 
             Timber.tag("GOG").d("Downloading $totalChunks chunks...")
 
@@ -740,86 +783,43 @@ class GOGDownloadManager @Inject constructor(
             downloadInfo.setActive(true)
             downloadInfo.emitProgressChange()
 
-            // Download in batches to avoid overwhelming the system
-            chunks.chunked(MAX_PARALLEL_DOWNLOADS).forEach { chunkBatch ->
-                if (!downloadInfo.isActive()) {
-                    Timber.tag("GOG").w("Download cancelled by user")
-                    return@withContext Result.failure(Exception("Download cancelled"))
-                }
-
-                // Download batch in parallel with retry logic
-                val results = chunkBatch.map { (chunkMd5, _) ->
-                    async {
-                        // Use current URL map in case it was refreshed
-                        val url = currentChunkUrlMap[chunkMd5] ?: return@async Result.failure<File>(
-                            Exception("No URL found for chunk $chunkMd5"),
-                        )
-                        downloadChunkWithRetry(chunkMd5, url, chunkCacheDir, downloadInfo)
-                    }
-                }.awaitAll()
-
-                // Check if any download failed due to expired links (401/403/404)
-                val expiredLinkFailures = results.zip(chunkBatch).filter { (result, _) ->
-                    val exception = result.exceptionOrNull()
-                    exception is HttpStatusException && exception.statusCode in listOf(401, 403, 404)
-                }
-
-                if (expiredLinkFailures.isNotEmpty()) {
-                    Timber.tag("GOG").w("Detected ${expiredLinkFailures.size} expired secure link(s), refreshing...")
-
-                    // Log which products the failing chunks belong to
-                    expiredLinkFailures.forEach { (result, chunk) ->
-                        val chunkMd5 = chunk.key
-                        val productId = chunkToProductMap[chunkMd5]
-                        Timber.tag("GOG").w("Chunk $chunkMd5 belongs to product $productId: ${result.exceptionOrNull()?.message}")
-                    }
-
-                    // Refresh secure links
-                    val refreshResult = refreshSecureLinks(secureLinkContext, chunkHashes)
-                    if (refreshResult.isSuccess) {
-                        currentChunkUrlMap = refreshResult.getOrThrow()
-                        Timber.tag("GOG").i("Secure links refreshed successfully, retrying failed chunks")
-
-                        // Retry the failed chunks with new URLs
-                        val retryResults = chunkBatch.map { (chunkMd5, _) ->
-                            async {
-                                val url = currentChunkUrlMap[chunkMd5] ?: return@async Result.failure<File>(
-                                    Exception("No URL found for chunk $chunkMd5 after refresh"),
-                                )
-                                downloadChunkWithRetry(chunkMd5, url, chunkCacheDir, downloadInfo)
-                            }
-                        }.awaitAll()
-
-                        // Check retry results
-                        retryResults.firstOrNull { it.isFailure }?.let { failedResult ->
-                            return@withContext Result.failure(
-                                failedResult.exceptionOrNull() ?: Exception("Failed to download chunk after link refresh"),
-                            )
-                        }
+            // Secure links are refreshed by the scheduler while the remaining downloads keep going
+            val currentChunkUrlMap = AtomicReference(chunkUrlMap)
+            val result = newChunkScheduler().run(
+                keys = chunks.map { it.key },
+                download = { chunkMd5 ->
+                    // Use current URL map in case it was refreshed
+                    val url = currentChunkUrlMap.get()[chunkMd5]
+                    if (url == null) {
+                        Result.failure(Exception("No URL found for chunk $chunkMd5"))
                     } else {
-                        Timber.tag("GOG").e("Failed to refresh secure links: ${refreshResult.exceptionOrNull()?.message}")
-                        return@withContext Result.failure(
-                            refreshResult.exceptionOrNull() ?: Exception("Failed to refresh secure links"),
-                        )
-                    }
-                } else {
-                    // Check if any download failed for other reasons
-                    results.firstOrNull { it.isFailure }?.let { failedResult ->
-                        return@withContext Result.failure(
-                            failedResult.exceptionOrNull() ?: Exception("Failed to download chunk"),
-                        )
+                        downloadChunk(chunkMd5, url, chunkCacheDir, downloadInfo)
+                            .onFailure { e ->
+                                if (e is HttpStatusException) {
+                                    Timber.tag("GOG").w("Chunk $chunkMd5 belongs to product ${chunkToProductMap[chunkMd5]}: ${e.message}")
+                                }
+                            }
+                            .map { it.length() }
                     }
-                }
-
-                downloadedChunks += chunkBatch.size
-
-                // Update progress with smooth interpolation
-                val progress = downloadedChunks.toFloat() / totalChunks
-                downloadInfo.setProgress(progress)
-                downloadInfo.updateStatusMessage("Downloading chunks ($downloadedChunks/$totalChunks)")
-                downloadInfo.emitProgressChange()
-
-                Timber.tag("GOG").d("Progress: ${(progress * 100).toInt()}% ($downloadedChunks/$totalChunks chunks)")
+                },
+                isExpiredLink = { it is HttpStatusException && it.statusCode in listOf(401, 403, 404) },
+                refreshLinks = {
+                    Timber.tag("GOG").w("Refreshing secure links for products ${secureLinkContext.productIds}")
+                    refreshSecureLinks(secureLinkContext, chunkHashes).map { currentChunkUrlMap.set(it) }
+                },
+                onProgress = { downloadedChunks, _ ->
+                    // Update progress with smooth interpolation
+                    val progress = downloadedChunks.toFloat() / totalChunks
+                    downloadInfo.setProgress(progress)
+                    downloadInfo.updateStatusMessage("Downloading chunks ($downloadedChunks/$totalChunks)")
+                    downloadInfo.emitProgressChange()
+
+                    Timber.tag("GOG").d("Progress: ${(progress * 100).toInt()}% ($downloadedChunks/$totalChunks chunks)")
+                },
+                isActive = { downloadInfo.isActive() },
+            )
+            if (result.isFailure) {
+                return@withContext result
             }
 
             Timber.tag("GOG").i("All $totalChunks chunks downloaded successfully")
@@ -1056,23 +1056,12 @@ class GOGDownloadManager @Inject constructor(
         try {
             val chunks = chunkUrlMap.entries.toList()
 
-            // Download in batches
-            chunks.chunked(MAX_PARALLEL_DOWNLOADS).forEach { chunkBatch ->
-                val results = chunkBatch.map { (chunkMd5, url) ->
-                    async {
-                        downloadChunk(chunkMd5, url, chunkCacheDir, downloadInfo)
-                    }
-                }.awaitAll()
-
-                // Check if any download failed
-                results.firstOrNull { it.isFailure }?.let { failedResult ->
-                    return@withContext Result.failure(
-                        failedResult.exceptionOrNull() ?: Exception("Failed to download chunk"),
-                    )
-                }
-            }
-
-            Result.success(Unit)
+            newChunkScheduler().run(
+                keys = chunks.map { it.key },
+                download = { chunkMd5 ->
+                    downloadChunk(chunkMd5, chunkUrlMap.getValue(chunkMd5), chunkCacheDir, downloadInfo).map { it.length() }
+                },
+            )
         } catch (e: Exception) {
             Timber.tag("GOG").e(e, "Failed to download dependency chunks")
             Result.failure(e)
@@ -1121,43 +1110,14 @@ class GOGDownloadManager @Inject constructor(
     }
 
     /**
-     * Download a single chunk with retry logic
-     *
-     * @param chunkMd5 Compressed MD5 hash (chunk identifier)
-     * @param url Secure CDN URL (time-limited)
-     * @param chunkCacheDir Cache directory
-     * @param downloadInfo Progress tracker
+     * Scheduler for one download: starts at [INITIAL_PARALLEL_DOWNLOADS] connections and adapts
+     * between [MIN_PARALLEL_DOWNLOADS] and [MAX_PARALLEL_DOWNLOADS] to the link.
      */
-    private suspend fun downloadChunkWithRetry(
-        chunkMd5: String,
-        url: String,
-        chunkCacheDir: File,
-        downloadInfo: DownloadInfo,
-    ): Result<File> = withContext(Dispatchers.IO) {
-        var lastException: Exception? = null
-
-        repeat(MAX_CHUNK_RETRIES) { attempt ->
-            val result = downloadChunk(chunkMd5, url, chunkCacheDir, downloadInfo)
-
-            if (result.isSuccess) {
-                if (attempt > 0) {
-                    Timber.tag("GOG").i("Chunk $chunkMd5 downloaded successfully after ${attempt + 1} attempts")
-                }
-                return@withContext result
-            }
-
-            lastException = result.exceptionOrNull() as? Exception
-
-            if (attempt < MAX_CHUNK_RETRIES - 1) {
-                val delay = RETRY_DELAY_MS * (1 shl attempt) // Exponential backoff: 1s, 2s, 4s
-                Timber.tag("GOG").w("Chunk $chunkMd5 download failed (attempt ${attempt + 1}/$MAX_CHUNK_RETRIES): ${lastException?.message}. Retrying in ${delay}ms...")
-                kotlinx.coroutines.delay(delay)
-            }
-        }
-
-        Timber.tag("GOG").e(lastException, "Failed to download chunk $chunkMd5 after $MAX_CHUNK_RETRIES attempts")
-        Result.failure(lastException ?: Exception("Failed to download chunk $chunkMd5"))
-    }
+    private fun newChunkScheduler() = GOGChunkScheduler(
+        AimdConcurrencyLimit(MIN_PARALLEL_DOWNLOADS, MAX_PARALLEL_DOWNLOADS, INITIAL_PARALLEL_DOWNLOADS),
+        MAX_CHUNK_RETRIES,
+        RETRY_DELAY_MS,
+    )
 
     /**
      * Download a single chunk from GOG CDN
@@ -1178,7 +1138,7 @@ class GOGDownloadManager @Inject constructor(
 
             // Skip if already downloaded and verified
             if (chunkFile.exists()) {
-                val existingMd5 = calculateMd5(chunkFile.readBytes())
+                val existingMd5 = calculateMd5File(chunkFile)
                 if (existingMd5 == chunkMd5) {
                     Timber.tag("GOG").d("Chunk $chunkMd5 already exists and verified, skipping")
                     return@withContext Result.success(chunkFile)
@@ -1234,12 +1194,14 @@ class GOGDownloadManager @Inject constructor(
      * @param chunkCacheDir Directory containing downloaded chunks
      * @param installDir Target installation directory
      * @param downloadInfo Progress tracker
+     * @param chunkIndices Chunks to write per file, files without an entry are written in full
      */
     private suspend fun assembleFiles(
         files: List<DepotFile>,
         chunkCacheDir: File,
         installDir: File,
         downloadInfo: DownloadInfo,
+        chunkIndices: Map<DepotFile, List<Int>> = emptyMap(),
     ): Result<Unit> = withContext(Dispatchers.IO) {
         try {
             val totalFiles = files.size
@@ -1251,7 +1213,7 @@ class GOGDownloadManager @Inject constructor(
 
                 downloadInfo.updateStatusMessage("Assembling ${index + 1}/$totalFiles: ${file.path}")
 
-                val assembleResult = assembleFile(file, chunkCacheDir, installDir)
+                val assembleResult = assembleFile(file, chunkCacheDir, installDir, chunkIndices[file] ?: file.chunks.indices.toList())
                 if (assembleResult.isFailure) {
                     return@withContext Result.failure(
                         assembleResult.exceptionOrNull() ?: Exception("Failed to assemble ${file.path}"),
@@ -1270,21 +1232,28 @@ class GOGDownloadManager @Inject constructor(
     /**
      * Assemble a single file from its chunks
      *
+     * Chunks are written at their offset in the file, so intact chunks of an existing file stay untouched.
+     *
      * @param file File metadata with chunks
      * @param chunkCacheDir Directory containing downloaded chunks
      * @param installDir Target installation directory
+     * @param chunkIndices Indices of the chunks to write
      */
     private suspend fun assembleFile(
         file: DepotFile,
         chunkCacheDir: File,
         installDir: File,
+        chunkIndices: List<Int>,
     ): Result<File> = withContext(Dispatchers.IO) {
         try {
             val outputFile = File(installDir, file.path)
             outputFile.parentFile?.mkdirs()
 
-            outputFile.outputStream().use { output ->
-                for (chunk in file.chunks) {
+            val chunkOffsets = file.chunks.runningFold(0L) { offset, chunk -> offset + chunk.size }
+            RandomAccessFile(outputFile, "rw").use { output ->
+                output.setLength(chunkOffsets.last())
+                for (index in chunkIndices) {
+                    val chunk = file.chunks[index]
                     // Get compressed chunk file
                     val chunkFile = File(chunkCacheDir, "${chunk.compressedMd5}.chunk")
 
@@ -1317,12 +1286,13 @@ class GOGDownloadManager @Inject constructor(
                     }
 
                     // Write to output file
+                    output.seek(chunkOffsets[index])
                     output.write(data)
                 }
             }
 
             // Verify final file hash if provided
-            if (file.md5 != null) {
+            if (file.md5 != null && chunkIndices.size == file.chunks.size) {
                 val fileMd5 = calculateMd5File(outputFile)
                 if (fileMd5 != file.md5) {
                     Timber.tag("GOG").w("File MD5 mismatch: ${file.path}, expected ${file.md5}, got $fileMd5")
@@ -1411,31 +1381,76 @@ class GOGDownloadManager @Inject constructor(
     }
 
     /**
-     * Check if file exists and has the expected size. When [expectedMd5] is non-null/non-blank,
-     * also verifies content MD5 to reject corrupted files; short-circuits on size mismatch before hashing.
+     * Find the chunks of [files] that have to be written again, keyed by file. Missing files need
+     * all their chunks; existing files have every chunk checked against its MD5 in parallel, and a
+     * file of the wrong size is kept even if all its chunks match so it gets truncated.
      */
-    private fun fileExistsWithCorrectSize(
-        outputFile: File,
-        expectedSize: Long,
-        expectedMd5: String? = null,
-    ): Boolean {
-        if (!outputFile.exists()) return false
-        if (outputFile.length() != expectedSize) return false
-        return expectedMd5.isNullOrBlank() || calculateMd5File(outputFile).equals(expectedMd5, ignoreCase = true)
+    private fun findDamagedChunks(
+        files: List<DepotFile>,
+        installDir: File,
+        downloadInfo: DownloadInfo,
+    ): Map<DepotFile, List<Int>> {
+        val damaged = LinkedHashMap<DepotFile, MutableList<Int>>()
+        val regions = mutableListOf<InstallVerifier.Region<Pair<DepotFile, Int>>>()
+        for (file in files) {
+            val outputFile = File(installDir, file.path)
+            val expectedSize = file.chunks.sumOf { it.size }
+            if (!outputFile.isFile) {
+                damaged[file] = file.chunks.indices.toMutableList()
+                continue
+            }
+            if (outputFile.length() != expectedSize) damaged[file] = mutableListOf()
+
+            var offset = 0L
+            file.chunks.forEachIndexed { index, chunk ->
+                if (chunk.md5.isBlank()) {
+                    damaged.getOrPut(file) { mutableListOf() }.add(index)
+                } else {
+                    regions.add(InstallVerifier.Region(file to index, "MD5", hexToBytes(chunk.md5), outputFile, offset, chunk.size))
+                }
+                offset += chunk.size
+            }
+        }
+
+        if (regions.isNotEmpty()) {
+            downloadInfo.updateStatusMessage("Verifying existing files...")
+            val failed = InstallVerifier().use { verifier ->
+                verifier.verify(regions, downloadInfo::isActive)
+            }
+            for ((file, index) in failed) damaged.getOrPut(file) { mutableListOf() }.add(index)
+        }
+
+        // Keep manifest order so files are assembled the way they were listed
+        return files.filter { it in damaged }.associateWith { file -> damaged.getValue(file).sorted() }
+    }
+
+    /** Drops the files whose copy on disk has the expected size and, when known, MD5. */
+    private fun <T> filterIntactFiles(
+        files: List<T>,
+        downloadInfo: DownloadInfo,
+        target: (T) -> Pair<File, V1DepotFile>,
+    ): List<T> {
+        val damaged = HashSet<T>()
+        val regions = mutableListOf<InstallVerifier.Region<T>>()
+        for (entry in files) {
+            val (outputFile, file) = target(entry)
+            when {
+                !outputFile.isFile || outputFile.length() != file.size -> damaged.add(entry)
+                file.hash.isNotEmpty() -> regions.add(InstallVerifier.Region(entry, "MD5", hexToBytes(file.hash), outputFile, 0, file.size))
+            }
+        }
+        val failed = InstallVerifier().use { it.verify(regions, downloadInfo::isActive) }.toHashSet()
+        return files.filter { it in failed || it in damaged }
     }
+
+    private fun hexToBytes(hex: String): ByteArray =
+        ByteArray(hex.length / 2) { ((Character.digit(hex[it * 2], 16) shl 4) + Character.digit(hex[it * 2 + 1], 16)).toByte() }
+
     /**
      * Calculate MD5 hash of file
      */
     private fun calculateMd5File(file: File): String {
-        val digest = MessageDigest.getInstance("MD5")
-        file.inputStream().use { input ->
-            val buffer = ByteArray(8192)
-            var bytesRead: Int
-            while (input.read(buffer).also { bytesRead = it } != -1) {
-                digest.update(buffer, 0, bytesRead)
-            }
-        }
-        return digest.digest().joinToString("") { "%02x".format(it) }
+        return InstallVerifier.digest(file, "MD5").joinToString("") { "%02x".format(it) }
     }
 
     /**
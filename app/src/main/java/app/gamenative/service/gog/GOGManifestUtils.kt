@@ -7,6 +7,7 @@ import java.io.File
 object GOGManifestUtils {
     const val MANIFEST_FILE_NAME = "_gog_manifest.json"
     private const val KEY_SCRIPT_INTERPRETER = "scriptInterpreter"
+    private const val KEY_BUILD_ID = "buildId"
 
     fun readLocalManifest(installDir: File): JSONObject? {
         val manifestFile = File(installDir, MANIFEST_FILE_NAME)
@@ -19,6 +20,12 @@ object GOGManifestUtils {
         }
     }
 
+    /** Build the game was installed from, null for installs from before the build was saved. */
+    fun readInstalledBuildId(installDir: File): String? {
+        val root = readLocalManifest(installDir) ?: return null
+        return root.optString(KEY_BUILD_ID).takeIf { it.isNotEmpty() }
+    }
+
     fun needsScriptInterpreter(installDir: File): Boolean {
         val root = readLocalManifest(installDir) ?: return false
         return root.optBoolean(KEY_SCRIPT_INTERPRETER, false)
@@ -296,6 +296,48 @@ class GOGService : Service() {
         }
 
         fun downloadGame(context: Context, gameId: String, installPath: String, containerLanguage: String): Result<DownloadInfo?> {
+            return startDownload(context, gameId) { instance, downloadInfo ->
+                val commonRedistDir = File(installPath, "_CommonRedist")
+                Timber.tag("GOG").d("Will install dependencies to _CommonRedist")
+
+                instance.gogDownloadManager.downloadGame(
+                    gameId, File(installPath),
+                    downloadInfo, containerLanguage, true, commonRedistDir,
+                )
+            }
+        }
+
+        /**
+         * Verify an installed game against the build it was installed from and repair damaged files
+         * Delegates to GOGDownloadManager.verifyGame
+         */
+        fun verifyGame(context: Context, gameId: String, installPath: String, containerLanguage: String): Result<DownloadInfo?> {
+            return startDownload(
+                context,
+                gameId,
+                operation = "Verification",
+                successMessage = { verification: GOGDownloadManager.VerifyResult ->
+                    if (verification.repairedFiles == 0) {
+                        "Verification complete, all ${verification.totalFiles} files are intact"
+                    } else {
+                        "Verification complete, repaired ${verification.repairedFiles} of ${verification.totalFiles} files"
+                    }
+                },
+            ) { instance, downloadInfo ->
+                instance.gogDownloadManager.verifyGame(
+                    gameId, File(installPath),
+                    downloadInfo, containerLanguage, File(installPath, "_CommonRedist"),
+                )
+            }
+        }
+
+        private fun <T> startDownload(
+            context: Context,
+            gameId: String,
+            operation: String = "Download",
+            successMessage: (T) -> String = { "Download completed successfully!" },
+            download: suspend (GOGService, DownloadInfo) -> Result<T>,
+        ): Result<DownloadInfo?> {
             val instance = getInstance() ?: return Result.failure(Exception("Service not available"))
 
             // Create DownloadInfo for progress tracking
@@ -307,14 +349,8 @@ class GOGService : Service() {
             // Launch download in service scope so it runs independently
             instance.scope.launch {
                 try {
-                    Timber.d("[Download] Starting download for game $gameId")
-                    val commonRedistDir = File(installPath, "_CommonRedist")
-                    Timber.tag("GOG").d("Will install dependencies to _CommonRedist")
-
-                    val result = instance.gogDownloadManager.downloadGame(
-                        gameId, File(installPath),
-                        downloadInfo, containerLanguage, true, commonRedistDir,
-                    )
+                    Timber.d("[Download] Starting ${operation.lowercase()} for game $gameId")
+                    val result = download(instance, downloadInfo)
 
                     if (result.isFailure) {
                         val error = result.exceptionOrNull()
@@ -326,7 +362,7 @@ class GOGService : Service() {
                         withContext(Dispatchers.Main) {
                             android.widget.Toast.makeText(
                                 context,
-                                "Download failed: ${error?.message ?: "Unknown error"}",
+                                "$operation failed: ${error?.message ?: "Unknown error"}",
                                 android.widget.Toast.LENGTH_LONG,
                             ).show()
                         }
@@ -339,7 +375,7 @@ class GOGService : Service() {
                         withContext(Dispatchers.Main) {
                             android.widget.Toast.makeText(
                                 context,
-                                "Download completed successfully!",
+                                successMessage(result.getOrThrow()),
                                 android.widget.Toast.LENGTH_SHORT,
                             ).show()
                         }
@@ -353,7 +389,7 @@ class GOGService : Service() {
                     withContext(Dispatchers.Main) {
                         android.widget.Toast.makeText(
                             context,
-                            "Download error: ${e.message ?: "Unknown error"}",
+                            "$operation error: ${e.message ?: "Unknown error"}",
                             android.widget.Toast.LENGTH_LONG,
                         ).show()
                     }
@@ -508,9 +508,20 @@ class EpicAppScreen : BaseAppScreen() {
 
     override fun onUpdateClick(context: Context, libraryItem: LibraryItem) {
         Timber.tag(TAG).i("onUpdateClick: appId=${libraryItem.appId}")
-        // TODO: Implement update for Epic games
-        // Check Epic for newer version and download if available
-        Timber.tag(TAG).d("Update clicked for Epic game: ${libraryItem.appId}")
+        // Fetches the latest manifest and downloads only what changed since the installed build
+        CoroutineScope(Dispatchers.IO).launch {
+            val result = EpicService.updateGame(context, libraryItem.gameId)
+            if (result.isFailure) {
+                Timber.tag(TAG).e("Failed to start Epic update: ${libraryItem.gameId} - ${result.exceptionOrNull()?.message}")
+                withContext(Dispatchers.Main) {
+                    android.widget.Toast.makeText(
+                        context,
+                        context.getString(R.string.epic_download_failed, result.exceptionOrNull()?.message ?: ""),
+                        android.widget.Toast.LENGTH_LONG,
+                    ).show()
+                }
+            }
+        }
     }
 
     override fun getExportFileExtension(): String = ".epic"
@@ -562,6 +573,9 @@ class EpicAppScreen : BaseAppScreen() {
         isInstalled: Boolean,
     ): List<AppMenuOption> {
         val options = mutableListOf<AppMenuOption>()
+        if (isInstalled) {
+            options.add(getVerifyFilesOption(context, libraryItem))
+        }
 
         // Add cloud sync option if game supports cloud saves
         val epicGame = EpicService.getEpicGameOf(libraryItem.gameId)
@@ -609,6 +623,55 @@ class EpicAppScreen : BaseAppScreen() {
         return options
     }
 
+    @Composable
+    private fun getVerifyFilesOption(
+        context: Context,
+        libraryItem: LibraryItem,
+    ): AppMenuOption {
+        var showDialog by remember { mutableStateOf(false) }
+
+        if (showDialog) {
+            AlertDialog(
+                onDismissRequest = { showDialog = false },
+                title = { Text(stringResource(R.string.library_verify_files_title)) },
+                text = { Text(stringResource(R.string.epic_verify_files_message)) },
+                confirmButton = {
+                    TextButton(
+                        onClick = {
+                            showDialog = false
+                            // Runs like a download, so progress and cancel work as they do for updates
+                            CoroutineScope(Dispatchers.IO).launch {
+                                val result = EpicService.verifyGame(context, libraryItem.gameId)
+                                if (result.isFailure) {
+                                    Timber.tag(TAG).e("Failed to start Epic verification: ${libraryItem.gameId} - ${result.exceptionOrNull()?.message}")
+                                    withContext(Dispatchers.Main) {
+                                        Toast.makeText(
+                                            context,
+                                            context.getString(R.string.epic_download_failed, result.exceptionOrNull()?.message ?: ""),
+                                            Toast.LENGTH_LONG,
+                                        ).show()
+                                    }
+                                }
+                            }
+                        },
+                    ) {
+                        Text(stringResource(R.string.epic_verify_confirm))
+                    }
+                },
+                dismissButton = {
+                    TextButton(onClick = { showDialog = false }) {
+                        Text(stringResource(R.string.cancel))
+                    }
+                },
+            )
+        }
+
+        return AppMenuOption(
+            optionType = AppOptionMenuType.VerifyFiles,
+            onClick = { showDialog = true },
+        )
+    }
+
     /**
      * Epic games support standard container reset
      */
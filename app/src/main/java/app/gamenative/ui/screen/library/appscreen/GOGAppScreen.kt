@@ -450,6 +450,69 @@ class GOGAppScreen : BaseAppScreen() {
         return true
     }
 
+    /**
+     * GOG-specific menu options
+     */
+    @Composable
+    override fun getSourceSpecificMenuOptions(
+        context: Context,
+        libraryItem: LibraryItem,
+        onEditContainer: () -> Unit,
+        onBack: () -> Unit,
+        onClickPlay: (Boolean) -> Unit,
+        isInstalled: Boolean,
+    ): List<AppMenuOption> {
+        val options = mutableListOf<AppMenuOption>()
+        if (isInstalled) {
+            options.add(getVerifyFilesOption(context, libraryItem))
+        }
+        return options
+    }
+
+    @Composable
+    private fun getVerifyFilesOption(
+        context: Context,
+        libraryItem: LibraryItem,
+    ): AppMenuOption {
+        var showDialog by remember { mutableStateOf(false) }
+
+        if (showDialog) {
+            AlertDialog(
+                onDismissRequest = { showDialog = false },
+                title = { Text(stringResource(R.string.library_verify_files_title)) },
+                text = { Text(stringResource(R.string.gog_verify_files_message)) },
+                confirmButton = {
+                    TextButton(
+                        onClick = {
+                            showDialog = false
+                            // Checks every chunk against the installed build and only fetches damaged ones
+                            CoroutineScope(Dispatchers.IO).launch {
+                                val gameId = libraryItem.gameId.toString()
+                                if (GOGService.getDownloadInfo(gameId)?.isActive() == true) return@launch
+
+                                val installPath = GOGService.getInstallPath(gameId)
+                                    ?: GOGConstants.getGameInstallPath(libraryItem.name)
+                                GOGService.verifyGame(context, gameId, installPath, loadContainerData(context, libraryItem).language)
+                            }
+                        },
+                    ) {
+                        Text(stringResource(R.string.gog_verify_confirm))
+                    }
+                },
+                dismissButton = {
+                    TextButton(onClick = { showDialog = false }) {
+                        Text(stringResource(R.string.cancel))
+                    }
+                },
+            )
+        }
+
+        return AppMenuOption(
+            optionType = AppOptionMenuType.VerifyFiles,
+            onClick = { showDialog = true },
+        )
+    }
+
     /**
      * GOG games support standard container reset
      */
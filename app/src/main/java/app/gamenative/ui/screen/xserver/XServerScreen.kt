@@ -119,6 +119,7 @@ import com.winlator.inputcontrols.InputControlsManager
 import com.winlator.inputcontrols.TouchMouse
 import com.winlator.widget.FrameRating
 import com.winlator.widget.InputControlsView
+import com.winlator.widget.RequestProfilerView
 import com.winlator.widget.TouchpadView
 import com.winlator.widget.XServerView
 import com.winlator.winhandler.WinHandler
@@ -1208,6 +1209,22 @@ fun XServerScreen(
                 frameRating?.let { frameLayout.addView(it) }
             }
 
+            if (container.getExtra("x11Profiler", "0") == "1") {
+                Timber.i("Enabling X11 request profiler")
+                xServerToUse.requestProfiler.setEnabled(true)
+                val profilerTopMargin = (20 * context.resources.displayMetrics.density).toInt()
+                frameLayout.addView(
+                    RequestProfilerView(context, xServerToUse.requestProfiler),
+                    FrameLayout.LayoutParams(
+                        ViewGroup.LayoutParams.WRAP_CONTENT,
+                        ViewGroup.LayoutParams.WRAP_CONTENT,
+                    ).apply {
+                        topMargin = profilerTopMargin
+                        leftMargin = profilerTopMargin / 2
+                    },
+                )
+            }
+
             if (container.isDisableMouseInput){
                 PluviaApp.touchpadView?.setTouchscreenMouseDisabled(true);
             }
@@ -1959,7 +1976,11 @@ private fun setupXEnvironment(
             UnixSocketConfig.createSocket(rootPath, UnixSocketConfig.SYSVSHM_SERVER_PATH),
         ),
     )
-    environment.addComponent(XServerComponent(xServer, UnixSocketConfig.createSocket(rootPath, UnixSocketConfig.XSERVER_PATH)))
+    val xServerComponent = XServerComponent(xServer, UnixSocketConfig.createSocket(rootPath, UnixSocketConfig.XSERVER_PATH))
+    if (container.getExtra("x11TrafficRecord", "0") == "1") {
+        xServerComponent.setTrafficRecordingFile(File(imageFs.tmpDir, "x11_traffic.xtrc"))
+    }
+    environment.addComponent(xServerComponent)
     environment.addComponent(NetworkInfoUpdateComponent())
 
     if (!container.isLaunchRealSteam) {
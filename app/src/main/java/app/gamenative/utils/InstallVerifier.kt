@@ -0,0 +1,150 @@
+package app.gamenative.utils
+
+import com.winlator.core.CPUStatus
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.security.MessageDigest
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveAction
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Checks installed game files against the digests of their manifest.
+ *
+ * Regions are spread over a fork-join pool with one worker per core outside the little cluster,
+ * the little cores would only make the pool wait for their share. Files are hashed through memory-mapped windows,
+ * so their bytes are never copied onto the Java heap.
+ */
+class InstallVerifier(parallelism: Int = nonLittleCoreCount()) : Closeable {
+
+    companion object {
+        private const val MAP_WINDOW = 32L * 1024 * 1024
+        private val ZEROS = ByteArray(64 * 1024)
+
+        /**
+         * Cores that are faster than the slowest (little) cluster, so the big and prime cores
+         * together, or all cores if every core runs at the same maximum clock.
+         */
+        fun nonLittleCoreCount(): Int {
+            val cores = Runtime.getRuntime().availableProcessors()
+            val maxClocks = (0 until cores).map { CPUStatus.getMaxClockSpeed(it).toInt() }
+            val slowest = maxClocks.filter { it > 0 }.minOrNull() ?: return cores
+            val nonLittle = maxClocks.count { it > slowest }
+            return if (nonLittle > 0) nonLittle else cores
+        }
+
+        /** Digest of a whole file with [algorithm], read through memory-mapped windows. */
+        fun digest(file: File, algorithm: String): ByteArray {
+            val digest = MessageDigest.getInstance(algorithm)
+            FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+                updateDigest(digest, channel, 0, channel.size()) {}
+            }
+            return digest.digest()
+        }
+
+        private fun updateDigest(digest: MessageDigest, channel: FileChannel, offset: Long, size: Long, onWindow: (Long) -> Unit) {
+            var position = offset
+            val end = offset + size
+            while (position < end) {
+                val length = minOf(MAP_WINDOW, end - position)
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length))
+                position += length
+                onWindow(length)
+            }
+        }
+    }
+
+    /** [size] bytes of [file] from [offset]; without a file the segment stands for zero bytes. */
+    class Segment(val file: File?, val offset: Long, val size: Long)
+
+    /** Bytes that should hash to [expected] with [algorithm], read from [segments] in order. */
+    class Region<K>(val key: K, val algorithm: String, val expected: ByteArray, val segments: List<Segment>) {
+        constructor(key: K, algorithm: String, expected: ByteArray, file: File, offset: Long, size: Long) :
+            this(key, algorithm, expected, listOf(Segment(file, offset, size)))
+
+        val size: Long = segments.sumOf { it.size }
+    }
+
+    private val pool = ForkJoinPool(parallelism.coerceAtLeast(1))
+
+    /**
+     * Hashes all [regions] and returns the keys of the ones that do not match, in input order.
+     * Regions whose file is missing or too short count as not matching.
+     *
+     * @param isActive Polled between mapped windows, verification stops with a
+     *   [CancellationException] once it returns false
+     * @param onProgress Called from the pool threads with the bytes checked so far and in total
+     */
+    fun <K> verify(
+        regions: List<Region<K>>,
+        isActive: () -> Boolean = { true },
+        onProgress: (verifiedBytes: Long, totalBytes: Long) -> Unit = { _, _ -> },
+    ): List<K> {
+        if (regions.isEmpty()) return emptyList()
+        val totalBytes = regions.sumOf { it.size }
+        val verifiedBytes = AtomicLong()
+        val matched = BooleanArray(regions.size)
+
+        val onWindow = { bytes: Long ->
+            if (!isActive()) throw CancellationException("Verification cancelled")
+            onProgress(verifiedBytes.addAndGet(bytes), totalBytes)
+        }
+
+        pool.invoke(VerifyTask(regions, matched, 0, regions.size, onWindow))
+        return regions.filterIndexed { index, _ -> !matched[index] }.map { it.key }
+    }
+
+    override fun close() {
+        pool.shutdown()
+    }
+
+    /** Splits its range of regions in halves until single regions remain, idle workers steal halves. */
+    private class VerifyTask(
+        private val regions: List<Region<*>>,
+        private val matched: BooleanArray,
+        private val from: Int,
+        private val to: Int,
+        private val onWindow: (Long) -> Unit,
+    ) : RecursiveAction() {
+        override fun compute() {
+            if (to - from == 1) {
+                matched[from] = matches(regions[from])
+                return
+            }
+            val middle = (from + to) ushr 1
+            invokeAll(VerifyTask(regions, matched, from, middle, onWindow), VerifyTask(regions, matched, middle, to, onWindow))
+        }
+
+        private fun matches(region: Region<*>): Boolean {
+            val digest = MessageDigest.getInstance(region.algorithm)
+            for (segment in region.segments) {
+                val file = segment.file
+                if (file == null) {
+                    var remaining = segment.size
+                    while (remaining > 0) {
+                        val length = minOf(remaining, ZEROS.size.toLong()).toInt()
+                        digest.update(ZEROS, 0, length)
+                        remaining -= length
+                    }
+                    onWindow(segment.size)
+                    continue
+                }
+
+                val channel = try {
+                    FileChannel.open(file.toPath(), StandardOpenOption.READ)
+                } catch (e: IOException) {
+                    return false
+                }
+                channel.use {
+                    if (it.size() < segment.offset + segment.size) return false
+                    updateDigest(digest, it, segment.offset, segment.size, onWindow)
+                }
+            }
+            return digest.digest().contentEquals(region.expected)
+        }
+    }
+}
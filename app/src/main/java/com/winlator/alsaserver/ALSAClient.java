@@ -1,9 +1,9 @@
 package com.winlator.alsaserver;
 
 import android.content.Context;
-import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioTrack;
+import android.os.Process;
 import android.util.Log;
 
 import com.winlator.container.Container;
@@ -14,22 +14,37 @@ import com.winlator.xenvironment.ImageFs;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.locks.LockSupport;
+
+import timber.log.Timber;
 
 public class ALSAClient {
     private static short framesPerBuffer = 256;
-    private ByteBuffer auxBuffer;
+    private static int outputSampleRate = 48000;
+    private static final int RING_BUFFER_PERIODS = 2;
     private int bufferCapacity;
     private int bufferSize;
     private byte frameBytes;
     protected final Options options;
-    private int position;
+    private volatile int position;
     private ByteBuffer sharedBuffer;
+    private ByteBuffer sharedPointer;
+    private AudioRingBuffer ringBuffer;
+    private Thread feederThread;
+    private volatile boolean feederRunning = false;
+    private long feederPollNanos;
+    private final Object trackLock = new Object();
+    private volatile int underrunCount = 0;
+    private volatile int overrunCount = 0;
     private DataType dataType = DataType.U8;
-    private AudioTrack audioTrack = null;
+    private AudioOutput output = null;
+    private AudioLatencyController latencyController;
+    private int outputBufferSizeInFrames;
     private byte channels = 2;
     private int sampleRate = 0;
-    private short previousUnderrunCount = 0;
     private String containerVariant = null;
+    private final AudioMixer mixer;
+    private AudioMixer.Source mixerSource;
 
     public enum DataType {
         U8(1),
@@ -49,6 +64,7 @@ public class ALSAClient {
         public short latencyMillis = 40;
         public byte performanceMode = 0;
         public float volume = 1.0f;
+        public boolean mixer = false;
 
         public static Options fromKeyValueSet(KeyValueSet config) {
             Options options;
@@ -68,28 +84,45 @@ public class ALSAClient {
                     break;
             }
             options.volume = config.getFloat("volume", 1.0f);
+            options.mixer = config.getBoolean("mixer", false);
             options.latencyMillis = (short) config.getInt("latencyMillis", 40);
             return options;
         }
     }
 
     public ALSAClient(Options options, String containerVariant) {
+        this(options, containerVariant, null);
+    }
+
+    /**
+     * With a mixer the client opens no output of its own, its frames are summed into the
+     * shared output of the mixer instead.
+     */
+    public ALSAClient(Options options, String containerVariant, AudioMixer mixer) {
         this.options = options;
         this.containerVariant = containerVariant;
+        this.mixer = mixer;
     }
 
     public void release() {
-        ByteBuffer byteBuffer = this.sharedBuffer;
-        if (byteBuffer != null) {
-            SysVSharedMemory.unmapSHMSegment(byteBuffer, byteBuffer.capacity());
-            this.sharedBuffer = null;
-        }
-        AudioTrack audioTrack = this.audioTrack;
-        if (audioTrack != null) {
-            audioTrack.pause();
-            this.audioTrack.flush();
-            this.audioTrack.release();
-            this.audioTrack = null;
+        stopFeeder();
+        synchronized (trackLock) {
+            logXruns();
+            if (mixerSource != null) {
+                mixer.removeSource(mixerSource);
+                mixerSource = null;
+            }
+            ByteBuffer byteBuffer = this.sharedBuffer;
+            if (byteBuffer != null) {
+                SysVSharedMemory.unmapSHMSegment(byteBuffer, byteBuffer.capacity());
+                this.sharedBuffer = null;
+                this.sharedPointer = null;
+            }
+            if (output != null) {
+                output.release();
+                output = null;
+            }
+            this.ringBuffer = null;
         }
     }
 
@@ -118,90 +151,188 @@ public class ALSAClient {
     }
 
     public void prepare() {
+        release();
         this.position = 0;
-        this.previousUnderrunCount = (short) 0;
+        this.underrunCount = 0;
+        this.overrunCount = 0;
         this.frameBytes = (byte) (this.channels * this.dataType.byteCount);
-        release();
         if (isValidBufferSize()) {
-            AudioFormat format = new AudioFormat.Builder().setEncoding(getPCMEncoding(this.dataType)).setSampleRate(this.sampleRate).setChannelMask(getChannelConfig(this.channels)).build();
-            AudioTrack build = new AudioTrack.Builder().setPerformanceMode(this.options.performanceMode).setAudioFormat(format).setBufferSizeInBytes(getBufferSizeInBytes()).build();
-            this.audioTrack = build;
-            this.bufferCapacity = build.getBufferCapacityInFrames();
-            float f = this.options.volume;
-            if (f != 1.0f) {
-                this.audioTrack.setVolume(f);
+            if (mixer != null) {
+                ringBuffer = new AudioRingBuffer(getBufferSizeInBytes() * RING_BUFFER_PERIODS);
+                mixerSource = new AudioMixer.Source(ringBuffer, dataType, channels, sampleRate, this::advancePosition);
+                mixer.addSource(mixerSource);
+                return;
             }
-            this.audioTrack.play();
+
+            output = openOutput(options, sampleRate, channels, dataType, bufferSize);
+            if (output == null) return;
+            this.bufferCapacity = output.getBufferCapacityInFrames();
+            int framesPerBurst = output.getFramesPerBurst() > 0 ? output.getFramesPerBurst() : framesPerBuffer;
+            // Start from the smallest buffer and let the controller grow it only as far as the device needs
+            latencyController = new AudioLatencyController(framesPerBurst, 2 * framesPerBurst, bufferCapacity, 2 * framesPerBurst);
+            outputBufferSizeInFrames = output.setBufferSizeInFrames(latencyController.getBufferSizeInFrames());
+            output.start();
+            startFeeder();
         }
     }
 
+    static AudioOutput openOutput(Options options, int sampleRate, int channels, DataType dataType, int bufferSizeInFrames) {
+        int bufferSizeInBytes = bufferSizeInFrames * channels * dataType.byteCount;
+        // Low latency is what gets the fast mixer path, only an explicit power saving choice opts out
+        int performanceMode = options.performanceMode == AudioTrack.PERFORMANCE_MODE_POWER_SAVING ? AudioTrack.PERFORMANCE_MODE_POWER_SAVING : AudioTrack.PERFORMANCE_MODE_LOW_LATENCY;
+        AudioTrackOutput output = AudioTrackOutput.open(sampleRate, channels, dataType, bufferSizeInBytes, performanceMode, framesPerBuffer);
+        if (output != null && options.volume != 1.0f) output.setVolume(options.volume);
+        return output;
+    }
+
     public void start() {
-        AudioTrack audioTrack = this.audioTrack;
-        if (audioTrack != null && audioTrack.getPlayState() != 3) {
-            this.audioTrack.play();
+        synchronized (trackLock) {
+            if (output != null) output.start();
+            if (mixerSource != null) {
+                mixerSource.setActive(true);
+                mixer.wakeUp();
+            }
         }
+        if (feederThread != null) LockSupport.unpark(feederThread);
     }
 
     public void stop() {
-        AudioTrack audioTrack = this.audioTrack;
-        if (audioTrack != null) {
-            audioTrack.stop();
-            this.audioTrack.flush();
+        synchronized (trackLock) {
+            if (output != null) {
+                output.stop();
+                output.flush();
+            }
+            if (mixerSource != null) {
+                mixerSource.setActive(false);
+                mixer.reset(mixerSource);
+            }
+            else if (ringBuffer != null) ringBuffer.clear();
         }
     }
 
     public void pause() {
-        AudioTrack audioTrack = this.audioTrack;
-        if (audioTrack != null) {
-            audioTrack.pause();
+        synchronized (trackLock) {
+            if (output != null) output.pause();
+            if (mixerSource != null) mixerSource.setActive(false);
         }
     }
 
     public void drain() {
-        AudioTrack audioTrack = this.audioTrack;
-        if (audioTrack != null) {
-            audioTrack.flush();
+        synchronized (trackLock) {
+            if (output != null) output.flush();
+            if (mixerSource != null) {
+                mixer.reset(mixerSource);
+            }
+            else if (ringBuffer != null) ringBuffer.clear();
+        }
+    }
+
+    /**
+     * Queues the frames for the feeder or mixer thread and returns right away. Data that does not fit
+     * into the ring is dropped and counted as an overrun.
+     */
+    public void writeData(ByteBuffer data) {
+        AudioRingBuffer ringBuffer = this.ringBuffer;
+        if (ringBuffer == null) return;
+        int length = data.remaining();
+        if (ringBuffer.write(data) < length) overrunCount++;
+        data.position(data.limit());
+        if (mixer != null) {
+            mixer.wakeUp();
         }
+        else LockSupport.unpark(feederThread);
+    }
+
+    private void startFeeder() {
+        int bufferBytes = getBufferSizeInBytes();
+        ringBuffer = new AudioRingBuffer(Math.max(bufferBytes, bufferCapacity * frameBytes) * RING_BUFFER_PERIODS);
+        feederPollNanos = Math.max(1000000L, (long)latencyController.getFramesPerBurst() * 1000000000L / sampleRate / 2);
+        feederRunning = true;
+        feederThread = new Thread(this::feedOutput, "ALSAClient-feeder");
+        feederThread.start();
     }
 
-    public void writeDataToTrack(ByteBuffer data) {
-        DataType dataType = this.dataType;
-        if (dataType == DataType.S16LE || dataType == DataType.FLOATLE) {
-            data.order(ByteOrder.LITTLE_ENDIAN);
-        } else if (dataType == DataType.S16BE || dataType == DataType.FLOATBE) {
-            data.order(ByteOrder.BIG_ENDIAN);
+    private void stopFeeder() {
+        Thread feederThread = this.feederThread;
+        if (feederThread == null) return;
+        feederRunning = false;
+        LockSupport.unpark(feederThread);
+        try {
+            feederThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        if (this.audioTrack != null) {
-            data.position(0);
-            do {
-                try {
-                    int bytesWritten = this.audioTrack.write(data, data.remaining(), 0);
-                    if (bytesWritten < 0) {
-                        break;
-                    } else {
-                        increaseBufferSizeIfUnderrunOccurs();
+        this.feederThread = null;
+    }
+
+    /**
+     * Drains the ring into the output with non-blocking writes, parks while the ring is empty
+     * and polls at half a burst while the output is full or paused. The latency controller
+     * resizes the output buffer after every write from the queue depth the device left.
+     */
+    private void feedOutput() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        while (feederRunning) {
+            int bytesWritten;
+            synchronized (trackLock) {
+                AudioOutput output = this.output;
+                if (output == null) break;
+                ByteBuffer region = ringBuffer.readRegion();
+                if (!region.hasRemaining()) {
+                    bytesWritten = -1;
+                }
+                else {
+                    int queuedFrames = output.getQueuedFrames();
+                    bytesWritten = output.write(region, region.remaining());
+                    if (bytesWritten < 0) break;
+                    if (bytesWritten > 0) {
+                        ringBuffer.advanceRead(bytesWritten);
+                        advancePosition(bytesWritten);
+
+                        underrunCount = output.getUnderrunCount();
+                        int bufferSizeInFrames = latencyController.update(System.nanoTime(), underrunCount, queuedFrames);
+                        if (bufferSizeInFrames != outputBufferSizeInFrames) outputBufferSizeInFrames = output.setBufferSizeInFrames(bufferSizeInFrames);
                     }
-                } catch (Exception e) {
                 }
-            } while (data.position() != data.limit());
-            this.position += data.position();
-            data.rewind();
+            }
+
+            if (bytesWritten == -1) {
+                LockSupport.park(this);
+            }
+            else if (bytesWritten == 0) LockSupport.parkNanos(this, feederPollNanos);
         }
     }
 
-    private void increaseBufferSizeIfUnderrunOccurs() {
-        int i;
-        int underrunCount = this.audioTrack.getUnderrunCount();
-        if (underrunCount > this.previousUnderrunCount && (i = this.bufferSize) < this.bufferCapacity) {
-            this.previousUnderrunCount = (short) underrunCount;
-            int i2 = i + framesPerBuffer;
-            this.bufferSize = i2;
-            this.audioTrack.setBufferSizeInFrames(i2);
-        }
+    private void advancePosition(int bytes) {
+        position += bytes;
+        if (sharedPointer != null) sharedPointer.putInt(0, pointer());
+    }
+
+    /** Logs the xruns of the stream that is about to close, must be called with trackLock held. */
+    private void logXruns() {
+        if (output == null && mixerSource == null) return;
+        if (output != null) underrunCount = output.getUnderrunCount();
+        Timber.tag("ALSAClient").i("Stream closed (%d Hz, %d ch, %s): %d underruns, %d overruns",
+            sampleRate, channels, dataType, getUnderrunCount(), overrunCount);
+    }
+
+    public int getUnderrunCount() {
+        AudioMixer.Source mixerSource = this.mixerSource;
+        return mixerSource != null ? mixerSource.getUnderrunCount() : underrunCount;
+    }
+
+    public int getOverrunCount() {
+        return overrunCount;
+    }
+
+    public int getOutputBufferSizeInFrames() {
+        AudioLatencyController latencyController = this.latencyController;
+        return latencyController != null ? latencyController.getBufferSizeInFrames() : 0;
     }
 
     public int pointer() {
-        if (this.audioTrack != null) {
+        if (this.output != null || this.mixerSource != null) {
             return this.position / this.frameBytes;
         }
         return 0;
@@ -240,19 +371,11 @@ public class ALSAClient {
     }
 
     public void setSharedBuffer(ByteBuffer sharedBuffer) {
-        if (sharedBuffer != null) {
-            ByteBuffer allocateDirect = ByteBuffer.allocateDirect(getBufferSizeInBytes());
-            ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
-            this.auxBuffer = allocateDirect.order(byteOrder);
-            this.sharedBuffer = sharedBuffer.order(byteOrder);
-            return;
+        synchronized (trackLock) {
+            this.sharedBuffer = sharedBuffer != null ? sharedBuffer.order(ByteOrder.LITTLE_ENDIAN) : null;
+            // glibc clients read the hardware pointer from the first int of the segment
+            this.sharedPointer = sharedBuffer != null && isGlibc() ? sharedBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN) : null;
         }
-        this.auxBuffer = null;
-        this.sharedBuffer = null;
-    }
-
-    public ByteBuffer getAuxBuffer() {
-        return this.auxBuffer;
     }
 
     public int getBufferSizeInBytes() {
@@ -270,9 +393,19 @@ public class ALSAClient {
         return i % this.frameBytes == 0 && i > 0;
     }
 
+    public static int getFramesPerBuffer() {
+        return framesPerBuffer;
+    }
+
+    public static int getOutputSampleRate() {
+        return outputSampleRate;
+    }
+
     public static void assignFramesPerBuffer(Context context) {
         try {
             AudioManager am = (AudioManager) context.getSystemService("audio");
+            int sampleRate = Integer.parseInt(am.getProperty("android.media.property.OUTPUT_SAMPLE_RATE"));
+            if (sampleRate > 0) outputSampleRate = sampleRate;
             String framesPerBufferStr = am.getProperty("android.media.property.OUTPUT_FRAMES_PER_BUFFER");
             short parseShort = Short.parseShort(framesPerBufferStr);
             framesPerBuffer = parseShort;
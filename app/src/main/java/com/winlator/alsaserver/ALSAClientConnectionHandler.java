@@ -6,16 +6,22 @@ import com.winlator.xconnector.ConnectionHandler;
 public class ALSAClientConnectionHandler implements ConnectionHandler {
     private final ALSAClient.Options options;
     private final String containerVariant;
+    private final AudioMixer mixer;
 
     public ALSAClientConnectionHandler(ALSAClient.Options options, String containerVariant) {
+        this(options, containerVariant, null);
+    }
+
+    public ALSAClientConnectionHandler(ALSAClient.Options options, String containerVariant, AudioMixer mixer) {
         this.options = options;
         this.containerVariant = containerVariant;
+        this.mixer = mixer;
     }
 
     @Override
     public void handleNewConnection(Client client) {
         client.createIOStreams();
-        client.setTag(new ALSAClient(this.options, this.containerVariant));
+        client.setTag(new ALSAClient(this.options, this.containerVariant, this.mixer));
     }
 
     @Override
@@ -57,24 +57,26 @@ public class ALSARequestHandler implements RequestHandler {
                     ByteBuffer sharedBuffer = alsaClient.getSharedBuffer();
 
                     if (sharedBuffer != null) {
-                        copySharedBuffer(alsaClient, requestLength, outputStream);
-                        alsaClient.writeDataToTrack(alsaClient.getAuxBuffer());
-                        sharedBuffer.putInt(0, alsaClient.pointer());
+                        sharedBuffer.position(4).limit(requestLength + 4);
+                        alsaClient.writeData(sharedBuffer);
+                        try (XStreamLock lock2 = outputStream.lock()) {
+                            outputStream.writeByte((byte) 1);
+                        }
                         return true;
                     }
                     if (inputStream.available() < requestLength) {
                         return false;
                     }
-                    alsaClient.writeDataToTrack(inputStream.readByteBuffer(requestLength));
+                    alsaClient.writeData(inputStream.readByteBuffer(requestLength));
                 } else {
                     ByteBuffer sharedBuffer = alsaClient.getSharedBuffer();
                     if (sharedBuffer != null) {
-                        sharedBuffer.limit(requestLength);
-                        alsaClient.writeDataToTrack(sharedBuffer);
+                        sharedBuffer.position(0).limit(requestLength);
+                        alsaClient.writeData(sharedBuffer);
                     }
                     else {
                         if (inputStream.available() < requestLength) return false;
-                        alsaClient.writeDataToTrack(inputStream.readByteBuffer(requestLength));
+                        alsaClient.writeData(inputStream.readByteBuffer(requestLength));
                     }
                 }
                 return true;
@@ -112,17 +114,6 @@ public class ALSARequestHandler implements RequestHandler {
         }
     }
 
-    private void copySharedBuffer(ALSAClient alsaClient, int requestLength, XOutputStream outputStream) throws IOException {
-        ByteBuffer sharedBuffer = alsaClient.getSharedBuffer();
-        ByteBuffer auxBuffer = alsaClient.getAuxBuffer();
-        auxBuffer.position(0).limit(requestLength);
-        sharedBuffer.position(4).limit(requestLength + 4);
-        auxBuffer.put(sharedBuffer);
-        try (XStreamLock lock = outputStream.lock()){
-            outputStream.writeByte((byte) 1);
-        }
-    }
-
     private void createSharedMemory(ALSAClient alsaClient, XOutputStream outputStream) throws IOException {
         ByteBuffer buffer;
         int shmSize = alsaClient.getBufferSizeInBytes() + 4;
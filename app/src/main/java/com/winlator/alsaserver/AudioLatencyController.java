@@ -0,0 +1,77 @@
+package com.winlator.alsaserver;
+
+/**
+ * Picks the output buffer size from how far the device drains it. An underrun grows the buffer
+ * by one burst per underrun right away. Otherwise, once per interval, the lowest queue depth
+ * seen right before a write decides: less than one burst left means the device nearly ran dry
+ * and the buffer grows by a burst, two or more bursts always left means that much is spare and
+ * the buffer shrinks by a burst. Without queue depths only underruns move the buffer.
+ */
+public class AudioLatencyController {
+    public static final long ADJUST_INTERVAL_NANOS = 1000000000L;
+    private final int framesPerBurst;
+    private final int minFrames;
+    private final int maxFrames;
+    private int bufferSizeInFrames;
+    private int underrunCount = 0;
+    private boolean started = false;
+    private long intervalStartTime = 0;
+    private int intervalMinQueued = Integer.MAX_VALUE;
+
+    public AudioLatencyController(int framesPerBurst, int minFrames, int maxFrames, int initialFrames) {
+        this.framesPerBurst = Math.max(1, framesPerBurst);
+        this.minFrames = roundUpToBurst(Math.max(minFrames, this.framesPerBurst));
+        this.maxFrames = Math.max(this.minFrames, maxFrames);
+        this.bufferSizeInFrames = clamp(roundUpToBurst(initialFrames));
+    }
+
+    public int getBufferSizeInFrames() {
+        return bufferSizeInFrames;
+    }
+
+    public int getFramesPerBurst() {
+        return framesPerBurst;
+    }
+
+    /**
+     * Called by the feeder after each successful write with the current output underrun count
+     * and the frames that were still queued right before that write, or -1 if unknown. Returns
+     * the buffer size the output should use.
+     */
+    public int update(long timeNanos, int underrunCount, int queuedFrames) {
+        if (!started) {
+            started = true;
+            intervalStartTime = timeNanos;
+        }
+        if (queuedFrames >= 0) intervalMinQueued = Math.min(intervalMinQueued, queuedFrames);
+
+        if (underrunCount > this.underrunCount) {
+            bufferSizeInFrames = clamp(bufferSizeInFrames + framesPerBurst * (underrunCount - this.underrunCount));
+            this.underrunCount = underrunCount;
+            startInterval(timeNanos);
+        }
+        else if (timeNanos - intervalStartTime >= ADJUST_INTERVAL_NANOS) {
+            if (intervalMinQueued < framesPerBurst) {
+                bufferSizeInFrames = clamp(bufferSizeInFrames + framesPerBurst);
+            }
+            else if (intervalMinQueued != Integer.MAX_VALUE && intervalMinQueued >= 2 * framesPerBurst) {
+                bufferSizeInFrames = clamp(bufferSizeInFrames - framesPerBurst);
+            }
+            startInterval(timeNanos);
+        }
+        return bufferSizeInFrames;
+    }
+
+    private void startInterval(long timeNanos) {
+        intervalStartTime = timeNanos;
+        intervalMinQueued = Integer.MAX_VALUE;
+    }
+
+    private int clamp(int frames) {
+        return Math.max(minFrames, Math.min(maxFrames, frames));
+    }
+
+    private int roundUpToBurst(int frames) {
+        return (frames + framesPerBurst - 1) / framesPerBurst * framesPerBurst;
+    }
+}
@@ -0,0 +1,357 @@
+package com.winlator.alsaserver;
+
+import android.os.Process;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+/**
+ * Sums the frames of all ALSA clients into a single stereo float output, so several PCM
+ * streams of a Wine process share one platform track instead of opening one each. Every
+ * burst the mixer thread converts each active source to float stereo, resamples it to the
+ * output rate with linear interpolation and accumulates it into the mix buffer.
+ */
+public class AudioMixer {
+    public static final int CHANNELS = 2;
+    public static final int FRAME_BYTES = CHANNELS * 4;
+    private static final float U8_SCALE = 1.0f / 128.0f;
+    private static final float S16_SCALE = 1.0f / 32768.0f;
+    private final int sampleRate;
+    private final int framesPerBurst;
+    private volatile Source[] sources = new Source[0];
+    private float[] mixBuffer;
+    private ByteBuffer outputBuffer;
+    private FloatBuffer outputFloats;
+    private AudioOutput output;
+    private AudioLatencyController latencyController;
+    private int outputBufferSizeInFrames;
+    private Thread mixerThread;
+    private volatile boolean running = false;
+    private long pollNanos;
+
+    public static class Source {
+        private final AudioRingBuffer ringBuffer;
+        private final ALSAClient.DataType dataType;
+        private final int channels;
+        private final int frameBytes;
+        private final int sampleRate;
+        private final IntConsumer onConsumed;
+        private double step;
+        private double phase = 0;
+        private float[] staging = new float[0];
+        private byte[] scratch = new byte[0];
+        private int stagedFrames = 0;
+        private boolean started = false;
+        private volatile boolean active = true;
+        private volatile int underrunCount = 0;
+
+        /**
+         * onConsumed receives the number of bytes taken from the ring and runs on the mixer
+         * thread while the mixer is locked.
+         */
+        public Source(AudioRingBuffer ringBuffer, ALSAClient.DataType dataType, int channels, int sampleRate, IntConsumer onConsumed) {
+            this.ringBuffer = ringBuffer;
+            this.dataType = dataType;
+            this.channels = channels;
+            this.frameBytes = channels * dataType.byteCount;
+            this.sampleRate = sampleRate;
+            this.onConsumed = onConsumed;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+
+        public int getUnderrunCount() {
+            return underrunCount;
+        }
+
+        private void reset() {
+            ringBuffer.clear();
+            stagedFrames = 0;
+            phase = 0;
+            started = false;
+        }
+
+        private void mixInto(float[] mix, int frames) {
+            boolean resample = step != 1.0;
+            int needed = resample ? (int)(phase + frames * step) + 1 : frames;
+            if (staging.length < needed * CHANNELS) staging = Arrays.copyOf(staging, needed * CHANNELS);
+            fill(needed);
+
+            int outFrames = frames;
+            if (stagedFrames < needed) {
+                if (resample) {
+                    outFrames = stagedFrames > 1 ? Math.min(frames, (int)Math.ceil((stagedFrames - 1 - phase) / step)) : 0;
+                    while (outFrames > 0 && (int)(phase + (outFrames - 1) * step) + 1 >= stagedFrames) outFrames--;
+                }
+                else outFrames = stagedFrames;
+                if (started) underrunCount++;
+            }
+
+            float[] staging = this.staging;
+            int consumed;
+            if (resample) {
+                double phase = this.phase;
+                for (int i = 0, j = 0; i < outFrames; i++, j += 2) {
+                    double x = phase + i * step;
+                    int k = (int)x * 2;
+                    float frac = (float)(x - (int)x);
+                    float left = staging[k];
+                    float right = staging[k + 1];
+                    mix[j] += left + (staging[k + 2] - left) * frac;
+                    mix[j + 1] += right + (staging[k + 3] - right) * frac;
+                }
+                double position = phase + outFrames * step;
+                consumed = Math.min((int)position, stagedFrames);
+                this.phase = consumed == (int)position ? position - consumed : 0;
+            }
+            else {
+                for (int i = 0, length = outFrames * CHANNELS; i < length; i++) mix[i] += staging[i];
+                consumed = outFrames;
+            }
+
+            stagedFrames -= consumed;
+            if (stagedFrames > 0) System.arraycopy(staging, consumed * CHANNELS, staging, 0, stagedFrames * CHANNELS);
+        }
+
+        private void fill(int frames) {
+            while (stagedFrames < frames) {
+                ByteBuffer region = ringBuffer.readRegion();
+                int count = Math.min(region.remaining() / frameBytes, frames - stagedFrames);
+                if (count == 0) break;
+                convert(region, count, stagedFrames * CHANNELS);
+                ringBuffer.advanceRead(count * frameBytes);
+                stagedFrames += count;
+                started = true;
+                if (onConsumed != null) onConsumed.accept(count * frameBytes);
+            }
+        }
+
+        /**
+         * Converts frames to float stereo. Mono is copied to both channels, channels past the
+         * second are dropped. The frames are copied out of the ring with one bulk get and
+         * decoded from the byte array, big-endian samples are assembled in reverse.
+         */
+        private void convert(ByteBuffer src, int frames, int dstOffset) {
+            int length = frames * frameBytes;
+            if (scratch.length < length) scratch = new byte[length];
+            byte[] data = scratch;
+            src.get(data, 0, length);
+
+            float[] dst = staging;
+            int stride = frameBytes;
+            int right = channels > 1 ? dataType.byteCount : 0;
+            switch (dataType) {
+                case U8:
+                    for (int i = 0; i < length; i += stride) {
+                        dst[dstOffset++] = ((data[i] & 0xff) - 128) * U8_SCALE;
+                        dst[dstOffset++] = ((data[i + right] & 0xff) - 128) * U8_SCALE;
+                    }
+                    break;
+                case S16LE:
+                    for (int i = 0; i < length; i += stride) {
+                        dst[dstOffset++] = (short)((data[i] & 0xff) | (data[i + 1] << 8)) * S16_SCALE;
+                        dst[dstOffset++] = (short)((data[i + right] & 0xff) | (data[i + right + 1] << 8)) * S16_SCALE;
+                    }
+                    break;
+                case S16BE:
+                    for (int i = 0; i < length; i += stride) {
+                        dst[dstOffset++] = (short)((data[i] << 8) | (data[i + 1] & 0xff)) * S16_SCALE;
+                        dst[dstOffset++] = (short)((data[i + right] << 8) | (data[i + right + 1] & 0xff)) * S16_SCALE;
+                    }
+                    break;
+                case FLOATLE:
+                    for (int i = 0; i < length; i += stride) {
+                        dst[dstOffset++] = Float.intBitsToFloat(getIntLE(data, i));
+                        dst[dstOffset++] = Float.intBitsToFloat(getIntLE(data, i + right));
+                    }
+                    break;
+                case FLOATBE:
+                    for (int i = 0; i < length; i += stride) {
+                        dst[dstOffset++] = Float.intBitsToFloat(Integer.reverseBytes(getIntLE(data, i)));
+                        dst[dstOffset++] = Float.intBitsToFloat(Integer.reverseBytes(getIntLE(data, i + right)));
+                    }
+                    break;
+            }
+        }
+
+        private static int getIntLE(byte[] data, int i) {
+            return (data[i] & 0xff) | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff) << 16 | data[i + 3] << 24;
+        }
+    }
+
+    public AudioMixer(int sampleRate, int framesPerBurst) {
+        this.sampleRate = sampleRate;
+        this.framesPerBurst = framesPerBurst;
+        allocateBuffers(framesPerBurst);
+    }
+
+    /**
+     * Opens the shared output at the device sample rate and starts mixing. Returns null when
+     * no output could be opened, clients then fall back to outputs of their own.
+     */
+    public static AudioMixer open(ALSAClient.Options options) {
+        int sampleRate = ALSAClient.getOutputSampleRate();
+        int bufferSize = ALSAClient.latencyMillisToBufferSize(options.latencyMillis, CHANNELS, ALSAClient.DataType.FLOATLE, sampleRate) / FRAME_BYTES;
+        AudioOutput output = ALSAClient.openOutput(options, sampleRate, CHANNELS, ALSAClient.DataType.FLOATLE, bufferSize);
+        if (output == null) return null;
+        AudioMixer mixer = new AudioMixer(sampleRate, ALSAClient.getFramesPerBuffer());
+        mixer.start(output, bufferSize);
+        return mixer;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public synchronized void addSource(Source source) {
+        source.step = (double)source.sampleRate / sampleRate;
+        Source[] sources = Arrays.copyOf(this.sources, this.sources.length + 1);
+        sources[sources.length - 1] = source;
+        this.sources = sources;
+        wakeUp();
+    }
+
+    /**
+     * Once this returns the mixer no longer touches the source, so its shared memory may be
+     * unmapped.
+     */
+    public synchronized void removeSource(Source source) {
+        Source[] sources = this.sources;
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i] == source) {
+                Source[] newSources = new Source[sources.length - 1];
+                System.arraycopy(sources, 0, newSources, 0, i);
+                System.arraycopy(sources, i + 1, newSources, i, sources.length - i - 1);
+                this.sources = newSources;
+                break;
+            }
+        }
+    }
+
+    public synchronized void reset(Source source) {
+        source.reset();
+    }
+
+    public void wakeUp() {
+        Thread mixerThread = this.mixerThread;
+        if (mixerThread != null) LockSupport.unpark(mixerThread);
+    }
+
+    private boolean hasActiveSources() {
+        for (Source source : sources) if (source.active) return true;
+        return false;
+    }
+
+    private void allocateBuffers(int frames) {
+        mixBuffer = new float[frames * CHANNELS];
+        outputBuffer = ByteBuffer.allocateDirect(frames * FRAME_BYTES).order(ByteOrder.nativeOrder());
+        outputFloats = outputBuffer.asFloatBuffer();
+        outputBuffer.limit(0);
+    }
+
+    /**
+     * Mixes the next frames of all active sources and leaves them in the buffer returned by
+     * getOutputBuffer(). Sources that run dry contribute silence for the rest of the burst.
+     */
+    public synchronized ByteBuffer mix(int frames) {
+        int length = frames * CHANNELS;
+        if (mixBuffer.length < length) allocateBuffers(frames);
+        float[] mix = mixBuffer;
+        Arrays.fill(mix, 0, length, 0.0f);
+
+        for (Source source : sources) {
+            if (source.active) source.mixInto(mix, frames);
+        }
+
+        for (int i = 0; i < length; i++) mix[i] = Math.max(-1.0f, Math.min(1.0f, mix[i]));
+        outputFloats.clear();
+        outputFloats.put(mix, 0, length);
+        outputBuffer.limit(length * 4).position(0);
+        return outputBuffer;
+    }
+
+    public ByteBuffer getOutputBuffer() {
+        return outputBuffer;
+    }
+
+    public void start(AudioOutput output, int bufferSizeInFrames) {
+        this.output = output;
+        int framesPerBurst = output.getFramesPerBurst() > 0 ? output.getFramesPerBurst() : this.framesPerBurst;
+        latencyController = new AudioLatencyController(framesPerBurst, 2 * framesPerBurst, output.getBufferCapacityInFrames(), bufferSizeInFrames);
+        outputBufferSizeInFrames = output.setBufferSizeInFrames(latencyController.getBufferSizeInFrames());
+        pollNanos = Math.max(1000000L, (long)framesPerBurst * 1000000000L / sampleRate / 2);
+        running = true;
+        mixerThread = new Thread(this::run, "ALSA-mixer");
+        mixerThread.start();
+    }
+
+    public void release() {
+        Thread mixerThread = this.mixerThread;
+        if (mixerThread != null) {
+            running = false;
+            LockSupport.unpark(mixerThread);
+            try {
+                mixerThread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.mixerThread = null;
+        }
+
+        if (output != null) {
+            output.release();
+            output = null;
+        }
+    }
+
+    /**
+     * Mixes one burst at a time and writes it without blocking. The output is paused while no
+     * source is active and resumed with the next mixed burst.
+     */
+    private void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        AudioOutput output = this.output;
+        ByteBuffer outputBuffer = null;
+        boolean playing = false;
+        while (running) {
+            if (outputBuffer == null || !outputBuffer.hasRemaining()) {
+                if (!hasActiveSources()) {
+                    if (playing) {
+                        output.pause();
+                        playing = false;
+                    }
+                    LockSupport.park(this);
+                    continue;
+                }
+                outputBuffer = mix(framesPerBurst);
+            }
+
+            if (!playing) {
+                output.start();
+                playing = true;
+            }
+
+            int queuedFrames = output.getQueuedFrames();
+            int bytesWritten = output.write(outputBuffer, outputBuffer.remaining());
+            if (bytesWritten < 0) break;
+            if (bytesWritten == 0) {
+                LockSupport.parkNanos(this, pollNanos);
+            }
+            else {
+                int bufferSizeInFrames = latencyController.update(System.nanoTime(), output.getUnderrunCount(), queuedFrames);
+                if (bufferSizeInFrames != outputBufferSizeInFrames) outputBufferSizeInFrames = output.setBufferSizeInFrames(bufferSizeInFrames);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.winlator.alsaserver;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sink the ALSAClient feeder thread writes PCM frames into. Writes never block, the feeder
+ * retries later when a write returns 0.
+ */
+public interface AudioOutput {
+    /**
+     * Writes up to sizeInBytes from the position of data and advances the position by the
+     * bytes written. Returns the number of bytes written or a negative error code.
+     */
+    int write(ByteBuffer data, int sizeInBytes);
+
+    void start();
+
+    void pause();
+
+    void stop();
+
+    void flush();
+
+    void release();
+
+    int getBufferSizeInFrames();
+
+    /**
+     * Returns the buffer size actually applied, which may be clamped by the implementation.
+     */
+    int setBufferSizeInFrames(int bufferSizeInFrames);
+
+    int getBufferCapacityInFrames();
+
+    int getFramesPerBurst();
+
+    int getUnderrunCount();
+
+    /**
+     * Returns the frames written but not yet read by the device, or -1 if the output cannot
+     * tell right now.
+     */
+    int getQueuedFrames();
+}
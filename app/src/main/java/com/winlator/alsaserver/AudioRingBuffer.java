@@ -0,0 +1,91 @@
+package com.winlator.alsaserver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer byte ring. The request handler thread writes,
+ * the feeder thread reads. Both positions only ever grow and are published with lazySet, each
+ * side reads the position of the other side once per call.
+ */
+public class AudioRingBuffer {
+    private final ByteBuffer buffer;
+    private final ByteBuffer writeView;
+    private final ByteBuffer readView;
+    private final int capacity;
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+
+    public AudioRingBuffer(int capacity) {
+        this.capacity = capacity;
+        buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        writeView = buffer.duplicate();
+        readView = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int available() {
+        return (int)(writePosition.get() - readPosition.get());
+    }
+
+    public int free() {
+        return capacity - available();
+    }
+
+    /**
+     * Copies as much of src as fits and returns the number of bytes copied. Called by the
+     * producer only.
+     */
+    public int write(ByteBuffer src) {
+        long position = writePosition.get();
+        int length = Math.min(src.remaining(), capacity - (int)(position - readPosition.get()));
+        if (length <= 0) return 0;
+
+        int offset = (int)(position % capacity);
+        int firstPart = Math.min(length, capacity - offset);
+        int srcLimit = src.limit();
+
+        src.limit(src.position() + firstPart);
+        writeView.limit(offset + firstPart).position(offset);
+        writeView.put(src);
+
+        if (firstPart < length) {
+            src.limit(src.position() + length - firstPart);
+            writeView.limit(length - firstPart).position(0);
+            writeView.put(src);
+        }
+
+        src.limit(srcLimit);
+        writePosition.lazySet(position + length);
+        return length;
+    }
+
+    /**
+     * Returns the contiguous readable bytes as a little-endian view that is reused by the next
+     * call. Called by the consumer only, followed by advanceRead with the number of bytes
+     * consumed.
+     */
+    public ByteBuffer readRegion() {
+        long position = readPosition.get();
+        int length = (int)(writePosition.get() - position);
+        int offset = (int)(position % capacity);
+        readView.limit(offset + Math.min(length, capacity - offset)).position(offset);
+        return readView;
+    }
+
+    public void advanceRead(int length) {
+        readPosition.lazySet(readPosition.get() + length);
+    }
+
+    /**
+     * Drops everything that was not read yet. Called by the consumer, or while the consumer
+     * is known not to run.
+     */
+    public void clear() {
+        readPosition.set(writePosition.get());
+    }
+}
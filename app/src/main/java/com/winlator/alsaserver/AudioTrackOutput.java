@@ -0,0 +1,108 @@
+package com.winlator.alsaserver;
+
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Java AudioTrack output the ALSAClient feeder thread writes into. The track is allocated with
+ * the full client buffer as capacity, the feeder then runs it with a much smaller buffer size
+ * that the latency controller resizes. Frames are counted on write so the queue depth can be
+ * read against the playback head.
+ */
+public class AudioTrackOutput implements AudioOutput {
+    private final AudioTrack audioTrack;
+    private final int framesPerBurst;
+    private final int frameBytes;
+    private long framesWritten = 0;
+
+    private AudioTrackOutput(AudioTrack audioTrack, int framesPerBurst, int frameBytes) {
+        this.audioTrack = audioTrack;
+        this.framesPerBurst = framesPerBurst;
+        this.frameBytes = frameBytes;
+    }
+
+    public static AudioTrackOutput open(int sampleRate, int channels, ALSAClient.DataType dataType, int bufferSizeInBytes, int performanceMode, int framesPerBurst) {
+        try {
+            AudioFormat format = new AudioFormat.Builder().setEncoding(ALSAClient.getPCMEncoding(dataType)).setSampleRate(sampleRate).setChannelMask(ALSAClient.getChannelConfig(channels)).build();
+            AudioTrack audioTrack = new AudioTrack.Builder().setPerformanceMode(performanceMode).setAudioFormat(format).setBufferSizeInBytes(bufferSizeInBytes).build();
+            return new AudioTrackOutput(audioTrack, framesPerBurst, channels * dataType.byteCount);
+        }
+        catch (IllegalArgumentException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    public void setVolume(float volume) {
+        audioTrack.setVolume(volume);
+    }
+
+    @Override
+    public int write(ByteBuffer data, int sizeInBytes) {
+        int bytesWritten = audioTrack.write(data, sizeInBytes, AudioTrack.WRITE_NON_BLOCKING);
+        if (bytesWritten > 0) framesWritten += bytesWritten / frameBytes;
+        return bytesWritten;
+    }
+
+    @Override
+    public void start() {
+        if (audioTrack.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) audioTrack.play();
+    }
+
+    @Override
+    public void pause() {
+        audioTrack.pause();
+    }
+
+    @Override
+    public void stop() {
+        audioTrack.stop();
+    }
+
+    @Override
+    public void flush() {
+        audioTrack.flush();
+        framesWritten = 0;
+    }
+
+    @Override
+    public void release() {
+        audioTrack.pause();
+        audioTrack.flush();
+        audioTrack.release();
+    }
+
+    @Override
+    public int getBufferSizeInFrames() {
+        return audioTrack.getBufferSizeInFrames();
+    }
+
+    @Override
+    public int setBufferSizeInFrames(int bufferSizeInFrames) {
+        int result = audioTrack.setBufferSizeInFrames(bufferSizeInFrames);
+        return result > 0 ? result : audioTrack.getBufferSizeInFrames();
+    }
+
+    @Override
+    public int getBufferCapacityInFrames() {
+        return audioTrack.getBufferCapacityInFrames();
+    }
+
+    @Override
+    public int getFramesPerBurst() {
+        return framesPerBurst;
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        return audioTrack.getUnderrunCount();
+    }
+
+    @Override
+    public int getQueuedFrames() {
+        // The playback head is an unsigned 32-bit frame counter
+        long queuedFrames = (framesWritten - audioTrack.getPlaybackHeadPosition()) & 0xffffffffL;
+        return queuedFrames <= audioTrack.getBufferCapacityInFrames() ? (int)queuedFrames : -1;
+    }
+}
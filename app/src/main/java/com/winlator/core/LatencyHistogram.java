@@ -0,0 +1,95 @@
+package com.winlator.core;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of nanosecond durations in the style of HdrHistogram. Every power of
+ * two is split into 16 linear sub-buckets, so recorded values are kept with a relative error
+ * of at most 1/16 over the whole range of a long. Not thread safe.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount = 0;
+    private long totalValue = 0;
+    private long minValue = Long.MAX_VALUE;
+    private long maxValue = 0;
+
+    static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT * 2) return (int)value;
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int)(value >>> shift);
+    }
+
+    static long lowestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT * 2) return index;
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        return (long)(index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+    }
+
+    static long highestValueAt(int index) {
+        return index + 1 < BUCKET_COUNT ? lowestValueAt(index + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[indexFor(value)]++;
+        totalCount++;
+        totalValue += value;
+        if (value < minValue) minValue = value;
+        if (value > maxValue) maxValue = value;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) counts[i] += other.counts[i];
+        totalCount += other.totalCount;
+        totalValue += other.totalValue;
+        minValue = Math.min(minValue, other.minValue);
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalValue = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getTotalValue() {
+        return totalValue;
+    }
+
+    public long getMinValue() {
+        return totalCount > 0 ? minValue : 0;
+    }
+
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    public double getMean() {
+        return totalCount > 0 ? (double)totalValue / totalCount : 0;
+    }
+
+    /**
+     * Returns the highest value equivalent to the given percentile (0 to 100), clamped to
+     * the largest recorded value.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long threshold = Math.max(1, (long)Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount));
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts[i];
+            if (count >= threshold) return Math.min(highestValueAt(i), maxValue);
+        }
+        return maxValue;
+    }
+}
@@ -6,6 +6,7 @@ import android.content.SharedPreferences;
 import android.hardware.input.InputManager;
 import android.preference.PreferenceManager;
 import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.InputDevice;
 
 import app.gamenative.PrefManager;
@@ -42,9 +43,35 @@ public class ControllerManager {
     // e.g., key=0, value="vendor_123_product_456"
     private final SparseArray<String> slotAssignments = new SparseArray<>();
 
+    // Slots a new device took on its first input event. They last for this session only and are
+    // never saved; a saved assignment wins once its device is connected again.
+    private final SparseArray<String> sessionAssignments = new SparseArray<>();
+
     // This tracks which of the 4 player slots are enabled by the user.
-    private final boolean[] enabledSlots = new boolean[4];
+    private final boolean[] enabledSlots = new boolean[MAX_PLAYERS];
+
+    // This maps the id of a connected device to its player slot, or -1 if it got none. It is
+    // rebuilt whenever devices or assignments change so input events only need a lookup.
+    private final SparseIntArray deviceSlots = new SparseIntArray();
+
+    private final InputManager.InputDeviceListener deviceListener = new InputManager.InputDeviceListener() {
+        @Override
+        public void onInputDeviceAdded(int deviceId) {
+            scanForDevices();
+        }
+
+        @Override
+        public void onInputDeviceRemoved(int deviceId) {
+            removeDevice(deviceId);
+        }
 
+        @Override
+        public void onInputDeviceChanged(int deviceId) {
+            scanForDevices();
+        }
+    };
+
+    public static final int MAX_PLAYERS = 4;
     public static final String PREF_PLAYER_SLOT_PREFIX = "controller_slot_";
     public static final String PREF_ENABLED_SLOTS_PREFIX = "enabled_slot_";
 
@@ -54,9 +81,11 @@ public class ControllerManager {
      * @param context The application context.
      */
     public void init(Context context) {
+        if (inputManager != null) inputManager.unregisterInputDeviceListener(deviceListener);
         this.context = context.getApplicationContext();
         this.preferences = PreferenceManager.getDefaultSharedPreferences(this.context);
         this.inputManager = (InputManager) this.context.getSystemService(Context.INPUT_SERVICE);
+        this.inputManager.registerInputDeviceListener(deviceListener, null);
 
         // On startup, we load saved settings and scan for connected devices.
         loadAssignments();
@@ -79,6 +108,49 @@ public class ControllerManager {
                 detectedDevices.add(device);
             }
         }
+        rebuildDeviceSlots();
+    }
+
+    /**
+     * Forgets a disconnected device and releases the slot it took for this session, so the next
+     * new controller can take it.
+     */
+    private void removeDevice(int deviceId) {
+        for (int i = detectedDevices.size() - 1; i >= 0; i--) {
+            InputDevice device = detectedDevices.get(i);
+            if (device.getId() != deviceId) continue;
+            detectedDevices.remove(i);
+            int index = indexOfIdentifier(sessionAssignments, getDeviceIdentifier(device));
+            if (index >= 0) sessionAssignments.removeAt(index);
+        }
+        rebuildDeviceSlots();
+    }
+
+    private void rebuildDeviceSlots() {
+        deviceSlots.clear();
+        // Saved assignments first, they take their slot back from a session assignment
+        for (InputDevice device : detectedDevices) {
+            int index = indexOfIdentifier(slotAssignments, getDeviceIdentifier(device));
+            if (index >= 0) deviceSlots.put(device.getId(), slotAssignments.keyAt(index));
+        }
+        for (InputDevice device : detectedDevices) {
+            if (deviceSlots.indexOfKey(device.getId()) >= 0) continue;
+            int index = indexOfIdentifier(sessionAssignments, getDeviceIdentifier(device));
+            if (index < 0) continue;
+            int slot = sessionAssignments.keyAt(index);
+            if (deviceSlots.indexOfValue(slot) < 0) {
+                deviceSlots.put(device.getId(), slot);
+            } else {
+                sessionAssignments.removeAt(index);
+            }
+        }
+    }
+
+    private static int indexOfIdentifier(SparseArray<String> assignments, String deviceIdentifier) {
+        for (int i = 0; i < assignments.size(); i++) {
+            if (assignments.valueAt(i).equals(deviceIdentifier)) return i;
+        }
+        return -1;
     }
 
     /**
@@ -86,7 +158,8 @@ public class ControllerManager {
      */
     private void loadAssignments() {
         slotAssignments.clear();
-        for (int i = 0; i < 4; i++) {
+        sessionAssignments.clear();
+        for (int i = 0; i < MAX_PLAYERS; i++) {
             // Load which device is assigned to this slot
             String prefKey = PREF_PLAYER_SLOT_PREFIX + i;
             String deviceIdentifier = preferences.getString(prefKey, null);
@@ -105,7 +178,7 @@ public class ControllerManager {
      */
     public void saveAssignments() {
         SharedPreferences.Editor editor = preferences.edit();
-        for (int i = 0; i < 4; i++) {
+        for (int i = 0; i < MAX_PLAYERS; i++) {
             // Save the assigned device identifier
             String deviceIdentifier = slotAssignments.get(i);
             String prefKey = PREF_PLAYER_SLOT_PREFIX + i;
@@ -178,20 +251,24 @@ public class ControllerManager {
      * @param device The physical InputDevice to assign.
      */
     public void assignDeviceToSlot(int slotIndex, InputDevice device) {
-        if (slotIndex < 0 || slotIndex >= 4) return;
+        if (slotIndex < 0 || slotIndex >= MAX_PLAYERS) return;
 
         String newDeviceIdentifier = getDeviceIdentifier(device);
         if (newDeviceIdentifier == null) return;
 
         // First, remove the new device from any slot it might already be in.
-        for (int i = 0; i < 4; i++) {
+        for (int i = 0; i < MAX_PLAYERS; i++) {
             if (newDeviceIdentifier.equals(slotAssignments.get(i))) {
                 slotAssignments.remove(i);
             }
+            if (newDeviceIdentifier.equals(sessionAssignments.get(i))) {
+                sessionAssignments.remove(i);
+            }
         }
 
         // Assign the new device to the target slot.
         slotAssignments.put(slotIndex, newDeviceIdentifier);
+        rebuildDeviceSlots();
         saveAssignments(); // Persist the change immediately.
     }
 
@@ -200,8 +277,10 @@ public class ControllerManager {
      * @param slotIndex The player slot to un-assign (0-3).
      */
     public void unassignSlot(int slotIndex) {
-        if (slotIndex < 0 || slotIndex >= 4) return;
+        if (slotIndex < 0 || slotIndex >= MAX_PLAYERS) return;
         slotAssignments.remove(slotIndex);
+        sessionAssignments.remove(slotIndex);
+        rebuildDeviceSlots();
         saveAssignments();
     }
 
@@ -228,16 +307,75 @@ public class ControllerManager {
     }
 
 
+    /**
+     * Returns the player slot for a device on the input event path. A lookup for known devices;
+     * a device seen for the first time keeps its saved slot or takes the first enabled slot whose
+     * device is not connected, for this session only. With every enabled slot taken it shares
+     * Player 1 as before per-player routing. The answer is cached until devices, assignments or
+     * enabled slots change, so a device without a slot of its own costs a lookup per event too.
+     * @param deviceId The ID of the physical device.
+     * @return The player slot index (0-3), or -1 if the device is not a controller or Player 1 is disabled.
+     */
+    public int getOrAssignSlot(int deviceId) {
+        int index = deviceSlots.indexOfKey(deviceId);
+        if (index >= 0) return deviceSlots.valueAt(index);
+        if (inputManager == null) return 0;
+
+        InputDevice device = inputManager.getInputDevice(deviceId);
+        if (device == null || !isGameController(device)) {
+            deviceSlots.put(deviceId, -1);
+            return -1;
+        }
+        boolean detected = false;
+        for (InputDevice detectedDevice : detectedDevices) {
+            if (detectedDevice.getId() == deviceId) {
+                detected = true;
+                break;
+            }
+        }
+        if (!detected) {
+            detectedDevices.add(device);
+            rebuildDeviceSlots();
+            index = deviceSlots.indexOfKey(deviceId);
+            if (index >= 0) return deviceSlots.valueAt(index);
+        }
+
+        int slot = enabledSlots[0] ? 0 : -1;
+        for (int i = 0; i < MAX_PLAYERS; i++) {
+            if (enabledSlots[i] && deviceSlots.indexOfValue(i) < 0) {
+                slot = i;
+                sessionAssignments.put(i, getDeviceIdentifier(device));
+                break;
+            }
+        }
+        deviceSlots.put(deviceId, slot);
+        return slot;
+    }
+
+    /**
+     * Returns how many player blocks the guest has to read: up to the highest enabled slot.
+     */
+    public int getPlayerSlotCount() {
+        for (int i = MAX_PLAYERS - 1; i > 0; i--) {
+            if (enabledSlots[i]) return i + 1;
+        }
+        return 1;
+    }
+
     /**
      * Gets the InputDevice object that is currently assigned to a specific player slot.
      * @param slotIndex The player slot (0-3).
      * @return The assigned InputDevice, or null if no device is assigned or if the device is not currently connected.
      */
     public InputDevice getAssignedDeviceForSlot(int slotIndex) {
-        String assignedIdentifier = slotAssignments.get(slotIndex);
+        InputDevice device = findConnectedDevice(slotAssignments.get(slotIndex));
+        return device != null ? device : findConnectedDevice(sessionAssignments.get(slotIndex));
+    }
+
+    private InputDevice findConnectedDevice(String assignedIdentifier) {
         if (assignedIdentifier == null) return null;
 
-        // Search our current list of connected devices for one that matches the saved identifier.
+        // Search our current list of connected devices for one that matches the identifier.
         for (InputDevice device : detectedDevices) {
             if (assignedIdentifier.equals(getDeviceIdentifier(device))) {
                 return device; // Found it.
@@ -253,13 +391,14 @@ public class ControllerManager {
      * @param isEnabled The new enabled state.
      */
     public void setSlotEnabled(int slotIndex, boolean isEnabled) {
-        if (slotIndex < 0 || slotIndex >= 4) return;
+        if (slotIndex < 0 || slotIndex >= MAX_PLAYERS) return;
         enabledSlots[slotIndex] = isEnabled;
+        rebuildDeviceSlots();
         saveAssignments();
     }
 
     public boolean isSlotEnabled(int slotIndex) {
-        if (slotIndex < 0 || slotIndex >= 4) return false;
+        if (slotIndex < 0 || slotIndex >= MAX_PLAYERS) return false;
         return enabledSlots[slotIndex];
     }
 }
@@ -0,0 +1,101 @@
+package com.winlator.renderer;
+
+/**
+ * Accumulates the rectangles written into a drawable between two texture uploads. Keeps at
+ * most MAX_RECTS boxes, when full the new rectangle is merged into the box that grows the
+ * least. Drawing threads add, the GL thread drains.
+ */
+public class DirtyRegion {
+    public static final int MAX_RECTS = 8;
+    private static final float FULL_UPLOAD_RATIO = 0.6f;
+    private final int[] boxes = new int[MAX_RECTS * 4];
+    private int count = 0;
+    private boolean full = true;
+
+    public synchronized boolean isDirty() {
+        return full || count > 0;
+    }
+
+    public synchronized void markAll() {
+        full = true;
+        count = 0;
+    }
+
+    public synchronized void clear() {
+        full = false;
+        count = 0;
+    }
+
+    public synchronized void add(int x, int y, int width, int height) {
+        if (full || width <= 0 || height <= 0) return;
+        int x1 = x + width;
+        int y1 = y + height;
+
+        int best = -1;
+        long bestGrowth = Long.MAX_VALUE;
+        for (int i = 0; i < count * 4; i += 4) {
+            int bx0 = boxes[i], by0 = boxes[i+1], bx1 = boxes[i+2], by1 = boxes[i+3];
+            if (x >= bx0 && y >= by0 && x1 <= bx1 && y1 <= by1) return;
+
+            boolean overlaps = x < bx1 && x1 > bx0 && y < by1 && y1 > by0;
+            long growth = (long)(Math.max(x1, bx1) - Math.min(x, bx0)) * (Math.max(y1, by1) - Math.min(y, by0)) - (long)(bx1 - bx0) * (by1 - by0);
+            if (overlaps) growth = Long.MIN_VALUE;
+            if (growth < bestGrowth) {
+                bestGrowth = growth;
+                best = i;
+            }
+        }
+
+        if (best != -1 && (bestGrowth == Long.MIN_VALUE || count == MAX_RECTS)) {
+            boxes[best] = Math.min(x, boxes[best]);
+            boxes[best+1] = Math.min(y, boxes[best+1]);
+            boxes[best+2] = Math.max(x1, boxes[best+2]);
+            boxes[best+3] = Math.max(y1, boxes[best+3]);
+        }
+        else {
+            int i = count++ * 4;
+            boxes[i] = x;
+            boxes[i+1] = y;
+            boxes[i+2] = x1;
+            boxes[i+3] = y1;
+        }
+    }
+
+    /**
+     * Copies the dirty rectangles clipped to the surface into rects as x, y, width, height
+     * quadruples and resets the region. Returns the number of rectangles, a single full-surface
+     * rectangle is returned when the dirty area covers most of the surface anyway.
+     */
+    public synchronized int drain(int[] rects, int surfaceWidth, int surfaceHeight) {
+        int numRects = 0;
+        long area = 0;
+        if (!full) {
+            for (int i = 0; i < count * 4; i += 4) {
+                int x0 = Math.max(boxes[i], 0);
+                int y0 = Math.max(boxes[i+1], 0);
+                int x1 = Math.min(boxes[i+2], surfaceWidth);
+                int y1 = Math.min(boxes[i+3], surfaceHeight);
+                if (x1 <= x0 || y1 <= y0) continue;
+
+                int j = numRects++ * 4;
+                rects[j] = x0;
+                rects[j+1] = y0;
+                rects[j+2] = x1 - x0;
+                rects[j+3] = y1 - y0;
+                area += (long)(x1 - x0) * (y1 - y0);
+            }
+        }
+
+        if (full || area >= (long)(surfaceWidth * surfaceHeight * FULL_UPLOAD_RATIO)) {
+            rects[0] = 0;
+            rects[1] = 0;
+            rects[2] = surfaceWidth;
+            rects[3] = surfaceHeight;
+            numRects = 1;
+        }
+
+        full = false;
+        count = 0;
+        return numRects;
+    }
+}
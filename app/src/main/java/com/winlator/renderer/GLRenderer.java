@@ -19,18 +19,20 @@ import com.winlator.xserver.Bitmask;
 import com.winlator.xserver.Cursor;
 import com.winlator.xserver.Drawable;
 import com.winlator.xserver.Pointer;
+import com.winlator.xserver.ResourceMap;
 import com.winlator.xserver.Window;
 import com.winlator.xserver.WindowAttributes;
 import com.winlator.xserver.WindowManager;
 import com.winlator.xserver.XLock;
 import com.winlator.xserver.XServer;
 
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindowModificationListener, Pointer.OnPointerMotionListener {
+public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindowModificationListener, Pointer.OnPointerMotionListener, VSyncClock.OnVSyncListener {
     public final XServerView xServerView;
     private final XServer xServer;
     private final VertexAttribute quadVertices = new VertexAttribute("position", 2);
@@ -40,14 +42,17 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     private final WindowMaterial windowMaterial = new WindowMaterial();
     public final ViewTransformation viewTransformation = new ViewTransformation();
     private final Drawable rootCursorDrawable;
-    private final ArrayList<RenderableWindow> renderableWindows = new ArrayList<>();
-    private String forceFullscreenWMClass = null;
+    private final RenderTarget sceneTarget = new RenderTarget();
+    private final DirtyRegion sceneDamage = new DirtyRegion();
+    private final SceneGraph sceneGraph;
+    private final List<RenderableWindow> renderableWindows;
+    private final int[] sceneDamageRects = new int[DirtyRegion.MAX_RECTS * 4];
+    private final AtomicBoolean framePending = new AtomicBoolean();
     private boolean fullscreen = false;
     private boolean toggleFullscreen = false;
     private boolean viewportNeedsUpdate = true;
     private boolean cursorVisible = true;
     private boolean screenOffsetYRelativeToCursor = false;
-    private String[] unviewableWMClasses = null;
     private float magnifierZoom = 1.0f;
     private boolean magnifierEnabled = true;
     private int surfaceWidth;
@@ -58,6 +63,8 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         this.xServerView = xServerView;
         this.xServer = xServer;
         rootCursorDrawable = createRootCursorDrawable();
+        sceneGraph = new SceneGraph(xServer.windowManager, sceneDamage);
+        renderableWindows = sceneGraph.getRenderableWindows();
 
         quadVertices.put(new float[]{
                 0.0f, 0.0f,
@@ -68,6 +75,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
         xServer.windowManager.addOnWindowModificationListener(this);
         xServer.pointer.addOnPointerMotionListener(this);
+        xServer.vsyncClock.addOnVSyncListener(this);
     }
 
     @Override
@@ -86,13 +94,14 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         try (XLock lock = xServer.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
             // iterate all known drawables; if you don't have a central list,
             // call this during updateScene() for each window's content.
-            android.util.SparseArray<Drawable> sa = xServer.drawableManager.all(); // adjust type if needed
-            for (int i = 0; i < sa.size(); i++) {
+            ResourceMap<Drawable> sa = xServer.drawableManager.all();
+            for (int i = 0; i < sa.capacity(); i++) {
                 Drawable d = sa.valueAt(i);
                 if (d != null) d.getTexture().invalidate(); // sets textureId=0 so next draw re-creates
             }
             rootCursorDrawable.getTexture().invalidate();
         }
+        sceneTarget.invalidate();
         updateScene();
         xServerView.requestRender();
     }
@@ -110,6 +119,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
         surfaceWidth = width;
         surfaceHeight = height;
+        if (xServerView.getDisplay() != null) xServer.vsyncClock.setRefreshRate(xServerView.getDisplay().getRefreshRate());
         viewTransformation.update(width, height, xServer.screenInfo.width, xServer.screenInfo.height);
         viewportNeedsUpdate = true;
     }
@@ -129,6 +139,8 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         boolean xrFrame = false;
         // if (XrActivity.isSupported()) xrFrame = XrActivity.getInstance().beginFrame(XrActivity.getImmersive(), XrActivity.getSBS());
 
+        renderWindows();
+
         if (viewportNeedsUpdate && magnifierEnabled) {
             if (fullscreen) {
                 GLES20.glViewport(0, 0, surfaceWidth, surfaceHeight);
@@ -172,7 +184,7 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
             else XForm.identity(tmpXForm2);
         }
 
-        renderWindows();
+        renderSceneTarget();
         if (cursorVisible) renderCursor();
 
         if (!magnifierEnabled && !fullscreen) GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
@@ -186,86 +198,164 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
     @Override
     public void onMapWindow(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        xServerView.queueEvent(() -> updateScene(window));
+        requestFrame();
     }
 
     @Override
     public void onUnmapWindow(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        xServerView.queueEvent(() -> updateScene(window));
+        requestFrame();
     }
 
     @Override
     public void onChangeWindowZOrder(Window window) {
-        xServerView.queueEvent(this::updateScene);
-        xServerView.requestRender();
+        xServerView.queueEvent(() -> updateScene(window));
+        requestFrame();
     }
 
     @Override
     public void onUpdateWindowContent(Window window) {
-        xServerView.requestRender();
+        requestFrame();
     }
 
     @Override
     public void onUpdateWindowGeometry(final Window window, boolean resized) {
         if (resized) {
-            xServerView.queueEvent(this::updateScene);
+            xServerView.queueEvent(() -> updateScene(window));
         }
-        else xServerView.queueEvent(() -> updateWindowPosition(window));
-        xServerView.requestRender();
+        else xServerView.queueEvent(() -> sceneGraph.move(window));
+        requestFrame();
     }
 
     @Override
     public void onUpdateWindowAttributes(Window window, Bitmask mask) {
-        if (mask.isSet(WindowAttributes.FLAG_CURSOR)) xServerView.requestRender();
+        if (mask.isSet(WindowAttributes.FLAG_CURSOR)) requestFrame();
     }
 
     @Override
     public void onPointerMove(short x, short y) {
-        xServerView.requestRender();
+        requestFrame();
+    }
+
+    @Override
+    public void onVSync(long msc, long frameTimeNanos) {
+        if (framePending.getAndSet(false)) xServerView.requestRender();
+    }
+
+    /**
+     * Coalesces render requests from the X server to at most one frame per vblank.
+     */
+    private void requestFrame() {
+        if (!framePending.getAndSet(true)) xServer.vsyncClock.requestVSync();
     }
 
     private void renderDrawable(Drawable drawable, int x, int y, ShaderMaterial material) {
         renderDrawable(drawable, x, y, material, false);
     }
 
+    private boolean stageDrawable(Drawable drawable) {
+        if (drawable == null) return false;
+        synchronized (drawable.renderLock) {
+            return drawable.getTexture().stageFromDrawable(drawable);
+        }
+    }
+
     private void renderDrawable(Drawable drawable, int x, int y, ShaderMaterial material, boolean forceFullscreen) {
         if (drawable == null) return;
-        synchronized (drawable.renderLock) {
-            Texture texture = drawable.getTexture();
-            texture.updateFromDrawable(drawable);
+        Texture texture = drawable.getTexture();
+        texture.uploadStaged();
+        if (!texture.isAllocated()) return;
+
+        if (forceFullscreen) {
+            short newHeight = (short)Math.min(xServer.screenInfo.height, ((float)xServer.screenInfo.width / drawable.width) * drawable.height);
+            short newWidth = (short)(((float)newHeight / drawable.height) * drawable.width);
+            XForm.set(tmpXForm1, (xServer.screenInfo.width - newWidth) * 0.5f, (xServer.screenInfo.height - newHeight) * 0.5f, newWidth, newHeight);
+        }
+        else XForm.set(tmpXForm1, x, y, drawable.width, drawable.height);
 
-            if (forceFullscreen) {
-                short newHeight = (short)Math.min(xServer.screenInfo.height, ((float)xServer.screenInfo.width / drawable.width) * drawable.height);
-                short newWidth = (short)(((float)newHeight / drawable.height) * drawable.width);
-                XForm.set(tmpXForm1, (xServer.screenInfo.width - newWidth) * 0.5f, (xServer.screenInfo.height - newHeight) * 0.5f, newWidth, newHeight);
-            }
-            else XForm.set(tmpXForm1, x, y, drawable.width, drawable.height);
+        renderQuad(texture.getTextureId(), material);
+    }
 
-            XForm.multiply(tmpXForm1, tmpXForm1, tmpXForm2);
+    private void renderQuad(int textureId, ShaderMaterial material) {
+        XForm.multiply(tmpXForm1, tmpXForm1, tmpXForm2);
 
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getTextureId());
-            GLES20.glUniform1i(material.getUniformLocation("texture"), 0);
-            GLES20.glUniform1fv(material.getUniformLocation("xform"), tmpXForm1.length, tmpXForm1, 0);
-            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, quadVertices.count());
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-        }
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        GLES20.glUniform1i(material.getUniformLocation("texture"), 0);
+        GLES20.glUniform1fv(material.getUniformLocation("xform"), tmpXForm1.length, tmpXForm1, 0);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, quadVertices.count());
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
     }
 
+    /**
+     * Recomposites the damaged parts of the scene target. Windows are staged first, only the
+     * copy into the pixel buffers reads drawable data so the uploads and draws run without
+     * blocking X requests. Frames with no damage, like a cursor moving over a static desktop,
+     * leave the scene target untouched.
+     */
     private void renderWindows() {
+        short width = xServer.screenInfo.width;
+        short height = xServer.screenInfo.height;
+
+        try (XLock lock = xServer.lockShared(XServer.Lockable.DRAWABLE_MANAGER)) {
+            for (RenderableWindow window : renderableWindows) {
+                if (stageDrawable(window.content)) addWindowDamage(window, window.content.getTexture().getDamageBounds());
+            }
+        }
+
+        if (!sceneTarget.isAllocated()) {
+            sceneTarget.allocate(width, height);
+            sceneDamage.markAll();
+        }
+        if (!sceneDamage.isDirty()) return;
+
+        XForm.identity(tmpXForm2);
+        sceneTarget.bind();
+        GLES20.glEnable(GLES20.GL_SCISSOR_TEST);
         windowMaterial.use();
-        GLES20.glUniform2f(windowMaterial.getUniformLocation("viewSize"), xServer.screenInfo.width, xServer.screenInfo.height);
+        GLES20.glUniform2f(windowMaterial.getUniformLocation("viewSize"), width, height);
         quadVertices.bind(windowMaterial.programId);
 
-        try (XLock lock = xServer.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
+        int numRects = sceneDamage.drain(sceneDamageRects, width, height);
+        for (int i = 0; i < numRects * 4; i += 4) {
+            int x = sceneDamageRects[i];
+            int y = sceneDamageRects[i+1];
+            int w = sceneDamageRects[i+2];
+            int h = sceneDamageRects[i+3];
+            GLES20.glScissor(x, height - y - h, w, h);
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
             for (RenderableWindow window : renderableWindows) {
-                renderDrawable(window.content, window.rootX, window.rootY, windowMaterial, window.forceFullscreen);
+                if (window.forceFullscreen || window.intersects(x, y, w, h)) {
+                    renderDrawable(window.content, window.rootX, window.rootY, windowMaterial, window.forceFullscreen);
+                }
             }
         }
 
         quadVertices.disable();
+        GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+        sceneTarget.unbind();
+        viewportNeedsUpdate = true;
+    }
+
+    private void renderSceneTarget() {
+        windowMaterial.use();
+        GLES20.glUniform2f(windowMaterial.getUniformLocation("viewSize"), xServer.screenInfo.width, xServer.screenInfo.height);
+        quadVertices.bind(windowMaterial.programId);
+
+        // framebuffer rows are bottom-up, flip the quad vertically
+        XForm.set(tmpXForm1, 0, sceneTarget.getHeight(), sceneTarget.getWidth(), -sceneTarget.getHeight());
+        renderQuad(sceneTarget.getTextureId(), windowMaterial);
+
+        quadVertices.disable();
+    }
+
+    private void addWindowDamage(RenderableWindow window, int[] bounds) {
+        if (window.forceFullscreen) {
+            sceneDamage.markAll();
+        }
+        else sceneDamage.add(window.rootX + bounds[0], window.rootY + bounds[1], bounds[2], bounds[3]);
     }
 
     private void renderCursor() {
@@ -273,18 +363,26 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
         GLES20.glUniform2f(cursorMaterial.getUniformLocation("viewSize"), xServer.screenInfo.width, xServer.screenInfo.height);
         quadVertices.bind(cursorMaterial.programId);
 
-        try (XLock lock = xServer.lock(XServer.Lockable.DRAWABLE_MANAGER)) {
+        Drawable cursorDrawable = null;
+        int x, y;
+        try (XLock lock = xServer.lockShared(XServer.Lockable.DRAWABLE_MANAGER)) {
             Window pointWindow = xServer.inputDeviceManager.getPointWindow();
             Cursor cursor = pointWindow != null ? pointWindow.attributes.getCursor() : null;
-            short x = xServer.pointer.getClampedX();
-            short y = xServer.pointer.getClampedY();
+            x = xServer.pointer.getClampedX();
+            y = xServer.pointer.getClampedY();
 
             if (cursor != null) {
-                if (cursor.isVisible()) renderDrawable(cursor.cursorImage, x - cursor.hotSpotX, y - cursor.hotSpotY, cursorMaterial);
+                if (cursor.isVisible()) {
+                    cursorDrawable = cursor.cursorImage;
+                    x -= cursor.hotSpotX;
+                    y -= cursor.hotSpotY;
+                }
             }
-            else renderDrawable(rootCursorDrawable, x, y, cursorMaterial);
+            else cursorDrawable = rootCursorDrawable;
+            stageDrawable(cursorDrawable);
         }
 
+        renderDrawable(cursorDrawable, x, y, cursorMaterial);
         quadVertices.disable();
     }
 
@@ -303,77 +401,13 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
 
     private void updateScene() {
         try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
-            renderableWindows.clear();
-            collectRenderableWindows(xServer.windowManager.rootWindow, xServer.windowManager.rootWindow.getX(), xServer.windowManager.rootWindow.getY());
-        }
-    }
-
-    private void collectRenderableWindows(Window window, int x, int y) {
-        if (!window.attributes.isMapped()) return;
-        if (window != xServer.windowManager.rootWindow) {
-            boolean viewable = true;
-
-            if (unviewableWMClasses != null) {
-                String wmClass = window.getClassName();
-                for (String unviewableWMClass : unviewableWMClasses) {
-                    if (wmClass.contains(unviewableWMClass)) {
-                        if (window.attributes.isEnabled()) window.disableAllDescendants();
-                        viewable = false;
-                        break;
-                    }
-                }
-            }
-
-            if (viewable) {
-                if (forceFullscreenWMClass != null) {
-                    short width = window.getWidth();
-                    short height = window.getHeight();
-                    boolean forceFullscreen= false;
-
-                    if (width >= 320 && height >= 200 && width < xServer.screenInfo.width && height < xServer.screenInfo.height) {
-                        Window parent = window.getParent();
-                        boolean parentHasWMClass = parent.getClassName().contains(forceFullscreenWMClass);
-                        boolean hasWMClass = window.getClassName().contains(forceFullscreenWMClass);
-                        if (hasWMClass) {
-                            forceFullscreen = !parentHasWMClass && window.getChildCount() == 0;
-                        }
-                        else {
-                            short borderX = (short)(parent.getWidth() - width);
-                            short borderY = (short)(parent.getHeight() - height);
-                            if (parent.getChildCount() == 1 && borderX > 0 && borderY > 0 && borderX <= 12) {
-                                forceFullscreen = true;
-                                removeRenderableWindow(parent);
-                            }
-                        }
-                    }
-
-                    renderableWindows.add(new RenderableWindow(window.getContent(), x, y, forceFullscreen));
-                }
-                else renderableWindows.add(new RenderableWindow(window.getContent(), x, y));
-            }
-        }
-
-        for (Window child : window.getChildren()) {
-            collectRenderableWindows(child, child.getX() + x, child.getY() + y);
-        }
-    }
-
-    private void removeRenderableWindow(Window window) {
-        for (int i = 0; i < renderableWindows.size(); i++) {
-            if (renderableWindows.get(i).content == window.getContent()) {
-                renderableWindows.remove(i);
-                break;
-            }
+            sceneGraph.rebuild();
         }
     }
 
-    private void updateWindowPosition(Window window) {
-        for (RenderableWindow renderableWindow : renderableWindows) {
-            if (renderableWindow.content == window.getContent()) {
-                renderableWindow.rootX = window.getRootX();
-                renderableWindow.rootY = window.getRootY();
-                break;
-            }
+    private void updateScene(Window window) {
+        try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+            sceneGraph.update(window);
         }
     }
 
@@ -396,19 +430,19 @@ public class GLRenderer implements GLSurfaceView.Renderer, WindowManager.OnWindo
     }
 
     public String getForceFullscreenWMClass() {
-        return forceFullscreenWMClass;
+        return sceneGraph.getForceFullscreenWMClass();
     }
 
     public void setForceFullscreenWMClass(String forceFullscreenWMClass) {
-        this.forceFullscreenWMClass = forceFullscreenWMClass;
+        sceneGraph.setForceFullscreenWMClass(forceFullscreenWMClass);
     }
 
     public String[] getUnviewableWMClasses() {
-        return unviewableWMClasses;
+        return sceneGraph.getUnviewableWMClasses();
     }
 
     public void setUnviewableWMClasses(String... unviewableWMNames) {
-        this.unviewableWMClasses = unviewableWMNames;
+        sceneGraph.setUnviewableWMClasses(unviewableWMNames);
     }
 
     public boolean isFullscreen() {
@@ -60,7 +60,14 @@ public class GPUImage extends Texture {
     @Override
     public void updateFromDrawable(Drawable drawable) {
         if (!isAllocated()) allocateTexture(drawable.width, drawable.height, null);
-        needsUpdate = false;
+        dirtyRegion.clear();
+    }
+
+    @Override
+    public boolean stageFromDrawable(Drawable drawable) {
+        if (isAllocated() && !dirtyRegion.isDirty()) return false;
+        updateFromDrawable(drawable);
+        return setDamageBounds(0, 0, drawable.width, drawable.height);
     }
 
     public short getStride() {
@@ -0,0 +1,80 @@
+package com.winlator.renderer;
+
+import android.opengl.GLES20;
+
+/**
+ * Offscreen RGBA color buffer the composited windows are kept in, so frames where only the
+ * cursor or the view transformation changed can reuse it instead of redrawing every window.
+ */
+public class RenderTarget {
+    private int framebufferId = 0;
+    private int textureId = 0;
+    private int width;
+    private int height;
+
+    public void allocate(int width, int height) {
+        destroy();
+        this.width = width;
+        this.height = height;
+
+        int[] ids = new int[1];
+        GLES20.glGenTextures(1, ids, 0);
+        textureId = ids[0];
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+        GLES20.glGenFramebuffers(1, ids, 0);
+        framebufferId = ids[0];
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebufferId);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, textureId, 0);
+        boolean complete = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER) == GLES20.GL_FRAMEBUFFER_COMPLETE;
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        if (!complete) destroy();
+    }
+
+    public boolean isAllocated() {
+        return framebufferId > 0;
+    }
+
+    public int getTextureId() {
+        return textureId;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void bind() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebufferId);
+        GLES20.glViewport(0, 0, width, height);
+    }
+
+    public void unbind() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    }
+
+    public void invalidate() {
+        framebufferId = 0;
+        textureId = 0;
+    }
+
+    public void destroy() {
+        if (framebufferId > 0) {
+            GLES20.glDeleteFramebuffers(1, new int[]{framebufferId}, 0);
+            framebufferId = 0;
+        }
+        if (textureId > 0) {
+            GLES20.glDeleteTextures(1, new int[]{textureId}, 0);
+            textureId = 0;
+        }
+    }
+}
@@ -1,21 +1,35 @@
 package com.winlator.renderer;
 
 import com.winlator.xserver.Drawable;
+import com.winlator.xserver.Window;
 
 class RenderableWindow {
-    final Drawable content;
+    Window window;
+    Window parent;
+    Drawable content;
     short rootX;
     short rootY;
-    final boolean forceFullscreen;
+    boolean forceFullscreen;
+    int index;
 
-    public RenderableWindow(Drawable content, int rootX, int rootY) {
-        this(content, rootX, rootY, false);
-    }
-
-    public RenderableWindow(Drawable content, int rootX, int rootY, boolean forceFullscreen) {
-        this.content = content;
+    void set(Window window, int rootX, int rootY, boolean forceFullscreen) {
+        this.window = window;
+        this.parent = window != null ? window.getParent() : null;
+        this.content = window != null ? window.getContent() : null;
         this.rootX = (short)rootX;
         this.rootY = (short)rootY;
         this.forceFullscreen = forceFullscreen;
     }
+
+    boolean intersects(int x, int y, int width, int height) {
+        return content != null && rootX < x + width && rootX + content.width > x && rootY < y + height && rootY + content.height > y;
+    }
+
+    void addDamageTo(DirtyRegion region) {
+        if (content == null) return;
+        if (forceFullscreen) {
+            region.markAll();
+        }
+        else region.add(rootX, rootY, content.width, content.height);
+    }
 }
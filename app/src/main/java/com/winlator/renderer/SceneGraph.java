@@ -0,0 +1,306 @@
+package com.winlator.renderer;
+
+import android.util.SparseArray;
+
+import com.winlator.xserver.Window;
+import com.winlator.xserver.WindowManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Paint-ordered list of the windows GLRenderer draws. The list is in pre-order of the window
+ * tree and entries are indexed by window ID and know their list index, so window
+ * modifications only visit the modified subtree and splice its entries instead of walking the
+ * whole tree. Entries are recycled and every entry that is added, removed or moved damages
+ * its scene rectangle.
+ */
+class SceneGraph {
+    private final WindowManager windowManager;
+    private final DirtyRegion damage;
+    private final ArrayList<RenderableWindow> renderableWindows = new ArrayList<>();
+    private final ArrayList<RenderableWindow> collectedWindows = new ArrayList<>();
+    private final SparseArray<RenderableWindow> renderableWindowsById = new SparseArray<>();
+    private final ArrayList<RenderableWindow> pool = new ArrayList<>();
+    private String forceFullscreenWMClass = null;
+    private String[] unviewableWMClasses = null;
+    private int rootChildCount;
+
+    SceneGraph(WindowManager windowManager, DirtyRegion damage) {
+        this.windowManager = windowManager;
+        this.damage = damage;
+    }
+
+    List<RenderableWindow> getRenderableWindows() {
+        return renderableWindows;
+    }
+
+    String getForceFullscreenWMClass() {
+        return forceFullscreenWMClass;
+    }
+
+    void setForceFullscreenWMClass(String forceFullscreenWMClass) {
+        this.forceFullscreenWMClass = forceFullscreenWMClass;
+    }
+
+    String[] getUnviewableWMClasses() {
+        return unviewableWMClasses;
+    }
+
+    void setUnviewableWMClasses(String[] unviewableWMClasses) {
+        this.unviewableWMClasses = unviewableWMClasses;
+    }
+
+    void rebuild() {
+        for (int i = renderableWindows.size()-1; i >= 0; i--) release(renderableWindows.remove(i));
+        Window rootWindow = windowManager.rootWindow;
+        rootChildCount = rootWindow.getChildCount();
+        collectRenderableWindows(rootWindow, rootWindow.getX(), rootWindow.getY());
+        insert(0);
+        damage.markAll();
+    }
+
+    /**
+     * Recollects the subtree of a window that was mapped, unmapped, restacked or resized. Its
+     * old entries are found through the window ID index and the new ones are spliced in after
+     * the entry that precedes the window in paint order. Whether a window is forced fullscreen
+     * depends on its parent and the child count of both, so in that mode the subtree of the
+     * parent is recollected. A destroyed or reparented window, or a changed number of top-level
+     * windows, still rebuilds everything.
+     */
+    void update(Window window) {
+        Window rootWindow = windowManager.rootWindow;
+        if (window == rootWindow) {
+            rebuild();
+            return;
+        }
+
+        if (forceFullscreenWMClass != null) {
+            Window parent = window.getParent();
+            RenderableWindow renderableWindow = getRenderableWindow(window);
+            if (!isAttached(window) || (renderableWindow != null && renderableWindow.parent != parent)) {
+                rebuild();
+                return;
+            }
+            if (parent != rootWindow) {
+                window = parent;
+            }
+            else if (rootWindow.getChildCount() != rootChildCount) {
+                rebuild();
+                return;
+            }
+        }
+
+        int start = isAttached(window) ? releaseSubtree(window, renderableWindows.size()) : releaseDetached();
+        removeReleased(start);
+
+        if (!isViewable(window)) return;
+        collectRenderableWindows(window, window.getRootX(), window.getRootY());
+        insert(findInsertIndex(window));
+    }
+
+    void move(Window window) {
+        RenderableWindow renderableWindow = renderableWindowsById.get(window.id);
+        if (renderableWindow != null && renderableWindow.window == window) {
+            renderableWindow.addDamageTo(damage);
+            renderableWindow.rootX = window.getRootX();
+            renderableWindow.rootY = window.getRootY();
+            renderableWindow.addDamageTo(damage);
+        }
+
+        List<Window> children = window.getChildren();
+        for (int i = 0; i < children.size(); i++) move(children.get(i));
+    }
+
+    private RenderableWindow getRenderableWindow(Window window) {
+        RenderableWindow renderableWindow = renderableWindowsById.get(window.id);
+        return renderableWindow != null && renderableWindow.window == window ? renderableWindow : null;
+    }
+
+    private boolean isAttached(Window window) {
+        Window rootWindow = windowManager.rootWindow;
+        while (window != null) {
+            if (window == rootWindow) return true;
+            window = window.getParent();
+        }
+        return false;
+    }
+
+    /**
+     * Releases the entries of a window and its descendants and returns the lowest list index
+     * that was released.
+     */
+    private int releaseSubtree(Window window, int start) {
+        RenderableWindow renderableWindow = getRenderableWindow(window);
+        if (renderableWindow != null) {
+            start = Math.min(start, renderableWindow.index);
+            release(renderableWindow);
+        }
+
+        List<Window> children = window.getChildren();
+        for (int i = 0; i < children.size(); i++) start = releaseSubtree(children.get(i), start);
+        return start;
+    }
+
+    /**
+     * A destroyed window has already lost its children, so its descendants can only be found
+     * by checking every entry for a window that is no longer in the tree.
+     */
+    private int releaseDetached() {
+        int start = renderableWindows.size();
+        for (int i = 0; i < renderableWindows.size(); i++) {
+            RenderableWindow renderableWindow = renderableWindows.get(i);
+            if (!isAttached(renderableWindow.window)) {
+                start = Math.min(start, i);
+                release(renderableWindow);
+            }
+        }
+        return start;
+    }
+
+    private void removeReleased(int start) {
+        int size = start;
+        for (int i = start; i < renderableWindows.size(); i++) {
+            RenderableWindow renderableWindow = renderableWindows.get(i);
+            if (renderableWindow.window != null) {
+                renderableWindow.index = size;
+                renderableWindows.set(size++, renderableWindow);
+            }
+        }
+        while (renderableWindows.size() > size) renderableWindows.remove(renderableWindows.size()-1);
+    }
+
+    private void insert(int index) {
+        renderableWindows.addAll(index, collectedWindows);
+        collectedWindows.clear();
+        for (int i = index; i < renderableWindows.size(); i++) renderableWindows.get(i).index = i;
+    }
+
+    private boolean isViewable(Window window) {
+        Window rootWindow = windowManager.rootWindow;
+        for (; window != rootWindow; window = window.getParent()) {
+            if (window == null || !window.attributes.isMapped()) return false;
+        }
+        return rootWindow.attributes.isMapped();
+    }
+
+    /**
+     * List index after the last entry painted before the window: the last entry in the
+     * subtree of the nearest earlier sibling, or else the parent's entry, going up the tree.
+     */
+    private int findInsertIndex(Window window) {
+        Window rootWindow = windowManager.rootWindow;
+        for (; window != rootWindow; window = window.getParent()) {
+            Window parent = window.getParent();
+            List<Window> siblings = parent.getChildren();
+            boolean earlier = false;
+            for (int i = siblings.size()-1; i >= 0; i--) {
+                Window sibling = siblings.get(i);
+                if (earlier) {
+                    RenderableWindow last = findLastRenderableWindow(sibling);
+                    if (last != null) return last.index + 1;
+                }
+                else earlier = sibling == window;
+            }
+
+            RenderableWindow renderableWindow = getRenderableWindow(parent);
+            if (renderableWindow != null) return renderableWindow.index + 1;
+        }
+        return 0;
+    }
+
+    private RenderableWindow findLastRenderableWindow(Window window) {
+        if (!window.attributes.isMapped()) return null;
+        List<Window> children = window.getChildren();
+        for (int i = children.size()-1; i >= 0; i--) {
+            RenderableWindow last = findLastRenderableWindow(children.get(i));
+            if (last != null) return last;
+        }
+        return getRenderableWindow(window);
+    }
+
+    private void collectRenderableWindows(Window window, int x, int y) {
+        if (!window.attributes.isMapped()) return;
+        if (window != windowManager.rootWindow) {
+            boolean viewable = true;
+
+            if (unviewableWMClasses != null) {
+                String wmClass = window.getClassName();
+                for (String unviewableWMClass : unviewableWMClasses) {
+                    if (wmClass.contains(unviewableWMClass)) {
+                        if (window.attributes.isEnabled()) window.disableAllDescendants();
+                        viewable = false;
+                        break;
+                    }
+                }
+            }
+
+            if (viewable) {
+                if (forceFullscreenWMClass != null) {
+                    short width = window.getWidth();
+                    short height = window.getHeight();
+                    boolean forceFullscreen = false;
+                    short screenWidth = windowManager.rootWindow.getWidth();
+                    short screenHeight = windowManager.rootWindow.getHeight();
+
+                    if (width >= 320 && height >= 200 && width < screenWidth && height < screenHeight) {
+                        Window parent = window.getParent();
+                        boolean parentHasWMClass = parent.getClassName().contains(forceFullscreenWMClass);
+                        boolean hasWMClass = window.getClassName().contains(forceFullscreenWMClass);
+                        if (hasWMClass) {
+                            forceFullscreen = !parentHasWMClass && window.getChildCount() == 0;
+                        }
+                        else {
+                            short borderX = (short)(parent.getWidth() - width);
+                            short borderY = (short)(parent.getHeight() - height);
+                            if (parent.getChildCount() == 1 && borderX > 0 && borderY > 0 && borderX <= 12) {
+                                forceFullscreen = true;
+                                removeRenderableWindow(parent);
+                            }
+                        }
+                    }
+
+                    addRenderableWindow(window, x, y, forceFullscreen);
+                }
+                else addRenderableWindow(window, x, y, false);
+            }
+        }
+
+        for (Window child : window.getChildren()) {
+            collectRenderableWindows(child, child.getX() + x, child.getY() + y);
+        }
+    }
+
+    private void addRenderableWindow(Window window, int x, int y, boolean forceFullscreen) {
+        RenderableWindow renderableWindow = !pool.isEmpty() ? pool.remove(pool.size()-1) : new RenderableWindow();
+        renderableWindow.set(window, x, y, forceFullscreen);
+        collectedWindows.add(renderableWindow);
+        renderableWindowsById.put(window.id, renderableWindow);
+        renderableWindow.addDamageTo(damage);
+    }
+
+    private void removeRenderableWindow(Window window) {
+        for (int i = collectedWindows.size()-1; i >= 0; i--) {
+            if (collectedWindows.get(i).window == window) {
+                release(collectedWindows.remove(i));
+                return;
+            }
+        }
+
+        RenderableWindow renderableWindow = getRenderableWindow(window);
+        if (renderableWindow != null) {
+            int index = renderableWindow.index;
+            release(renderableWindow);
+            removeReleased(index);
+        }
+    }
+
+    private void release(RenderableWindow renderableWindow) {
+        renderableWindow.addDamageTo(damage);
+        if (renderableWindowsById.get(renderableWindow.window.id) == renderableWindow) {
+            renderableWindowsById.remove(renderableWindow.window.id);
+        }
+        renderableWindow.set(null, 0, 0, false);
+        pool.add(renderableWindow);
+    }
+}
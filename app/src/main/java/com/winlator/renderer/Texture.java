@@ -2,6 +2,7 @@ package com.winlator.renderer;
 
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 
 // import com.winlator.XrActivity;
 import com.winlator.xserver.Drawable;
@@ -16,7 +17,15 @@ public class Texture {
     private int minFilter = GLES20.GL_LINEAR;
     private int format = GLES11Ext.GL_BGRA;
     protected byte unpackAlignment = 4;
-    protected boolean needsUpdate = true;
+    protected final DirtyRegion dirtyRegion = new DirtyRegion();
+    private final int[] dirtyRects = new int[DirtyRegion.MAX_RECTS * 4];
+    private static final int PIXEL_BUFFER_COUNT = 2;
+    private int[] pixelBuffers;
+    private int pixelBufferSize = 0;
+    private boolean pixelBuffersFailed = false;
+    private int pixelBufferIndex = 0;
+    private int stagedRectCount = 0;
+    private final int[] damageBounds = new int[4];
 
     protected void generateTextureId() {
         int[] textureIds = new int[1];
@@ -46,7 +55,14 @@ public class Texture {
     }
 
     public void setNeedsUpdate(boolean needsUpdate) {
-        this.needsUpdate = needsUpdate;
+        if (needsUpdate) {
+            dirtyRegion.markAll();
+        }
+        else dirtyRegion.clear();
+    }
+
+    public void addDirtyRegion(int x, int y, int width, int height) {
+        dirtyRegion.add(x, y, width, height);
     }
 
     public void updateFromDrawable(Drawable drawable) {
@@ -54,16 +70,164 @@ public class Texture {
         if (data == null) return;
 
         if (!isAllocated()) {
+            dirtyRegion.clear();
             allocateTexture(drawable.width, drawable.height, data);
         }
-        else if (needsUpdate) {
+        else if (dirtyRegion.isDirty()) {
+            int numRects = dirtyRegion.drain(dirtyRects, drawable.width, drawable.height);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, drawable.width, drawable.height, format, GLES20.GL_UNSIGNED_BYTE, data);
+            GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, unpackAlignment);
+
+            if (numRects == 1 && dirtyRects[2] == drawable.width && dirtyRects[3] == drawable.height) {
+                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, drawable.width, drawable.height, format, GLES20.GL_UNSIGNED_BYTE, data);
+            }
+            else {
+                GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, drawable.width);
+                for (int i = 0; i < numRects * 4; i += 4) {
+                    GLES20.glPixelStorei(GLES30.GL_UNPACK_SKIP_PIXELS, dirtyRects[i]);
+                    GLES20.glPixelStorei(GLES30.GL_UNPACK_SKIP_ROWS, dirtyRects[i+1]);
+                    GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, dirtyRects[i], dirtyRects[i+1], dirtyRects[i+2], dirtyRects[i+3], format, GLES20.GL_UNSIGNED_BYTE, data);
+                }
+                GLES20.glPixelStorei(GLES30.GL_UNPACK_ROW_LENGTH, 0);
+                GLES20.glPixelStorei(GLES30.GL_UNPACK_SKIP_PIXELS, 0);
+                GLES20.glPixelStorei(GLES30.GL_UNPACK_SKIP_ROWS, 0);
+            }
+
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-            needsUpdate = false;
         }
     }
 
+    /**
+     * Copies the dirty part of the drawable into the next of two rotating pixel unpack
+     * buffers. This copy is the only step that reads the drawable data, so only it needs
+     * drawable.renderLock; uploadStaged() then streams the buffer into the texture without
+     * holding any lock while the X server keeps drawing into the drawable. Returns true when
+     * the texture content changes, getDamageBounds() then holds the changed area.
+     */
+    public boolean stageFromDrawable(Drawable drawable) {
+        ByteBuffer data = drawable.getData();
+        if (!isAllocated() && data != null) {
+            stagedRectCount = 0;
+            dirtyRegion.clear();
+            allocateTexture(drawable.width, drawable.height, data);
+            return setDamageBounds(0, 0, drawable.width, drawable.height);
+        }
+        if (!dirtyRegion.isDirty()) return false;
+
+        int size = drawable.width * drawable.height * 4;
+        if (data == null || !allocatePixelBuffers(size) || stagedRectCount > 0) {
+            uploadStaged();
+            if (data != null) updateFromDrawable(drawable);
+            else dirtyRegion.clear();
+            return setDamageBounds(0, 0, drawable.width, drawable.height);
+        }
+
+        int numRects = dirtyRegion.drain(dirtyRects, drawable.width, drawable.height);
+        if (numRects == 0) return false;
+        pixelBufferIndex = (pixelBufferIndex + 1) % PIXEL_BUFFER_COUNT;
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, pixelBuffers[pixelBufferIndex]);
+        ByteBuffer buffer = (ByteBuffer)GLES30.glMapBufferRange(GLES30.GL_PIXEL_UNPACK_BUFFER, 0, size, GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_BUFFER_BIT);
+
+        int x0 = drawable.width, y0 = drawable.height, x1 = 0, y1 = 0;
+        if (buffer != null) {
+            ByteBuffer srcData = data.duplicate();
+            if (numRects == 1 && dirtyRects[2] == drawable.width && dirtyRects[3] == drawable.height) {
+                srcData.limit(size).position(0);
+                buffer.put(srcData);
+            }
+            else {
+                for (int i = 0; i < numRects * 4; i += 4) {
+                    int rowLength = dirtyRects[i+2] * 4;
+                    for (int y = dirtyRects[i+1], endY = y + dirtyRects[i+3]; y < endY; y++) {
+                        int offset = (y * drawable.width + dirtyRects[i]) * 4;
+                        srcData.limit(offset + rowLength).position(offset);
+                        buffer.put(srcData);
+                    }
+                }
+            }
+            stagedRectCount = GLES30.glUnmapBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER) ? numRects : 0;
+        }
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+
+        if (stagedRectCount == 0) {
+            dirtyRegion.markAll();
+            updateFromDrawable(drawable);
+            return setDamageBounds(0, 0, drawable.width, drawable.height);
+        }
+
+        for (int i = 0; i < numRects * 4; i += 4) {
+            x0 = Math.min(x0, dirtyRects[i]);
+            y0 = Math.min(y0, dirtyRects[i+1]);
+            x1 = Math.max(x1, dirtyRects[i] + dirtyRects[i+2]);
+            y1 = Math.max(y1, dirtyRects[i+1] + dirtyRects[i+3]);
+        }
+        return setDamageBounds(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    protected boolean setDamageBounds(int x, int y, int width, int height) {
+        damageBounds[0] = x;
+        damageBounds[1] = y;
+        damageBounds[2] = width;
+        damageBounds[3] = height;
+        return true;
+    }
+
+    /**
+     * Bounding box of the area changed by the last stageFromDrawable call as x, y, width,
+     * height in drawable coordinates.
+     */
+    public int[] getDamageBounds() {
+        return damageBounds;
+    }
+
+    public void uploadStaged() {
+        if (stagedRectCount == 0) return;
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, unpackAlignment);
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, pixelBuffers[pixelBufferIndex]);
+
+        int offset = 0;
+        for (int i = 0; i < stagedRectCount * 4; i += 4) {
+            GLES30.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, dirtyRects[i], dirtyRects[i+1], dirtyRects[i+2], dirtyRects[i+3], format, GLES20.GL_UNSIGNED_BYTE, offset);
+            offset += dirtyRects[i+2] * dirtyRects[i+3] * 4;
+        }
+
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        stagedRectCount = 0;
+    }
+
+    /**
+     * Creates the pixel unpack buffers on first use. Errors left over from earlier GL calls are
+     * drained first so they are not mistaken for an allocation failure. If allocation fails the
+     * buffers are deleted and the texture keeps using direct uploads until the context is lost.
+     */
+    private boolean allocatePixelBuffers(int size) {
+        if (pixelBuffers != null) return pixelBufferSize == size;
+        if (pixelBuffersFailed) return false;
+
+        for (int i = 0; i < 16 && GLES20.glGetError() != GLES20.GL_NO_ERROR; i++);
+
+        int[] buffers = new int[PIXEL_BUFFER_COUNT];
+        GLES30.glGenBuffers(PIXEL_BUFFER_COUNT, buffers, 0);
+        for (int buffer : buffers) {
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, buffer);
+            GLES30.glBufferData(GLES30.GL_PIXEL_UNPACK_BUFFER, size, null, GLES30.GL_STREAM_DRAW);
+        }
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+
+        if (GLES20.glGetError() != GLES20.GL_NO_ERROR) {
+            GLES30.glDeleteBuffers(buffers.length, buffers, 0);
+            pixelBuffersFailed = true;
+            return false;
+        }
+
+        pixelBuffers = buffers;
+        pixelBufferSize = size;
+        return true;
+    }
+
     public boolean isAllocated() {
         return textureId > 0;
     }
@@ -82,11 +246,15 @@ public class Texture {
         GLES20.glCopyTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 0, 0, width, height, 0);
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
         GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        dirtyRegion.markAll();
     }
 
     public void invalidate() {
         textureId = 0;
-        needsUpdate = true;
+        pixelBuffers = null;
+        pixelBuffersFailed = false;
+        stagedRectCount = 0;
+        dirtyRegion.markAll();
     }
 
     public void destroy() {
@@ -95,5 +263,10 @@ public class Texture {
             GLES20.glDeleteTextures(textureIds.length, textureIds, 0);
             textureId = 0;
         }
+        if (pixelBuffers != null) {
+            GLES30.glDeleteBuffers(pixelBuffers.length, pixelBuffers, 0);
+            pixelBuffers = null;
+        }
+        stagedRectCount = 0;
     }
 }
@@ -0,0 +1,106 @@
+package com.winlator.renderer;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * Display vblank counter driven by Choreographer on its own looper thread. Frame callbacks are
+ * only requested while someone waits for a vblank, the MSC is extrapolated from the refresh
+ * period in between so it keeps counting while idle. Extrapolation and frame callbacks round
+ * elapsed periods the same way and the MSC never goes below a value already handed out.
+ */
+public class VSyncClock implements Choreographer.FrameCallback {
+    private final ArrayList<OnVSyncListener> onVSyncListeners = new ArrayList<>();
+    private HandlerThread thread;
+    private Handler handler;
+    private long refreshPeriod = 1000000000L / 60;
+    private long lastFrameTime = System.nanoTime();
+    private long msc = 0;
+    private long lastReportedMsc = 0;
+    private boolean frameCallbackPosted = false;
+
+    public interface OnVSyncListener {
+        void onVSync(long msc, long frameTimeNanos);
+    }
+
+    public synchronized void setRefreshRate(float refreshRate) {
+        if (refreshRate > 0) refreshPeriod = (long)(1000000000L / refreshRate);
+    }
+
+    public synchronized long getRefreshPeriod() {
+        return refreshPeriod;
+    }
+
+    public synchronized long getMsc() {
+        long currentMsc = msc + Math.max(0, elapsedFrames(System.nanoTime()));
+        if (currentMsc > lastReportedMsc) lastReportedMsc = currentMsc;
+        return lastReportedMsc;
+    }
+
+    private long elapsedFrames(long timeNanos) {
+        return Math.round((double)(timeNanos - lastFrameTime) / refreshPeriod);
+    }
+
+    public synchronized long getLastFrameTime() {
+        return lastFrameTime;
+    }
+
+    public void addOnVSyncListener(OnVSyncListener onVSyncListener) {
+        synchronized (onVSyncListeners) {
+            onVSyncListeners.add(onVSyncListener);
+        }
+    }
+
+    public void removeOnVSyncListener(OnVSyncListener onVSyncListener) {
+        synchronized (onVSyncListeners) {
+            onVSyncListeners.remove(onVSyncListener);
+        }
+    }
+
+    /**
+     * Schedules one call of the listeners on the next vblank. Listeners that still have
+     * pending work call this again from onVSync.
+     */
+    public synchronized void requestVSync() {
+        if (frameCallbackPosted) return;
+        frameCallbackPosted = true;
+
+        if (thread == null) {
+            thread = new HandlerThread("VSyncClock", Process.THREAD_PRIORITY_DISPLAY);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        handler.post(() -> Choreographer.getInstance().postFrameCallback(this));
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        long currentMsc;
+        synchronized (this) {
+            msc = Math.max(msc + Math.max(1, elapsedFrames(frameTimeNanos)), lastReportedMsc);
+            lastReportedMsc = msc;
+            lastFrameTime = frameTimeNanos;
+            frameCallbackPosted = false;
+            currentMsc = msc;
+        }
+
+        synchronized (onVSyncListeners) {
+            for (int i = onVSyncListeners.size()-1; i >= 0; i--) {
+                onVSyncListeners.get(i).onVSync(currentMsc, frameTimeNanos);
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.quitSafely();
+            thread = null;
+            handler = null;
+        }
+        frameCallbackPosted = false;
+    }
+}
@@ -2,111 +2,255 @@ package com.winlator.steampipeserver;
 
 import android.util.Log;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
 
+/**
+ * Serves the Steam client stub on a single selector thread. Every connection owns a direct input
+ * and output buffer: all complete messages of a read are handled in one pass, their replies are
+ * collected in the output buffer and written with one call. A client that stops reading is only
+ * served again once its pending replies went out.
+ */
 public class SteamPipeServer {
+    private static final String TAG = "SteamPipeServer";
     private static final int PORT = 34865;
-    private ServerSocket serverSocket;
-    private boolean running;
+    private static final int BUFFER_SIZE = 4096;
+    private final int port;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread serverThread;
+    private volatile boolean running;
 
-    private int readNetworkInt(DataInputStream input) throws IOException {
-        return Integer.reverseBytes(input.readInt());
+    private static class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private boolean shutdown;
+        private boolean stalled;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    public SteamPipeServer() {
+        this(PORT);
     }
 
-    private void writeNetworkInt(DataOutputStream output, int value) throws IOException {
-        output.writeInt(Integer.reverseBytes(value));
+    public SteamPipeServer(int port) {
+        this.port = port;
+    }
+
+    public int getPort() {
+        ServerSocketChannel serverChannel = this.serverChannel;
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : port;
     }
 
     public void start() {
+        if (running) return;
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            Log.d(TAG, "Server started on port " + getPort());
+        } catch (IOException e) {
+            Log.e(TAG, "Server error", e);
+            closeQuietly();
+            return;
+        }
+
         running = true;
-        new Thread(() -> {
+        serverThread = new Thread(this::selectLoop, TAG);
+        serverThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        Selector selector = this.selector;
+        if (selector != null) selector.wakeup();
+
+        Thread serverThread = this.serverThread;
+        if (serverThread != null && serverThread != Thread.currentThread()) {
             try {
-                serverSocket = new ServerSocket();
-                serverSocket.setReuseAddress(true);
-                serverSocket.bind(new InetSocketAddress(PORT));
-                Log.d("SteamPipeServer", "Server started on port " + PORT);
-
-                while (running) {
-                    Socket clientSocket = serverSocket.accept();
-                    // clientSocket.setTcpNoDelay(true);
-                    // clientSocket.setSoTimeout(5000);  // 5 second timeout
-                    handleClient(clientSocket);
-                }
-            } catch (IOException e) {
-                Log.e("SteamPipeServer", "Server error", e);
+                serverThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        }).start();
+        }
+        this.serverThread = null;
     }
 
-    private void handleClient(Socket clientSocket) {
-        new Thread(() -> {
-            try {
-                DataInputStream input = new DataInputStream(
-                        new BufferedInputStream(clientSocket.getInputStream()));
-                DataOutputStream output = new DataOutputStream(
-                        new BufferedOutputStream(clientSocket.getOutputStream()));
-
-                while (running && !clientSocket.isClosed()) {
-                    if (input.available() > 0) {
-                        int messageType = readNetworkInt(input);
-                        // Log.d("SteamPipeServer", "Received message: " + messageType);
-
-                        switch (messageType) {
-                            case RequestCodes.MSG_INIT:
-                                Log.d("SteamPipeServer", "Received MSG_INIT");
-                                writeNetworkInt(output, 1);
-                                output.flush();
-                                break;
-                            case RequestCodes.MSG_SHUTDOWN:
-                                Log.d("SteamPipeServer", "Received MSG_SHUTDOWN");
-                                clientSocket.close();
-                                break;
-                            case RequestCodes.MSG_RESTART_APP:
-                                Log.d("SteamPipeServer", "Received MSG_RESTART_APP");
-                                int appId = input.readInt();
-                                writeNetworkInt(output, 0); // Send restart not needed
-                                break;
-                            case RequestCodes.MSG_IS_RUNNING:
-                                Log.d("SteamPipeServer", "Received MSG_IS_RUNNING");
-                                writeNetworkInt(output, 1); // Send Steam running status
-                                break;
-                            case RequestCodes.MSG_REGISTER_CALLBACK:
-                                Log.d("SteamPipeServer", "Received MSG_REGISTER_CALLBACK");
-                                break;
-                            case RequestCodes.MSG_UNREGISTER_CALLBACK:
-                                Log.d("SteamPipeServer", "Received MSG_UNREGISTER_CALLBACK");
-                                break;
-                            case RequestCodes.MSG_RUN_CALLBACKS:
-                                Log.d("SteamPipeServer", "Received MSG_RUN_CALLBACKS");
-                                break;
-                            default:
-                                Log.w("SteamPipeServer", "Unknown message type: " + messageType);
-                                break;
+    private void selectLoop() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid()) continue;
+
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
                         }
+
+                        Connection connection = (Connection)key.attachment();
+                        if (key.isReadable()) read(key, connection);
+                        if (key.isValid() && key.isWritable()) flush(key, connection);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Client handler error", e);
+                        close(key);
                     }
                 }
-            } catch (IOException e) {
-                Log.e("SteamPipeServer", "Client handler error", e);
             }
-        }).start();
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) Log.e(TAG, "Server error", e);
+        } finally {
+            closeQuietly();
+        }
     }
 
-    public void stop() {
-        running = false;
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    private void read(SelectionKey key, Connection connection) throws IOException {
+        ByteBuffer input = connection.input;
+        if (connection.channel.read(input) < 0) {
+            close(key);
+            return;
+        }
+
+        process(connection);
+        flush(key, connection);
+    }
+
+    /**
+     * Handles every complete message in the input buffer as long as its reply fits into the
+     * output buffer, partial messages stay for the next read.
+     */
+    private void process(Connection connection) {
+        ByteBuffer input = connection.input;
+        input.flip();
+        connection.stalled = false;
+        while (input.remaining() >= 4 && !connection.shutdown) {
+            int messageType = input.getInt(input.position());
+            if (input.remaining() < 4 + getPayloadLength(messageType)) break;
+            if (connection.output.remaining() < 4) {
+                connection.stalled = true;
+                break;
+            }
+            input.position(input.position() + 4);
+            handleMessage(connection, messageType, input);
+        }
+        input.compact();
+    }
+
+    private static int getPayloadLength(int messageType) {
+        return messageType == RequestCodes.MSG_RESTART_APP ? 4 : 0;
+    }
+
+    private void handleMessage(Connection connection, int messageType, ByteBuffer input) {
+        ByteBuffer output = connection.output;
+        switch (messageType) {
+            case RequestCodes.MSG_INIT:
+                Log.d(TAG, "Received MSG_INIT");
+                output.putInt(1);
+                break;
+            case RequestCodes.MSG_SHUTDOWN:
+                Log.d(TAG, "Received MSG_SHUTDOWN");
+                connection.shutdown = true;
+                break;
+            case RequestCodes.MSG_RESTART_APP:
+                int appId = input.getInt();
+                Log.d(TAG, "Received MSG_RESTART_APP for " + appId);
+                output.putInt(0); // Send restart not needed
+                break;
+            case RequestCodes.MSG_IS_RUNNING:
+                output.putInt(1); // Send Steam running status
+                break;
+            case RequestCodes.MSG_REGISTER_CALLBACK:
+                Log.d(TAG, "Received MSG_REGISTER_CALLBACK");
+                break;
+            case RequestCodes.MSG_UNREGISTER_CALLBACK:
+                Log.d(TAG, "Received MSG_UNREGISTER_CALLBACK");
+                break;
+            case RequestCodes.MSG_RUN_CALLBACKS:
+                break;
+            default:
+                Log.w(TAG, "Unknown message type: " + messageType);
+                break;
+        }
+    }
+
+    /**
+     * Writes the collected replies. Whatever the socket does not take right away is sent once it
+     * becomes writable, reading is paused in the meantime so replies stay in order and bounded.
+     */
+    private void flush(SelectionKey key, Connection connection) throws IOException {
+        ByteBuffer output = connection.output;
+        while (true) {
+            output.flip();
+            if (output.hasRemaining()) connection.channel.write(output);
+            output.compact();
+            if (output.position() > 0) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            if (!connection.stalled) break;
+            process(connection);
+        }
+
+        if (connection.shutdown) {
+            close(key);
+        }
+        else key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
         try {
-            if (serverSocket != null) {
-                serverSocket.close();
+            key.channel().close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close client", e);
+        }
+    }
+
+    private void closeQuietly() {
+        Selector selector = this.selector;
+        if (selector != null) {
+            try {
+                for (SelectionKey key : selector.keys()) key.channel().close();
+                selector.close();
+            } catch (IOException | ClosedSelectorException e) {
+                Log.e(TAG, "Failed to close server", e);
             }
+            this.selector = null;
+        }
+
+        try {
+            if (serverChannel != null) serverChannel.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.e(TAG, "Failed to close server", e);
         }
+        serverChannel = null;
     }
 }
-
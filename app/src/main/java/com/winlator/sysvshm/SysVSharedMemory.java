@@ -2,7 +2,6 @@ package com.winlator.sysvshm;
 
 import android.os.SharedMemory;
 import android.system.ErrnoException;
-import android.util.Log;
 import android.util.SparseArray;
 
 import com.winlator.xconnector.XConnectorEpoll;
@@ -10,10 +9,21 @@ import com.winlator.xconnector.XConnectorEpoll;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
-
+import java.util.IdentityHashMap;
+
+/**
+ * Attached buffers are indexed by identity with an attach count, so detach does not scan the
+ * segments. A segment is mapped read-only on its first attach and unmapped on its last detach.
+ * Deleting a segment closes its fd right away, a mapping that is still attached stays valid
+ * until it is detached. Allocation, attach and detach counters show the segment churn.
+ */
 public class SysVSharedMemory {
     private final SparseArray<SHMemory> shmemories = new SparseArray<>();
+    private final IdentityHashMap<ByteBuffer, SHMemory> attached = new IdentityHashMap<>();
     private int maxSHMemoryId = 0;
+    private int allocationCount = 0;
+    private int attachCount = 0;
+    private int detachCount = 0;
 
     static {
         System.loadLibrary("winlator");
@@ -23,43 +33,13 @@ public class SysVSharedMemory {
         private int fd;
         private long size;
         private ByteBuffer data;
-
-        // Constructor for SHMemory
-        private SHMemory() {}
-
-        // Synthetic access methods for accessing the private fields
-        static int access$000(SHMemory shMemory) {
-            return shMemory.fd;
-        }
-
-        static int access$002(SHMemory shMemory, int fd) {
-            shMemory.fd = fd;
-            return fd;
-        }
-
-        static long access$200(SHMemory shMemory) {
-            return shMemory.size;
-        }
-
-        static long access$202(SHMemory shMemory, long size) {
-            shMemory.size = size;
-            return size;
-        }
-
-        static ByteBuffer access$300(SHMemory shMemory) {
-            return shMemory.data;
-        }
-
-        static ByteBuffer access$302(SHMemory shMemory, ByteBuffer data) {
-            shMemory.data = data;
-            return data;
-        }
+        private int attachCount;
     }
 
     public int getFd(int shmid) {
         synchronized (shmemories) {
             SHMemory shmemory = shmemories.get(shmid);
-            return shmemory != null ? SHMemory.access$000(shmemory) : -1;
+            return shmemory != null ? shmemory.fd : -1;
         }
     }
 
@@ -72,57 +52,88 @@ public class SysVSharedMemory {
 
             SHMemory shmemory = new SHMemory();
             int id = ++maxSHMemoryId;
-            SHMemory.access$002(shmemory, fd);
-            SHMemory.access$202(shmemory, size);
+            shmemory.fd = fd;
+            shmemory.size = size;
             shmemories.put(id, shmemory);
+            allocationCount++;
             return id;
         }
     }
 
     public void delete(int shmid) {
-        SHMemory shmemory = shmemories.get(shmid);
-        if (shmemory != null) {
-            if (SHMemory.access$000(shmemory) != -1) {
-                XConnectorEpoll.closeFd(SHMemory.access$000(shmemory));
-                SHMemory.access$002(shmemory, -1);
+        synchronized (shmemories) {
+            SHMemory shmemory = shmemories.get(shmid);
+            if (shmemory != null) {
+                closeFd(shmemory);
+                shmemories.remove(shmid);
             }
-            shmemories.remove(shmid);
         }
     }
 
     public void deleteAll() {
         synchronized (shmemories) {
-            for (int i = shmemories.size() - 1; i >= 0; i--) delete(shmemories.keyAt(i));
+            for (int i = shmemories.size() - 1; i >= 0; i--) closeFd(shmemories.valueAt(i));
+            shmemories.clear();
+
+            for (SHMemory shmemory : attached.values()) {
+                unmapSHMSegment(shmemory.data, shmemory.size);
+                shmemory.data = null;
+                shmemory.attachCount = 0;
+            }
+            attached.clear();
         }
     }
 
     public ByteBuffer attach(int shmid) {
         synchronized (shmemories) {
             SHMemory shmemory = shmemories.get(shmid);
-            if (shmemory != null) {
-                if (SHMemory.access$300(shmemory) == null) {
-                    SHMemory.access$302(shmemory, mapSHMSegment(SHMemory.access$000(shmemory),
-                            SHMemory.access$200(shmemory), 0, true));
-            }
-                return SHMemory.access$300(shmemory);
-            } else {
-                return null;
+            if (shmemory == null) return null;
+            if (shmemory.data == null) {
+                shmemory.data = mapSHMSegment(shmemory.fd, shmemory.size, 0, true);
+                if (shmemory.data == null) return null;
+                attached.put(shmemory.data, shmemory);
             }
+
+            shmemory.attachCount++;
+            attachCount++;
+            return shmemory.data;
         }
     }
 
     public void detach(ByteBuffer data) {
         synchronized (shmemories) {
-            for (int i = 0; i < shmemories.size(); i++) {
-                SHMemory shmemory = shmemories.valueAt(i);
-                if (SHMemory.access$300(shmemory) == data) {
-                    if (SHMemory.access$300(shmemory) != null) {
-                        unmapSHMSegment(SHMemory.access$300(shmemory), SHMemory.access$200(shmemory));
-                        SHMemory.access$302(shmemory, null);
-                    }
-                    break;
-                }
-            }
+            SHMemory shmemory = attached.get(data);
+            if (shmemory == null) return;
+            detachCount++;
+            if (--shmemory.attachCount > 0) return;
+            attached.remove(data);
+            unmapSHMSegment(shmemory.data, shmemory.size);
+            shmemory.data = null;
+        }
+    }
+
+    public int getAllocationCount() {
+        synchronized (shmemories) {
+            return allocationCount;
+        }
+    }
+
+    public int getAttachCount() {
+        synchronized (shmemories) {
+            return attachCount;
+        }
+    }
+
+    public int getDetachCount() {
+        synchronized (shmemories) {
+            return detachCount;
+        }
+    }
+
+    private static void closeFd(SHMemory shmemory) {
+        if (shmemory.fd != -1) {
+            XConnectorEpoll.closeFd(shmemory.fd);
+            shmemory.fd = -1;
         }
     }
 
@@ -0,0 +1,50 @@
+package com.winlator.widget;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.util.TypedValue;
+import android.widget.TextView;
+
+import com.winlator.xserver.RequestProfiler;
+
+/**
+ * Live overlay of the busiest X11 requests, shown below the FPS counter while the request
+ * profiler is enabled.
+ */
+public class RequestProfilerView extends TextView implements Runnable {
+    private static final int REFRESH_INTERVAL_MS = 1000;
+    private static final int MAX_LINES = 8;
+    private final RequestProfiler requestProfiler;
+
+    public RequestProfilerView(Context context, RequestProfiler requestProfiler) {
+        super(context);
+        this.requestProfiler = requestProfiler;
+
+        setTypeface(Typeface.MONOSPACE);
+        setTextSize(TypedValue.COMPLEX_UNIT_DIP, 9);
+        setTextColor(Color.WHITE);
+        setBackgroundColor(0x66000000);
+        setIncludeFontPadding(false);
+        int padding = (int)TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 2, getResources().getDisplayMetrics());
+        setPadding(padding, padding, padding, padding);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        post(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(this);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void run() {
+        if (requestProfiler.isEnabled()) setText(requestProfiler.getSummary(MAX_LINES));
+        postDelayed(this, REFRESH_INTERVAL_MS);
+    }
+}
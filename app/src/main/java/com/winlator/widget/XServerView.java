@@ -45,6 +45,12 @@ public class XServerView extends GLSurfaceView {
     public XServer getxServer() {
         return xServer;
     }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        xServer.vsyncClock.stop();
+    }
     // public void onRelease() {
     //     releasePointerCapture();
     //     clearPointerEventListeners();
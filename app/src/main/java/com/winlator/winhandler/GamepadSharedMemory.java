@@ -0,0 +1,86 @@
+package com.winlator.winhandler;
+
+import com.winlator.inputcontrols.GamepadState;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Gamepad block shared with libevshim through a memory-mapped file. The state keeps the layout
+ * the shim reads (six axes, 15 SDL buttons, hat), the shim writes the rumble motors back at
+ * RUMBLE_OFFSET.
+ */
+class GamepadSharedMemory {
+    public static final int SIZE = 64;
+    private static final int AXES_OFFSET = 0;
+    private static final int BUTTONS_OFFSET = 12;
+    private static final int HAT_OFFSET = 27;
+    private static final int RUMBLE_OFFSET = 32;
+    private final MappedByteBuffer buffer;
+
+    private GamepadSharedMemory(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public static GamepadSharedMemory open(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(SIZE);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new GamepadSharedMemory(buffer);
+        }
+    }
+
+    /**
+     * Publishes the state, called straight from the input event handlers. Writers are
+     * serialized so two handlers never interleave their fields.
+     */
+    public synchronized void write(GamepadState state) {
+        buffer.putShort(AXES_OFFSET, (short)(state.thumbLX * 32767));
+        buffer.putShort(AXES_OFFSET + 2, (short)(state.thumbLY * 32767));
+        buffer.putShort(AXES_OFFSET + 4, (short)(state.thumbRX * 32767));
+        buffer.putShort(AXES_OFFSET + 6, (short)(state.thumbRY * 32767));
+        // Clamp the raw value first – some firmwares report 1.00–1.02 at the top end
+        buffer.putShort(AXES_OFFSET + 8, triggerToAxis(state.triggerL));
+        buffer.putShort(AXES_OFFSET + 10, triggerToAxis(state.triggerR));
+
+        buffer.put(BUTTONS_OFFSET, pressed(state, 0));       // A
+        buffer.put(BUTTONS_OFFSET + 1, pressed(state, 1));   // B
+        buffer.put(BUTTONS_OFFSET + 2, pressed(state, 2));   // X
+        buffer.put(BUTTONS_OFFSET + 3, pressed(state, 3));   // Y
+        buffer.put(BUTTONS_OFFSET + 4, pressed(state, 6));   // Select/Back
+        buffer.put(BUTTONS_OFFSET + 5, (byte)0);             // Unused
+        buffer.put(BUTTONS_OFFSET + 6, pressed(state, 7));   // Start
+        buffer.put(BUTTONS_OFFSET + 7, pressed(state, 8));   // Left Stick
+        buffer.put(BUTTONS_OFFSET + 8, pressed(state, 9));   // Right Stick
+        buffer.put(BUTTONS_OFFSET + 9, pressed(state, 4));   // Left Bumper
+        buffer.put(BUTTONS_OFFSET + 10, pressed(state, 5));  // Right Bumper
+        buffer.put(BUTTONS_OFFSET + 11, (byte)(state.dpad[0] ? 1 : 0)); // DPAD_UP
+        buffer.put(BUTTONS_OFFSET + 12, (byte)(state.dpad[2] ? 1 : 0)); // DPAD_DOWN
+        buffer.put(BUTTONS_OFFSET + 13, (byte)(state.dpad[3] ? 1 : 0)); // DPAD_LEFT
+        buffer.put(BUTTONS_OFFSET + 14, (byte)(state.dpad[1] ? 1 : 0)); // DPAD_RIGHT
+        buffer.put(HAT_OFFSET, (byte)0); // Ignored HAT value
+    }
+
+    /**
+     * Returns both rumble motors in one read so low and high frequency always belong to the same
+     * update of the shim: low frequency in the lower 16 bits, high frequency in the upper.
+     */
+    public int getRumble() {
+        return buffer.getInt(RUMBLE_OFFSET);
+    }
+
+    private static short triggerToAxis(float value) {
+        float curve = (float)Math.sqrt(Math.max(0f, Math.min(1f, value)));
+        return (short)(Math.round(curve * 65_534f) - 32_767); // 0 → -32 767, 1 → 32 767
+    }
+
+    private static byte pressed(GamepadState state, int buttonIdx) {
+        return state.isPressed(buttonIdx) ? (byte)1 : (byte)0;
+    }
+}
@@ -0,0 +1,26 @@
+package com.winlator.winhandler;
+
+/**
+ * Picks how long the rumble poller sleeps between two checks of the shared blocks. The shim
+ * gives no signal to block on, so the blocks are checked every 2 ms while a motor is running or
+ * the rumble changed within the last two seconds, and every 8 ms once the game is idle.
+ */
+final class RumblePollTimer {
+    static final long ACTIVE_POLL_NANOS = 2000000L;
+    static final long IDLE_POLL_NANOS = 8000000L;
+    static final long ACTIVE_WINDOW_NANOS = 2000000000L;
+    private long lastChangeTime;
+    private boolean changedOnce;
+
+    /** Records that a slot's rumble word changed at the given time. */
+    void onChange(long now) {
+        lastChangeTime = now;
+        changedOnce = true;
+    }
+
+    /** Returns the time to park before the next poll. */
+    long nextPollNanos(boolean rumbleActive, long now) {
+        boolean recent = changedOnce && now - lastChangeTime < ACTIVE_WINDOW_NANOS;
+        return rumbleActive || recent ? ACTIVE_POLL_NANOS : IDLE_POLL_NANOS;
+    }
+}
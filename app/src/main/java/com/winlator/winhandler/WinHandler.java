@@ -27,7 +27,6 @@ import com.winlator.xserver.XServer;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
@@ -36,14 +35,13 @@ import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import timber.log.Timber;
 
@@ -51,10 +49,11 @@ public class WinHandler {
 
     private static final String TAG = "WinHandler";
     private final ControllerManager controllerManager;
-    public static final int MAX_PLAYERS = 1;
-    private final MappedByteBuffer[] extraGamepadBuffers = new MappedByteBuffer[MAX_PLAYERS - 1];
+    public static final int MAX_PLAYERS = ControllerManager.MAX_PLAYERS;
+    private final GamepadSharedMemory[] extraGamepadMemories = new GamepadSharedMemory[MAX_PLAYERS - 1];
     private final ExternalController[] extraControllers = new ExternalController[MAX_PLAYERS - 1];
-    private MappedByteBuffer gamepadBuffer;
+    private GamepadSharedMemory gamepadMemory;
+    private final AtomicBoolean gamepadStatePending = new AtomicBoolean();
     private static final short SERVER_PORT = 7947;
     private static final short CLIENT_PORT = 7946;
     private final ArrayDeque<Runnable> actions;
@@ -77,9 +76,8 @@ public class WinHandler {
 
     private InputControlsView inputControlsView;
     private Thread rumblePollerThread;
-    private short lastLowFreq = 0;  // Use 'short' instead of uint16_t
-    private short lastHighFreq = 0; // Use 'short' instead of uint16_t
-    private boolean isRumbling = false;
+    private final int[] lastRumbles = new int[MAX_PLAYERS];
+    private final boolean[] rumbling = new boolean[MAX_PLAYERS];
     private boolean isShowingAssignDialog = false;
     private Context activity;
     private final java.util.Set<Integer> ignoredDeviceIds = new java.util.HashSet<>();
@@ -520,24 +518,11 @@ public class WinHandler {
         try {
             this.localhost = InetAddress.getLocalHost();
             // Player 1 (currentController) gets the original non-numbered file
-            String p1_mem_path = "/data/data/app.gamenative/files/imagefs/tmp/gamepad.mem";
-            File p1_memFile = new File(p1_mem_path);
-            p1_memFile.getParentFile().mkdirs();
-            try (RandomAccessFile raf = new RandomAccessFile(p1_memFile, "rw")) {
-                raf.setLength(64);
-                gamepadBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 64);
-                gamepadBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                Log.i(TAG, "Successfully created and mapped gamepad file for Player 1");
-            }
-            for (int i = 0; i < extraGamepadBuffers.length; i++) {
-                String extra_mem_path = "/data/data/app.gamenative/files/imagefs/tmp/gamepad" + (i + 1) + ".mem";
-                File extra_memFile = new File(extra_mem_path);
-                try (RandomAccessFile raf = new RandomAccessFile(extra_memFile, "rw")) {
-                    raf.setLength(64);
-                    extraGamepadBuffers[i] = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 64);
-                    extraGamepadBuffers[i].order(ByteOrder.LITTLE_ENDIAN);
-                    Log.i(TAG, "Successfully created and mapped gamepad file for Player " + (i + 2));
-                }
+            gamepadMemory = GamepadSharedMemory.open(new File("/data/data/app.gamenative/files/imagefs/tmp/gamepad.mem"));
+            Log.i(TAG, "Successfully created and mapped gamepad file for Player 1");
+            for (int i = 0; i < extraGamepadMemories.length; i++) {
+                extraGamepadMemories[i] = GamepadSharedMemory.open(new File("/data/data/app.gamenative/files/imagefs/tmp/gamepad" + (i + 1) + ".mem"));
+                Log.i(TAG, "Successfully created and mapped gamepad file for Player " + (i + 2));
             }
         } catch (IOException e) {
             Log.e("EVSHIM_HOST", "FATAL: Failed to create memory-mapped file(s).", e);
@@ -571,43 +556,54 @@ public class WinHandler {
         startSendThread();
     }
 
+    /**
+     * The shim writes the rumble motors into the shared blocks without notifying us, so the
+     * blocks are polled, quickly while rumble is active or changed recently (see
+     * {@link RumblePollTimer}). Player 1 is always checked, other players only while a controller
+     * is in their slot. Both motors are read in one go so they always belong to the same update.
+     */
     private void startRumblePoller() {
         rumblePollerThread = new Thread(() -> {
+            RumblePollTimer pollTimer = new RumblePollTimer();
             while (running) {
-                // --- MODIFIED: Get the current profile state on EVERY loop iteration ---
-                try {
-                    // Always poll for rumble if gamepad buffer exists, regardless of controller state
-                    // This ensures vibration works with built-in controllers (like Ayn Odin 2)
-                    // even when virtual gamepad mode is disabled
-                    if (gamepadBuffer != null) {
-                        // Read the rumble values from the shared memory file.
-                        short lowFreq = gamepadBuffer.getShort(32);
-                        short highFreq = gamepadBuffer.getShort(34);
-                        // Check if the rumble state has changed
-                        if (lowFreq != lastLowFreq || highFreq != lastHighFreq) {
-                            lastLowFreq = lowFreq;
-                            lastHighFreq = highFreq;
-                            if (lowFreq == 0 && highFreq == 0) {
-                                stopVibration();
+                boolean rumbleActive = false;
+                for (int slot = 0; slot < MAX_PLAYERS; slot++) {
+                    try {
+                        // Always poll Player 1 if the gamepad memory exists, regardless of controller state
+                        // This ensures vibration works with built-in controllers (like Ayn Odin 2)
+                        // even when virtual gamepad mode is disabled
+                        ExternalController controller = slot == 0 ? currentController : extraControllers[slot - 1];
+                        GamepadSharedMemory memory = slot == 0 ? gamepadMemory : extraGamepadMemories[slot - 1];
+                        if (memory == null || (slot > 0 && controller == null)) continue;
+
+                        int rumble = memory.getRumble();
+                        if (rumble != lastRumbles[slot]) {
+                            lastRumbles[slot] = rumble;
+                            pollTimer.onChange(System.nanoTime());
+                            if (rumble == 0) {
+                                stopVibration(slot, controller);
                             } else {
-                                startVibration(lowFreq, highFreq);
+                                startVibration(slot, controller, (short)rumble, (short)(rumble >>> 16));
                             }
                         }
+                        if (rumble != 0) rumbleActive = true;
+                    } catch (Exception e) {
+                        Log.w(TAG, "Failed to update rumble for Player " + (slot + 1), e);
                     }
-                } catch (Exception e) {
-                    continue;
-                }
-                try {
-                    Thread.sleep(20); // Poll for new commands 50 times per second
-                } catch (InterruptedException e) {
-                    break;
                 }
+
+                LockSupport.parkNanos(pollTimer.nextPollNanos(rumbleActive, System.nanoTime()));
+                if (Thread.interrupted()) break;
             }
-        });
+        }, "WinHandler-rumble");
         rumblePollerThread.start();
     }
 
-    private void startVibration(short lowFreq, short highFreq) {
+    /**
+     * Vibrates the controller of the slot. Only Player 1 falls back to the phone vibrator, the
+     * phone cannot tell the other players apart.
+     */
+    private void startVibration(int slot, ExternalController controller, short lowFreq, short highFreq) {
         // --- Step 1: Calculate the base amplitude once at the top ---
         int unsignedLowFreq = lowFreq & 0xFFFF;
         int unsignedHighFreq = highFreq & 0xFFFF;
@@ -617,22 +613,18 @@ public class WinHandler {
         if (amplitude > 255) amplitude = 255;
         // If amplitude is negligible, just stop and exit.
         if (amplitude <= 1) {
-            stopVibration();
+            stopVibration(slot, controller);
             return;
         }
-        isRumbling = true; // We know we are going to try to rumble.
+        rumbling[slot] = true; // We know we are going to try to rumble.
         // --- Step 2: Attempt to vibrate the physical controller first ---
-        if (currentController != null) {
-            InputDevice device = InputDevice.getDevice(currentController.getDeviceId());
-            if (device != null) {
-                Vibrator controllerVibrator = device.getVibrator();
-                if (controllerVibrator != null && controllerVibrator.hasVibrator()) {
-                    // Vibrate the physical controller and then we are done.
-                    controllerVibrator.vibrate(VibrationEffect.createOneShot(50, amplitude));
-                    return;
-                }
-            }
+        Vibrator controllerVibrator = getControllerVibrator(controller);
+        if (controllerVibrator != null) {
+            // Vibrate the physical controller and then we are done.
+            controllerVibrator.vibrate(VibrationEffect.createOneShot(50, amplitude));
+            return;
         }
+        if (slot != 0) return;
         // --- Step 3: Fallback to phone vibration if physical controller fails or doesn't exist ---
         Log.w("WinHandler", "No physical controller vibrator found, falling back to device vibration.");
         Vibrator phoneVibrator = (Vibrator) activity.getSystemService(Context.VIBRATOR_SERVICE);
@@ -648,54 +640,74 @@ public class WinHandler {
             }
         }
     }
-    private void stopVibration() {
-        if (!isRumbling) return; // Simplified check
+
+    private void stopVibration(int slot, ExternalController controller) {
+        if (!rumbling[slot]) return; // Simplified check
         // Attempt to stop the physical controller's vibration if it exists
-        if (currentController != null) {
-            InputDevice device = InputDevice.getDevice(currentController.getDeviceId());
-            if (device != null) {
-                Vibrator vibrator = device.getVibrator();
-                if (vibrator != null && vibrator.hasVibrator()) {
-                    vibrator.cancel();
-                }
+        Vibrator vibrator = getControllerVibrator(controller);
+        if (vibrator != null) vibrator.cancel();
+        if (slot == 0) {
+            // Always attempt to stop the phone's vibration
+            Vibrator phoneVibrator = (Vibrator) activity.getSystemService(Context.VIBRATOR_SERVICE);
+            if (phoneVibrator != null) {
+                phoneVibrator.cancel();
             }
         }
-        // Always attempt to stop the phone's vibration
-        Vibrator phoneVibrator = (Vibrator) activity.getSystemService(Context.VIBRATOR_SERVICE);
-        if (phoneVibrator != null) {
-            phoneVibrator.cancel();
-        }
-        isRumbling = false;
+        rumbling[slot] = false;
     }
 
+    private static Vibrator getControllerVibrator(ExternalController controller) {
+        if (controller == null) return null;
+        InputDevice device = InputDevice.getDevice(controller.getDeviceId());
+        if (device == null) return null;
+        Vibrator vibrator = device.getVibrator();
+        return vibrator != null && vibrator.hasVibrator() ? vibrator : null;
+    }
+
+    /**
+     * Schedules one notification of the latest state to every gamepad client. Further changes
+     * before the send thread gets to it are coalesced, the send reads the state at that time.
+     */
     public void sendGamepadState() {
         if (!this.initReceived || this.gamepadClients.isEmpty()) {
             return;
         }
+        if (!gamepadStatePending.getAndSet(true)) addAction(this::flushGamepadState);
+    }
+
+    private void flushGamepadState() {
+        gamepadStatePending.set(false);
         final ControlsProfile profile = inputControlsView.getProfile();
         final boolean useVirtualGamepad = profile != null && profile.isVirtualGamepad();
-        final boolean enabled = this.currentController != null || useVirtualGamepad;
-        Iterator<Integer> it = this.gamepadClients.iterator();
-        while (it.hasNext()) {
-            final int port = it.next().intValue();
-            addAction(() -> {
-                this.sendData.rewind();
-                sendData.put(RequestCodes.GET_GAMEPAD_STATE);
-                sendData.put((byte)(enabled ? 1 : 0));
-                if (enabled) {
-                    this.sendData.putInt(!useVirtualGamepad ? this.currentController.getDeviceId() : inputControlsView.getProfile().id);
-                    if (useVirtualGamepad) {
-                        inputControlsView.getProfile().getGamepadState().writeTo(sendData);
-                    } else {
-                        this.currentController.state.writeTo(this.sendData);
-                    }
+        final ExternalController controller = this.currentController;
+        final boolean enabled = controller != null || useVirtualGamepad;
+        for (int port : this.gamepadClients) {
+            this.sendData.rewind();
+            sendData.put(RequestCodes.GET_GAMEPAD_STATE);
+            sendData.put((byte)(enabled ? 1 : 0));
+            if (enabled) {
+                this.sendData.putInt(!useVirtualGamepad ? controller.getDeviceId() : profile.id);
+                if (useVirtualGamepad) {
+                    profile.getGamepadState().writeTo(sendData);
+                } else {
+                    controller.state.writeTo(this.sendData);
                 }
-                sendPacket(port);
-            });
+            }
+            sendPacket(port);
         }
     }
 
     public boolean onGenericMotionEvent(MotionEvent event) {
+        int slot = ExternalController.isJoystickDevice(event) ? controllerManager.getOrAssignSlot(event.getDeviceId()) : 0;
+        // Player 1 is disabled and every enabled slot is taken by another controller
+        if (slot == -1) return false;
+        if (slot > 0) {
+            ExternalController controller = getExtraController(slot - 1, event.getDeviceId());
+            if (controller == null || !controller.updateStateFromMotionEvent(event)) return false;
+            sendMemoryFileState(controller, extraGamepadMemories[slot - 1]);
+            return true;
+        }
+
         boolean handled = false;
         ExternalController externalController = this.currentController;
         // Adopt newly connected controller if deviceId mismatches
@@ -720,20 +732,29 @@ public class WinHandler {
         }
         if (externalController != null && externalController.getDeviceId() == event.getDeviceId() && (handled = this.currentController.updateStateFromMotionEvent(event))) {
             if (handled) {
-                sendGamepadState();
                 sendMemoryFileState();
+                sendGamepadState();
             }
         }
         return handled;
     }
 
     public boolean onKeyEvent(KeyEvent event) {
-        MappedByteBuffer buffer = null;
+        InputDevice device = event.getDevice();
+        int slot = device != null && ExternalController.isGameController(device) ? controllerManager.getOrAssignSlot(event.getDeviceId()) : 0;
+        // Player 1 is disabled and every enabled slot is taken by another controller
+        if (slot == -1) return false;
+        if (slot > 0) {
+            ExternalController controller = getExtraController(slot - 1, event.getDeviceId());
+            if (controller == null || event.getRepeatCount() != 0) return false;
+            boolean handled = controller.updateStateFromKeyEvent(event);
+            sendMemoryFileState(controller, extraGamepadMemories[slot - 1]);
+            return handled;
+        }
+
         boolean handled = false;
         ExternalController externalController = this.currentController;
-        buffer = gamepadBuffer;
         // If this is a gamepad event but our controller is null or mismatched, adopt it
-        InputDevice device = event.getDevice();
         if ((externalController == null || externalController.getDeviceId() != event.getDeviceId())
                 && device != null && ExternalController.isGameController(device)
                 && event.getRepeatCount() == 0) {
@@ -764,7 +785,7 @@ public class WinHandler {
             } else if (action == KeyEvent.ACTION_UP) {
                 handled = this.currentController.updateStateFromKeyEvent(event);
             }
-            sendMemoryFileState(this.currentController, buffer);
+            sendMemoryFileState(this.currentController, gamepadMemory);
             if (handled) {
                 sendGamepadState();
             }
@@ -785,89 +806,46 @@ public class WinHandler {
     }
 
 
+    /**
+     * Returns the controller of an extra player slot, switching it over when another device was
+     * put into the slot. A profile controller bound to this exact device is preferred since it
+     * carries the saved bindings, the wildcard one stays with Player 1 so states never mix.
+     */
+    private ExternalController getExtraController(int index, int deviceId) {
+        ExternalController controller = extraControllers[index];
+        if (controller != null && controller.getDeviceId() == deviceId) return controller;
+
+        controller = null;
+        if (inputControlsView != null) {
+            ControlsProfile profile = inputControlsView.getProfile();
+            if (profile != null) controller = profile.getController(deviceId);
+            if (controller != null && (controller.getDeviceId() != deviceId || controller == currentController)) controller = null;
+        }
+        if (controller == null) controller = ExternalController.getController(deviceId);
+        if (controller != null) {
+            controller.setContext(activity);
+            Timber.d("WinHandler: Player %d uses controller %s(#%d)", index + 2, controller.getName(), deviceId);
+        }
+        extraControllers[index] = controller;
+        return controller;
+    }
+
     private void sendMemoryFileState() {
-        sendMemoryFileState(currentController, gamepadBuffer);
+        sendMemoryFileState(currentController, gamepadMemory);
     }
 
-    private void sendMemoryFileState(ExternalController controller, MappedByteBuffer buffer) {
-        if (buffer == null || controller == null) {
+    private void sendMemoryFileState(ExternalController controller, GamepadSharedMemory memory) {
+        if (memory == null || controller == null) {
             return;
         }
-        GamepadState state = controller.state;
-        buffer.clear();
-
-        // --- Sticks and Buttons are perfect. No changes here. ---
-        buffer.putShort((short)(state.thumbLX * 32767));
-        buffer.putShort((short)(state.thumbLY * 32767));
-        buffer.putShort((short)(state.thumbRX * 32767));
-        buffer.putShort((short)(state.thumbRY * 32767));
-        // Clamp the raw value first – some firmwares report 1.00–1.02 at the top end
-        float rawL = Math.max(0f, Math.min(1f, state.triggerL));
-        float rawR = Math.max(0f, Math.min(1f, state.triggerR));
-        float lCurve = (float)Math.sqrt(rawL);
-        float rCurve = (float)Math.sqrt(rawR);
-        int lAxis = Math.round(lCurve * 65_534f) - 32_767;  // 0 → -32 767, 1 → 32 767
-        int rAxis = Math.round(rCurve * 65_534f) - 32_767;
-        buffer.putShort((short)lAxis);
-        buffer.putShort((short)rAxis);
-        // --- Buttons and D-Pad are perfect. No changes here. ---
-        byte[] sdlButtons = new byte[15];
-        sdlButtons[0] = state.isPressed(0) ? (byte)1 : (byte)0;  // A
-        sdlButtons[1] = state.isPressed(1) ? (byte)1 : (byte)0;  // B
-        sdlButtons[2] = state.isPressed(2) ? (byte)1 : (byte)0;  // X
-        sdlButtons[3] = state.isPressed(3) ? (byte)1 : (byte)0;  // Y
-        sdlButtons[9] = state.isPressed(4) ? (byte)1 : (byte)0;  // Left Bumper
-        sdlButtons[10] = state.isPressed(5) ? (byte)1 : (byte)0; // Right Bumper
-        sdlButtons[4] = state.isPressed(6) ? (byte)1 : (byte)0;  // Select/Back
-        sdlButtons[6] = state.isPressed(7) ? (byte)1 : (byte)0;  // Start
-        sdlButtons[7] = state.isPressed(8) ? (byte)1 : (byte)0;  // Left Stick
-        sdlButtons[8] = state.isPressed(9) ? (byte)1 : (byte)0;  // Right Stick
-        sdlButtons[11] = state.dpad[0] ? (byte)1 : (byte)0;      // DPAD_UP
-        sdlButtons[12] = state.dpad[2] ? (byte)1 : (byte)0;      // DPAD_DOWN
-        sdlButtons[13] = state.dpad[3] ? (byte)1 : (byte)0;      // DPAD_LEFT
-        sdlButtons[14] = state.dpad[1] ? (byte)1 : (byte)0;      // DPAD_RIGHT
-        buffer.put(sdlButtons);
-        buffer.put((byte)0); // Ignored HAT value
+        memory.write(controller.state);
     }
 
     public void sendVirtualGamepadState(GamepadState state) {
-        if (gamepadBuffer == null || state == null) {
+        if (gamepadMemory == null || state == null) {
             return;
         }
-        gamepadBuffer.clear();
-
-        gamepadBuffer.putShort((short)(state.thumbLX * 32767));
-        gamepadBuffer.putShort((short)(state.thumbLY * 32767));
-        gamepadBuffer.putShort((short)(state.thumbRX * 32767));
-        gamepadBuffer.putShort((short)(state.thumbRY * 32767));
-
-        float rawL = Math.max(0f, Math.min(1f, state.triggerL));
-        float rawR = Math.max(0f, Math.min(1f, state.triggerR));
-        float lCurve = (float)Math.sqrt(rawL);
-        float rCurve = (float)Math.sqrt(rawR);
-        int lAxis = Math.round(lCurve * 65_534f) - 32_767;
-        int rAxis = Math.round(rCurve * 65_534f) - 32_767;
-        gamepadBuffer.putShort((short)lAxis);
-        gamepadBuffer.putShort((short)rAxis);
-
-        // Buttons & D-Pad
-        byte[] sdlButtons = new byte[15];
-        sdlButtons[0] = state.isPressed(0) ? (byte)1 : (byte)0;  // A
-        sdlButtons[1] = state.isPressed(1) ? (byte)1 : (byte)0;  // B
-        sdlButtons[2] = state.isPressed(2) ? (byte)1 : (byte)0;  // X
-        sdlButtons[3] = state.isPressed(3) ? (byte)1 : (byte)0;  // Y
-        sdlButtons[9] = state.isPressed(4) ? (byte)1 : (byte)0;  // Left Bumper
-        sdlButtons[10] = state.isPressed(5) ? (byte)1 : (byte)0; // Right Bumper
-        sdlButtons[4] = state.isPressed(6) ? (byte)1 : (byte)0;  // Select/Back
-        sdlButtons[6] = state.isPressed(7) ? (byte)1 : (byte)0;  // Start
-        sdlButtons[7] = state.isPressed(8) ? (byte)1 : (byte)0;  // Left Stick
-        sdlButtons[8] = state.isPressed(9) ? (byte)1 : (byte)0;  // Right Stick
-        sdlButtons[11] = state.dpad[0] ? (byte)1 : (byte)0;      // DPAD_UP
-        sdlButtons[12] = state.dpad[2] ? (byte)1 : (byte)0;      // DPAD_DOWN
-        sdlButtons[13] = state.dpad[3] ? (byte)1 : (byte)0;      // DPAD_LEFT
-        sdlButtons[14] = state.dpad[1] ? (byte)1 : (byte)0;      // DPAD_RIGHT
-        gamepadBuffer.put(sdlButtons);
-        gamepadBuffer.put((byte)0); // Ignored HAT value
+        gamepadMemory.write(state);
     }
 
     private void initializeAssignedControllers() {
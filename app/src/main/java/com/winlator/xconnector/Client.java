@@ -7,6 +7,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 public class Client {
+    private static final int DEFAULT_BUFFER_CAPACITY = 128;
     public final ClientSocket clientSocket;
     private final XConnectorEpoll connector;
     private XInputStream inputStream;
@@ -23,10 +24,13 @@ public class Client {
 
     public void createIOStreams() {
         if (inputStream != null || outputStream != null) return;
-        inputStream = new XInputStream(clientSocket, connector.getInitialInputBufferCapacity());
-        outputStream = new XOutputStream(clientSocket, connector.getInitialOutputBufferCapacity());
+        inputStream = new XInputStream(clientSocket, connector != null ? connector.getInitialInputBufferCapacity() : DEFAULT_BUFFER_CAPACITY);
+        outputStream = new XOutputStream(clientSocket, connector != null ? connector.getInitialOutputBufferCapacity() : DEFAULT_BUFFER_CAPACITY);
         inputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
         outputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        if (connector != null && connector.isBatchedDispatch()) {
+            outputStream.setDeferredFlushThread(connector.getEpollThread(), () -> connector.scheduleFlush(this));
+        }
     }
 
     public XInputStream getInputStream() {
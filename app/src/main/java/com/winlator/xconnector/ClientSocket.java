@@ -7,8 +7,10 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 
 public class ClientSocket {
+    private static final int MAX_RETAINED_GATHER_CAPACITY = 256 * 1024;
     public final int fd;
     private final ArrayDeque<Integer> ancillaryFds = new ArrayDeque<>();
+    private ByteBuffer gatherBuffer;
 
     static {
         System.loadLibrary("winlator");
@@ -52,6 +54,56 @@ public class ClientSocket {
         else throw new IOException("Failed to write data.");
     }
 
+    /**
+     * Writes the given segments as one contiguous message, the ancillary fd (if any) goes with its
+     * first bytes. Segments are copied into a reusable buffer so a reply costs one write in the
+     * common case. A buffer grown past MAX_RETAINED_GATHER_CAPACITY for an oversized reply is
+     * dropped afterwards instead of being held for the life of the client.
+     */
+    public void writeGather(ByteBuffer[] buffers, int[] offsets, int[] lengths, int count, int ancillaryFd) throws IOException {
+        int totalLength = 0;
+        for (int i = 0; i < count; i++) totalLength += lengths[i];
+
+        if (gatherBuffer == null || gatherBuffer.capacity() < totalLength) {
+            int capacity = gatherBuffer != null ? gatherBuffer.capacity() : 0;
+            gatherBuffer = ByteBuffer.allocateDirect(Math.max(totalLength, Math.min(capacity * 2, MAX_RETAINED_GATHER_CAPACITY)));
+        }
+
+        ByteBuffer data = gatherBuffer;
+        data.clear();
+        for (int i = 0; i < count; i++) {
+            ByteBuffer segment = buffers[i].duplicate();
+            segment.limit(offsets[i] + lengths[i]).position(offsets[i]);
+            data.put(segment);
+        }
+        data.flip();
+
+        try {
+            writeFully(data, ancillaryFd);
+        }
+        finally {
+            if (data.capacity() > MAX_RETAINED_GATHER_CAPACITY) gatherBuffer = null;
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of data, continuing partial writes until every byte is sent.
+     * The ancillary fd (if any) goes with the first bytes.
+     */
+    public void writeFully(ByteBuffer data, int ancillaryFd) throws IOException {
+        while (data.hasRemaining()) {
+            ByteBuffer remaining = data.slice();
+            if (ancillaryFd != -1) {
+                sendAncillaryMsg(remaining, ancillaryFd);
+                ancillaryFd = -1;
+            }
+            else write(remaining);
+
+            if (remaining.position() == 0) throw new IOException("Failed to write data.");
+            data.position(data.position() + remaining.position());
+        }
+    }
+
     public int recvAncillaryMsg(ByteBuffer data) throws IOException {
         int position = data.position();
         int bytesRead = recvAncillaryMsg(fd, data, position, data.remaining());
@@ -0,0 +1,108 @@
+package com.winlator.xconnector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Records the raw bytes every client sends to a connector so a session can be replayed later
+ * without the client. Each record holds the connection id, the time since recording started
+ * and, for data records, the bytes exactly as they were read from the socket. File
+ * descriptors passed as ancillary data are not recorded.
+ */
+public class TrafficRecorder implements Closeable {
+    public static final byte TYPE_CONNECT = 0;
+    public static final byte TYPE_DATA = 1;
+    public static final byte TYPE_DISCONNECT = 2;
+    private static final int MAGIC = 0x58545243;
+    private static final int VERSION = 1;
+    private final DataOutputStream outputStream;
+    private final long startTime = System.nanoTime();
+    private byte[] copyBuffer = new byte[4096];
+
+    public static class Record {
+        public byte type;
+        public int connectionId;
+        public long timestamp;
+        public byte[] data;
+        public int length;
+    }
+
+    public TrafficRecorder(File file) throws IOException {
+        outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+        outputStream.writeInt(MAGIC);
+        outputStream.writeInt(VERSION);
+    }
+
+    private void writeHeader(byte type, int connectionId, int length) throws IOException {
+        outputStream.writeByte(type);
+        outputStream.writeInt(connectionId);
+        outputStream.writeLong(System.nanoTime() - startTime);
+        outputStream.writeInt(length);
+    }
+
+    public synchronized void recordConnect(int connectionId) throws IOException {
+        writeHeader(TYPE_CONNECT, connectionId, 0);
+    }
+
+    public synchronized void recordData(int connectionId, ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        writeHeader(TYPE_DATA, connectionId, length);
+        if (copyBuffer.length < length) copyBuffer = new byte[Integer.highestOneBit(length) << 1];
+        data.get(copyBuffer, 0, length);
+        outputStream.write(copyBuffer, 0, length);
+    }
+
+    public synchronized void recordDisconnect(int connectionId) throws IOException {
+        writeHeader(TYPE_DISCONNECT, connectionId, 0);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        outputStream.close();
+    }
+
+    public static class Reader implements Closeable {
+        private final DataInputStream inputStream;
+        private final Record record = new Record();
+
+        public Reader(File file) throws IOException {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+            if (inputStream.readInt() != MAGIC) throw new IOException("Not a traffic recording: "+file);
+            int version = inputStream.readInt();
+            if (version != VERSION) throw new IOException("Unsupported traffic recording version "+version+".");
+        }
+
+        /**
+         * Returns the next record or null at the end of the file. The returned record and
+         * its data array are reused by the following call.
+         */
+        public Record next() throws IOException {
+            try {
+                record.type = inputStream.readByte();
+            }
+            catch (EOFException e) {
+                return null;
+            }
+            record.connectionId = inputStream.readInt();
+            record.timestamp = inputStream.readLong();
+            record.length = inputStream.readInt();
+            if (record.data == null || record.data.length < record.length) record.data = new byte[Math.max(4096, Integer.highestOneBit(record.length) << 1)];
+            inputStream.readFully(record.data, 0, record.length);
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+}
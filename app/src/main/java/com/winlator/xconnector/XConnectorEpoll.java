@@ -5,6 +5,7 @@ import android.util.SparseArray;
 import androidx.annotation.Keep;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 
 public class XConnectorEpoll implements Runnable {
     private final ConnectionHandler connectionHandler;
@@ -17,9 +18,12 @@ public class XConnectorEpoll implements Runnable {
     private boolean multithreadedClients = false;
     private boolean canReceiveAncillaryMessages = false;
     private boolean monitorClients = true;
+    private boolean batchedDispatch = false;
     private int initialInputBufferCapacity = 128;
     private int initialOutputBufferCapacity = 128;
     private final SparseArray<Client> connectedClients = new SparseArray<>();
+    private final ArrayList<Client> pendingFlushClients = new ArrayList<>();
+    private TrafficRecorder trafficRecorder;
 
     private native boolean addFdToEpoll(int i, int i2);
 
@@ -99,6 +103,7 @@ public class XConnectorEpoll implements Runnable {
             if (!doEpollIndefinitely(this.epollFd, this.serverFd, !this.multithreadedClients && this.monitorClients)) {
                 break;
             }
+            flushPendingClients();
         }
         shutdown();
     }
@@ -120,6 +125,13 @@ public class XConnectorEpoll implements Runnable {
             this.connectionHandler.handleNewConnection(client);
         }
         this.connectedClients.put(fd, client);
+        if (this.trafficRecorder != null) {
+            try {
+                this.trafficRecorder.recordConnect(fd);
+            } catch (IOException e) {
+                stopTrafficRecording(e);
+            }
+        }
     }
 
     @Keep
@@ -131,7 +143,15 @@ public class XConnectorEpoll implements Runnable {
         XInputStream inputStream = client.getInputStream();
         try {
             if (inputStream != null) {
-                if (inputStream.readMoreData(this.canReceiveAncillaryMessages) > 0) {
+                int bytesRead = inputStream.readMoreData(this.canReceiveAncillaryMessages);
+                if (bytesRead > 0) {
+                    if (this.trafficRecorder != null) {
+                        try {
+                            this.trafficRecorder.recordData(fd, inputStream.getReceivedData(bytesRead));
+                        } catch (IOException e) {
+                            stopTrafficRecording(e);
+                        }
+                    }
                     int activePosition = 0;
                     while (this.running && this.requestHandler.handleRequest(client)) {
                         activePosition = inputStream.getActivePosition();
@@ -148,12 +168,36 @@ public class XConnectorEpoll implements Runnable {
         }
     }
 
+    protected void scheduleFlush(Client client) {
+        this.pendingFlushClients.add(client);
+    }
+
+    private void flushPendingClients() {
+        for (int i = 0; i < this.pendingFlushClients.size(); i++) {
+            Client client = this.pendingFlushClients.get(i);
+            if (!client.connected) continue;
+            try {
+                client.getOutputStream().flushDeferred();
+            } catch (IOException e) {
+                killConnection(client);
+            }
+        }
+        this.pendingFlushClients.clear();
+    }
+
     public Client getClient(int fd) {
         return this.connectedClients.get(fd);
     }
 
     public void killConnection(Client client) {
         client.connected = false;
+        if (this.trafficRecorder != null) {
+            try {
+                this.trafficRecorder.recordDisconnect(client.clientSocket.fd);
+            } catch (IOException e) {
+                stopTrafficRecording(e);
+            }
+        }
         if (this.multithreadedClients) {
             if (Thread.currentThread() != client.pollThread) {
                 client.requestShutdown();
@@ -185,6 +229,13 @@ public class XConnectorEpoll implements Runnable {
         closeFd(this.serverFd);
         closeFd(this.shutdownFd);
         closeFd(this.epollFd);
+        if (this.trafficRecorder != null) {
+            try {
+                this.trafficRecorder.close();
+            } catch (IOException e) {
+            }
+            this.trafficRecorder = null;
+        }
     }
 
     public int getInitialInputBufferCapacity() {
@@ -203,6 +254,40 @@ public class XConnectorEpoll implements Runnable {
         this.initialOutputBufferCapacity = initialOutputBufferCapacity;
     }
 
+    public boolean isBatchedDispatch() {
+        return this.batchedDispatch && !this.multithreadedClients;
+    }
+
+    /**
+     * When enabled, replies and events written on the epoll thread are held back and
+     * sent with a single write per client after all ready connections of a wakeup
+     * have been handled.
+     */
+    public void setBatchedDispatch(boolean batchedDispatch) {
+        this.batchedDispatch = batchedDispatch;
+    }
+
+    protected Thread getEpollThread() {
+        return this.epollThread;
+    }
+
+    /**
+     * Records everything clients send into the given recorder until the connector stops,
+     * the recorder is closed on shutdown.
+     */
+    public void setTrafficRecorder(TrafficRecorder trafficRecorder) {
+        this.trafficRecorder = trafficRecorder;
+    }
+
+    private void stopTrafficRecording(IOException cause) {
+        Log.e("XConnectorEpoll", "Traffic recording stopped: " + cause);
+        try {
+            this.trafficRecorder.close();
+        } catch (IOException e) {
+        }
+        this.trafficRecorder = null;
+    }
+
     public void setMultithreadedClients(boolean multithreadedClients) {
         this.multithreadedClients = multithreadedClients;
     }
@@ -45,6 +45,15 @@ public class XInputStream {
         return bytesRead;
     }
 
+    /**
+     * Returns a read-only view of the last length bytes received by readMoreData.
+     */
+    public ByteBuffer getReceivedData(int length) {
+        ByteBuffer data = activeBuffer.asReadOnlyBuffer();
+        data.position(data.limit() - length);
+        return data;
+    }
+
     public int getAncillaryFd() {
         return clientSocket.getAncillaryFd();
     }
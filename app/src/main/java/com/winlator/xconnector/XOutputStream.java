@@ -5,14 +5,25 @@ import com.winlator.xserver.XServer;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class XOutputStream {
     private static final byte[] ZERO = new byte[64];
+    private static final int MIN_SEGMENT_LENGTH = 4096;
     public ByteBuffer buffer;
     public final ClientSocket clientSocket;
     private final ReentrantLock lock = new ReentrantLock();
     private int ancillaryFd = -1;
+    private ByteBuffer[] segmentBuffers = new ByteBuffer[4];
+    private int[] segmentOffsets = new int[4];
+    private int[] segmentLengths = new int[4];
+    private int segmentCount = 0;
+    private int segmentStart = 0;
+    private Thread deferredFlushThread;
+    private Runnable onFlushDeferred;
+    private boolean flushDeferred = false;
+    private final OutputStreamLock streamLock = new OutputStreamLock();
 
     public XOutputStream(int initialCapacity) {
         this(null, initialCapacity);
@@ -31,6 +42,31 @@ public class XOutputStream {
         this.ancillaryFd = ancillaryFd;
     }
 
+    /**
+     * Lets writes made on the given thread skip the flush on XStreamLock.close().
+     * onFlushDeferred runs the first time data is held back, the owner is then
+     * expected to call flushDeferred() once it is done dispatching requests.
+     */
+    public void setDeferredFlushThread(Thread thread, Runnable onFlushDeferred) {
+        this.deferredFlushThread = thread;
+        this.onFlushDeferred = onFlushDeferred;
+    }
+
+    public void flushDeferred() throws IOException {
+        lock.lock();
+        try {
+            flushDeferred = false;
+            flush();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canDeferFlush() {
+        return deferredFlushThread == Thread.currentThread() && ancillaryFd == -1 && segmentCount == 0;
+    }
+
     public void writeByte(byte value) {
         ensureSpaceIsAvailable(1);
         buffer.put(value);
@@ -73,34 +109,91 @@ public class XOutputStream {
         buffer.put(data);
     }
 
+    /**
+     * Appends a payload by reference instead of copying it into the stream buffer.
+     * The segment is sent together with the surrounding header bytes in a single
+     * write on the next flush, so its contents must stay untouched until then.
+     * Small or non-direct buffers are simply copied.
+     */
+    public void writeSegment(ByteBuffer data) {
+        int length = data.remaining();
+        if (!data.isDirect() || length < MIN_SEGMENT_LENGTH) {
+            write(data);
+            return;
+        }
+
+        int position = buffer.position();
+        if (position > segmentStart) addSegment(null, segmentStart, position - segmentStart);
+        addSegment(data, data.position(), length);
+        data.position(data.limit());
+        segmentStart = position;
+    }
+
     public void writePad(int length) {
         write(ZERO, 0, length);
     }
 
+    private void addSegment(ByteBuffer data, int offset, int length) {
+        if (segmentCount == segmentBuffers.length) {
+            int newLength = segmentCount * 2;
+            segmentBuffers = Arrays.copyOf(segmentBuffers, newLength);
+            segmentOffsets = Arrays.copyOf(segmentOffsets, newLength);
+            segmentLengths = Arrays.copyOf(segmentLengths, newLength);
+        }
+        segmentBuffers[segmentCount] = data;
+        segmentOffsets[segmentCount] = offset;
+        segmentLengths[segmentCount] = length;
+        segmentCount++;
+    }
+
     private void flush() throws IOException {
-        if (buffer.position() != 0) {
+        if (segmentCount > 0) {
+            flushSegments();
+        }
+        else if (buffer.position() != 0) {
             buffer.flip();
-
-            if (ancillaryFd != -1) {
-                clientSocket.sendAncillaryMsg(buffer, ancillaryFd);
+            try {
+                clientSocket.writeFully(buffer, ancillaryFd);
+            }
+            finally {
                 ancillaryFd = -1;
+                buffer.clear();
             }
-            else clientSocket.write(buffer);
+        }
+    }
 
+    private void flushSegments() throws IOException {
+        int position = buffer.position();
+        if (position > segmentStart) addSegment(null, segmentStart, position - segmentStart);
+
+        for (int i = 0; i < segmentCount; i++) {
+            if (segmentBuffers[i] == null) segmentBuffers[i] = buffer;
+        }
+
+        try {
+            clientSocket.writeGather(segmentBuffers, segmentOffsets, segmentLengths, segmentCount, ancillaryFd);
+        }
+        finally {
+            Arrays.fill(segmentBuffers, 0, segmentCount, null);
+            segmentCount = 0;
+            segmentStart = 0;
+            ancillaryFd = -1;
             buffer.clear();
         }
     }
 
     public XStreamLock lock() {
-        return new OutputStreamLock();
+        lock.lock();
+        return streamLock;
     }
 
     private void ensureSpaceIsAvailable(int length) {
         int position = buffer.position();
         if ((buffer.capacity() - position) >= length) return;
-        ByteBuffer newBuffer = ByteBuffer.allocateDirect(buffer.capacity() + length).order(buffer.order());
-        buffer.rewind();
-        newBuffer.put(buffer).position(position);
+        int newCapacity = Math.max(buffer.capacity() * 2, position + length);
+        ByteBuffer newBuffer = ByteBuffer.allocateDirect(newCapacity).order(buffer.order());
+        buffer.flip();
+        newBuffer.put(buffer);
         buffer = newBuffer;
     }
 
@@ -115,14 +208,16 @@ public class XOutputStream {
     }
 
     private class OutputStreamLock implements XStreamLock {
-        public OutputStreamLock() {
-            lock.lock();
-        }
-
         @Override
         public void close() throws IOException {
             try {
-                flush();
+                if (canDeferFlush()) {
+                    if (!flushDeferred) {
+                        flushDeferred = true;
+                        onFlushDeferred.run();
+                    }
+                }
+                else flush();
             }
             finally {
                 lock.unlock();
@@ -4,6 +4,7 @@ import android.util.Log;
 
 import com.winlator.alsaserver.ALSAClientConnectionHandler;
 import com.winlator.alsaserver.ALSARequestHandler;
+import com.winlator.alsaserver.AudioMixer;
 import com.winlator.core.KeyValueSet;
 import com.winlator.xconnector.UnixSocketConfig;
 import com.winlator.xconnector.XConnectorEpoll;
@@ -13,6 +14,7 @@ import com.winlator.xenvironment.ImageFs;
 
 public class ALSAServerComponent extends EnvironmentComponent {
     private XConnectorEpoll connector;
+    private AudioMixer mixer;
     private final ALSAClient.Options options;
     private final UnixSocketConfig socketConfig;
     private volatile boolean isPaused = false;
@@ -29,8 +31,12 @@ public class ALSAServerComponent extends EnvironmentComponent {
         }
         ALSAClient.assignFramesPerBuffer(this.environment.getContext());
         ImageFs imagefs = ImageFs.find(this.environment.getContext());
+        if (this.options.mixer) {
+            this.mixer = AudioMixer.open(this.options);
+            if (this.mixer == null) Log.w("ALSAServerComponent", "Unable to open the mixer output, clients use their own outputs");
+        }
 
-        XConnectorEpoll xConnectorEpoll = new XConnectorEpoll(this.socketConfig, new ALSAClientConnectionHandler(this.options, imagefs.getVariant()), new ALSARequestHandler());
+        XConnectorEpoll xConnectorEpoll = new XConnectorEpoll(this.socketConfig, new ALSAClientConnectionHandler(this.options, imagefs.getVariant(), this.mixer), new ALSARequestHandler());
         this.connector = xConnectorEpoll;
         xConnectorEpoll.setMultithreadedClients(true);
         this.connector.start();
@@ -44,6 +50,10 @@ public class ALSAServerComponent extends EnvironmentComponent {
             xConnectorEpoll.stop();
             this.connector = null;
         }
+        if (this.mixer != null) {
+            this.mixer.release();
+            this.mixer = null;
+        }
         isPaused = false;
     }
 
@@ -34,6 +34,7 @@ import com.winlator.core.TarCompressorUtils;
 import com.winlator.core.WineInfo;
 import com.winlator.fexcore.FEXCorePreset;
 import com.winlator.fexcore.FEXCorePresetManager;
+import com.winlator.inputcontrols.ControllerManager;
 import com.winlator.sysvshm.SysVSHMConnectionHandler;
 import com.winlator.sysvshm.SysVSHMRequestHandler;
 import com.winlator.sysvshm.SysVSharedMemory;
@@ -324,10 +325,8 @@ public class BionicProgramLauncherComponent extends GuestProgramLauncherComponen
 
     private int execGuestProgram() {
 
-        final int MAX_PLAYERS = 1; // old static method
-
-        // Get the number of enabled players directly from ControllerManager.
-        final int enabledPlayerCount = MAX_PLAYERS;
+        // Get the number of player blocks directly from ControllerManager.
+        final int enabledPlayerCount = ControllerManager.getInstance().getPlayerSlotCount();
         for (int i = 0; i < enabledPlayerCount; i++) {
             String memPath;
             if (i == 0) {
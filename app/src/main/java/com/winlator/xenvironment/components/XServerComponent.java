@@ -3,16 +3,21 @@ package com.winlator.xenvironment.components;
 import android.util.Log;
 
 import com.winlator.xenvironment.EnvironmentComponent;
+import com.winlator.xconnector.TrafficRecorder;
 import com.winlator.xconnector.XConnectorEpoll;
 import com.winlator.xconnector.UnixSocketConfig;
 import com.winlator.xserver.XClientConnectionHandler;
 import com.winlator.xserver.XClientRequestHandler;
 import com.winlator.xserver.XServer;
 
+import java.io.File;
+import java.io.IOException;
+
 public class XServerComponent extends EnvironmentComponent {
     private XConnectorEpoll connector;
     private final XServer xServer;
     private final UnixSocketConfig socketConfig;
+    private File trafficRecordingFile;
 
     public XServerComponent(XServer xServer, UnixSocketConfig socketConfig) {
         this.xServer = xServer;
@@ -26,6 +31,15 @@ public class XServerComponent extends EnvironmentComponent {
         connector = new XConnectorEpoll(socketConfig, new XClientConnectionHandler(xServer), new XClientRequestHandler());
         connector.setInitialInputBufferCapacity(262144);
         connector.setCanReceiveAncillaryMessages(true);
+        connector.setBatchedDispatch(true);
+        if (trafficRecordingFile != null) {
+            try {
+                connector.setTrafficRecorder(new TrafficRecorder(trafficRecordingFile));
+            }
+            catch (IOException e) {
+                Log.e("XServerComponent", "Failed to start traffic recording: " + e);
+            }
+        }
         connector.start();
     }
 
@@ -36,6 +50,15 @@ public class XServerComponent extends EnvironmentComponent {
             connector.stop();
             connector = null;
         }
+        xServer.vsyncClock.stop();
+
+        if (xServer.requestProfiler.isEnabled() && environment != null) {
+            xServer.requestProfiler.writeReport(new File(environment.getImageFs().getTmpDir(), "x11_profile.json"));
+        }
+    }
+
+    public void setTrafficRecordingFile(File trafficRecordingFile) {
+        this.trafficRecordingFile = trafficRecordingFile;
     }
 
     public XServer getXServer() {
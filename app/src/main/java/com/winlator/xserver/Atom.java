@@ -1,31 +1,70 @@
 package com.winlator.xserver;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Global atom table. Lookups by name and by id never take a lock, interning a new name
+ * is serialized since the id space has to stay dense. Common atoms get their ids up front but
+ * only count as existing for InternAtom with only_if_exists once a client interned them.
+ */
 public abstract class Atom {
-    private static final ArrayList<String> atoms = new ArrayList<>(Arrays.asList(null, "PRIMARY", "SECONDARY", "ARC", "ATOM", "BITMAP", "CARDINAL", "COLORMAP", "CURSOR", "CUT_BUFFER0", "CUT_BUFFER1", "CUT_BUFFER2", "CUT_BUFFER3", "CUT_BUFFER4", "CUT_BUFFER5", "CUT_BUFFER6", "CUT_BUFFER7", "DRAWABLE", "FONT", "INTEGER", "PIXMAP", "POINT", "RECTANGLE", "RESOURCE_MANAGER", "RGB_COLOR_MAP", "RGB_BEST_MAP", "RGB_BLUE_MAP", "RGB_DEFAULT_MAP", "RGB_GRAY_MAP", "RGB_GREEN_MAP", "RGB_RED_MAP", "STRING", "VISUALID", "WINDOW", "WM_COMMAND", "WM_HINTS", "WM_CLIENT_MACHINE", "WM_ICON_NAME", "WM_ICON_SIZE", "WM_NAME", "WM_NORMAL_HINTS", "WM_SIZE_HINTS", "WM_ZOOM_HINTS", "MIN_SPACE", "NORM_SPACE", "MAX_SPACE", "END_SPACE", "SUPERSC.LPT_X", "SUPERSC.LPT_Y", "SUBSC.LPT_X", "SUBSC.LPT_Y", "UNDERLINE_POSITION", "UNDERLINE_THICKNESS", "STRIKEOUT_ASCENT", "STRIKEOUT_DESCENT", "ITALIC_ANGLE", "X_HEIGHT", "QUAD_WIDTH", "WEIGHT", "POINT_SIZE", "RESOLUTION", "COPYRIGHT", "NOTICE", "FONT_NAME", "FAMILY_NAME", "FULL_NAME", "CAP_HEIGHT", "WM_CLASS", "WM_TRANSIENT_FOR"));
+    private static final String[] PREDEFINED_ATOMS = {null, "PRIMARY", "SECONDARY", "ARC", "ATOM", "BITMAP", "CARDINAL", "COLORMAP", "CURSOR", "CUT_BUFFER0", "CUT_BUFFER1", "CUT_BUFFER2", "CUT_BUFFER3", "CUT_BUFFER4", "CUT_BUFFER5", "CUT_BUFFER6", "CUT_BUFFER7", "DRAWABLE", "FONT", "INTEGER", "PIXMAP", "POINT", "RECTANGLE", "RESOURCE_MANAGER", "RGB_COLOR_MAP", "RGB_BEST_MAP", "RGB_BLUE_MAP", "RGB_DEFAULT_MAP", "RGB_GRAY_MAP", "RGB_GREEN_MAP", "RGB_RED_MAP", "STRING", "VISUALID", "WINDOW", "WM_COMMAND", "WM_HINTS", "WM_CLIENT_MACHINE", "WM_ICON_NAME", "WM_ICON_SIZE", "WM_NAME", "WM_NORMAL_HINTS", "WM_SIZE_HINTS", "WM_ZOOM_HINTS", "MIN_SPACE", "NORM_SPACE", "MAX_SPACE", "END_SPACE", "SUPERSC.LPT_X", "SUPERSC.LPT_Y", "SUBSC.LPT_X", "SUBSC.LPT_Y", "UNDERLINE_POSITION", "UNDERLINE_THICKNESS", "STRIKEOUT_ASCENT", "STRIKEOUT_DESCENT", "ITALIC_ANGLE", "X_HEIGHT", "QUAD_WIDTH", "WEIGHT", "POINT_SIZE", "RESOLUTION", "COPYRIGHT", "NOTICE", "FONT_NAME", "FAMILY_NAME", "FULL_NAME", "CAP_HEIGHT", "WM_CLASS", "WM_TRANSIENT_FOR"};
+    private static final String[] COMMON_ATOMS = {"UTF8_STRING", "COMPOUND_TEXT", "TEXT", "CLIPBOARD", "TARGETS", "MULTIPLE", "TIMESTAMP", "INCR", "SAVE_TARGETS", "WM_PROTOCOLS", "WM_DELETE_WINDOW", "WM_TAKE_FOCUS", "WM_STATE", "WM_CHANGE_STATE", "WM_LOCALE_NAME", "WM_WINDOW_ROLE", "WM_CLIENT_LEADER", "_MOTIF_WM_HINTS", "_NET_SUPPORTED", "_NET_SUPPORTING_WM_CHECK", "_NET_ACTIVE_WINDOW", "_NET_CLIENT_LIST", "_NET_CURRENT_DESKTOP", "_NET_WORKAREA", "_NET_FRAME_EXTENTS", "_NET_STARTUP_INFO", "_NET_STARTUP_INFO_BEGIN", "_NET_WM_NAME", "_NET_WM_ICON_NAME", "_NET_WM_ICON", "_NET_WM_PID", "_NET_WM_PING", "_NET_WM_STATE", "_NET_WM_STATE_ABOVE", "_NET_WM_STATE_BELOW", "_NET_WM_STATE_DEMANDS_ATTENTION", "_NET_WM_STATE_FULLSCREEN", "_NET_WM_STATE_HIDDEN", "_NET_WM_STATE_MAXIMIZED_HORZ", "_NET_WM_STATE_MAXIMIZED_VERT", "_NET_WM_STATE_MODAL", "_NET_WM_STATE_SKIP_PAGER", "_NET_WM_STATE_SKIP_TASKBAR", "_NET_WM_STATE_STICKY", "_NET_WM_DESKTOP", "_NET_WM_MOVERESIZE", "_NET_WM_USER_TIME", "_NET_WM_USER_TIME_WINDOW", "_NET_WM_FULLSCREEN_MONITORS", "_NET_WM_BYPASS_COMPOSITOR", "_NET_WM_WINDOW_OPACITY", "_NET_WM_WINDOW_TYPE", "_NET_WM_WINDOW_TYPE_DIALOG", "_NET_WM_WINDOW_TYPE_DROPDOWN_MENU", "_NET_WM_WINDOW_TYPE_MENU", "_NET_WM_WINDOW_TYPE_NORMAL", "_NET_WM_WINDOW_TYPE_POPUP_MENU", "_NET_WM_WINDOW_TYPE_TOOLTIP", "_NET_WM_WINDOW_TYPE_UTILITY", "_NET_WM_HWND", "_NET_WM_WOW64", "_NET_SYSTEM_TRAY_OPCODE", "_NET_SYSTEM_TRAY_S0", "_XEMBED", "_XEMBED_INFO", "_GTK_WORKAREAS_D0", "_ICC_PROFILE", "_WINE_HWND_STYLE", "_WINE_HWND_EXSTYLE", "_WINE_XDND", "_WINE_ALLOW_FLIP", "_WINE_DISABLE_FULLSCREEN_HACK", "XdndAware", "XdndEnter", "XdndPosition", "XdndStatus", "XdndLeave", "XdndFinished", "XdndDrop", "XdndActionCopy", "XdndActionMove", "XdndActionLink", "XdndActionAsk", "XdndActionPrivate", "XdndSelection", "XdndTypeList", "text/plain", "text/plain;charset=utf-8", "text/html", "text/rtf", "text/richtext", "text/uri-list", "image/png", "image/bmp", "image/jpeg", "image/tiff", "HTML Format", "Rich Text Format", "WCF_DIB", "WCF_BITMAP", "WCF_METAFILEPICT", "WCF_SYLK", "WCF_DIF", "WCF_TIFF", "WCF_OEMTEXT", "WCF_PALETTE", "WCF_PENDATA", "WCF_RIFF", "WCF_WAVE", "WCF_ENHMETAFILE", "WCF_HDROP", "WCF_LOCALE", "WCF_DIBV5"};
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static final Set<String> seededOnly = ConcurrentHashMap.newKeySet();
+    private static volatile String[] names = new String[512];
+    private static volatile int count = 0;
 
-    public synchronized static String getName(int id) {
-        return atoms.get(id);
+    static {
+        for (String name : PREDEFINED_ATOMS) add(name);
+        for (String name : COMMON_ATOMS) {
+            add(name);
+            seededOnly.add(name);
+        }
+    }
+
+    private static int add(String name) {
+        int id = count;
+        if (id == names.length) names = Arrays.copyOf(names, id * 2);
+        names[id] = name;
+        count = id + 1;
+        if (name != null) ids.put(name, id);
+        return id;
+    }
+
+    public static String getName(int id) {
+        if (id < 0 || id >= count) throw new IndexOutOfBoundsException("Invalid atom id " + id);
+        return names[id];
     }
 
-    public synchronized static int getId(String name) {
+    public static int getId(String name) {
         if (name == null) return 0;
-        for (int i = 0; i < atoms.size(); i++) if (name.equals(atoms.get(i))) return i;
-        return -1;
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
     }
 
-    public synchronized static int internAtom(String name) {
+    /** Like getId() but returns -1 for a pre-seeded atom that no client interned yet. */
+    public static int getInternedId(String name) {
         int id = getId(name);
-        if (id == -1) {
-            id = atoms.size();
-            atoms.add(name);
+        return id != -1 && seededOnly.contains(name) ? -1 : id;
+    }
+
+    public static int internAtom(String name) {
+        int id = getId(name);
+        if (id != -1) {
+            if (!seededOnly.isEmpty()) seededOnly.remove(name);
+            return id;
+        }
+
+        synchronized (Atom.class) {
+            id = getId(name);
+            return id != -1 ? id : add(name);
         }
-        return id;
     }
 
-    public synchronized static boolean isValid(int id) {
-        return id > 0 && id < atoms.size();
+    public static boolean isValid(int id) {
+        return id > 0 && id < count;
     }
 }
@@ -109,23 +109,21 @@ public class Drawable extends XResource {
         }
         if (depth == 1) {
             drawBitmap(width, height, data, byteBuffer);
-        }
-        else {
-            if (depth == 24 || depth == 32) {
-                dstX = (short)Mathf.clamp(dstX, 0, this.width-1);
-                dstY = (short)Mathf.clamp(dstY, 0, this.height-1);
-                if ((dstX + width) > this.width) width = (short)((this.width - dstX));
-                if ((dstY + height) > this.height) height = (short)((this.height - dstY));
-
-                copyArea(srcX, srcY, dstX, dstY, width, height, totalWidth, this.getStride(), data, this.data);
-            }
             this.data.rewind();
             data.rewind();
             forceUpdate();
         }
-        this.data.rewind();
-        data.rewind();
-        forceUpdate();
+        else if (depth == 24 || depth == 32) {
+            dstX = (short)Mathf.clamp(dstX, 0, this.width-1);
+            dstY = (short)Mathf.clamp(dstY, 0, this.height-1);
+            if ((dstX + width) > this.width) width = (short)((this.width - dstX));
+            if ((dstY + height) > this.height) height = (short)((this.height - dstY));
+
+            copyArea(srcX, srcY, dstX, dstY, width, height, totalWidth, this.getStride(), data, this.data);
+            this.data.rewind();
+            data.rewind();
+            forceUpdate(dstX, dstY, width, height);
+        }
     }
 
     public ByteBuffer getImage(short x, short y, short width, short height) {
@@ -145,6 +143,16 @@ public class Drawable extends XResource {
         return dstData;
     }
 
+    public ByteBuffer getImageRegion(short x, short y, short width, short height) {
+        if (this.data == null || x != 0 || width != this.width || this.getStride() != this.width) return null;
+        if (y < 0 || height <= 0 || (y + height) > this.height) return null;
+
+        int offset = y * width * 4;
+        ByteBuffer region = this.data.duplicate();
+        region.limit(offset + width * height * 4).position(offset);
+        return region.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
     public void copyArea(short srcX, short srcY, short dstX, short dstY, short width, short height, Drawable drawable) {
         copyArea(srcX, srcY, dstX, dstY, width, height, drawable, GraphicsContext.Function.COPY);
     }
@@ -163,7 +171,7 @@ public class Drawable extends XResource {
 
             this.data.rewind();
             drawable.data.rewind();
-            forceUpdate();
+            forceUpdate(dstX, dstY, width, height);
         }
     }
 
@@ -182,7 +190,7 @@ public class Drawable extends XResource {
 
         fillRect((short)x, (short)y, (short)width, (short)height, color, this.getStride(), this.data);
         this.data.rewind();
-        forceUpdate();
+        forceUpdate(x, y, width, height);
     }
 
     public void drawLines(int color, int lineWidth, short... points) {
@@ -203,7 +211,7 @@ public class Drawable extends XResource {
         drawLine((short)x0, (short)y0, (short)x1, (short)y1, color, (short)lineWidth, this.getStride(), this.data);
 
         this.data.rewind();
-        forceUpdate();
+        forceUpdate(Math.min(x0, x1), Math.min(y0, y1), Math.abs(x1 - x0) + lineWidth, Math.abs(y1 - y0) + lineWidth);
     }
 
     public void drawAlphaMaskedBitmap(byte foreRed, byte foreGreen, byte foreBlue, byte backRed, byte backGreen, byte backBlue, Drawable srcDrawable, Drawable maskDrawable) {
@@ -230,6 +238,16 @@ public class Drawable extends XResource {
         }
     }
 
+    public void forceUpdate(int x, int y, int width, int height) {
+        if (!this.offscreenStorage) {
+            this.texture.addDirtyRegion(x, y, width, height);
+            Runnable runnable = this.onDrawListener;
+            if (runnable != null) {
+                runnable.run();
+            }
+        }
+    }
+
     public boolean isUseSharedData() {
         return this.useSharedData;
     }
@@ -1,7 +1,5 @@
 package com.winlator.xserver;
 
-import android.util.SparseArray;
-
 import com.winlator.core.Callback;
 import com.winlator.renderer.Texture;
 import com.winlator.widget.XServerView;
@@ -11,7 +9,7 @@ import java.util.Objects;
 
 public class DrawableManager extends XResourceManager implements XResourceManager.OnResourceLifecycleListener {
     private final XServer xServer;
-    private final SparseArray<Drawable> drawables = new SparseArray<>();
+    private final ResourceMap<Drawable> drawables = new ResourceMap<>();
 
     public DrawableManager(XServer xServer) {
         this.xServer = xServer;
@@ -28,7 +26,7 @@ public class DrawableManager extends XResourceManager implements XResourceManage
 
     public Drawable createDrawable(int id, short width, short height, Visual visual) {
         if (id == 0) return new Drawable(id, width, height, visual);
-        if (drawables.indexOfKey(id) >= 0) return null;
+        if (drawables.containsKey(id)) return null;
         Drawable drawable = new Drawable(id, width, height, visual);
         drawables.put(id, drawable);
         return drawable;
@@ -61,7 +59,7 @@ public class DrawableManager extends XResourceManager implements XResourceManage
         return xServer.pixmapManager.visual;
     }
 
-    public SparseArray<Drawable> all(){
+    public ResourceMap<Drawable> all(){
         return drawables;
     }
 }
@@ -1,18 +1,16 @@
 package com.winlator.xserver;
 
-import android.util.SparseArray;
-
 import com.winlator.xconnector.XInputStream;
 
 public class GraphicsContextManager extends XResourceManager {
-    private final SparseArray<GraphicsContext> graphicsContexts = new SparseArray<>();
+    private final ResourceMap<GraphicsContext> graphicsContexts = new ResourceMap<>();
 
     public GraphicsContext getGraphicsContext(int id) {
         return graphicsContexts.get(id);
     }
 
     public GraphicsContext createGraphicsContext(int id, Drawable drawable) {
-        if (graphicsContexts.indexOfKey(id) >= 0) return null;
+        if (graphicsContexts.containsKey(id)) return null;
         GraphicsContext graphicsContext = new GraphicsContext(id, drawable);
         graphicsContexts.put(id, graphicsContext);
         triggerOnCreateResourceListener(graphicsContext);
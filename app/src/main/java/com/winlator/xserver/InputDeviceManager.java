@@ -17,6 +17,11 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
     private static final byte MOUSE_WHEEL_DELTA = 120;
     private Window pointWindow;
     private final XServer xServer;
+    private final MotionNotify motionNotify = new MotionNotify();
+    private final KeyPress keyPress = new KeyPress();
+    private final KeyRelease keyRelease = new KeyRelease();
+    private final ButtonPress buttonPress = new ButtonPress();
+    private final ButtonRelease buttonRelease = new ButtonRelease();
 
     public InputDeviceManager(XServer xServer) {
         this.xServer = xServer;
@@ -82,22 +87,6 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
         }
     }
 
-    private void sendEvent(Window window, Bitmask eventMask, Event event) {
-        Window grabWindow = xServer.grabManager.getWindow();
-        if (grabWindow != null && grabWindow.attributes.isEnabled()) {
-            EventListener eventListener = xServer.grabManager.getEventListener();
-            if (xServer.grabManager.isOwnerEvents() && window != null) {
-                window.sendEvent(eventMask, event, eventListener.client);
-            }
-            else if (eventListener.isInterestedIn(eventMask)) {
-                eventListener.sendEvent(event);
-            }
-        }
-        else if (window != null && window.attributes.isEnabled()) {
-            window.sendEvent(eventMask, event);
-        }
-    }
-
     public void sendEnterLeaveNotify(Window windowA, Window windowB, PointerWindowEvent.Mode mode) {
         if (windowA == windowB) return;
         short x = xServer.pointer.getX();
@@ -139,15 +128,15 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
             }
 
             if (grabWindow != null && grabWindow.attributes.isEnabled()) {
-                Bitmask eventMask = createPointerEventMask();
-                eventMask.unset(button.flag());
+                int eventMask = createPointerEventMask() & ~button.flag();
 
                 short x = xServer.pointer.getX();
                 short y = xServer.pointer.getY();
-                short[] localPoint = grabWindow.rootPointToLocal(x, y);
+                short localX = (short)(x - grabWindow.getRootX());
+                short localY = (short)(y - grabWindow.getRootY());
 
                 Window child = grabWindow.isAncestorOf(pointWindow) ? pointWindow : null;
-                grabWindow.sendEvent(Event.BUTTON_PRESS, new ButtonPress(button.code(), xServer.windowManager.rootWindow, grabWindow, child, x, y, localPoint[0], localPoint[1], eventMask));
+                grabWindow.sendEvent(Event.BUTTON_PRESS, buttonPress.set(button.code(), xServer.windowManager.rootWindow, grabWindow, child, x, y, localX, localY, eventMask));
             }
         }
     }
@@ -159,20 +148,20 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
             winHandler.mouseEvent(MouseEventFlags.getFlagFor(button, false), 0, 0, 0);
         }
         else {
-            Bitmask eventMask = createPointerEventMask();
+            int eventMask = createPointerEventMask();
             Window grabWindow = xServer.grabManager.getWindow();
-            Window window = grabWindow == null || xServer.grabManager.isOwnerEvents() ? pointWindow.getAncestorWithEventMask(eventMask) : null;
+            Window window = grabWindow == null || xServer.grabManager.isOwnerEvents() ? pointWindow.getAncestorWithEventId(eventMask) : null;
 
             if (grabWindow != null || window != null) {
                 Window eventWindow = window != null ? window : grabWindow;
 
                 short x = xServer.pointer.getX();
                 short y = xServer.pointer.getY();
-                short[] localPoint = eventWindow.rootPointToLocal(x, y);
+                short localX = (short)(x - eventWindow.getRootX());
+                short localY = (short)(y - eventWindow.getRootY());
 
                 Window child = eventWindow.isAncestorOf(pointWindow) ? pointWindow : null;
-                ButtonRelease buttonRelease = new ButtonRelease(button.code(), xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], eventMask);
-                sendEvent(window, eventMask, buttonRelease);
+                sendEvent(window, eventMask, buttonRelease.set(button.code(), xServer.windowManager.rootWindow, eventWindow, child, x, y, localX, localY, eventMask));
             }
 
             if (xServer.pointer.getButtonMask().isEmpty() && xServer.grabManager.isReleaseWithButtons()) {
@@ -184,16 +173,17 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
     @Override
     public void onPointerMove(short x, short y) {
         updatePointWindow();
-        Bitmask eventMask = createPointerEventMask();
+        int eventMask = createPointerEventMask();
         Window grabWindow = xServer.grabManager.getWindow();
-        Window window = grabWindow == null || xServer.grabManager.isOwnerEvents() ? pointWindow.getAncestorWithEventMask(eventMask) : null;
+        Window window = grabWindow == null || xServer.grabManager.isOwnerEvents() ? pointWindow.getAncestorWithEventId(eventMask) : null;
 
         if (grabWindow != null || window != null) {
             Window eventWindow = window != null ? window : grabWindow;
-            short[] localPoint = eventWindow.rootPointToLocal(x, y);
+            short localX = (short)(x - eventWindow.getRootX());
+            short localY = (short)(y - eventWindow.getRootY());
 
             Window child = eventWindow.isAncestorOf(pointWindow) ? pointWindow : null;
-            sendEvent(window, eventMask, new MotionNotify(false, xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], getKeyButMask()));
+            sendEvent(window, eventMask, motionNotify.set((byte)0, xServer.windowManager.rootWindow, eventWindow, child, x, y, localX, localY, getKeyButState()));
         }
     }
 
@@ -216,17 +206,18 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
 
         if (!eventWindow.attributes.isEnabled()) return;
 
-        Bitmask keyButMask = getKeyButMask();
+        int keyButState = getKeyButState();
         short x = xServer.pointer.getX();
         short y = xServer.pointer.getY();
-        short[] localPoint = eventWindow.rootPointToLocal(x, y);
+        short localX = (short)(x - eventWindow.getRootX());
+        short localY = (short)(y - eventWindow.getRootY());
 
         if (keysym != 0 && !xServer.keyboard.hasKeysym(keycode, keysym)) {
             xServer.keyboard.setKeysyms(keycode, keysym, keysym);
             eventWindow.sendEvent(new MappingNotify(MappingNotify.Request.KEYBOARD, keycode, 1));
         }
 
-        eventWindow.sendEvent(Event.KEY_PRESS, new KeyPress(keycode, xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], keyButMask));
+        eventWindow.sendEvent(Event.KEY_PRESS, keyPress.set(keycode, xServer.windowManager.rootWindow, eventWindow, child, x, y, localX, localY, keyButState));
     }
 
     @Override
@@ -248,45 +239,46 @@ public class InputDeviceManager implements Pointer.OnPointerMotionListener, Keyb
 
         if (!eventWindow.attributes.isEnabled()) return;
 
-        Bitmask keyButMask = getKeyButMask();
+        int keyButState = getKeyButState();
         short x = xServer.pointer.getX();
         short y = xServer.pointer.getY();
-        short[] localPoint = eventWindow.rootPointToLocal(x, y);
+        short localX = (short)(x - eventWindow.getRootX());
+        short localY = (short)(y - eventWindow.getRootY());
 
-        eventWindow.sendEvent(Event.KEY_RELEASE, new KeyRelease(keycode, xServer.windowManager.rootWindow, eventWindow, child, x, y, localPoint[0], localPoint[1], keyButMask));
+        eventWindow.sendEvent(Event.KEY_RELEASE, keyRelease.set(keycode, xServer.windowManager.rootWindow, eventWindow, child, x, y, localX, localY, keyButState));
     }
 
-    private Bitmask createPointerEventMask() {
-        Bitmask eventMask = new Bitmask();
-        eventMask.set(Event.POINTER_MOTION);
+    private int createPointerEventMask() {
+        int eventMask = Event.POINTER_MOTION;
 
         Bitmask buttonMask = xServer.pointer.getButtonMask();
         if (!buttonMask.isEmpty()) {
-            eventMask.set(Event.BUTTON_MOTION);
+            eventMask |= Event.BUTTON_MOTION;
 
             if (buttonMask.isSet(Pointer.Button.BUTTON_LEFT.flag())) {
-                eventMask.set(Event.BUTTON1_MOTION);
+                eventMask |= Event.BUTTON1_MOTION;
             }
             if (buttonMask.isSet(Pointer.Button.BUTTON_MIDDLE.flag())) {
-                eventMask.set(Event.BUTTON2_MOTION);
+                eventMask |= Event.BUTTON2_MOTION;
             }
             if (buttonMask.isSet(Pointer.Button.BUTTON_RIGHT.flag())) {
-                eventMask.set(Event.BUTTON3_MOTION);
+                eventMask |= Event.BUTTON3_MOTION;
             }
             if (buttonMask.isSet(Pointer.Button.BUTTON_SCROLL_UP.flag())) {
-                eventMask.set(Event.BUTTON4_MOTION);
+                eventMask |= Event.BUTTON4_MOTION;
             }
             if (buttonMask.isSet(Pointer.Button.BUTTON_SCROLL_DOWN.flag())) {
-                eventMask.set(Event.BUTTON5_MOTION);
+                eventMask |= Event.BUTTON5_MOTION;
             }
         }
         return eventMask;
     }
 
     public Bitmask getKeyButMask() {
-        Bitmask keyButMask = new Bitmask();
-        keyButMask.join(xServer.pointer.getButtonMask());
-        keyButMask.join(xServer.keyboard.getModifiersMask());
-        return keyButMask;
+        return new Bitmask(getKeyButState());
+    }
+
+    public int getKeyButState() {
+        return xServer.pointer.getButtonMask().getBits() | xServer.keyboard.getModifiersMask().getBits();
     }
 }
@@ -20,8 +20,8 @@ public class Pointer {
     private final ArrayList<OnPointerMotionListener> onPointerMotionListeners = new ArrayList<>();
     private final Bitmask buttonMask = new Bitmask();
     private final XServer xServer;
-    private short x;
-    private short y;
+    private volatile short x;
+    private volatile short y;
 
     public interface OnPointerMotionListener {
         default void onPointerButtonPress(Button button) {}
@@ -0,0 +1,216 @@
+package com.winlator.xserver;
+
+import android.util.Log;
+
+import com.winlator.core.LatencyHistogram;
+import com.winlator.xserver.extensions.Extension;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+
+/**
+ * Opt-in per-request statistics for the X server: counts, request bytes and handling time
+ * per core opcode and per extension minor opcode, plus a per-client breakdown. While disabled
+ * the request handler only reads one volatile flag per request.
+ */
+public class RequestProfiler {
+    private final XServer xServer;
+    private volatile boolean enabled = false;
+    private final ResourceMap<OpcodeStats> opcodeStats = new ResourceMap<>();
+    private final ResourceMap<ClientStats> clientStats = new ResourceMap<>();
+    private long startTime = System.nanoTime();
+    private static String[] coreOpcodeNames;
+
+    public static class OpcodeStats {
+        public final int key;
+        public long count;
+        public long bytes;
+        public final LatencyHistogram latency = new LatencyHistogram();
+
+        private OpcodeStats(int key) {
+            this.key = key;
+        }
+    }
+
+    private static class ClientStats {
+        private final int resourceIDBase;
+        private final ResourceMap<long[]> opcodes = new ResourceMap<>();
+        private long count;
+        private long bytes;
+        private long totalTime;
+
+        private ClientStats(int resourceIDBase) {
+            this.resourceIDBase = resourceIDBase;
+        }
+    }
+
+    public RequestProfiler(XServer xServer) {
+        this.xServer = xServer;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled) reset();
+        this.enabled = enabled;
+    }
+
+    public synchronized void reset() {
+        opcodeStats.clear();
+        clientStats.clear();
+        startTime = System.nanoTime();
+    }
+
+    private static int keyFor(byte opcode, byte requestData) {
+        return opcode < 0 ? ((opcode & 0xff) << 8) | (requestData & 0xff) : opcode;
+    }
+
+    public synchronized void record(XClient client, byte opcode, byte requestData, int length, long duration) {
+        int key = keyFor(opcode, requestData);
+
+        OpcodeStats stats = opcodeStats.get(key);
+        if (stats == null) opcodeStats.put(key, stats = new OpcodeStats(key));
+        stats.count++;
+        stats.bytes += length;
+        stats.latency.record(duration);
+
+        ClientStats clientStats = this.clientStats.get(client.resourceIDBase);
+        if (clientStats == null) this.clientStats.put(client.resourceIDBase, clientStats = new ClientStats(client.resourceIDBase));
+        clientStats.count++;
+        clientStats.bytes += length;
+        clientStats.totalTime += duration;
+
+        long[] clientOpcode = clientStats.opcodes.get(key);
+        if (clientOpcode == null) clientStats.opcodes.put(key, clientOpcode = new long[3]);
+        clientOpcode[0]++;
+        clientOpcode[1] += length;
+        clientOpcode[2] += duration;
+    }
+
+    private static synchronized String getCoreOpcodeName(int opcode) {
+        if (coreOpcodeNames == null) {
+            coreOpcodeNames = new String[128];
+            for (Field field : ClientOpcodes.class.getFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) || field.getType() != byte.class) continue;
+                try {
+                    coreOpcodeNames[field.getByte(null) & 0x7f] = field.getName();
+                }
+                catch (IllegalAccessException e) {}
+            }
+        }
+        String name = coreOpcodeNames[opcode & 0x7f];
+        return name != null ? name : "OPCODE_"+opcode;
+    }
+
+    public String getOpcodeName(int key) {
+        if (key < 128) return getCoreOpcodeName(key);
+        byte majorOpcode = (byte)(key >> 8);
+        Extension extension = xServer.extensions.get(majorOpcode);
+        return (extension != null ? extension.getName() : "EXTENSION_"+(key >> 8))+":"+(key & 0xff);
+    }
+
+    private ArrayList<OpcodeStats> sortedByTotalTime() {
+        ArrayList<OpcodeStats> result = new ArrayList<>(opcodeStats.size());
+        for (int i = 0; i < opcodeStats.capacity(); i++) {
+            OpcodeStats stats = opcodeStats.valueAt(i);
+            if (stats != null) result.add(stats);
+        }
+        Collections.sort(result, (a, b) -> Long.compare(b.latency.getTotalValue(), a.latency.getTotalValue()));
+        return result;
+    }
+
+    /**
+     * One line per opcode for the overlay, sorted by total handling time.
+     */
+    public synchronized String getSummary(int maxLines) {
+        double elapsedSeconds = Math.max(1e-3, (System.nanoTime() - startTime) / 1e9);
+        StringBuilder sb = new StringBuilder();
+        ArrayList<OpcodeStats> sorted = sortedByTotalTime();
+        for (int i = 0; i < Math.min(maxLines, sorted.size()); i++) {
+            OpcodeStats stats = sorted.get(i);
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(String.format(Locale.ENGLISH, "%-22s %7.0f/s %8.1fKB/s p50 %5.0fus p99 %6.0fus",
+                getOpcodeName(stats.key),
+                stats.count / elapsedSeconds,
+                stats.bytes / elapsedSeconds / 1024.0,
+                stats.latency.getValueAtPercentile(50) / 1000.0,
+                stats.latency.getValueAtPercentile(99) / 1000.0));
+        }
+        return sb.toString();
+    }
+
+    public synchronized JSONObject toJSON() throws JSONException {
+        JSONObject report = new JSONObject();
+        report.put("durationSec", (System.nanoTime() - startTime) / 1e9);
+
+        JSONArray opcodes = new JSONArray();
+        for (OpcodeStats stats : sortedByTotalTime()) {
+            LatencyHistogram latency = stats.latency;
+            JSONObject opcode = new JSONObject();
+            opcode.put("name", getOpcodeName(stats.key));
+            opcode.put("majorOpcode", stats.key < 128 ? stats.key : stats.key >> 8);
+            if (stats.key >= 128) opcode.put("minorOpcode", stats.key & 0xff);
+            opcode.put("count", stats.count);
+            opcode.put("bytes", stats.bytes);
+            opcode.put("totalNs", latency.getTotalValue());
+            opcode.put("meanNs", Math.round(latency.getMean()));
+            opcode.put("minNs", latency.getMinValue());
+            opcode.put("p50Ns", latency.getValueAtPercentile(50));
+            opcode.put("p90Ns", latency.getValueAtPercentile(90));
+            opcode.put("p99Ns", latency.getValueAtPercentile(99));
+            opcode.put("p999Ns", latency.getValueAtPercentile(99.9));
+            opcode.put("maxNs", latency.getMaxValue());
+            opcodes.put(opcode);
+        }
+        report.put("opcodes", opcodes);
+
+        JSONArray clients = new JSONArray();
+        for (int i = 0; i < clientStats.capacity(); i++) {
+            ClientStats stats = clientStats.valueAt(i);
+            if (stats == null) continue;
+            JSONObject client = new JSONObject();
+            client.put("resourceIDBase", String.format("0x%08x", stats.resourceIDBase));
+            client.put("count", stats.count);
+            client.put("bytes", stats.bytes);
+            client.put("totalNs", stats.totalTime);
+
+            JSONObject clientOpcodes = new JSONObject();
+            for (int j = 0; j < stats.opcodes.capacity(); j++) {
+                long[] values = stats.opcodes.valueAt(j);
+                if (values == null) continue;
+                JSONObject clientOpcode = new JSONObject();
+                clientOpcode.put("count", values[0]);
+                clientOpcode.put("bytes", values[1]);
+                clientOpcode.put("totalNs", values[2]);
+                clientOpcodes.put(getOpcodeName(stats.opcodes.keyAt(j)), clientOpcode);
+            }
+            client.put("opcodes", clientOpcodes);
+            clients.put(client);
+        }
+        report.put("clients", clients);
+        return report;
+    }
+
+    public boolean writeReport(File file) {
+        try (FileWriter writer = new FileWriter(file, false)) {
+            writer.write(toJSON().toString(2));
+            return true;
+        }
+        catch (IOException | JSONException e) {
+            Log.e("RequestProfiler", "Failed to write report to "+file, e);
+            return false;
+        }
+    }
+}
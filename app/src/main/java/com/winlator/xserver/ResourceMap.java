@@ -0,0 +1,165 @@
+package com.winlator.xserver;
+
+import com.winlator.core.Callback;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from X resource ids to objects. Insertions and removals are O(1)
+ * on average, removal uses backward shifting so no tombstones are left behind.
+ * Slots can be walked with capacity()/keyAt()/valueAt(), empty slots return null.
+ */
+public class ResourceMap<T> {
+    private static final float LOAD_FACTOR = 0.5f;
+    private int[] keys;
+    private Object[] values;
+    private int size = 0;
+    private int mask;
+    private int shift;
+
+    public ResourceMap() {
+        this(16);
+    }
+
+    public ResourceMap(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(8, (int)(initialCapacity / LOAD_FACTOR) - 1) << 1);
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    private int indexFor(int key) {
+        return (key * 0x9e3779b9) >>> shift;
+    }
+
+    private int indexOfKey(int key) {
+        int index = indexFor(key);
+        while (values[index] != null) {
+            if (keys[index] == key) return index;
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public int keyAt(int index) {
+        return keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T valueAt(int index) {
+        return (T)values[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int key) {
+        int index = indexOfKey(key);
+        return index >= 0 ? (T)values[index] : null;
+    }
+
+    public boolean containsKey(int key) {
+        return indexOfKey(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T put(int key, T value) {
+        if (value == null) return remove(key);
+
+        int index = indexFor(key);
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                T oldValue = (T)values[index];
+                values[index] = value;
+                return oldValue;
+            }
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        if (++size > values.length * LOAD_FACTOR) rehash(values.length << 1);
+        return null;
+    }
+
+    public T remove(int key) {
+        int index = indexOfKey(key);
+        return index >= 0 ? removeAt(index) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T removeAt(int index) {
+        T oldValue = (T)values[index];
+        if (oldValue == null) return null;
+
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (values[next] != null) {
+            int ideal = indexFor(keys[next]);
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+
+        keys[hole] = 0;
+        values[hole] = null;
+        size--;
+        return oldValue;
+    }
+
+    /**
+     * Removes every entry whose key lies in the id range of one client in a single
+     * sweep over the table. The callback must not modify this map.
+     */
+    public int removeInterval(int idBase, int idMask, Callback<T> onRemove) {
+        int removed = 0;
+        int index = 0;
+        while (index < values.length) {
+            if (values[index] != null && (keys[index] | idMask) == (idBase | idMask)) {
+                T value = removeAt(index);
+                if (onRemove != null) onRemove.call(value);
+                removed++;
+            }
+            else index++;
+        }
+        return removed;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            int index = indexFor(oldKeys[i]);
+            while (values[index] != null) index = (index + 1) & mask;
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+}
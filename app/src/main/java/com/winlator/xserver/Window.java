@@ -1,7 +1,5 @@
 package com.winlator.xserver;
 
-import android.util.SparseArray;
-
 import com.winlator.xserver.events.Event;
 import com.winlator.xserver.events.PropertyNotify;
 
@@ -30,7 +28,7 @@ public class Window extends XResource {
     private Window parent;
     public final XClient originClient;
     public final WindowAttributes attributes = new WindowAttributes(this);
-    private final SparseArray<Property> properties = new SparseArray<>();
+    private final ResourceMap<Property> properties = new ResourceMap<>();
     private final ArrayList<Window> children = new ArrayList<>();
     private final List<Window> immutableChildren = Collections.unmodifiableList(children);
     private final ArrayList<EventListener> eventListeners = new ArrayList<>();
@@ -237,8 +235,8 @@ public class Window extends XResource {
     }
 
     public boolean hasEventListenerFor(int eventId) {
-        for (EventListener eventListener : eventListeners) {
-            if (eventListener.isInterestedIn(eventId)) return true;
+        for (int i = 0; i < eventListeners.size(); i++) {
+            if (eventListeners.get(i).isInterestedIn(eventId)) return true;
         }
         return false;
     }
@@ -251,7 +249,8 @@ public class Window extends XResource {
     }
 
     public void sendEvent(int eventId, Event event) {
-        for (EventListener eventListener : eventListeners) {
+        for (int i = 0; i < eventListeners.size(); i++) {
+            EventListener eventListener = eventListeners.get(i);
             if (eventListener.isInterestedIn(eventId)) {
                 eventListener.sendEvent(event);
             }
@@ -267,7 +266,8 @@ public class Window extends XResource {
     }
 
     public void sendEvent(int eventId, Event event, XClient client) {
-        for (EventListener eventListener : eventListeners) {
+        for (int i = 0; i < eventListeners.size(); i++) {
+            EventListener eventListener = eventListeners.get(i);
             if (eventListener.isInterestedIn(eventId) && eventListener.client == client) {
                 eventListener.sendEvent(event);
             }
@@ -287,8 +287,9 @@ public class Window extends XResource {
     }
 
     public boolean containsPoint(short rootX, short rootY) {
-        short[] localPoint = rootPointToLocal(rootX, rootY);
-        return localPoint[0] >= 0 && localPoint[1] >= 0 && localPoint[0] < width && localPoint[1] < height;
+        short localX = (short)(rootX - getRootX());
+        short localY = (short)(rootY - getRootY());
+        return localX >= 0 && localY >= 0 && localX < width && localY < height;
     }
 
     public short[] rootPointToLocal(short x, short y) {
@@ -408,8 +409,9 @@ public class Window extends XResource {
 
     public String serializeProperties() {
         String result = "";
-        for (int i = 0; i < properties.size(); i++) {
+        for (int i = 0; i < properties.capacity(); i++) {
             Property property = properties.valueAt(i);
+            if (property == null) continue;
             result += property.nameAsString()+"="+property+"\n";
         }
         return result;
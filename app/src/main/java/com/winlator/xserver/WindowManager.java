@@ -1,7 +1,5 @@
 package com.winlator.xserver;
 
-import android.util.SparseArray;
-
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xserver.errors.BadIdChoice;
 import com.winlator.xserver.errors.BadMatch;
@@ -22,7 +20,7 @@ import java.util.List;
 public class WindowManager extends XResourceManager {
     public enum FocusRevertTo {NONE, POINTER_ROOT, PARENT}
     public final Window rootWindow;
-    private final SparseArray<Window> windows = new SparseArray<>();
+    private final ResourceMap<Window> windows = new ResourceMap<>();
     public final DrawableManager drawableManager;
     private Window focusedWindow;
     private FocusRevertTo focusRevertTo = FocusRevertTo.NONE;
@@ -58,7 +56,7 @@ public class WindowManager extends XResourceManager {
     }
 
     public Window findWindowWithProcessId(int processId) {
-        for (int i = 0; i < windows.size(); i++) {
+        for (int i = 0; i < windows.capacity(); i++) {
             Window window = windows.valueAt(i);
             if (window != null && window.getProcessId() == processId) return window;
         }
@@ -147,7 +145,7 @@ public class WindowManager extends XResourceManager {
     }
 
     public Window createWindow(int id, Window parent, short x, short y, short width, short height, WindowAttributes.WindowClass windowClass, Visual visual, byte depth, XClient client) throws XRequestError {
-        if (windows.indexOfKey(id) >= 0) throw new BadIdChoice(id);
+        if (windows.containsKey(id)) throw new BadIdChoice(id);
 
         boolean isInputOutput = false;
         switch (windowClass) {
@@ -283,6 +281,7 @@ public class WindowManager extends XResourceManager {
         Window oldParent = window.getParent();
         if (oldParent != null) oldParent.removeChild(window);
         newParent.addChild(window);
+        if (window.attributes.isMapped()) triggerOnChangeWindowZOrder(window);
     }
 
     public Window findPointWindow(short rootX, short rootY) {
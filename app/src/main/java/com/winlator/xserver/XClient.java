@@ -7,7 +7,6 @@ import com.winlator.xconnector.XOutputStream;
 import com.winlator.xserver.events.Event;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 public class XClient implements XResourceManager.OnResourceLifecycleListener {
     public final XServer xServer;
@@ -20,14 +19,14 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
     private final XInputStream inputStream;
     private final XOutputStream outputStream;
     private final ArrayMap<Window, EventListener> eventListeners = new ArrayMap<>();
-    private final ArrayList<XResource> resources = new ArrayList<>();
+    private final ResourceMap<XResource> resources = new ResourceMap<>();
 
     public XClient(XServer xServer, XInputStream inputStream, XOutputStream outputStream) {
         this.xServer = xServer;
         this.inputStream = inputStream;
         this.outputStream = outputStream;
 
-        try (XLock lock = xServer.lockAll()) {
+        try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER, XServer.Lockable.CURSOR_MANAGER)) {
             resourceIDBase = xServer.resourceIDs.get();
             xServer.windowManager.addOnResourceLifecycleListener(this);
             xServer.pixmapManager.addOnResourceLifecycleListener(this);
@@ -37,7 +36,7 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
     }
 
     public void registerAsOwnerOfResource(XResource resource) {
-        resources.add(resource);
+        resources.put(resource.id, resource);
     }
 
     public void setEventListenerForWindow(Window window, Bitmask eventMask) {
@@ -73,8 +72,10 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
 
     public void freeResources() {
         try (XLock lock = xServer.lockAll()) {
+            int index = 0;
             while (!resources.isEmpty()) {
-                XResource resource = resources.remove(resources.size()-1);
+                while (resources.valueAt(index) == null) index = (index + 1) % resources.capacity();
+                XResource resource = resources.removeAt(index);
                 if (resource instanceof Window) {
                     xServer.windowManager.destroyWindow(resource.id);
                 }
@@ -94,6 +95,7 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
                 eventListeners.keyAt(i).removeEventListener(eventListeners.removeAt(i));
             }
 
+            xServer.pixmapManager.freeClientPixmaps(resourceIDBase, xServer.resourceIDs.idMask);
             xServer.windowManager.removeOnResourceLifecycleListener(this);
             xServer.pixmapManager.removeOnResourceLifecycleListener(this);
             xServer.graphicsContextManager.removeOnResourceLifecycleListener(this);
@@ -152,7 +154,7 @@ public class XClient implements XResourceManager.OnResourceLifecycleListener {
     @Override
     public void onFreeResource(XResource resource) {
         if (resource instanceof Window) eventListeners.remove(resource);
-        resources.remove(resource);
+        resources.remove(resource.id);
     }
 
     public boolean isValidResourceId(int id) {
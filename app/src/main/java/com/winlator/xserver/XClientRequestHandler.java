@@ -155,15 +155,22 @@ public class XClientRequestHandler implements RequestHandler {
         byte requestData = inputStream.readByte();
 
         int requestLength = inputStream.readUnsignedShort();
+        int headerLength = 4;
         if (requestLength != 0) {
             requestLength = requestLength * 4 - 4;
         }
         else if (inputStream.available() < 4) {
             return false;
         }
-        else requestLength = inputStream.readInt() * 4 - 8;
+        else {
+            requestLength = inputStream.readInt() * 4 - 8;
+            headerLength = 8;
+        }
         if (inputStream.available() < requestLength) return false;
 
+        RequestProfiler requestProfiler = client.xServer.requestProfiler;
+        long startTime = requestProfiler.isEnabled() ? System.nanoTime() : 0;
+
         client.generateSequenceNumber();
         client.setRequestData(requestData);
         client.setRequestLength(requestLength);
@@ -181,7 +188,7 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.GET_WINDOW_ATTRIBUTES:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         WindowRequests.getWindowAttributes(client, inputStream, outputStream);
                     }
                     break;
@@ -221,12 +228,12 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.GET_GEOMETRY:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.DRAWABLE_MANAGER)) {
                         WindowRequests.getGeometry(client, inputStream, outputStream);
                     }
                     break;
                 case ClientOpcodes.QUERY_TREE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         WindowRequests.queryTree(client, inputStream, outputStream);
                     }
                     break;
@@ -247,7 +254,8 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.GET_PROPERTY:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    boolean deleteProperty = client.getRequestData() == 1;
+                    try (XLock lock = deleteProperty ? client.xServer.lock(XServer.Lockable.WINDOW_MANAGER) : client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         WindowRequests.getProperty(client, inputStream, outputStream);
                     }
                     break;
@@ -257,7 +265,7 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.GET_SELECTION_OWNER:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         SelectionRequests.getSelectionOwner(client, inputStream, outputStream);
                     }
                     break;
@@ -277,12 +285,12 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.QUERY_POINTER:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.INPUT_DEVICE)) {
                         WindowRequests.queryPointer(client, inputStream, outputStream);
                     }
                     break;
                 case ClientOpcodes.TRANSLATE_COORDINATES:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         WindowRequests.translateCoordinates(client, inputStream, outputStream);
                     }
                     break;
@@ -297,12 +305,12 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.GET_INPUT_FOCUS:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         WindowRequests.getInputFocus(client, inputStream, outputStream);
                     }
                     break;
                 case ClientOpcodes.QUERY_KEYMAP:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.WINDOW_MANAGER)) {
                         outputStream.writeByte(RESPONSE_CODE_SUCCESS);
                         outputStream.writeByte((byte) 0);
                         outputStream.writeShort(client.getSequenceNumber());
@@ -350,12 +358,12 @@ public class XClientRequestHandler implements RequestHandler {
                     }
                     break;
                 case ClientOpcodes.COPY_AREA:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
+                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
                         DrawRequests.copyArea(client, inputStream, outputStream);
                     }
                     break;
                 case ClientOpcodes.POLY_LINE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
+                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
                         DrawRequests.polyLine(client, inputStream, outputStream);
                     }
                     break;
@@ -366,12 +374,12 @@ public class XClientRequestHandler implements RequestHandler {
                     client.skipRequest();
                     break;
                 case ClientOpcodes.POLY_FILL_RECTANGLE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
+                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
                         DrawRequests.polyFillRectangle(client, inputStream, outputStream);
                     }
                     break;
                 case ClientOpcodes.PUT_IMAGE:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
+                    try (XLock lock = client.xServer.lock(XServer.Lockable.PIXMAP_MANAGER, XServer.Lockable.DRAWABLE_MANAGER, XServer.Lockable.GRAPHIC_CONTEXT_MANAGER)) {
                         DrawRequests.putImage(client, inputStream, outputStream);
                     }
                     break;
@@ -403,7 +411,7 @@ public class XClientRequestHandler implements RequestHandler {
                     ExtensionRequests.queryExtension(client, inputStream, outputStream);
                     break;
                 case ClientOpcodes.GET_KEYBOARD_MAPPING:
-                    try (XLock lock = client.xServer.lock(XServer.Lockable.INPUT_DEVICE)) {
+                    try (XLock lock = client.xServer.lockShared(XServer.Lockable.INPUT_DEVICE)) {
                         KeyboardRequests.getKeyboardMapping(client, inputStream, outputStream);
                     }
                     break;
@@ -459,6 +467,7 @@ public class XClientRequestHandler implements RequestHandler {
             e.sendError(client, opcode);
         }
 
+        if (startTime != 0) requestProfiler.record(client, opcode, requestData, requestLength + headerLength, System.nanoTime() - startTime);
         return true;
     }
 }
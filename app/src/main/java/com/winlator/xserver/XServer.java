@@ -5,6 +5,7 @@ import android.util.SparseArray;
 
 import com.winlator.core.CursorLocker;
 import com.winlator.renderer.GLRenderer;
+import com.winlator.renderer.VSyncClock;
 import com.winlator.winhandler.WinHandler;
 import com.winlator.xserver.extensions.BigReqExtension;
 import com.winlator.xserver.extensions.DRI3Extension;
@@ -15,7 +16,13 @@ import com.winlator.xserver.extensions.SyncExtension;
 
 import java.nio.charset.Charset;
 import java.util.EnumMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class XServer {
     public enum Lockable {WINDOW_MANAGER, PIXMAP_MANAGER, DRAWABLE_MANAGER, GRAPHIC_CONTEXT_MANAGER, INPUT_DEVICE, CURSOR_MANAGER, SHMSEGMENT_MANAGER}
@@ -35,13 +42,21 @@ public class XServer {
     public final Pointer pointer = new Pointer(this);
     public final InputDeviceManager inputDeviceManager;
     public final GrabManager grabManager;
+    public final VSyncClock vsyncClock = new VSyncClock();
+    public final RequestProfiler requestProfiler = new RequestProfiler(this);
     private boolean isGrabbed = false;
     private XClient grabbingClient = null;
     public final CursorLocker cursorLocker;
     private SHMSegmentManager shmSegmentManager;
     private GLRenderer renderer;
     private WinHandler winHandler;
-    private final EnumMap<Lockable, ReentrantLock> locks = new EnumMap<>(Lockable.class);
+    private final EnumMap<Lockable, ReentrantReadWriteLock> locks = new EnumMap<>(Lockable.class);
+    private static final long NO_POINTER_POSITION = Long.MIN_VALUE;
+    private final AtomicLong pendingPointerPosition = new AtomicLong(NO_POINTER_POSITION);
+    private final AtomicLong pendingPointerDelta = new AtomicLong();
+    private final AtomicBoolean pointerMotionScheduled = new AtomicBoolean();
+    private final ThreadPoolExecutor inputExecutor;
+    private final Runnable pointerMotionTask = this::dispatchPointerMotion;
     private boolean relativeMouseMovement = false;
     private boolean simulateTouchScreen = false;
 
@@ -49,7 +64,15 @@ public class XServer {
         Log.d("XServer", "Creating xServer " + screenInfo);
         this.screenInfo = screenInfo;
         cursorLocker = new CursorLocker(this);
-        for (Lockable lockable : Lockable.values()) locks.put(lockable, new ReentrantLock());
+        for (Lockable lockable : Lockable.values()) locks.put(lockable, new ReentrantReadWriteLock());
+
+        inputExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (runnable) -> {
+            Thread thread = new Thread(runnable, "XServerInput");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            return thread;
+        });
+        inputExecutor.allowCoreThreadTimeOut(true);
 
         pixmapManager = new PixmapManager();
         drawableManager = new DrawableManager(this);
@@ -103,10 +126,10 @@ public class XServer {
     }
 
     private class SingleXLock implements XLock {
-        private final ReentrantLock lock;
+        private final Lock lock;
 
-        private SingleXLock(Lockable lockable) {
-            this.lock = locks.get(lockable);
+        private SingleXLock(Lockable lockable, boolean shared) {
+            this.lock = getLock(lockable, shared);
             lock.lock();
         }
 
@@ -118,30 +141,50 @@ public class XServer {
 
     private class MultiXLock implements XLock {
         private final Lockable[] lockables;
+        private final boolean shared;
 
-        private MultiXLock(Lockable[] lockables) {
+        private MultiXLock(Lockable[] lockables, boolean shared) {
             this.lockables = lockables;
-            for (Lockable lockable : lockables) locks.get(lockable).lock();
+            this.shared = shared;
+            for (Lockable lockable : lockables) getLock(lockable, shared).lock();
         }
 
         @Override
         public void close() {
             for (int i = lockables.length - 1; i >= 0; i--) {
-                locks.get(lockables[i]).unlock();
+                getLock(lockables[i], shared).unlock();
             }
         }
     }
 
+    private Lock getLock(Lockable lockable, boolean shared) {
+        ReentrantReadWriteLock lock = locks.get(lockable);
+        return shared ? lock.readLock() : lock.writeLock();
+    }
+
     public XLock lock(Lockable lockable) {
-        return new SingleXLock(lockable);
+        return new SingleXLock(lockable, false);
     }
 
     public XLock lock(Lockable... lockables) {
-        return new MultiXLock(lockables);
+        return new MultiXLock(lockables, false);
+    }
+
+    /**
+     * Takes the read side of the given locks. Only for code that does not modify the guarded
+     * state, and it must not call lock() on the same lockable while holding it since a read
+     * lock cannot be upgraded.
+     */
+    public XLock lockShared(Lockable lockable) {
+        return new SingleXLock(lockable, true);
+    }
+
+    public XLock lockShared(Lockable... lockables) {
+        return new MultiXLock(lockables, true);
     }
 
     public XLock lockAll() {
-        return new MultiXLock(Lockable.values());
+        return new MultiXLock(Lockable.values(), false);
     }
 
     public Extension getExtensionByName(String name) {
@@ -152,26 +195,75 @@ public class XServer {
         return null;
     }
 
+    /**
+     * Pointer motion never blocks the caller: the latest position is stored in a pending slot
+     * and applied on the input thread, so consecutive moves coalesce into one MotionNotify.
+     */
     public void injectPointerMove(int x, int y) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            pointer.setPosition(x, y);
-        }
+        pendingPointerDelta.set(0);
+        pendingPointerPosition.set(packPoint(x, y));
+        schedulePointerMotion();
     }
 
     public void injectPointerMoveDelta(int dx, int dy) {
-        try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
-            pointer.setPosition(pointer.getX() + dx, pointer.getY() + dy);
+        long oldDelta, newDelta;
+        do {
+            oldDelta = pendingPointerDelta.get();
+            newDelta = packPoint(unpackX(oldDelta) + dx, unpackY(oldDelta) + dy);
         }
+        while (!pendingPointerDelta.compareAndSet(oldDelta, newDelta));
+        schedulePointerMotion();
+    }
+
+    private void schedulePointerMotion() {
+        if (pointerMotionScheduled.compareAndSet(false, true)) inputExecutor.execute(pointerMotionTask);
+    }
+
+    private void dispatchPointerMotion() {
+        pointerMotionScheduled.set(false);
+        try (XLock windowLock = lockShared(Lockable.WINDOW_MANAGER);
+             XLock inputLock = lock(Lockable.INPUT_DEVICE)) {
+            applyPendingPointerMotion();
+        }
+    }
+
+    /**
+     * Must be called with INPUT_DEVICE held. Button and key injections call this first so that
+     * a move queued before a click is delivered before it, WarpPointer does the same so a move
+     * queued before the warp cannot land after it and overwrite the warped position.
+     */
+    public void applyPendingPointerMotion() {
+        long position = pendingPointerPosition.getAndSet(NO_POINTER_POSITION);
+        long delta = pendingPointerDelta.getAndSet(0);
+        if (position == NO_POINTER_POSITION && delta == 0) return;
+
+        int x = position != NO_POINTER_POSITION ? unpackX(position) : pointer.getX();
+        int y = position != NO_POINTER_POSITION ? unpackY(position) : pointer.getY();
+        pointer.setPosition(x + unpackX(delta), y + unpackY(delta));
+    }
+
+    private static long packPoint(int x, int y) {
+        return ((long)x << 32) | (y & 0xffffffffL);
+    }
+
+    private static int unpackX(long point) {
+        return (int)(point >> 32);
+    }
+
+    private static int unpackY(long point) {
+        return (int)point;
     }
 
     public void injectPointerButtonPress(Pointer.Button buttonCode) {
         try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
+            applyPendingPointerMotion();
             pointer.setButton(buttonCode, true);
         }
     }
 
     public void injectPointerButtonRelease(Pointer.Button buttonCode) {
         try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
+            applyPendingPointerMotion();
             pointer.setButton(buttonCode, false);
         }
     }
@@ -182,12 +274,14 @@ public class XServer {
 
     public void injectKeyPress(XKeycode xKeycode, int keysym) {
         try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
+            applyPendingPointerMotion();
             keyboard.setKeyPress(xKeycode.getId(), keysym);
         }
     }
 
     public void injectKeyRelease(XKeycode xKeycode) {
         try (XLock lock = lock(Lockable.WINDOW_MANAGER, Lockable.INPUT_DEVICE)) {
+            applyPendingPointerMotion();
             keyboard.setKeyRelease(xKeycode.getId());
         }
     }
@@ -7,20 +7,33 @@ import com.winlator.xserver.Window;
 
 import java.io.IOException;
 
+/**
+ * Key, button and motion events. The fields are mutable so the input path can keep one
+ * instance per event type and refill it with set() instead of allocating per event, the
+ * instance must not be shared between threads.
+ */
 public class InputDeviceEvent extends Event {
-    private final byte detail;
-    private final int timestamp;
-    private final Window root;
-    private final Window event;
-    private final Window child;
-    private final short eventX;
-    private final short eventY;
-    private final short rootX;
-    private final short rootY;
-    private final Bitmask state;
+    private byte detail;
+    private int timestamp;
+    private Window root;
+    private Window event;
+    private Window child;
+    private short eventX;
+    private short eventY;
+    private short rootX;
+    private short rootY;
+    private int state;
+
+    public InputDeviceEvent(int code) {
+        super(code);
+    }
 
     public InputDeviceEvent(int code, byte detail, Window root, Window event, Window child, short rootX, short rootY, short eventX, short eventY, Bitmask state) {
         super(code);
+        set(detail, root, event, child, rootX, rootY, eventX, eventY, state.getBits());
+    }
+
+    public InputDeviceEvent set(byte detail, Window root, Window event, Window child, short rootX, short rootY, short eventX, short eventY, int state) {
         this.detail = detail;
         this.timestamp = (int)System.currentTimeMillis();
         this.root = root;
@@ -31,25 +44,30 @@ public class InputDeviceEvent extends Event {
         this.eventX = eventX;
         this.eventY = eventY;
         this.state = state;
+        return this;
     }
 
     @Override
     public void send(short sequenceNumber, XOutputStream outputStream) throws IOException {
         try (XStreamLock lock = outputStream.lock()) {
-            outputStream.writeByte(code);
-            outputStream.writeByte(detail);
-            outputStream.writeShort(sequenceNumber);
-            outputStream.writeInt(timestamp);
-            outputStream.writeInt(root.id);
-            outputStream.writeInt(event.id);
-            outputStream.writeInt(child != null ? child.id : 0);
-            outputStream.writeShort(rootX);
-            outputStream.writeShort(rootY);
-            outputStream.writeShort(eventX);
-            outputStream.writeShort(eventY);
-            outputStream.writeShort((short)state.getBits());
-            outputStream.writeByte((byte)1);
-            outputStream.writeByte((byte)0);
+            write(outputStream, code, detail, sequenceNumber, timestamp, root.id, event.id, child != null ? child.id : 0, rootX, rootY, eventX, eventY, state);
         }
     }
+
+    public static void write(XOutputStream outputStream, byte code, byte detail, short sequenceNumber, int timestamp, int root, int event, int child, short rootX, short rootY, short eventX, short eventY, int state) {
+        outputStream.writeByte(code);
+        outputStream.writeByte(detail);
+        outputStream.writeShort(sequenceNumber);
+        outputStream.writeInt(timestamp);
+        outputStream.writeInt(root);
+        outputStream.writeInt(event);
+        outputStream.writeInt(child);
+        outputStream.writeShort(rootX);
+        outputStream.writeShort(rootY);
+        outputStream.writeShort(eventX);
+        outputStream.writeShort(eventY);
+        outputStream.writeShort((short)state);
+        outputStream.writeByte((byte)1);
+        outputStream.writeByte((byte)0);
+    }
 }
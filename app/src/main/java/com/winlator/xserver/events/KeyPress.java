@@ -4,6 +4,10 @@ import com.winlator.xserver.Bitmask;
 import com.winlator.xserver.Window;
 
 public class KeyPress extends InputDeviceEvent {
+    public KeyPress() {
+        super(2);
+    }
+
     public KeyPress(byte keycode, Window root, Window event, Window child, short rootX, short rootY, short eventX, short eventY, Bitmask state) {
         super(2, keycode, root, event, child, rootX, rootY, eventX, eventY, state);
     }
@@ -6,6 +6,7 @@ import android.util.SparseArray;
 
 import com.winlator.renderer.GPUImage;
 import com.winlator.renderer.Texture;
+import com.winlator.renderer.VSyncClock;
 import com.winlator.widget.XServerView;
 import com.winlator.xconnector.XInputStream;
 import com.winlator.xconnector.XOutputStream;
@@ -17,6 +18,8 @@ import com.winlator.xserver.Pixmap;
 import com.winlator.xserver.Window;
 import com.winlator.xserver.XClient;
 import com.winlator.xserver.XLock;
+import com.winlator.xserver.XResource;
+import com.winlator.xserver.XResourceManager;
 import com.winlator.xserver.XServer;
 import com.winlator.xserver.errors.BadImplementation;
 import com.winlator.xserver.errors.BadMatch;
@@ -27,22 +30,33 @@ import com.winlator.xserver.events.PresentCompleteNotify;
 import com.winlator.xserver.events.PresentIdleNotify;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Objects;
 
-public class PresentExtension implements Extension {
+public class PresentExtension implements Extension, VSyncClock.OnVSyncListener, XResourceManager.OnResourceLifecycleListener {
     public static final byte MAJOR_OPCODE = -103;
-    private static final int FAKE_INTERVAL = 1000000 / 60;
     public enum Kind {PIXMAP, MSC_NOTIFY}
     public enum Mode {COPY, FLIP, SKIP}
     private final SparseArray<Event> events = new SparseArray<>();
+    private final ArrayList<PendingPresent> pendingPresents = new ArrayList<>();
+    private final ArrayList<PendingPresent> duePresents = new ArrayList<>();
+    private final SparseArray<FlipState> flipStates = new SparseArray<>();
     private SyncExtension syncExtension;
+    private XServer xServer;
 
     private static abstract class ClientOpcodes {
         private static final byte QUERY_VERSION = 0;
         private static final byte PRESENT_PIXMAP = 1;
+        private static final byte NOTIFY_MSC = 2;
         private static final byte SELECT_INPUT = 3;
     }
 
+    private static abstract class Options {
+        private static final int ASYNC = 1;
+        private static final int COPY = 2;
+    }
+
     private static class Event {
         private Window window;
         private XClient client;
@@ -50,6 +64,27 @@ public class PresentExtension implements Extension {
         private Bitmask mask;
     }
 
+    private static class PendingPresent {
+        private Kind kind;
+        private Window window;
+        private Pixmap pixmap;
+        private int serial;
+        private short xOff;
+        private short yOff;
+        private int idleFence;
+        private int options;
+        private long targetMsc;
+    }
+
+    private static class FlipState {
+        private Window window;
+        private Drawable content;
+        private ByteBuffer ownData;
+        private Pixmap pixmap;
+        private int serial;
+        private int idleFence;
+    }
+
     @Override
     public String getName() {
         return "Present";
@@ -70,6 +105,16 @@ public class PresentExtension implements Extension {
         return 0;
     }
 
+    private synchronized void attachTo(XServer xServer) {
+        if (this.xServer != null) return;
+        try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER)) {
+            xServer.vsyncClock.addOnVSyncListener(this);
+            xServer.windowManager.addOnResourceLifecycleListener(this);
+            xServer.pixmapManager.addOnResourceLifecycleListener(this);
+        }
+        this.xServer = xServer;
+    }
+
     private void sendIdleNotify(Window window, Pixmap pixmap, int serial, int idleFence) {
         if (idleFence != 0) syncExtension.setTriggered(idleFence);
 
@@ -117,6 +162,11 @@ public class PresentExtension implements Extension {
         short yOff = inputStream.readShort();
         inputStream.skip(8);
         int idleFence = inputStream.readInt();
+        int options = inputStream.readInt();
+        inputStream.skip(4);
+        long targetMsc = inputStream.readLong();
+        long divisor = inputStream.readLong();
+        long remainder = inputStream.readLong();
         inputStream.skip(client.getRemainingRequestLength());
 
         final Window window = client.xServer.windowManager.getWindow(windowId);
@@ -128,13 +178,236 @@ public class PresentExtension implements Extension {
         Drawable content = window.getContent();
         if (content.visual.depth != pixmap.drawable.visual.depth) throw new BadMatch();
 
-        long ust = System.nanoTime() / 1000;
-        long msc = ust / FAKE_INTERVAL;
+        PendingPresent present = new PendingPresent();
+        present.kind = Kind.PIXMAP;
+        present.window = window;
+        present.pixmap = pixmap;
+        present.serial = serial;
+        present.xOff = xOff;
+        present.yOff = yOff;
+        present.idleFence = idleFence;
+        present.options = options;
+        schedulePresent(present, targetMsc, divisor, remainder);
+    }
+
+    private void notifyMsc(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
+        int windowId = inputStream.readInt();
+        int serial = inputStream.readInt();
+        inputStream.skip(4);
+        long targetMsc = inputStream.readLong();
+        long divisor = inputStream.readLong();
+        long remainder = inputStream.readLong();
+
+        final Window window = client.xServer.windowManager.getWindow(windowId);
+        if (window == null) throw new BadWindow(windowId);
+
+        PendingPresent present = new PendingPresent();
+        present.kind = Kind.MSC_NOTIFY;
+        present.window = window;
+        present.serial = serial;
+        present.options = divisor == 0 ? Options.ASYNC : 0;
+        schedulePresent(present, targetMsc, divisor, remainder);
+    }
+
+    private void schedulePresent(PendingPresent present, long targetMsc, long divisor, long remainder) {
+        VSyncClock vsyncClock = xServer.vsyncClock;
+        long currentMsc = vsyncClock.getMsc();
+        boolean async = (present.options & Options.ASYNC) != 0;
+
+        if (currentMsc >= targetMsc) {
+            if (divisor != 0) {
+                targetMsc = currentMsc - (currentMsc % divisor) + remainder;
+                if (async ? currentMsc > targetMsc : currentMsc >= targetMsc) targetMsc += divisor;
+            }
+            else targetMsc = async ? currentMsc : currentMsc + 1;
+        }
+        present.targetMsc = targetMsc;
+
+        if (targetMsc <= currentMsc) {
+            executePresent(present, currentMsc, System.nanoTime() / 1000);
+        }
+        else {
+            synchronized (pendingPresents) {
+                pendingPresents.add(present);
+            }
+            vsyncClock.requestVSync();
+        }
+    }
+
+    @Override
+    public void onVSync(long msc, long frameTimeNanos) {
+        boolean hasPending;
+        try (XLock lock = xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER)) {
+            synchronized (pendingPresents) {
+                for (int i = 0; i < pendingPresents.size(); i++) {
+                    PendingPresent present = pendingPresents.get(i);
+                    if (present.targetMsc <= msc) duePresents.add(present);
+                }
+                pendingPresents.removeAll(duePresents);
+                hasPending = !pendingPresents.isEmpty();
+            }
+
+            long ust = frameTimeNanos / 1000;
+            for (int i = 0; i < duePresents.size(); i++) {
+                PendingPresent present = duePresents.get(i);
+                if (xServer.windowManager.getWindow(present.window.id) != present.window) continue;
+
+                if (present.kind == Kind.PIXMAP && isSuperseded(present, i)) {
+                    skipPresent(present, ust, msc);
+                }
+                else executePresent(present, msc, ust);
+            }
+            duePresents.clear();
+        }
+
+        if (hasPending) xServer.vsyncClock.requestVSync();
+    }
+
+    private boolean isSuperseded(PendingPresent present, int index) {
+        for (int i = index + 1; i < duePresents.size(); i++) {
+            PendingPresent other = duePresents.get(i);
+            if (other.kind == Kind.PIXMAP && other.window == present.window) return true;
+        }
+        return false;
+    }
+
+    private boolean isPixmapAlive(Pixmap pixmap) {
+        return xServer.pixmapManager.getPixmap(pixmap.id) == pixmap;
+    }
+
+    private void skipPresent(PendingPresent present, long ust, long msc) {
+        if (isPixmapAlive(present.pixmap)) sendIdleNotify(present.window, present.pixmap, present.serial, present.idleFence);
+        sendCompleteNotify(present.window, present.serial, Kind.PIXMAP, Mode.SKIP, ust, msc);
+    }
+
+    private void executePresent(PendingPresent present, long msc, long ust) {
+        if (present.kind == Kind.MSC_NOTIFY) {
+            sendCompleteNotify(present.window, present.serial, Kind.MSC_NOTIFY, Mode.COPY, ust, msc);
+            return;
+        }
+
+        if (!isPixmapAlive(present.pixmap)) {
+            sendCompleteNotify(present.window, present.serial, Kind.PIXMAP, Mode.SKIP, ust, msc);
+            return;
+        }
+
+        Window window = present.window;
+        Drawable content = window.getContent();
+        Drawable source = present.pixmap.drawable;
 
         synchronized (content.renderLock) {
-            content.copyArea((short)0, (short)0, xOff, yOff, pixmap.drawable.width, pixmap.drawable.height, pixmap.drawable);
-            sendIdleNotify(window, pixmap, serial, idleFence);
-            sendCompleteNotify(window, serial, Kind.PIXMAP, Mode.COPY, ust, msc);
+            if (canFlip(present, content)) {
+                flip(present, content);
+                sendCompleteNotify(window, present.serial, Kind.PIXMAP, Mode.FLIP, ust, msc);
+            }
+            else {
+                unflip(window);
+                content.copyArea((short)0, (short)0, present.xOff, present.yOff, source.width, source.height, source);
+                sendIdleNotify(window, present.pixmap, present.serial, present.idleFence);
+                sendCompleteNotify(window, present.serial, Kind.PIXMAP, Mode.COPY, ust, msc);
+            }
+        }
+    }
+
+    private static boolean canFlip(PendingPresent present, Drawable content) {
+        Drawable source = present.pixmap.drawable;
+        return (present.options & Options.COPY) == 0 && present.xOff == 0 && present.yOff == 0 &&
+               source.width == content.width && source.height == content.height && source.getData() != null &&
+               !(source.getTexture() instanceof GPUImage) && !(content.getTexture() instanceof GPUImage) && !content.isOffscreenStorage();
+    }
+
+    /**
+     * Makes the window content scan out of the pixmap's buffer instead of copying it. The
+     * previously flipped pixmap is released at this point and only now gets its idle notify.
+     */
+    private void flip(PendingPresent present, Drawable content) {
+        Window window = present.window;
+        FlipState flipState = flipStates.get(window.id);
+        if (flipState != null && flipState.content != content) {
+            releaseFlip(window, flipState, false);
+            flipState = null;
+        }
+
+        if (flipState == null) {
+            flipState = new FlipState();
+            flipState.window = window;
+            flipState.content = content;
+            flipState.ownData = content.getData();
+            flipStates.put(window.id, flipState);
+        }
+        else if (flipState.pixmap != present.pixmap) {
+            sendIdleNotify(window, flipState.pixmap, flipState.serial, flipState.idleFence);
+        }
+
+        flipState.pixmap = present.pixmap;
+        flipState.serial = present.serial;
+        flipState.idleFence = present.idleFence;
+        content.setData(present.pixmap.drawable.getData());
+        content.forceUpdate();
+    }
+
+    private void unflip(Window window) {
+        FlipState flipState = flipStates.get(window.id);
+        if (flipState == null) return;
+        synchronized (flipState.content.renderLock) {
+            releaseFlip(window, flipState, flipState.content == window.getContent());
+        }
+    }
+
+    /**
+     * A flipped window shares the pixmap's buffer, so core drawing on it would land in the
+     * client's pixmap. Gives the window its own buffer back, with the presented image copied
+     * in, before it is drawn to. Must be called with PIXMAP_MANAGER held.
+     */
+    public void unflipForDrawing(Drawable drawable) {
+        FlipState flipState = flipStates.get(drawable.id);
+        if (flipState == null || flipState.content != drawable) return;
+        synchronized (drawable.renderLock) {
+            releaseFlip(flipState.window, flipState, true);
+        }
+    }
+
+    private void releaseFlip(Window window, FlipState flipState, boolean keepImage) {
+        flipStates.remove(window.id);
+        Drawable content = flipState.content;
+        ByteBuffer pixmapData = flipState.pixmap.drawable.getData();
+
+        if (content.getData() == pixmapData) {
+            if (keepImage) {
+                flipState.ownData.rewind();
+                flipState.ownData.put(pixmapData.duplicate());
+                flipState.ownData.rewind();
+            }
+            content.setData(flipState.ownData);
+            content.forceUpdate();
+        }
+        sendIdleNotify(window, flipState.pixmap, flipState.serial, flipState.idleFence);
+    }
+
+    /**
+     * Pixmaps are always freed with PIXMAP_MANAGER held, which also guards flipStates. A
+     * destroyed window keeps its flip state until the flipped pixmap goes away.
+     */
+    @Override
+    public void onFreeResource(XResource resource) {
+        if (resource instanceof Pixmap) {
+            for (int i = flipStates.size()-1; i >= 0; i--) {
+                FlipState flipState = flipStates.valueAt(i);
+                if (flipState.pixmap == resource) {
+                    Window window = xServer.windowManager.getWindow(flipStates.keyAt(i));
+                    if (window != null) {
+                        unflip(window);
+                    }
+                    else flipStates.removeAt(i);
+                }
+            }
+        }
+        else if (resource instanceof Window) {
+            synchronized (pendingPresents) {
+                for (int i = pendingPresents.size()-1; i >= 0; i--) {
+                    if (pendingPresents.get(i).window == resource) pendingPresents.remove(i);
+                }
+            }
         }
     }
 
@@ -180,6 +453,7 @@ public class PresentExtension implements Extension {
     public void handleRequest(XClient client, XInputStream inputStream, XOutputStream outputStream) throws IOException, XRequestError {
         int opcode = client.getRequestData();
         if (syncExtension == null) syncExtension = client.xServer.getExtension(SyncExtension.MAJOR_OPCODE);
+        if (xServer == null) attachTo(client.xServer);
 
         switch (opcode) {
             case ClientOpcodes.QUERY_VERSION :
@@ -190,6 +464,11 @@ public class PresentExtension implements Extension {
                     presentPixmap(client, inputStream, outputStream);
                 }
                 break;
+            case ClientOpcodes.NOTIFY_MSC:
+                try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER, XServer.Lockable.PIXMAP_MANAGER)) {
+                    notifyMsc(client, inputStream, outputStream);
+                }
+                break;
             case ClientOpcodes.SELECT_INPUT:
                 try (XLock lock = client.xServer.lock(XServer.Lockable.WINDOW_MANAGER)) {
                     selectInput(client, inputStream, outputStream);
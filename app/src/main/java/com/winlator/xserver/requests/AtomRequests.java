@@ -18,7 +18,7 @@ public abstract class AtomRequests {
         short length = inputStream.readShort();
         inputStream.skip(2);
         String name = inputStream.readString8(length);
-        int id = onlyIfExists ? Atom.getId(name) : Atom.internAtom(name);
+        int id = onlyIfExists ? Atom.getInternedId(name) : Atom.internAtom(name);
         if (id < 0) throw new BadAtom(id);
 
         try (XStreamLock lock = outputStream.lock()) {
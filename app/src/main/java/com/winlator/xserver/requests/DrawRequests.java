@@ -8,6 +8,7 @@ import com.winlator.xconnector.XStreamLock;
 import com.winlator.xserver.Drawable;
 import com.winlator.xserver.GraphicsContext;
 import com.winlator.xserver.XClient;
+import com.winlator.xserver.extensions.PresentExtension;
 import com.winlator.xserver.errors.BadDrawable;
 import com.winlator.xserver.errors.BadGraphicsContext;
 import com.winlator.xserver.errors.BadMatch;
@@ -20,6 +21,11 @@ public abstract class DrawRequests {
     public enum Format {BITMAP, XY_PIXMAP, Z_PIXMAP}
     private enum CoordinateMode {ORIGIN, PREVIOUS}
 
+    private static void prepareForDrawing(XClient client, Drawable drawable) {
+        PresentExtension presentExtension = client.xServer.getExtension(PresentExtension.MAJOR_OPCODE);
+        if (presentExtension != null) presentExtension.unflipForDrawing(drawable);
+    }
+
     public static void putImage(XClient client, XInputStream inputStream, XOutputStream outputStream) throws XRequestError {
         Format format = Format.values()[client.getRequestData()];
         int drawableId = inputStream.readInt();
@@ -44,6 +50,7 @@ public abstract class DrawRequests {
             throw new UnsupportedOperationException("GC Function other than COPY is not supported.");
         }
 
+        prepareForDrawing(client, drawable);
         switch (format) {
             case BITMAP:
                 if (leftPad != 0) throw new UnsupportedOperationException("PutImage.leftPad cannot be != 0.");
@@ -78,8 +85,9 @@ public abstract class DrawRequests {
         Drawable drawable =  client.xServer.drawableManager.getDrawable(drawableId);
         if (drawable == null) throw new BadDrawable(drawableId);
         int visualId = client.xServer.pixmapManager.getPixmap(drawableId) == null ? drawable.visual.id : 0;
-        ByteBuffer data = drawable.getImage(x, y, width, height);
-        int length = data.limit();
+        ByteBuffer data = drawable.getImageRegion(x, y, width, height);
+        if (data == null) data = drawable.getImage(x, y, width, height);
+        int length = data.remaining();
 
         try (XStreamLock lock = outputStream.lock()) {
             outputStream.writeByte(RESPONSE_CODE_SUCCESS);
@@ -88,7 +96,7 @@ public abstract class DrawRequests {
             outputStream.writeInt((length + 3) / 4);
             outputStream.writeInt(visualId);
             outputStream.writePad(20);
-            outputStream.write(data);
+            outputStream.writeSegment(data);
             if ((-length & 3) > 0) outputStream.writePad(-length & 3);
         }
     }
@@ -115,6 +123,7 @@ public abstract class DrawRequests {
 
         if (srcDrawable.visual.depth != dstDrawable.visual.depth) throw new BadMatch();
 
+        prepareForDrawing(client, dstDrawable);
         dstDrawable.copyArea(srcX, srcY, dstX, dstY, width, height, srcDrawable, graphicsContext.getFunction());
     }
 
@@ -138,6 +147,7 @@ public abstract class DrawRequests {
         }
 
         if (coordinateMode == CoordinateMode.ORIGIN && graphicsContext.getLineWidth() > 0) {
+            prepareForDrawing(client, drawable);
             drawable.drawLines(graphicsContext.getForeground(), graphicsContext.getLineWidth(), points);
         }
     }
@@ -151,6 +161,7 @@ public abstract class DrawRequests {
         GraphicsContext graphicsContext = client.xServer.graphicsContextManager.getGraphicsContext(gcId);
         if (graphicsContext == null) throw new BadGraphicsContext(gcId);
         int length = client.getRemainingRequestLength();
+        if (length > 0) prepareForDrawing(client, drawable);
 
         while (length != 0) {
             short x = inputStream.readShort();
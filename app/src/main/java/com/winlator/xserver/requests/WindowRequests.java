@@ -331,6 +331,7 @@ public abstract class WindowRequests {
         short dstX = inputStream.readShort();
         short dstY = inputStream.readShort();
 
+        client.xServer.applyPendingPointerMotion();
         if (srcWindow != null) {
             if (srcWidth == 0) srcWidth = (short)(srcWindow.getWidth() - srcX);
             if (srcHeight == 0) srcHeight = (short)(srcWindow.getHeight() - srcY);
@@ -0,0 +1,83 @@
+package app.gamenative.service.epic
+
+import app.gamenative.service.epic.manifest.ChunkInfo
+import java.io.File
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Rule
+import org.junit.Test
+
+class EpicChunkWriterTest {
+
+    @get:Rule
+    val fixtures = EpicManifestFixtures()
+
+    private val installDir get() = fixtures.installDir
+    private val journal get() = File(installDir, ".epic_install_Test")
+
+    private val chunkA = fixtures.chunkA
+    private val chunkB = fixtures.chunkB
+    private val unused = fixtures.chunk(3, 16)
+
+    private fun file(name: String, vararg parts: Triple<ChunkInfo, Int, Int>) = fixtures.file(name, *parts)
+
+    private fun expected(vararg parts: Triple<ChunkInfo, Int, Int>): ByteArray = fixtures.content(file("expected", *parts))
+
+    private val first = arrayOf(Triple(chunkA, 0, 32), Triple(chunkB, 0, 48))
+    private val second = arrayOf(Triple(chunkA, 32, 32))
+    private val shared = arrayOf(Triple(chunkB, 16, 16), Triple(chunkA, 0, 8))
+
+    private fun files() = listOf(
+        file("bin/first.bin", *first),
+        file("second.bin", *second),
+        file("data/shared.bin", *shared),
+        file("empty.txt"),
+    )
+
+    @Test
+    fun `chunks are written to every file that uses them`() {
+        val writer = EpicChunkWriter(installDir, files(), listOf(unused, chunkB, chunkA), journal, "1.0")
+
+        assertEquals(listOf(chunkA, chunkB), writer.chunkOrder)
+        val pending = writer.prepare()
+        // Write in reverse to make sure positional writes do not depend on arrival order
+        pending.reversed().forEach { writer.write(it, fixtures.data(it)) }
+        writer.close(completed = true)
+
+        assertArrayEquals(expected(*first), File(installDir, "bin/first.bin").readBytes())
+        assertArrayEquals(expected(*second), File(installDir, "second.bin").readBytes())
+        assertArrayEquals(expected(*shared), File(installDir, "data/shared.bin").readBytes())
+        assertEquals(0L, File(installDir, "empty.txt").length())
+        assertFalse(journal.exists())
+    }
+
+    @Test
+    fun `interrupted install only returns missing chunks`() {
+        val writer = EpicChunkWriter(installDir, files(), listOf(chunkA, chunkB), journal, "1.0")
+        writer.prepare()
+        writer.write(chunkA, fixtures.data(chunkA))
+        writer.close(completed = false)
+
+        val resumed = EpicChunkWriter(installDir, files(), listOf(chunkA, chunkB), journal, "1.0")
+        val pending = resumed.prepare()
+        assertEquals(listOf(chunkB), pending)
+        resumed.write(chunkB, fixtures.data(chunkB))
+        resumed.close(completed = true)
+
+        assertArrayEquals(expected(*first), File(installDir, "bin/first.bin").readBytes())
+        assertArrayEquals(expected(*shared), File(installDir, "data/shared.bin").readBytes())
+    }
+
+    @Test
+    fun `journal of another build is ignored`() {
+        val writer = EpicChunkWriter(installDir, files(), listOf(chunkA, chunkB), journal, "1.0")
+        writer.prepare()
+        writer.write(chunkA, fixtures.data(chunkA))
+        writer.close(completed = false)
+
+        val update = EpicChunkWriter(installDir, files(), listOf(chunkA, chunkB), journal, "1.1")
+        assertEquals(listOf(chunkA, chunkB), update.prepare())
+        update.close(completed = false)
+    }
+}
@@ -0,0 +1,140 @@
+package app.gamenative.service.epic
+
+import app.gamenative.service.epic.manifest.ChunkDataList
+import app.gamenative.service.epic.manifest.ChunkInfo
+import app.gamenative.service.epic.manifest.FileManifest
+import app.gamenative.service.epic.manifest.FileManifestList
+import app.gamenative.utils.InstallVerifier
+import java.io.File
+import java.io.RandomAccessFile
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+
+class EpicDeltaUpdateTest {
+
+    @get:Rule
+    val fixtures = EpicManifestFixtures()
+
+    private val installDir get() = fixtures.installDir
+    private val verifier = InstallVerifier(parallelism = 2)
+
+    private val chunkA = fixtures.chunkA
+    private val chunkB = fixtures.chunkB
+    private val chunkC = fixtures.chunk(3, 32, first = 200)
+
+    @After
+    fun tearDown() {
+        verifier.close()
+    }
+
+    private fun file(name: String, vararg parts: Triple<ChunkInfo, Int, Int>) = fixtures.file(name, *parts)
+
+    private fun content(file: FileManifest): ByteArray = fixtures.content(file)
+
+    private fun install(files: List<FileManifest>) = fixtures.install(files)
+
+    private val oldFiles = listOf(
+        file("bin/game.exe", Triple(chunkA, 0, 32), Triple(chunkB, 0, 48)),
+        file("data/unchanged.pak", Triple(chunkA, 32, 32)),
+        file("data/removed.pak", Triple(chunkB, 0, 16)),
+    )
+    private val newFiles = listOf(
+        file("bin/game.exe", Triple(chunkA, 0, 32), Triple(chunkC, 0, 32), Triple(chunkB, 16, 16)),
+        file("data/unchanged.pak", Triple(chunkA, 32, 32)),
+        file("data/new.pak", Triple(chunkA, 8, 8)),
+    )
+
+    private fun newUpdate() = EpicDeltaUpdate(
+        installDir,
+        "Test",
+        FileManifestList(elements = oldFiles.toMutableList()),
+        ChunkDataList(elements = mutableListOf(chunkA, chunkB)),
+        newFiles,
+        listOf(chunkA, chunkB, chunkC),
+        "2.0",
+    )
+
+    @Test
+    fun `only chunks missing on disk are downloaded`() {
+        install(oldFiles)
+        val unchangedModified = File(installDir, "data/unchanged.pak").lastModified()
+
+        val update = newUpdate()
+        assertEquals(2, update.changedFileCount)
+        assertEquals(listOf(chunkC), update.neededChunks)
+        assertEquals(32L + 16 + 8, update.reusedBytes)
+
+        val pending = update.prepare()
+        assertEquals(listOf(chunkC), pending)
+        // Nothing in the install changes before the commit
+        assertArrayEquals(content(oldFiles[0]), File(installDir, "bin/game.exe").readBytes())
+
+        pending.forEach { update.write(it, fixtures.data(it)) }
+        assertEquals(emptyList<ChunkInfo>(), update.verify(verifier))
+        update.commit(byteArrayOf(42))
+
+        assertArrayEquals(content(newFiles[0]), File(installDir, "bin/game.exe").readBytes())
+        assertArrayEquals(content(newFiles[2]), File(installDir, "data/new.pak").readBytes())
+        assertEquals(unchangedModified, File(installDir, "data/unchanged.pak").lastModified())
+        assertFalse(File(installDir, "data/removed.pak").exists())
+        assertFalse(File(installDir, "bin/game.exe" + EpicDeltaUpdate.UPDATE_SUFFIX).exists())
+        assertArrayEquals(byteArrayOf(42), EpicDeltaUpdate.manifestFile(installDir, "Test").readBytes())
+    }
+
+    @Test
+    fun `files missing from disk are downloaded again`() {
+        install(oldFiles)
+        File(installDir, "bin/game.exe").delete()
+
+        val update = newUpdate()
+        assertEquals(listOf(chunkA, chunkC, chunkB), update.neededChunks)
+        update.abort()
+    }
+
+    @Test
+    fun `rebuilt file with a wrong hash is downloaded in full`() {
+        install(oldFiles)
+        val update = newUpdate()
+        // The old file changes after the update planned to copy from it
+        RandomAccessFile(File(installDir, "bin/game.exe"), "rw").use { it.write(0xFF) }
+
+        update.prepare().forEach { update.write(it, fixtures.data(it)) }
+        val repair = update.verify(verifier)
+        assertEquals(listOf(chunkA, chunkC, chunkB), repair)
+        assertThrows(IllegalStateException::class.java) { update.commit(byteArrayOf(42)) }
+
+        repair.forEach { update.write(it, fixtures.data(it)) }
+        assertEquals(emptyList<ChunkInfo>(), update.verify(verifier))
+        update.commit(byteArrayOf(42))
+
+        assertArrayEquals(content(newFiles[0]), File(installDir, "bin/game.exe").readBytes())
+        assertFalse(File(installDir, ".epic_update_Test").exists())
+        assertFalse(File(installDir, ".epic_update_Test.full").exists())
+    }
+
+    @Test
+    fun `interrupted commit is finished on the next run`() {
+        install(oldFiles)
+        val update = newUpdate()
+        update.prepare().forEach { update.write(it, fixtures.data(it)) }
+        update.abort()
+
+        // Pretend the app died right after the new manifest was stored as pending
+        File(installDir, ".epic_manifest_Test.pending").writeBytes(byteArrayOf(7))
+        val finished = EpicDeltaUpdate.finishPending(installDir, "Test", FileManifestList(elements = oldFiles.toMutableList())) {
+            FileManifestList(elements = newFiles.toMutableList())
+        }
+
+        assertTrue(finished)
+        assertArrayEquals(content(newFiles[0]), File(installDir, "bin/game.exe").readBytes())
+        assertFalse(File(installDir, "data/removed.pak").exists())
+        assertArrayEquals(byteArrayOf(7), EpicDeltaUpdate.manifestFile(installDir, "Test").readBytes())
+        assertFalse(EpicDeltaUpdate.finishPending(installDir, "Test", null) { FileManifestList() })
+    }
+}
@@ -0,0 +1,114 @@
+package app.gamenative.service.epic
+
+import app.gamenative.service.epic.manifest.ChunkInfo
+import app.gamenative.service.epic.manifest.FileManifest
+import app.gamenative.utils.InstallVerifier
+import java.io.File
+import java.io.RandomAccessFile
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+
+class EpicInstallVerificationTest {
+
+    @get:Rule
+    val fixtures = EpicManifestFixtures()
+
+    private val installDir get() = fixtures.installDir
+    private val verifier = InstallVerifier(parallelism = 2)
+
+    private val chunkA = fixtures.chunkA
+    private val chunkB = fixtures.chunkB
+
+    @After
+    fun tearDown() {
+        verifier.close()
+    }
+
+    private fun sha1(data: ByteArray) = fixtures.sha1(data)
+
+    /** Builds the file and writes it to the install directory. */
+    private fun file(name: String, vararg parts: Triple<ChunkInfo, Int, Int>): FileManifest =
+        fixtures.file(name, *parts).also { fixtures.install(listOf(it)) }
+
+    private fun corrupt(name: String, position: Long) {
+        RandomAccessFile(File(installDir, name), "rw").use {
+            it.seek(position)
+            val value = it.read()
+            it.seek(position)
+            it.write(value xor 0xFF)
+        }
+    }
+
+    private val files by lazy {
+        listOf(
+            file("bin/first.bin", Triple(chunkA, 0, 32), Triple(chunkB, 0, 48)),
+            file("second.bin", Triple(chunkA, 32, 32)),
+        )
+    }
+
+    @Test
+    fun `intact install passes`() {
+        val result = EpicInstallVerification(installDir, files, listOf(chunkA, chunkB)).run(verifier)
+
+        assertTrue(result.isValid)
+        assertEquals(2, result.verifiedOk)
+        assertTrue(result.damagedParts.isEmpty())
+    }
+
+    @Test
+    fun `only the chunk covering a corrupted byte is repaired`() {
+        val first = files[0]
+        corrupt(first.filename, 40)
+
+        val result = EpicInstallVerification(installDir, files, listOf(chunkA, chunkB)).run(verifier)
+
+        assertEquals(listOf(first), result.hashMismatch)
+        assertEquals(listOf(first.chunkParts[1]), result.damagedParts[first])
+        assertEquals(48L, result.damagedBytes)
+
+        val repair = result.repairFiles()
+        val writer = EpicChunkWriter(installDir, repair, listOf(chunkA, chunkB), File(installDir, ".epic_repair_Test"), "1.0")
+        val pending = writer.prepare()
+        assertEquals(listOf(chunkB), pending)
+        pending.forEach { writer.write(it, fixtures.data(it)) }
+        writer.close(completed = true)
+
+        assertArrayEquals(first.hash, sha1(File(installDir, first.filename).readBytes()))
+    }
+
+    @Test
+    fun `missing files need all their parts and do not fail shared chunks of other files`() {
+        val second = files[1]
+        File(installDir, second.filename).delete()
+
+        val result = EpicInstallVerification(installDir, files, listOf(chunkA, chunkB)).run(verifier)
+
+        assertEquals(listOf(second), result.missingFiles)
+        assertEquals(listOf(second), result.damagedFiles)
+        assertEquals(second.chunkParts.toList(), result.damagedParts[second])
+    }
+
+    @Test
+    fun `every copy of a repeated chunk range is checked on its own`() {
+        val repeated = file("repeated.bin", Triple(chunkB, 0, 48), Triple(chunkB, 0, 48))
+        corrupt(repeated.filename, 60)
+
+        val result = EpicInstallVerification(installDir, listOf(repeated), listOf(chunkB)).run(verifier)
+
+        assertEquals(listOf(repeated.chunkParts[1]), result.damagedParts[repeated])
+    }
+
+    @Test
+    fun `hash mismatch without a damaged chunk repairs the whole file`() {
+        val first = files[0].copy(hash = sha1(ByteArray(1)))
+
+        val result = EpicInstallVerification(installDir, listOf(first, files[1]), listOf(chunkA, chunkB)).run(verifier)
+
+        assertEquals(listOf(first), result.hashMismatch)
+        assertEquals(first.chunkParts.toList(), result.damagedParts[first])
+    }
+}
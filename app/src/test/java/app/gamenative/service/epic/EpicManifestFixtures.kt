@@ -0,0 +1,56 @@
+package app.gamenative.service.epic
+
+import app.gamenative.service.epic.manifest.ChunkInfo
+import app.gamenative.service.epic.manifest.ChunkPart
+import app.gamenative.service.epic.manifest.FileManifest
+import java.io.File
+import java.security.MessageDigest
+import org.junit.rules.TemporaryFolder
+
+/**
+ * Manifest pieces shared by the Epic install tests: chunks with known payloads, files laid out
+ * from chunk parts and an install directory that is deleted after every test. Used as a rule.
+ */
+class EpicManifestFixtures : TemporaryFolder() {
+
+    private val chunkData = HashMap<String, ByteArray>()
+
+    val installDir: File
+        get() = root
+
+    val chunkA = chunk(1, 64)
+    val chunkB = chunk(2, 48, first = 100)
+
+    /** A chunk of [size] bytes counting up from [first], with the SHA-1 of its payload. */
+    fun chunk(id: Int, size: Int, first: Int = 0): ChunkInfo {
+        val data = ByteArray(size) { (first + it).toByte() }
+        return ChunkInfo(guid = intArrayOf(id, 0, 0, id), shaHash = sha1(data), windowSize = size, fileSize = size.toLong())
+            .also { chunkData[it.guidStr] = data }
+    }
+
+    fun data(chunk: ChunkInfo): ByteArray = chunkData.getValue(chunk.guidStr)
+
+    /** A file made of (chunk, offset, size) parts placed back to back, hashed like a real manifest. */
+    fun file(name: String, vararg parts: Triple<ChunkInfo, Int, Int>): FileManifest {
+        var fileOffset = 0L
+        val chunkParts = parts.map { (chunk, offset, size) ->
+            ChunkPart(chunk.guid, offset, size, fileOffset).also { fileOffset += size }
+        }
+        return FileManifest(filename = name, hash = sha1(content(chunkParts)), chunkParts = chunkParts.toMutableList(), fileSize = fileOffset)
+    }
+
+    fun content(parts: List<ChunkPart>): ByteArray =
+        parts.map { part -> chunkData.getValue(part.guidStr).copyOfRange(part.offset, part.offset + part.size) }
+            .fold(ByteArray(0)) { acc, bytes -> acc + bytes }
+
+    fun content(file: FileManifest): ByteArray = content(file.chunkParts)
+
+    /** Writes the files to the install directory as a finished install would have them. */
+    fun install(files: List<FileManifest>) {
+        for (file in files) {
+            File(installDir, file.filename).apply { parentFile?.mkdirs() }.writeBytes(content(file))
+        }
+    }
+
+    fun sha1(data: ByteArray): ByteArray = MessageDigest.getInstance("SHA-1").digest(data)
+}
@@ -0,0 +1,126 @@
+package app.gamenative.service.gog
+
+import java.util.Collections
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class GOGChunkSchedulerTest {
+
+    private class FakeClock {
+        var now = 0L
+    }
+
+    @Test
+    fun `limit grows while throughput holds and halves on failures`() {
+        val clock = FakeClock()
+        val limit = AimdConcurrencyLimit(2, 16, 4) { clock.now }
+
+        // Steady throughput: one more connection per window
+        repeat(4) {
+            clock.now += 1_000_000_000L
+            repeat(limit.limit) { limit.onSuccess(1_000_000) }
+        }
+        assertEquals(8, limit.limit)
+
+        repeat(limit.limit - 1) { limit.onSuccess(1_000_000) }
+        limit.onFailure()
+        assertEquals(4, limit.limit)
+    }
+
+    @Test
+    fun `limit backs off when throughput collapses`() {
+        val clock = FakeClock()
+        val limit = AimdConcurrencyLimit(2, 16, 8) { clock.now }
+
+        clock.now += 1_000_000_000L
+        repeat(8) { limit.onSuccess(8_000_000) }
+        assertEquals(9, limit.limit)
+
+        // Same bytes take twice as long with one more connection
+        clock.now += 2_000_000_000L
+        repeat(9) { limit.onSuccess(64_000_000 / 9) }
+        assertEquals(7, limit.limit)
+    }
+
+    @Test
+    fun `downloads stay within the limit and slow chunks do not block the rest`() = runBlocking(Dispatchers.IO) {
+        val scheduler = GOGChunkScheduler(AimdConcurrencyLimit(4, 4, 4), 3, 1)
+        val active = AtomicInteger()
+        val peak = AtomicInteger()
+        val finished = Collections.synchronizedList(mutableListOf<Int>())
+
+        val result = scheduler.run(
+            keys = (0 until 40).toList(),
+            download = { key ->
+                peak.accumulateAndGet(active.incrementAndGet(), ::maxOf)
+                // Chunk 0 is as slow as all others together
+                delay(if (key == 0) 400L else 10L)
+                active.decrementAndGet()
+                finished.add(key)
+                Result.success(1024L)
+            },
+        )
+
+        assertTrue(result.isSuccess)
+        assertEquals(4, peak.get())
+        assertEquals(40, finished.size)
+        // A batch scheduler would have waited for chunk 0 before starting chunk 4
+        assertTrue(finished.indexOf(0) > 30)
+    }
+
+    @Test
+    fun `expired links are refreshed once and failed chunks retried`() = runBlocking(Dispatchers.IO) {
+        val scheduler = GOGChunkScheduler(AimdConcurrencyLimit(2, 8, 4), 3, 1)
+        val refreshes = AtomicInteger()
+        val flaky = AtomicInteger()
+        val generation = AtomicInteger()
+
+        val result = scheduler.run(
+            keys = (0 until 20).toList(),
+            download = { key ->
+                when {
+                    key >= 10 && generation.get() == 0 -> Result.failure(HttpStatusException(403, "expired"))
+                    key == 5 && flaky.getAndIncrement() < 2 -> Result.failure(Exception("connection reset"))
+                    else -> Result.success(1024L)
+                }
+            },
+            isExpiredLink = { it is HttpStatusException && it.statusCode == 403 },
+            refreshLinks = {
+                refreshes.incrementAndGet()
+                delay(20)
+                generation.set(1)
+                Result.success(Unit)
+            },
+        )
+
+        assertTrue(result.isSuccess)
+        assertEquals(1, refreshes.get())
+        assertEquals(3, flaky.get())
+    }
+
+    @Test
+    fun `chunk failing on every attempt fails the download`() = runBlocking(Dispatchers.IO) {
+        val scheduler = GOGChunkScheduler(AimdConcurrencyLimit(2, 8, 4), 3, 1)
+        val attempts = AtomicInteger()
+
+        val result = scheduler.run(
+            keys = (0 until 8).toList(),
+            download = { key ->
+                if (key == 3) {
+                    attempts.incrementAndGet()
+                    Result.failure(HttpStatusException(500, "server error"))
+                } else {
+                    Result.success(1024L)
+                }
+            },
+        )
+
+        assertTrue(result.isFailure)
+        assertEquals(3, attempts.get())
+    }
+}
@@ -0,0 +1,73 @@
+package app.gamenative.utils
+
+import java.io.File
+import java.nio.file.Files
+import java.security.MessageDigest
+import java.util.concurrent.CancellationException
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+
+class InstallVerifierTest {
+
+    private lateinit var dir: File
+    private val verifier = InstallVerifier(parallelism = 4)
+
+    @Before
+    fun setup() {
+        dir = Files.createTempDirectory("install-verifier").toFile()
+    }
+
+    @After
+    fun tearDown() {
+        verifier.close()
+        dir.deleteRecursively()
+    }
+
+    private fun md5(data: ByteArray) = MessageDigest.getInstance("MD5").digest(data)
+
+    @Test
+    fun `mismatching, short and missing regions are reported in input order`() {
+        val data = ByteArray(4096) { (it * 31).toByte() }
+        val file = File(dir, "game.bin").apply { writeBytes(data) }
+        val regions = listOf(
+            InstallVerifier.Region("first", "MD5", md5(data.copyOfRange(0, 1024)), file, 0, 1024),
+            InstallVerifier.Region("wrong", "MD5", md5(ByteArray(1024)), file, 1024, 1024),
+            InstallVerifier.Region("last", "MD5", md5(data.copyOfRange(2048, 4096)), file, 2048, 2048),
+            InstallVerifier.Region("short", "MD5", md5(ByteArray(16)), file, 4090, 16),
+            InstallVerifier.Region("missing", "MD5", md5(ByteArray(16)), File(dir, "missing.bin"), 0, 16),
+        )
+
+        var lastProgress = 0L
+        val failed = verifier.verify(regions) { verified, _ -> lastProgress = maxOf(lastProgress, verified) }
+
+        assertEquals(listOf("wrong", "short", "missing"), failed)
+        assertEquals(4096L, lastProgress)
+    }
+
+    @Test
+    fun `segments are hashed in order with zeros for uncovered bytes`() {
+        val head = ByteArray(100) { 7 }
+        val tail = ByteArray(50) { 9 }
+        val a = File(dir, "a.bin").apply { writeBytes(ByteArray(10) + head) }
+        val b = File(dir, "b.bin").apply { writeBytes(tail) }
+        val expected = md5(head + ByteArray(70_000) + tail)
+        val region = InstallVerifier.Region(
+            Unit,
+            "MD5",
+            expected,
+            listOf(InstallVerifier.Segment(a, 10, 100), InstallVerifier.Segment(null, 0, 70_000), InstallVerifier.Segment(b, 0, 50)),
+        )
+
+        assertEquals(emptyList<Unit>(), verifier.verify(listOf(region)))
+        assertArrayEquals(md5(tail), InstallVerifier.digest(b, "MD5"))
+    }
+
+    @Test(expected = CancellationException::class)
+    fun `verification stops once inactive`() {
+        val file = File(dir, "game.bin").apply { writeBytes(ByteArray(1024)) }
+        verifier.verify(listOf(InstallVerifier.Region(0, "MD5", md5(ByteArray(1024)), file, 0, 1024)), isActive = { false })
+    }
+}
@@ -0,0 +1,93 @@
+package com.winlator.alsaserver
+
+import java.nio.ByteBuffer
+import java.util.Random
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class AudioLatencyControllerTest {
+    private val sampleRate = 48000
+    private val framesPerBurst = 192
+    private val frameBytes = 4
+    private val capacity = framesPerBurst * 32
+
+    private class Run(val output: HeadlessAudioOutput, val controller: AudioLatencyController) {
+        val sizes = ArrayList<Int>()
+        val underrunsAt = ArrayList<Long>()
+    }
+
+    /**
+     * Simulates a feeder that always has audio queued and wakes up at the given intervals to top
+     * up the output, resizing it through the controller like ALSAClient does.
+     */
+    private fun simulate(durationNanos: Long, nextWakeup: (Long) -> Long): Run {
+        val output = HeadlessAudioOutput(sampleRate, frameBytes, framesPerBurst, capacity)
+        val controller = AudioLatencyController(framesPerBurst, 2 * framesPerBurst, capacity, framesPerBurst * 8)
+        output.setBufferSizeInFrames(controller.bufferSizeInFrames)
+        output.start()
+        val run = Run(output, controller)
+        val data = ByteBuffer.allocate(capacity * frameBytes)
+
+        var time = 0L
+        var underruns = 0
+        while (time < durationNanos) {
+            output.advanceTo(time)
+            if (output.underrunCount > underruns) {
+                repeat(output.underrunCount - underruns) { run.underrunsAt.add(time) }
+                underruns = output.underrunCount
+            }
+            data.clear()
+            val queued = output.queuedFrames
+            if (output.write(data, data.capacity()) > 0) {
+                val size = controller.update(time, output.underrunCount, queued)
+                if (size != output.bufferSizeInFrames) output.setBufferSizeInFrames(size)
+                run.sizes.add(size)
+            }
+            time += nextWakeup(time)
+        }
+        return run
+    }
+
+    @Test
+    fun steadyFeeder_shrinksToMinimumWithoutUnderruns() {
+        val run = simulate(20_000_000_000L) { 1_000_000L }
+        assertEquals(2 * framesPerBurst, run.controller.bufferSizeInFrames)
+        assertEquals(0, run.output.underrunCount)
+    }
+
+    @Test
+    fun jitteryFeeder_growsUntilUnderrunsStop() {
+        val random = Random(1)
+        val duration = 30_000_000_000L
+        val run = simulate(duration) {
+            if (random.nextInt(50) == 0) 12_000_000L + random.nextInt(8_000_000) else 1_000_000L
+        }
+        val size = run.controller.bufferSizeInFrames
+        assertTrue("buffer should cover the 20ms stalls, was $size", size * 1_000_000_000L / sampleRate >= 20_000_000L)
+        assertTrue("underruns in the second half: ${run.underrunsAt.count { it >= duration / 2 }}", run.underrunsAt.none { it >= duration / 2 })
+    }
+
+    @Test
+    fun underrun_growsBufferImmediately() {
+        val controller = AudioLatencyController(framesPerBurst, 2 * framesPerBurst, capacity, 4 * framesPerBurst)
+        controller.update(1_000_000L, 0, -1)
+        assertEquals(6 * framesPerBurst, controller.update(2_000_000L, 2, -1))
+        assertEquals(capacity, AudioLatencyController(framesPerBurst, 2 * framesPerBurst, capacity, capacity).update(1L, 100, -1))
+    }
+
+    @Test
+    fun lowQueueDepth_growsBufferBeforeAnUnderrun() {
+        val controller = AudioLatencyController(framesPerBurst, 2 * framesPerBurst, capacity, 4 * framesPerBurst)
+        controller.update(0L, 0, 3 * framesPerBurst)
+        controller.update(500_000_000L, 0, framesPerBurst / 2)
+        assertEquals(5 * framesPerBurst, controller.update(1_000_000_000L, 0, 3 * framesPerBurst))
+    }
+
+    @Test
+    fun unknownQueueDepth_neverShrinksBuffer() {
+        val controller = AudioLatencyController(framesPerBurst, 2 * framesPerBurst, capacity, 8 * framesPerBurst)
+        for (second in 0..10) controller.update(second * 1_000_000_000L, 0, -1)
+        assertEquals(8 * framesPerBurst, controller.bufferSizeInFrames)
+    }
+}
@@ -0,0 +1,83 @@
+package com.winlator.alsaserver
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class AudioMixerTest {
+    private val sampleRate = 48000
+    private val framesPerBurst = 192
+
+    private class Client(val ringBuffer: AudioRingBuffer, val source: AudioMixer.Source, val chunk: ByteBuffer) {
+        var consumedBytes = 0L
+
+        fun refill() {
+            while (ringBuffer.free() >= chunk.capacity()) {
+                chunk.clear()
+                ringBuffer.write(chunk)
+            }
+        }
+    }
+
+    private fun addClient(mixer: AudioMixer, dataType: ALSAClient.DataType, channels: Int, clientRate: Int, fill: (ByteBuffer) -> Unit): Client {
+        val frameBytes = channels * dataType.byteCount
+        val ringBuffer = AudioRingBuffer(framesPerBurst * frameBytes * 8)
+        val chunk = ByteBuffer.allocate(framesPerBurst * frameBytes).order(ByteOrder.LITTLE_ENDIAN)
+        fill(chunk)
+        lateinit var client: Client
+        val source = AudioMixer.Source(ringBuffer, dataType, channels, clientRate) { client.consumedBytes += it }
+        client = Client(ringBuffer, source, chunk)
+        mixer.addSource(source)
+        client.refill()
+        return client
+    }
+
+    private fun readFrames(output: ByteBuffer): FloatArray {
+        val floats = output.duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer()
+        return FloatArray(floats.remaining()).also { floats.get(it) }
+    }
+
+    @Test
+    fun mix_sumsConvertedClients() {
+        val mixer = AudioMixer(sampleRate, framesPerBurst)
+        addClient(mixer, ALSAClient.DataType.S16LE, 2, sampleRate) { while (it.hasRemaining()) it.putShort(8192) }
+        addClient(mixer, ALSAClient.DataType.FLOATLE, 1, sampleRate) { while (it.hasRemaining()) it.putFloat(0.5f) }
+
+        val frames = readFrames(mixer.mix(framesPerBurst))
+        assertEquals(framesPerBurst * AudioMixer.CHANNELS, frames.size)
+        for (sample in frames) assertEquals(0.75f, sample, 1e-6f)
+
+        addClient(mixer, ALSAClient.DataType.FLOATLE, 2, sampleRate) { while (it.hasRemaining()) it.putFloat(0.5f) }
+        for (sample in readFrames(mixer.mix(framesPerBurst))) assertEquals(1.0f, sample, 0.0f)
+    }
+
+    @Test
+    fun mix_resamplesAtTheOutputRate() {
+        val mixer = AudioMixer(sampleRate, framesPerBurst)
+        val client = addClient(mixer, ALSAClient.DataType.S16LE, 2, 44100) { while (it.hasRemaining()) it.putShort(16384) }
+
+        val bursts = 250
+        repeat(bursts) {
+            client.refill()
+            for (sample in readFrames(mixer.mix(framesPerBurst))) assertEquals(0.5f, sample, 1e-6f)
+        }
+        val consumedFrames = client.consumedBytes / 4
+        val expectedFrames = bursts.toLong() * framesPerBurst * 44100 / sampleRate
+        assert(Math.abs(consumedFrames - expectedFrames) <= 2) { "consumed $consumedFrames frames, expected about $expectedFrames" }
+        assertEquals(0, client.source.underrunCount)
+    }
+
+    @Test
+    fun mix_convertsEveryDataType() {
+        val mixer = AudioMixer(sampleRate, framesPerBurst)
+        addClient(mixer, ALSAClient.DataType.U8, 2, sampleRate) { while (it.hasRemaining()) it.put(160.toByte()) }
+        val s16be = addClient(mixer, ALSAClient.DataType.S16BE, 1, sampleRate) { while (it.hasRemaining()) it.putShort(java.lang.Short.reverseBytes((-8192).toShort())) }
+        addClient(mixer, ALSAClient.DataType.FLOATBE, 2, sampleRate) {
+            while (it.hasRemaining()) it.putInt(Integer.reverseBytes(java.lang.Float.floatToIntBits(0.125f)))
+        }
+
+        for (sample in readFrames(mixer.mix(framesPerBurst))) assertEquals(0.125f, sample, 1e-6f)
+        assertEquals(framesPerBurst * 2L, s16be.consumedBytes)
+    }
+}
@@ -0,0 +1,70 @@
+package com.winlator.alsaserver
+
+import java.nio.ByteBuffer
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class AudioRingBufferTest {
+
+    private fun read(ringBuffer: AudioRingBuffer, maxLength: Int = Int.MAX_VALUE): ByteArray {
+        val region = ringBuffer.readRegion()
+        val bytes = ByteArray(minOf(region.remaining(), maxLength))
+        region.get(bytes)
+        ringBuffer.advanceRead(bytes.size)
+        return bytes
+    }
+
+    @Test
+    fun write_wrapsAroundTheEnd() {
+        val ringBuffer = AudioRingBuffer(8)
+        assertEquals(6, ringBuffer.write(ByteBuffer.wrap(byteArrayOf(1, 2, 3, 4, 5, 6))))
+        assertEquals(listOf<Byte>(1, 2, 3, 4), read(ringBuffer, 4).toList())
+
+        assertEquals(5, ringBuffer.write(ByteBuffer.wrap(byteArrayOf(7, 8, 9, 10, 11))))
+        assertEquals(listOf<Byte>(5, 6, 7, 8), read(ringBuffer).toList())
+        assertEquals(listOf<Byte>(9, 10, 11), read(ringBuffer).toList())
+        assertEquals(0, ringBuffer.available())
+    }
+
+    @Test
+    fun write_copiesOnlyWhatFits() {
+        val ringBuffer = AudioRingBuffer(4)
+        val data = ByteBuffer.wrap(byteArrayOf(1, 2, 3, 4, 5, 6))
+        assertEquals(4, ringBuffer.write(data))
+        assertEquals(4, data.position())
+        assertEquals(6, data.limit())
+        assertEquals(0, ringBuffer.write(data))
+
+        ringBuffer.clear()
+        assertEquals(4, ringBuffer.free())
+    }
+
+    @Test
+    fun concurrentProducerAndConsumer_keepByteOrder() {
+        val ringBuffer = AudioRingBuffer(1000)
+        val total = 1_000_000
+        var mismatches = 0
+        val consumer = Thread {
+            var expected = 0
+            while (expected < total) {
+                val region = ringBuffer.readRegion()
+                val length = region.remaining()
+                for (i in 0 until length) if (region.get() != expected++.toByte()) mismatches++
+                ringBuffer.advanceRead(length)
+            }
+        }
+        consumer.start()
+
+        val chunk = ByteBuffer.allocate(333)
+        var next = 0
+        while (next < total) {
+            chunk.clear()
+            while (chunk.hasRemaining() && next + chunk.position() < total) chunk.put((next + chunk.position()).toByte())
+            chunk.flip()
+            while (chunk.hasRemaining()) next += ringBuffer.write(chunk)
+        }
+        consumer.join()
+        assertEquals(0, mismatches)
+        assertEquals(0, ringBuffer.available())
+    }
+}
@@ -0,0 +1,79 @@
+package com.winlator.alsaserver
+
+import java.nio.ByteBuffer
+
+/**
+ * AudioOutput driven by a virtual clock instead of a device: every burst period it consumes one
+ * burst from the queued frames and counts an underrun when fewer frames than a burst are queued.
+ */
+class HeadlessAudioOutput(
+    private val sampleRate: Int,
+    private val frameBytes: Int,
+    private val framesPerBurst: Int,
+    private val capacityInFrames: Int,
+) : AudioOutput {
+    private var bufferSizeInFrames = capacityInFrames
+    private var queuedFrames = 0
+    private var underruns = 0
+    private var playing = false
+    private var started = false
+    private var nextBurstTime = 0L
+
+    val burstNanos: Long get() = framesPerBurst * 1_000_000_000L / sampleRate
+
+    fun advanceTo(timeNanos: Long) {
+        while (nextBurstTime <= timeNanos) {
+            if (playing && started) {
+                if (queuedFrames < framesPerBurst) underruns++
+                queuedFrames = maxOf(0, queuedFrames - framesPerBurst)
+            }
+            nextBurstTime += burstNanos
+        }
+    }
+
+    override fun write(data: ByteBuffer, sizeInBytes: Int): Int {
+        val frames = minOf(sizeInBytes / frameBytes, bufferSizeInFrames - queuedFrames)
+        if (frames <= 0) return 0
+        queuedFrames += frames
+        started = true
+        data.position(data.position() + frames * frameBytes)
+        return frames * frameBytes
+    }
+
+    override fun start() {
+        playing = true
+    }
+
+    override fun pause() {
+        playing = false
+    }
+
+    override fun stop() {
+        playing = false
+        started = false
+    }
+
+    override fun flush() {
+        queuedFrames = 0
+    }
+
+    override fun release() {
+        stop()
+        flush()
+    }
+
+    override fun getBufferSizeInFrames(): Int = bufferSizeInFrames
+
+    override fun setBufferSizeInFrames(bufferSizeInFrames: Int): Int {
+        this.bufferSizeInFrames = bufferSizeInFrames.coerceIn(framesPerBurst, capacityInFrames)
+        return this.bufferSizeInFrames
+    }
+
+    override fun getBufferCapacityInFrames(): Int = capacityInFrames
+
+    override fun getFramesPerBurst(): Int = framesPerBurst
+
+    override fun getUnderrunCount(): Int = underruns
+
+    override fun getQueuedFrames(): Int = queuedFrames
+}
@@ -0,0 +1,56 @@
+package com.winlator.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class LatencyHistogramTest {
+
+    @Test
+    fun bucketBounds_coverEveryValueWithBoundedError() {
+        var value = 0L
+        while (value < Long.MAX_VALUE / 3) {
+            val index = LatencyHistogram.indexFor(value)
+            assertTrue(value >= LatencyHistogram.lowestValueAt(index))
+            assertTrue(value <= LatencyHistogram.highestValueAt(index))
+            val width = LatencyHistogram.highestValueAt(index) - LatencyHistogram.lowestValueAt(index) + 1
+            assertTrue(width <= maxOf(1L, value / 16 + 1))
+            value = value * 3 / 2 + 1
+        }
+        assertEquals(LatencyHistogram.highestValueAt(LatencyHistogram.indexFor(Long.MAX_VALUE)), Long.MAX_VALUE)
+    }
+
+    @Test
+    fun percentiles_matchUniformDistribution() {
+        val histogram = LatencyHistogram()
+        for (i in 1..10_000) histogram.record(i * 1000L)
+
+        assertEquals(10_000, histogram.totalCount)
+        assertEquals(1000, histogram.minValue)
+        assertEquals(10_000_000, histogram.maxValue)
+        assertEquals(5_000_500.0, histogram.mean, 0.1)
+        for (percentile in doubleArrayOf(50.0, 90.0, 99.0, 99.9)) {
+            val expected = percentile / 100 * 10_000_000
+            val actual = histogram.getValueAtPercentile(percentile).toDouble()
+            assertTrue("p$percentile = $actual", actual >= expected && actual <= expected * 17 / 16)
+        }
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100.0))
+    }
+
+    @Test
+    fun add_mergesCountsAndExtremes() {
+        val a = LatencyHistogram()
+        val b = LatencyHistogram()
+        a.record(10)
+        b.record(1_000_000)
+        b.record(-5)
+        a.add(b)
+
+        assertEquals(3, a.totalCount)
+        assertEquals(0, a.minValue)
+        assertEquals(1_000_000, a.maxValue)
+        a.reset()
+        assertEquals(0, a.totalCount)
+        assertEquals(0, a.getValueAtPercentile(50.0))
+    }
+}
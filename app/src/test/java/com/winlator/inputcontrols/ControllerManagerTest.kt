@@ -0,0 +1,140 @@
+package com.winlator.inputcontrols
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.hardware.input.InputManager
+import android.view.InputDevice
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.kotlin.any
+import org.mockito.kotlin.anyOrNull
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.verify
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class ControllerManagerTest {
+
+    private val devices = HashMap<Int, InputDevice>()
+    private lateinit var preferences: SharedPreferences
+    private lateinit var controllerManager: ControllerManager
+    private lateinit var deviceListener: InputManager.InputDeviceListener
+
+    @Before
+    fun setup() {
+        preferences = ApplicationProvider.getApplicationContext<Context>().getSharedPreferences("controller_manager_test", Context.MODE_PRIVATE)
+        preferences.edit().clear().commit()
+
+        val inputManager = mock<InputManager> {
+            on { inputDeviceIds } doReturn IntArray(0)
+            on { getInputDevice(any()) } doAnswer { devices[it.getArgument(0)] }
+        }
+        val context = mock<Context> {
+            on { applicationContext } doReturn it
+            on { getSystemService(Context.INPUT_SERVICE) } doReturn inputManager
+            on { getSharedPreferences(anyOrNull(), any()) } doReturn preferences
+        }
+
+        // A fresh manager per test instead of the process-wide instance
+        controllerManager = ControllerManager::class.java.getDeclaredConstructor().run {
+            isAccessible = true
+            newInstance()
+        }
+        controllerManager.init(context)
+
+        val listenerCaptor = argumentCaptor<InputManager.InputDeviceListener>()
+        verify(inputManager).registerInputDeviceListener(listenerCaptor.capture(), anyOrNull())
+        deviceListener = listenerCaptor.firstValue
+    }
+
+    private fun connect(deviceId: Int): InputDevice {
+        val device = mock<InputDevice> {
+            on { id } doReturn deviceId
+            on { sources } doReturn InputDevice.SOURCE_GAMEPAD
+            on { vendorId } doReturn 0x45e
+            on { productId } doReturn deviceId
+        }
+        devices[deviceId] = device
+        return device
+    }
+
+    private fun disconnect(deviceId: Int) {
+        devices.remove(deviceId)
+        deviceListener.onInputDeviceRemoved(deviceId)
+    }
+
+    @Test
+    fun newControllersTakeEnabledSlotsInOrder() {
+        controllerManager.setSlotEnabled(1, true)
+        connect(10)
+        connect(11)
+
+        assertEquals(0, controllerManager.getOrAssignSlot(10))
+        assertEquals(1, controllerManager.getOrAssignSlot(11))
+        assertEquals(0, controllerManager.getOrAssignSlot(10))
+        assertEquals(1, controllerManager.getOrAssignSlot(11))
+    }
+
+    @Test
+    fun controllerKeepsItsSavedSlot() {
+        controllerManager.setSlotEnabled(2, true)
+        controllerManager.assignDeviceToSlot(2, connect(10))
+
+        assertEquals(2, controllerManager.getOrAssignSlot(10))
+        assertEquals(0, controllerManager.getOrAssignSlot(connect(11).id))
+    }
+
+    @Test
+    fun controllerFallsBackToPlayerOneWhileAllSlotsAreTakenAndMovesOnceASlotIsEnabled() {
+        connect(10)
+        connect(11)
+        assertEquals(0, controllerManager.getOrAssignSlot(10))
+
+        assertEquals(0, controllerManager.getOrAssignSlot(11))
+        assertEquals(0, controllerManager.getOrAssignSlot(11))
+
+        controllerManager.setSlotEnabled(3, true)
+        assertEquals(3, controllerManager.getOrAssignSlot(11))
+        assertEquals(0, controllerManager.getOrAssignSlot(10))
+    }
+
+    @Test
+    fun disconnectedControllerReleasesItsSlot() {
+        controllerManager.setSlotEnabled(1, true)
+        connect(10)
+        connect(11)
+        assertEquals(0, controllerManager.getOrAssignSlot(10))
+        assertEquals(1, controllerManager.getOrAssignSlot(11))
+
+        disconnect(10)
+        connect(12)
+
+        assertEquals(0, controllerManager.getOrAssignSlot(12))
+        assertEquals(1, controllerManager.getOrAssignSlot(11))
+        assertEquals(12, controllerManager.getAssignedDeviceForSlot(0).id)
+    }
+
+    @Test
+    fun sessionSlotsAreNeverSaved() {
+        connect(10)
+        assertEquals(0, controllerManager.getOrAssignSlot(10))
+
+        controllerManager.setSlotEnabled(1, true)
+
+        assertFalse(preferences.contains(ControllerManager.PREF_PLAYER_SLOT_PREFIX + 0))
+    }
+
+    @Test
+    fun unknownDevicesGetNoSlot() {
+        assertEquals(-1, controllerManager.getOrAssignSlot(42))
+    }
+}
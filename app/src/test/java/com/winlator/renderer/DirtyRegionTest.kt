@@ -0,0 +1,74 @@
+package com.winlator.renderer
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class DirtyRegionTest {
+
+    private fun drained(region: DirtyRegion, width: Int = 1280, height: Int = 720): IntArray {
+        val rects = IntArray(DirtyRegion.MAX_RECTS * 4)
+        val count = region.drain(rects, width, height)
+        return rects.copyOf(count * 4)
+    }
+
+    @Test
+    fun newRegion_isFullyDirty() {
+        val region = DirtyRegion()
+        assertTrue(region.isDirty)
+        assertArrayEquals(intArrayOf(0, 0, 1280, 720), drained(region))
+        assertFalse(region.isDirty)
+    }
+
+    @Test
+    fun disjointRects_areKeptSeparately() {
+        val region = DirtyRegion()
+        region.clear()
+        region.add(10, 10, 32, 32)
+        region.add(600, 400, 16, 8)
+        assertArrayEquals(intArrayOf(10, 10, 32, 32, 600, 400, 16, 8), drained(region))
+    }
+
+    @Test
+    fun overlappingAndContainedRects_areMerged() {
+        val region = DirtyRegion()
+        region.clear()
+        region.add(0, 0, 100, 100)
+        region.add(50, 50, 100, 100)
+        region.add(60, 60, 10, 10)
+        assertArrayEquals(intArrayOf(0, 0, 150, 150), drained(region))
+    }
+
+    @Test
+    fun overflow_mergesIntoBoundedNumberOfRects() {
+        val region = DirtyRegion()
+        region.clear()
+        for (i in 0 until 64) region.add((i % 16) * 70, (i / 16) * 50, 8, 8)
+
+        val rects = drained(region)
+        assertTrue(rects.size / 4 <= DirtyRegion.MAX_RECTS)
+        for (i in 0 until 64) {
+            val x = (i % 16) * 70
+            val y = (i / 16) * 50
+            val covered = (rects.indices step 4).any { j ->
+                x >= rects[j] && y >= rects[j + 1] && x + 8 <= rects[j] + rects[j + 2] && y + 8 <= rects[j + 1] + rects[j + 3]
+            }
+            assertTrue("rect $i lost", covered)
+        }
+    }
+
+    @Test
+    fun drain_clipsToSurfaceAndCollapsesLargeAreas() {
+        val region = DirtyRegion()
+        region.clear()
+        region.add(-10, -10, 20, 20)
+        region.add(1270, 710, 50, 50)
+        assertArrayEquals(intArrayOf(0, 0, 10, 10, 1270, 710, 10, 10), drained(region))
+
+        region.add(0, 0, 1280, 500)
+        assertArrayEquals(intArrayOf(0, 0, 1280, 720), drained(region))
+        assertEquals(0, drained(region).size)
+    }
+}
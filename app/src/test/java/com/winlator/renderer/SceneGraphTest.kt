@@ -0,0 +1,153 @@
+package com.winlator.renderer
+
+import com.winlator.xserver.Atom
+import com.winlator.xserver.Property
+import com.winlator.xserver.ScreenInfo
+import com.winlator.xserver.ShadowDrawable
+import com.winlator.xserver.Window
+import com.winlator.xserver.WindowAttributes
+import com.winlator.xserver.XServer
+import java.util.Random
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(
+    sdk = [28],
+    shadows = [ShadowDrawable::class],
+    instrumentedPackages = ["com.winlator.xserver"],
+)
+class SceneGraphTest {
+
+    private val xServer = XServer(ScreenInfo(1280, 720))
+    private val windowManager = xServer.windowManager
+    private val windows = ArrayList<Window>()
+    private val random = Random(1)
+    private var nextId = xServer.resourceIDs.idMask + 1
+
+    private fun createWindow(parent: Window): Window {
+        val window = when (random.nextInt(3)) {
+            0 -> createWindow(parent, random.nextInt(64), random.nextInt(48), 32, 32)
+            1 -> createWindow(parent, random.nextInt(8), random.nextInt(8), 330 + random.nextInt(600), 210 + random.nextInt(400))
+            else -> createWindow(parent, 0, 0, 1280, 720)
+        }
+        if (random.nextInt(4) == 0) setClassName(window, "game.exe")
+        return window
+    }
+
+    private fun createWindow(parent: Window, x: Int, y: Int, width: Int, height: Int): Window {
+        val window = windowManager.createWindow(nextId++, parent, x.toShort(), y.toShort(), width.toShort(), height.toShort(),
+            WindowAttributes.WindowClass.INPUT_OUTPUT, null, 0, null)
+        windows.add(window)
+        return window
+    }
+
+    private fun setClassName(window: Window, className: String) {
+        window.modifyProperty(Atom.getId("WM_CLASS"), Atom.getId("STRING"), Property.Format.BYTE_ARRAY, Property.Mode.REPLACE,
+            className.toByteArray())
+    }
+
+    private fun randomParent() = if (windows.isEmpty() || random.nextInt(3) == 0) windowManager.rootWindow else windows[random.nextInt(windows.size)]
+
+    private fun assertMatchesRebuild(sceneGraph: SceneGraph) {
+        val expected = SceneGraph(windowManager, DirtyRegion())
+        expected.setForceFullscreenWMClass(sceneGraph.forceFullscreenWMClass)
+        expected.rebuild()
+        assertEquals(describe(expected), describe(sceneGraph))
+    }
+
+    private fun describe(sceneGraph: SceneGraph) = sceneGraph.renderableWindows.joinToString {
+        "${it.window.id}@${it.rootX},${it.rootY}" + if (it.forceFullscreen) "F" else ""
+    }
+
+    private fun randomModifications(forceFullscreenWMClass: String?) {
+        repeat(60) { windowManager.mapWindow(createWindow(randomParent())) }
+        val sceneGraph = SceneGraph(windowManager, DirtyRegion())
+        sceneGraph.setForceFullscreenWMClass(forceFullscreenWMClass)
+        sceneGraph.rebuild()
+
+        repeat(1000) {
+            val window = windows[random.nextInt(windows.size)]
+            when (random.nextInt(7)) {
+                0 -> {
+                    val child = createWindow(randomParent())
+                    windowManager.mapWindow(child)
+                    sceneGraph.update(child)
+                }
+                1 -> {
+                    windowManager.mapWindow(window)
+                    sceneGraph.update(window)
+                }
+                2 -> {
+                    windowManager.unmapWindow(window)
+                    sceneGraph.update(window)
+                }
+                3 -> {
+                    window.parent.moveChildAbove(window, null)
+                    sceneGraph.update(window)
+                }
+                4 -> {
+                    window.x = random.nextInt(64).toShort()
+                    sceneGraph.move(window)
+                }
+                5 -> {
+                    windowManager.destroyWindow(window.id)
+                    windows.removeAll { windowManager.getWindow(it.id) == null }
+                    sceneGraph.update(window)
+                    if (windows.isEmpty()) {
+                        val child = createWindow(windowManager.rootWindow)
+                        windowManager.mapWindow(child)
+                        sceneGraph.update(child)
+                    }
+                }
+                else -> {
+                    val parent = randomParent()
+                    var ancestor: Window? = parent
+                    while (ancestor != null && ancestor != window) ancestor = ancestor.parent
+                    if (ancestor == null) {
+                        windowManager.reparentWindow(window, parent)
+                        sceneGraph.update(window)
+                    }
+                }
+            }
+            assertMatchesRebuild(sceneGraph)
+        }
+    }
+
+    @Test
+    fun update_matchesRebuildAfterRandomModifications() {
+        randomModifications(null)
+    }
+
+    @Test
+    fun update_matchesRebuildWithForceFullscreen() {
+        randomModifications("game.exe")
+    }
+
+    @Test
+    fun forceFullscreen_replacesFrameOfBorderedWindow() {
+        val frame = createWindow(windowManager.rootWindow, 100, 100, 648, 508)
+        val client = createWindow(frame, 4, 4, 640, 480)
+        windowManager.mapWindow(frame)
+        val sceneGraph = SceneGraph(windowManager, DirtyRegion())
+        sceneGraph.setForceFullscreenWMClass("game.exe")
+        sceneGraph.rebuild()
+
+        windowManager.mapWindow(client)
+        sceneGraph.update(client)
+
+        assertEquals(listOf(client), sceneGraph.renderableWindows.map { it.window })
+        assertTrue(sceneGraph.renderableWindows[0].forceFullscreen)
+        assertMatchesRebuild(sceneGraph)
+
+        windowManager.unmapWindow(client)
+        sceneGraph.update(client)
+
+        assertEquals(listOf(frame), sceneGraph.renderableWindows.map { it.window })
+        assertMatchesRebuild(sceneGraph)
+    }
+}
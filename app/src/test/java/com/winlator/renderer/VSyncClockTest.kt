@@ -0,0 +1,37 @@
+package com.winlator.renderer
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class VSyncClockTest {
+
+    private val clock = VSyncClock()
+    private val period = clock.refreshPeriod
+
+    @Test
+    fun getMsc_neverGoesBackwardsWhenALateFrameArrives() {
+        clock.doFrame(System.nanoTime() - 3 * period)
+        val extrapolated = clock.msc
+        var delivered = -1L
+        clock.addOnVSyncListener { msc, _ -> delivered = msc }
+
+        // The vblank right after the anchor frame is only delivered now
+        clock.doFrame(clock.lastFrameTime + period * 14 / 10)
+
+        assertTrue(delivered >= extrapolated)
+        assertTrue(clock.msc >= extrapolated)
+    }
+
+    @Test
+    fun getMsc_roundsLikeFrameCallbacks() {
+        clock.doFrame(System.nanoTime() - period * 6 / 10)
+        val extrapolated = clock.msc
+        var delivered = -1L
+        clock.addOnVSyncListener { msc, _ -> delivered = msc }
+
+        clock.doFrame(clock.lastFrameTime + period)
+
+        assertEquals(extrapolated, delivered)
+    }
+}
@@ -0,0 +1,80 @@
+package com.winlator.steampipeserver
+
+import java.net.InetSocketAddress
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.SocketChannel
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Talks to the server over loopback like the Steam client stub does: little-endian message
+ * types, one int reply for INIT, RESTART_APP and IS_RUNNING.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class SteamPipeServerTest {
+    private lateinit var server: SteamPipeServer
+
+    private class Client(port: Int) : AutoCloseable {
+        val channel: SocketChannel = SocketChannel.open(InetSocketAddress("127.0.0.1", port)).apply { socket().tcpNoDelay = true }
+        private val request = ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN)
+        private val reply = ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN)
+
+        fun send(vararg ints: Int) {
+            request.clear()
+            ints.forEach { request.putInt(it) }
+            request.flip()
+            while (request.hasRemaining()) channel.write(request)
+        }
+
+        fun receive(count: Int): IntArray {
+            reply.clear().limit(count * 4)
+            while (reply.hasRemaining()) check(channel.read(reply) >= 0) { "connection closed" }
+            reply.flip()
+            return IntArray(count) { reply.getInt() }
+        }
+
+        override fun close() = channel.close()
+    }
+
+    @Before
+    fun setUp() {
+        server = SteamPipeServer(0)
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop()
+    }
+
+    @Test
+    fun messages_getTheirReplies() {
+        Client(server.port).use { client ->
+            client.send(RequestCodes.MSG_INIT)
+            assertEquals(1, client.receive(1)[0])
+            client.send(RequestCodes.MSG_RESTART_APP, 480)
+            assertEquals(0, client.receive(1)[0])
+            client.send(RequestCodes.MSG_REGISTER_CALLBACK, RequestCodes.MSG_RUN_CALLBACKS, RequestCodes.MSG_IS_RUNNING)
+            assertEquals(1, client.receive(1)[0])
+        }
+    }
+
+    @Test
+    fun pipelinedMessages_areAnsweredInOrder() {
+        Client(server.port).use { client ->
+            client.send(RequestCodes.MSG_INIT, RequestCodes.MSG_IS_RUNNING, RequestCodes.MSG_RESTART_APP, 480, RequestCodes.MSG_IS_RUNNING)
+            assertEquals(listOf(1, 1, 0, 1), client.receive(4).toList())
+
+            client.send(RequestCodes.MSG_SHUTDOWN)
+            val buffer = ByteBuffer.allocate(4)
+            assertEquals(-1, client.channel.read(buffer))
+        }
+    }
+}
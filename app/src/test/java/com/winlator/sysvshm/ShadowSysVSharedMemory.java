@@ -0,0 +1,44 @@
+package com.winlator.sysvshm;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+
+/**
+ * Skips loading libwinlator and backs segments with direct buffers. Every mapping is recorded
+ * with its read-only flag until it is unmapped.
+ */
+@Implements(SysVSharedMemory.class)
+public class ShadowSysVSharedMemory {
+    public static final IdentityHashMap<ByteBuffer, Boolean> mappings = new IdentityHashMap<>();
+    private static int nextFd = 100;
+
+    @Implementation
+    protected static void __staticInitializer__() {}
+
+    @Implementation
+    protected static int ashmemCreateRegion(int index, long size) {
+        return nextFd++;
+    }
+
+    @Implementation
+    protected static ByteBuffer mapSHMSegment(int fd, long size, int offset, boolean readonly) {
+        ByteBuffer data = ByteBuffer.allocateDirect((int)size);
+        if (readonly) data = data.asReadOnlyBuffer();
+        mappings.put(data, readonly);
+        return data;
+    }
+
+    @Implementation
+    protected static void unmapSHMSegment(ByteBuffer data, long size) {
+        if (mappings.remove(data) == null) throw new IllegalStateException("Buffer is not mapped");
+    }
+
+    @Resetter
+    public static void reset() {
+        mappings.clear();
+    }
+}
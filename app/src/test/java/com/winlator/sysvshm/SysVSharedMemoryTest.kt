@@ -0,0 +1,99 @@
+package com.winlator.sysvshm
+
+import com.winlator.xconnector.ShadowXConnectorEpoll
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(
+    sdk = [28],
+    shadows = [ShadowSysVSharedMemory::class, ShadowXConnectorEpoll::class],
+    instrumentedPackages = ["com.winlator.sysvshm", "com.winlator.xconnector"],
+)
+class SysVSharedMemoryTest {
+
+    private val sysVSharedMemory = SysVSharedMemory()
+    private val mappings get() = ShadowSysVSharedMemory.mappings
+
+    @Test
+    fun attach_mapsReadOnlyOnceAndUnmapsOnLastDetach() {
+        val shmid = sysVSharedMemory.get(8192)
+
+        val data = sysVSharedMemory.attach(shmid)
+        assertSame(data, sysVSharedMemory.attach(shmid))
+        assertEquals(mapOf(data to true), mappings.toMap())
+        assertTrue(data.isReadOnly)
+
+        sysVSharedMemory.detach(data)
+        assertEquals(1, mappings.size)
+        sysVSharedMemory.detach(data)
+        assertTrue(mappings.isEmpty())
+
+        val remapped = sysVSharedMemory.attach(shmid)
+        assertNotNull(remapped)
+        assertEquals(1, mappings.size)
+    }
+
+    @Test
+    fun delete_whileAttachedKeepsMappingUntilDetach() {
+        val shmid = sysVSharedMemory.get(4096)
+        val fd = sysVSharedMemory.getFd(shmid)
+        val data = sysVSharedMemory.attach(shmid)
+
+        sysVSharedMemory.delete(shmid)
+
+        assertEquals(listOf(fd), ShadowXConnectorEpoll.closedFds)
+        assertEquals(-1, sysVSharedMemory.getFd(shmid))
+        assertNull(sysVSharedMemory.attach(shmid))
+        assertTrue(mappings.containsKey(data))
+
+        sysVSharedMemory.detach(data)
+        assertTrue(mappings.isEmpty())
+        sysVSharedMemory.detach(data)
+        assertTrue(mappings.isEmpty())
+    }
+
+    @Test
+    fun get_afterDeleteNeverReusesAnFdHandedOut() {
+        val shmid = sysVSharedMemory.get(4096)
+        val fd = sysVSharedMemory.getFd(shmid)
+        val data = sysVSharedMemory.attach(shmid)
+        sysVSharedMemory.detach(data)
+        sysVSharedMemory.delete(shmid)
+
+        val newShmid = sysVSharedMemory.get(4096)
+
+        assertNotEquals(shmid, newShmid)
+        assertNotEquals(fd, sysVSharedMemory.getFd(newShmid))
+        assertEquals(listOf(fd), ShadowXConnectorEpoll.closedFds)
+        assertNotSame(data, sysVSharedMemory.attach(newShmid))
+    }
+
+    @Test
+    fun deleteAll_unmapsLiveAttachmentsAndCountsChurn() {
+        val first = sysVSharedMemory.get(4096)
+        val second = sysVSharedMemory.get(4096)
+        val data = sysVSharedMemory.attach(first)
+        sysVSharedMemory.attach(first)
+        sysVSharedMemory.detach(sysVSharedMemory.attach(second))
+
+        sysVSharedMemory.deleteAll()
+
+        assertTrue(mappings.isEmpty())
+        assertEquals(2, ShadowXConnectorEpoll.closedFds.size)
+        sysVSharedMemory.detach(data)
+        assertTrue(mappings.isEmpty())
+        assertEquals(2, sysVSharedMemory.allocationCount)
+        assertEquals(3, sysVSharedMemory.attachCount)
+        assertEquals(1, sysVSharedMemory.detachCount)
+    }
+}
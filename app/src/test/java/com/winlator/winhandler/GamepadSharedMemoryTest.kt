@@ -0,0 +1,88 @@
+package com.winlator.winhandler
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+
+class GamepadSharedMemoryTest {
+
+    private lateinit var dir: File
+    private lateinit var file: File
+    private lateinit var shim: MappedByteBuffer
+
+    @Before
+    fun setUp() {
+        dir = Files.createTempDirectory("gamepad").toFile()
+        file = File(dir, "gamepad.mem")
+    }
+
+    @After
+    fun tearDown() {
+        dir.deleteRecursively()
+    }
+
+    /** Maps the block a second time, the way libevshim sees it. */
+    private fun mapShim() {
+        RandomAccessFile(file, "rw").use { raf ->
+            shim = raf.channel.map(FileChannel.MapMode.READ_WRITE, 0, GamepadSharedMemory.SIZE.toLong())
+            shim.order(ByteOrder.LITTLE_ENDIAN)
+        }
+    }
+
+    private fun shimRumble(lowFreq: Int, highFreq: Int) {
+        shim.putShort(32, lowFreq.toShort())
+        shim.putShort(34, highFreq.toShort())
+    }
+
+    @Test
+    fun getRumble_readsBothMotorsWrittenByTheShim() {
+        val memory = GamepadSharedMemory.open(file)
+        mapShim()
+        assertEquals(0, memory.getRumble())
+
+        shimRumble(0x1234, 0xfedc)
+        val rumble = memory.getRumble()
+
+        assertEquals(0x1234, rumble and 0xffff)
+        assertEquals(0xfedc, rumble ushr 16)
+    }
+
+    @Test
+    fun pollTimer_staysFastWhileRumbleIsActiveAndBacksOffWhenIdle() {
+        val memory = GamepadSharedMemory.open(file)
+        mapShim()
+        val timer = RumblePollTimer()
+        var lastRumble = 0
+        var now = 1_000_000_000L
+
+        fun poll(): Long {
+            val rumble = memory.getRumble()
+            if (rumble != lastRumble) {
+                lastRumble = rumble
+                timer.onChange(now)
+            }
+            return timer.nextPollNanos(rumble != 0, now)
+        }
+
+        assertEquals(RumblePollTimer.IDLE_POLL_NANOS, poll())
+
+        shimRumble(0x8000, 0)
+        assertEquals(RumblePollTimer.ACTIVE_POLL_NANOS, poll())
+        now += 5 * RumblePollTimer.ACTIVE_WINDOW_NANOS
+        assertEquals(RumblePollTimer.ACTIVE_POLL_NANOS, poll())
+
+        shimRumble(0, 0)
+        assertEquals(RumblePollTimer.ACTIVE_POLL_NANOS, poll())
+        now += RumblePollTimer.ACTIVE_WINDOW_NANOS - 1
+        assertEquals(RumblePollTimer.ACTIVE_POLL_NANOS, poll())
+        now += 1
+        assertEquals(RumblePollTimer.IDLE_POLL_NANOS, poll())
+    }
+}
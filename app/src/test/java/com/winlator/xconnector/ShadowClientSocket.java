@@ -0,0 +1,14 @@
+package com.winlator.xconnector;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+ * Skips loading libwinlator so in-memory sockets that override the I/O methods can be used
+ * on the JVM.
+ */
+@Implements(ClientSocket.class)
+public class ShadowClientSocket {
+    @Implementation
+    protected static void __staticInitializer__() {}
+}
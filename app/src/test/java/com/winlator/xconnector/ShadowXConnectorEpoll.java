@@ -0,0 +1,28 @@
+package com.winlator.xconnector;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
+
+import java.util.ArrayList;
+
+/**
+ * Skips loading libwinlator and records the fds passed to closeFd.
+ */
+@Implements(XConnectorEpoll.class)
+public class ShadowXConnectorEpoll {
+    public static final ArrayList<Integer> closedFds = new ArrayList<>();
+
+    @Implementation
+    protected static void __staticInitializer__() {}
+
+    @Implementation
+    protected static void closeFd(int fd) {
+        closedFds.add(fd);
+    }
+
+    @Resetter
+    public static void reset() {
+        closedFds.clear();
+    }
+}
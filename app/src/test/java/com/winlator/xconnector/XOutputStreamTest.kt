@@ -0,0 +1,61 @@
+package com.winlator.xconnector
+
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import org.junit.Assert.assertArrayEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(
+    sdk = [28],
+    shadows = [ShadowClientSocket::class],
+    instrumentedPackages = ["com.winlator.xconnector"],
+)
+class XOutputStreamTest {
+
+    /** Accepts at most [maxWrite] bytes per call, like a socket whose send buffer is nearly full. */
+    private class ShortWriteSocket(private val maxWrite: Int) : ClientSocket(-1) {
+        val written = ByteArrayOutputStream()
+
+        override fun write(data: ByteBuffer) {
+            val length = minOf(maxWrite, data.remaining())
+            val bytes = ByteArray(length)
+            data.duplicate().get(bytes)
+            written.write(bytes)
+            data.position(data.position() + length)
+        }
+    }
+
+    private fun payload(size: Int) = ByteArray(size) { (it * 7).toByte() }
+
+    @Test
+    fun flush_continuesShortWrites() {
+        val socket = ShortWriteSocket(1000)
+        val outputStream = XOutputStream(socket, 256)
+        val data = payload(10_000)
+
+        outputStream.lock().use { outputStream.write(data) }
+
+        assertArrayEquals(data, socket.written.toByteArray())
+    }
+
+    @Test
+    fun flushSegments_continuesShortWritesOfOversizedReplies() {
+        val socket = ShortWriteSocket(64 * 1024)
+        val outputStream = XOutputStream(socket, 256)
+        val header = payload(32)
+        val segment = payload(512 * 1024)
+
+        repeat(2) {
+            socket.written.reset()
+            outputStream.lock().use {
+                outputStream.write(header)
+                outputStream.writeSegment(ByteBuffer.allocateDirect(segment.size).put(segment).flip() as ByteBuffer)
+            }
+            assertArrayEquals(header + segment, socket.written.toByteArray())
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.winlator.xserver
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class AtomTest {
+
+    @Test
+    fun predefinedAtoms_keepProtocolIds() {
+        assertEquals(0, Atom.getId(null))
+        assertEquals(1, Atom.getId("PRIMARY"))
+        assertEquals(31, Atom.getId("STRING"))
+        assertEquals(68, Atom.getId("WM_TRANSIENT_FOR"))
+        assertEquals("WINDOW", Atom.getName(33))
+    }
+
+    @Test
+    fun commonAtoms_arePreseeded() {
+        val id = Atom.getId("_NET_WM_PID")
+        assertTrue(id > 68)
+        assertEquals("_NET_WM_PID", Atom.getName(id))
+    }
+
+    @Test
+    fun seededAtoms_onlyExistOnceInterned() {
+        val id = Atom.getId("_NET_WM_WINDOW_TYPE_TOOLTIP")
+        assertEquals(-1, Atom.getInternedId("_NET_WM_WINDOW_TYPE_TOOLTIP"))
+        assertEquals(Atom.getId("WM_CLASS"), Atom.getInternedId("WM_CLASS"))
+
+        assertEquals(id, Atom.internAtom("_NET_WM_WINDOW_TYPE_TOOLTIP"))
+        assertEquals(id, Atom.getInternedId("_NET_WM_WINDOW_TYPE_TOOLTIP"))
+    }
+
+    @Test
+    fun internAtom_returnsSameIdForSameName() {
+        val id = Atom.internAtom("ATOM_TEST_SAME_NAME")
+        assertEquals(id, Atom.internAtom("ATOM_TEST_SAME_NAME"))
+        assertEquals(id, Atom.getId("ATOM_TEST_SAME_NAME"))
+        assertEquals("ATOM_TEST_SAME_NAME", Atom.getName(id))
+        assertTrue(Atom.isValid(id))
+        assertFalse(Atom.isValid(id + 100000))
+    }
+
+    @Test
+    fun getId_returnsMinusOneForUnknownName() {
+        assertEquals(-1, Atom.getId("ATOM_TEST_NEVER_INTERNED"))
+    }
+
+    @Test
+    fun internAtom_concurrentClientsAgreeOnIds() {
+        val threads = 8
+        val names = (0 until 500).map { "ATOM_TEST_CONCURRENT_$it" }
+        val results = Array(threads) { IntArray(names.size) }
+        val start = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(threads)
+
+        for (t in 0 until threads) {
+            executor.execute {
+                start.await()
+                for (i in names.indices) {
+                    val index = (i + t * 37) % names.size
+                    results[t][index] = Atom.internAtom(names[index])
+                }
+            }
+        }
+        start.countDown()
+        executor.shutdown()
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS))
+
+        for (t in 1 until threads) {
+            assertTrue(results[0].contentEquals(results[t]))
+        }
+        assertEquals(names.size, results[0].toSet().size)
+        for (i in names.indices) {
+            assertEquals(names[i], Atom.getName(results[0][i]))
+        }
+    }
+
+    @Test
+    fun lookups_stayConsistentWhileOtherClientsIntern() {
+        // Enough new names to grow the id table several times while readers use it
+        val names = (0 until 3000).map { "ATOM_TEST_GROWTH_$it" }
+        val writers = 4
+        val readers = 4
+        val failures = AtomicInteger()
+        val start = CountDownLatch(1)
+        val writersDone = CountDownLatch(writers)
+        val executor = Executors.newFixedThreadPool(writers + readers)
+
+        for (w in 0 until writers) {
+            executor.execute {
+                start.await()
+                for (i in w until names.size step writers) {
+                    val id = Atom.internAtom(names[i])
+                    if (Atom.getName(id) != names[i]) failures.incrementAndGet()
+                }
+                writersDone.countDown()
+            }
+        }
+        for (r in 0 until readers) {
+            executor.execute {
+                start.await()
+                while (writersDone.count > 0) {
+                    for (i in r until names.size step readers) {
+                        val id = Atom.getId(names[i])
+                        // An id is only handed out once its name can be read back
+                        if (id != -1 && (!Atom.isValid(id) || Atom.getName(id) != names[i])) failures.incrementAndGet()
+                    }
+                }
+            }
+        }
+        start.countDown()
+        executor.shutdown()
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS))
+
+        assertEquals(0, failures.get())
+        val ids = names.map { Atom.getId(it) }
+        assertFalse(ids.contains(-1))
+        assertEquals(names.size, ids.toSet().size)
+    }
+}
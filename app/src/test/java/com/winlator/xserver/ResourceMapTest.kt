@@ -0,0 +1,143 @@
+package com.winlator.xserver
+
+import java.util.Random
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ResourceMapTest {
+
+    @Test
+    fun putGetRemove_behaveLikeAMap() {
+        val map = ResourceMap<String>()
+        assertNull(map.put(0x200001, "a"))
+        assertNull(map.put(0x200002, "b"))
+        assertEquals("a", map.put(0x200001, "c"))
+
+        assertEquals(2, map.size())
+        assertEquals("c", map.get(0x200001))
+        assertTrue(map.containsKey(0x200002))
+        assertEquals("b", map.remove(0x200002))
+        assertFalse(map.containsKey(0x200002))
+        assertNull(map.remove(0x200002))
+        assertEquals(1, map.size())
+    }
+
+    @Test
+    fun randomChurn_matchesHashMap() {
+        val map = ResourceMap<Int>()
+        val expected = HashMap<Int, Int>()
+        val random = Random(42)
+
+        for (i in 0 until 200_000) {
+            val key = (random.nextInt(4) shl 22) or random.nextInt(2048)
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key))
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i))
+            }
+        }
+
+        assertEquals(expected.size, map.size())
+        for ((key, value) in expected) assertEquals(value, map.get(key))
+    }
+
+    @Test
+    fun removeInterval_removesOnlyOneClientsResources() {
+        val resourceIDs = ResourceIDs(128)
+        val firstBase = resourceIDs.get()
+        val secondBase = resourceIDs.get()
+        val map = ResourceMap<Int>()
+        for (i in 1..1000) {
+            map.put(firstBase or i, i)
+            map.put(secondBase or i, -i)
+        }
+
+        val removed = ArrayList<Int>()
+        assertEquals(1000, map.removeInterval(firstBase, resourceIDs.idMask) { removed.add(it) })
+
+        assertEquals(1000, removed.size)
+        assertTrue(removed.all { it > 0 })
+        assertEquals(1000, map.size())
+        for (i in 1..1000) {
+            assertNull(map.get(firstBase or i))
+            assertEquals(-i, map.get(secondBase or i))
+        }
+    }
+
+    private fun <T> ResourceMap<T>.entries(): Map<Int, T> {
+        val entries = HashMap<Int, T>()
+        for (i in 0 until capacity()) {
+            val value = valueAt(i) ?: continue
+            assertNull("key ${keyAt(i)} visited twice", entries.put(keyAt(i), value))
+        }
+        return entries
+    }
+
+    @Test
+    fun slotIteration_seesExactlyTheLiveEntriesAfterRemovals() {
+        val map = ResourceMap<Int>()
+        val expected = HashMap<Int, Int>()
+        val random = Random(7)
+        // Keys of three clients in a small id range collide a lot, so removals shift clusters
+        for (i in 0 until 5000) {
+            val key = (random.nextInt(3) shl 21) or random.nextInt(512)
+            map.put(key, i)
+            expected[key] = i
+        }
+        for (key in expected.keys.filter { random.nextBoolean() }) {
+            assertEquals(expected.remove(key), map.remove(key))
+        }
+
+        assertEquals(expected, map.entries())
+        assertEquals(expected.size, map.size())
+    }
+
+    @Test
+    fun removeInterval_matchesFilteringAfterChurn() {
+        val resourceIDs = ResourceIDs(128)
+        val bases = List(3) { resourceIDs.get() }
+        val map = ResourceMap<Int>()
+        val expected = HashMap<Int, Int>()
+        val random = Random(11)
+        for (i in 0 until 20_000) {
+            val key = bases[random.nextInt(bases.size)] or random.nextInt(1024)
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(key), map.remove(key))
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i))
+            }
+        }
+
+        val removed = ArrayList<Int>()
+        val count = map.removeInterval(bases[1], resourceIDs.idMask) { removed.add(it) }
+
+        val expectedRemoved = expected.filterKeys { (it or resourceIDs.idMask) == (bases[1] or resourceIDs.idMask) }
+        assertEquals(expectedRemoved.size, count)
+        assertEquals(expectedRemoved.values.sorted(), removed.sorted())
+        assertEquals(expected - expectedRemoved.keys, map.entries())
+    }
+
+    @Test
+    fun drainingBySlot_whileOtherEntriesAreRemoved_visitsEachEntryOnce() {
+        // XClient.freeResources removes entries slot by slot, and destroying a window also
+        // removes the resources of its children from the same map.
+        val map = ResourceMap<Int>()
+        for (i in 1..2000) map.put(0x400000 or i, i)
+
+        val freed = ArrayList<Int>()
+        var index = 0
+        while (!map.isEmpty) {
+            while (map.valueAt(index) == null) index = (index + 1) % map.capacity()
+            val value = map.removeAt(index)
+            freed.add(value)
+            if (value % 10 == 0) {
+                for (child in value - 9 until value) map.remove(0x400000 or child)?.let { freed.add(it) }
+            }
+        }
+
+        assertEquals((1..2000).toList(), freed.sorted())
+    }
+}
@@ -0,0 +1,157 @@
+package com.winlator.xserver;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Skips loading libwinlator_11 and runs Java versions of the drawing routines in drawable.c,
+ * so X server tests can draw on the JVM. Pixels are BGRA bytes like in the native code.
+ */
+@Implements(Drawable.class)
+public class ShadowDrawable {
+    private static final int WHITE = 0xffffff;
+    private static final int BLACK = 0x000000;
+    private static final GraphicsContext.Function[] FUNCTIONS = GraphicsContext.Function.values();
+    private static final ThreadLocal<byte[]> rowBuffer = new ThreadLocal<>();
+
+    @Implementation
+    protected static void __staticInitializer__() {}
+
+    private static byte[] getRowBuffer(int length) {
+        byte[] row = rowBuffer.get();
+        if (row == null || row.length < length) {
+            row = new byte[Math.max(4096, Integer.highestOneBit(length) << 1)];
+            rowBuffer.set(row);
+        }
+        return row;
+    }
+
+    private static ByteBuffer view(ByteBuffer data) {
+        return data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Implementation
+    protected static void drawBitmap(short width, short height, ByteBuffer srcData, ByteBuffer dstData) {
+        ByteBuffer src = view(srcData);
+        ByteBuffer dst = view(dstData);
+        int stride = ((width + 31) >> 5) << 2;
+        int j = 0;
+        for (int y = 0; y < height; y++) {
+            int line = y * stride;
+            for (int x = 0; x < width; x++, j += 4) {
+                boolean bit = (src.get(line + (x >> 3)) & (1 << (x & 7))) != 0;
+                dst.putInt(j, bit ? WHITE : BLACK);
+            }
+        }
+    }
+
+    @Implementation
+    protected static void copyArea(short srcX, short srcY, short dstX, short dstY, short width, short height, short srcStride, short dstStride, ByteBuffer srcData, ByteBuffer dstData) {
+        ByteBuffer src = view(srcData);
+        ByteBuffer dst = view(dstData);
+        int rowLength = width * 4;
+        byte[] row = getRowBuffer(rowLength);
+        for (int y = 0; y < height; y++) {
+            src.position((srcX + (y + srcY) * srcStride) * 4);
+            src.get(row, 0, rowLength);
+            dst.position((dstX + (y + dstY) * dstStride) * 4);
+            dst.put(row, 0, rowLength);
+        }
+    }
+
+    private static int applyFunction(int srcColor, int dstColor, GraphicsContext.Function gcFunction) {
+        switch (gcFunction) {
+            case CLEAR: return BLACK;
+            case AND: return srcColor & dstColor;
+            case AND_REVERSE: return srcColor & ~dstColor;
+            case COPY: return srcColor;
+            case AND_INVERTED: return ~srcColor & dstColor;
+            case XOR: return srcColor ^ dstColor;
+            case OR: return srcColor | dstColor;
+            case NOR: return ~srcColor & ~dstColor;
+            case EQUIV: return ~srcColor ^ dstColor;
+            case INVERT: return ~dstColor;
+            case OR_REVERSE: return srcColor | ~dstColor;
+            case COPY_INVERTED: return ~srcColor;
+            case OR_INVERTED: return ~srcColor | dstColor;
+            case NAND: return ~srcColor | ~dstColor;
+            case SET: return WHITE;
+            default: return dstColor;
+        }
+    }
+
+    @Implementation
+    protected static void copyAreaOp(short srcX, short srcY, short dstX, short dstY, short width, short height, short srcStride, short dstStride, ByteBuffer srcData, ByteBuffer dstData, int gcFunction) {
+        ByteBuffer src = view(srcData);
+        ByteBuffer dst = view(dstData);
+        GraphicsContext.Function function = FUNCTIONS[gcFunction];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = (x + srcX + (y + srcY) * srcStride) * 4;
+                int j = (x + dstX + (y + dstY) * dstStride) * 4;
+                int srcColor = (src.get(i) & 0xff) << 16 | (src.get(i+1) & 0xff) << 8 | (src.get(i+2) & 0xff);
+                int dstColor = (dst.get(j) & 0xff) << 16 | (dst.get(j+1) & 0xff) << 8 | (dst.get(j+2) & 0xff);
+                dstColor = applyFunction(srcColor, dstColor, function);
+                dst.put(j, (byte)(dstColor >> 16));
+                dst.put(j+1, (byte)(dstColor >> 8));
+                dst.put(j+2, (byte)dstColor);
+            }
+        }
+    }
+
+    @Implementation
+    protected static void fillRect(short x, short y, short width, short height, int color, short stride, ByteBuffer data) {
+        ByteBuffer dst = view(data);
+        int rowLength = width * 4;
+        byte[] row = getRowBuffer(rowLength);
+        for (int i = 0; i < rowLength; i += 4) {
+            row[i] = (byte)color;
+            row[i+1] = (byte)(color >> 8);
+            row[i+2] = (byte)(color >> 16);
+            row[i+3] = (byte)0xff;
+        }
+        for (int i = 0; i < height; i++) {
+            dst.position((x + (i + y) * stride) * 4);
+            dst.put(row, 0, rowLength);
+        }
+    }
+
+    @Implementation
+    protected static void drawLine(short x0, short y0, short x1, short y1, int color, short lineWidth, short stride, ByteBuffer data) {
+        int dx = Math.abs(x1 - x0);
+        int dy = -Math.abs(y1 - y0);
+        int sx = x0 < x1 ? 1 : -1;
+        int sy = y0 < y1 ? 1 : -1;
+        int e1 = dx + dy;
+
+        while (true) {
+            fillRect(x0, y0, lineWidth, lineWidth, color, stride, data);
+            if (x0 == x1 && y0 == y1) break;
+
+            int e2 = e1 * 2;
+            if (e2 >= dy) {
+                e1 += dy;
+                x0 += sx;
+            }
+            if (e2 <= dx) {
+                e1 += dx;
+                y0 += sy;
+            }
+        }
+    }
+
+    @Implementation
+    protected static void drawAlphaMaskedBitmap(byte foreRed, byte foreGreen, byte foreBlue, byte backRed, byte backGreen, byte backBlue, ByteBuffer srcData, ByteBuffer maskData, ByteBuffer dstData) {
+        ByteBuffer src = view(srcData);
+        ByteBuffer mask = view(maskData);
+        ByteBuffer dst = view(dstData);
+        int foreColor = (foreRed & 0xff) << 16 | (foreGreen & 0xff) << 8 | (foreBlue & 0xff);
+        int backColor = (backRed & 0xff) << 16 | (backGreen & 0xff) << 8 | (backBlue & 0xff);
+        for (int i = 0, length = dst.capacity() & ~3; i < length; i += 4) {
+            dst.putInt(i, mask.getInt(i) == WHITE ? (src.getInt(i) == WHITE ? foreColor : backColor) | 0xff000000 : 0);
+        }
+    }
+}
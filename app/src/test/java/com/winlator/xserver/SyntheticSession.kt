@@ -0,0 +1,93 @@
+package com.winlator.xserver
+
+import com.winlator.xconnector.TrafficRecorder
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Writes a TrafficRecorder file for one client that sets up a window, pixmap and GC and then
+ * draws, interns an atom, sets and reads a property and queries geometry and pointer per frame.
+ */
+object SyntheticSession {
+    const val SETUP_REQUESTS = 5L
+    const val REQUESTS_PER_FRAME = 8L
+    const val ROUND_TRIPS_PER_FRAME = 4
+    private const val WM_NAME = 39
+    private const val STRING = 31
+
+    /**
+     * Little-endian X11 request writer for one client.
+     */
+    private class RequestWriter {
+        val buffer: ByteBuffer = ByteBuffer.allocate(1 shl 20).order(ByteOrder.LITTLE_ENDIAN)
+
+        fun setup() {
+            buffer.put('l'.code.toByte()).put(0).putShort(11).putShort(0).putShort(0).putShort(0).putShort(0)
+        }
+
+        fun request(opcode: Int, data: Int, length: Int): ByteBuffer {
+            return buffer.put(opcode.toByte()).put(data.toByte()).putShort(length.toShort())
+        }
+
+        fun string(value: String) {
+            buffer.put(value.toByteArray(Charsets.ISO_8859_1))
+            for (i in 0 until (-value.length and 3)) buffer.put(0)
+        }
+    }
+
+    fun write(file: File, xServer: XServer, frames: Int = 300): File {
+        val rootId = xServer.windowManager.rootWindow.id
+        val visualId = xServer.windowManager.rootWindow.content.visual.id
+        val idBase = xServer.resourceIDs.idMask + 1
+        val windowId = idBase + 1
+        val pixmapId = idBase + 2
+        val gcId = idBase + 3
+        val imageSize = 128
+        val image = ByteArray(imageSize * imageSize * 4) { it.toByte() }
+        val windowName = "XServerReplayBenchmark"
+
+        TrafficRecorder(file).use { recorder ->
+            val writer = RequestWriter()
+            recorder.recordConnect(1)
+            writer.setup()
+            writer.request(ClientOpcodes.CREATE_WINDOW.toInt(), 24, 8).putInt(windowId).putInt(rootId)
+                .putShort(0).putShort(0).putShort(640).putShort(480).putShort(0).putShort(1).putInt(visualId).putInt(0)
+            writer.request(ClientOpcodes.MAP_WINDOW.toInt(), 0, 2).putInt(windowId)
+            writer.request(ClientOpcodes.CREATE_PIXMAP.toInt(), 24, 4).putInt(pixmapId).putInt(windowId)
+                .putShort(imageSize.toShort()).putShort(imageSize.toShort())
+            writer.request(ClientOpcodes.CREATE_GC.toInt(), 0, 4).putInt(gcId).putInt(windowId).putInt(0)
+            recordAndClear(recorder, writer)
+
+            for (frame in 0 until frames) {
+                val x = (frame * 7 % (640 - imageSize)).toShort()
+                writer.request(ClientOpcodes.PUT_IMAGE.toInt(), 2, 6 + image.size / 4).putInt(pixmapId).putInt(gcId)
+                    .putShort(imageSize.toShort()).putShort(imageSize.toShort()).putShort(0).putShort(0)
+                    .put(0).put(24).putShort(0).put(image)
+                writer.request(ClientOpcodes.COPY_AREA.toInt(), 0, 7).putInt(pixmapId).putInt(windowId).putInt(gcId)
+                    .putShort(0).putShort(0).putShort(x).putShort(32).putShort(imageSize.toShort()).putShort(imageSize.toShort())
+                writer.request(ClientOpcodes.POLY_FILL_RECTANGLE.toInt(), 0, 7).putInt(windowId).putInt(gcId)
+                    .putShort(0).putShort(0).putShort(640).putShort(32)
+                    .putShort(x).putShort(200).putShort(16).putShort(16)
+                writer.request(ClientOpcodes.INTERN_ATOM.toInt(), 0, 2 + (windowName.length + 3) / 4)
+                    .putShort(windowName.length.toShort()).putShort(0)
+                writer.string(windowName)
+                writer.request(ClientOpcodes.CHANGE_PROPERTY.toInt(), 0, 6 + (windowName.length + 3) / 4).putInt(windowId)
+                    .putInt(WM_NAME).putInt(STRING).put(8).put(0).putShort(0).putInt(windowName.length)
+                writer.string(windowName)
+                writer.request(ClientOpcodes.GET_PROPERTY.toInt(), 0, 6).putInt(windowId).putInt(WM_NAME).putInt(0).putInt(0).putInt(256)
+                writer.request(ClientOpcodes.GET_GEOMETRY.toInt(), 0, 2).putInt(windowId)
+                writer.request(ClientOpcodes.QUERY_POINTER.toInt(), 0, 2).putInt(windowId)
+                recordAndClear(recorder, writer)
+            }
+            recorder.recordDisconnect(1)
+        }
+        return file
+    }
+
+    private fun recordAndClear(recorder: TrafficRecorder, writer: RequestWriter) {
+        writer.buffer.flip()
+        recorder.recordData(1, writer.buffer)
+        writer.buffer.clear()
+    }
+}
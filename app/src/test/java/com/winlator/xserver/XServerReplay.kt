@@ -0,0 +1,147 @@
+package com.winlator.xserver
+
+import com.winlator.core.LatencyHistogram
+import com.winlator.xconnector.Client
+import com.winlator.xconnector.ClientSocket
+import com.winlator.xconnector.TrafficRecorder
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.nio.ByteBuffer
+
+/**
+ * Replays a TrafficRecorder file against an XServer without sockets or epoll. Each recorded
+ * client gets an in-memory socket, requests go through XClientRequestHandler exactly like in
+ * XConnectorEpoll and replies are counted and dropped when flushed.
+ */
+class XServerReplay(private val xServer: XServer) {
+
+    class Result(
+        val requests: Long,
+        val elapsedNanos: Long,
+        val latency: LatencyHistogram,
+        val bytesIn: Long,
+        val bytesOut: Long,
+        val allocatedBytes: Long,
+    ) {
+        val requestsPerSecond get() = requests * 1e9 / elapsedNanos
+
+        override fun toString() = "%d requests in %.1f ms, %.0f req/s, p50 %.1f us, p99 %.1f us, max %.1f us, in %d KB, out %d KB, %.1f bytes allocated/request".format(
+            requests,
+            elapsedNanos / 1e6,
+            requestsPerSecond,
+            latency.getValueAtPercentile(50.0) / 1e3,
+            latency.getValueAtPercentile(99.0) / 1e3,
+            latency.maxValue / 1e3,
+            bytesIn / 1024,
+            bytesOut / 1024,
+            allocatedBytes.toDouble() / maxOf(1L, requests),
+        )
+    }
+
+    private class MemorySocket : ClientSocket(-1) {
+        private var pending: ByteBuffer = ByteBuffer.allocate(0)
+        var bytesWritten = 0L
+
+        fun feed(data: ByteArray, length: Int) {
+            pending = ByteBuffer.wrap(data, 0, length)
+        }
+
+        fun hasPendingData() = pending.hasRemaining()
+
+        override fun read(data: ByteBuffer): Int {
+            val length = minOf(pending.remaining(), data.remaining())
+            if (length == 0) return -1
+            val slice = pending.duplicate()
+            slice.limit(slice.position() + length)
+            data.put(slice)
+            pending.position(pending.position() + length)
+            return length
+        }
+
+        override fun recvAncillaryMsg(data: ByteBuffer) = read(data)
+
+        override fun write(data: ByteBuffer) {
+            bytesWritten += data.remaining()
+            data.position(data.limit())
+        }
+
+        override fun writeGather(buffers: Array<ByteBuffer>, offsets: IntArray, lengths: IntArray, count: Int, ancillaryFd: Int) {
+            for (i in 0 until count) bytesWritten += lengths[i]
+        }
+
+        override fun sendAncillaryMsg(data: ByteBuffer, ancillaryFd: Int) = write(data)
+    }
+
+    private class ReplayClient(val client: Client, val socket: MemorySocket)
+
+    private val connectionHandler = XClientConnectionHandler(xServer)
+    private val requestHandler = XClientRequestHandler()
+    private val clients = HashMap<Int, ReplayClient>()
+    private val pendingFlushClients = ArrayList<ReplayClient>()
+    private var bytesOut = 0L
+
+    fun replay(file: File): Result {
+        val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val threadId = Thread.currentThread().id
+        val latency = LatencyHistogram()
+        var requests = 0L
+        var bytesIn = 0L
+        bytesOut = 0L
+
+        val startBytes = threadMXBean.getThreadAllocatedBytes(threadId)
+        val startTime = System.nanoTime()
+        TrafficRecorder.Reader(file).use { reader ->
+            while (true) {
+                val record = reader.next() ?: break
+                when (record.type) {
+                    TrafficRecorder.TYPE_CONNECT -> connect(record.connectionId)
+                    TrafficRecorder.TYPE_DISCONNECT -> disconnect(record.connectionId)
+                    TrafficRecorder.TYPE_DATA -> {
+                        val replayClient = clients[record.connectionId] ?: continue
+                        bytesIn += record.length
+                        replayClient.socket.feed(record.data, record.length)
+                        while (replayClient.socket.hasPendingData()) {
+                            val inputStream = replayClient.client.inputStream
+                            inputStream.readMoreData(false)
+                            var activePosition = 0
+                            while (true) {
+                                val requestStart = System.nanoTime()
+                                if (!requestHandler.handleRequest(replayClient.client)) break
+                                latency.record(System.nanoTime() - requestStart)
+                                requests++
+                                activePosition = inputStream.activePosition
+                            }
+                            inputStream.activePosition = activePosition
+                        }
+                        flushPendingClients()
+                    }
+                }
+            }
+        }
+        for (connectionId in clients.keys.toList()) disconnect(connectionId)
+        val elapsedNanos = System.nanoTime() - startTime
+        val allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - startBytes
+
+        return Result(requests, elapsedNanos, latency, bytesIn, bytesOut, allocatedBytes)
+    }
+
+    private fun connect(connectionId: Int) {
+        val socket = MemorySocket()
+        val client = Client(null, socket)
+        connectionHandler.handleNewConnection(client)
+        val replayClient = ReplayClient(client, socket)
+        client.outputStream.setDeferredFlushThread(Thread.currentThread()) { pendingFlushClients.add(replayClient) }
+        clients[connectionId] = replayClient
+    }
+
+    private fun disconnect(connectionId: Int) {
+        val replayClient = clients.remove(connectionId) ?: return
+        connectionHandler.handleConnectionShutdown(replayClient.client)
+        bytesOut += replayClient.socket.bytesWritten
+    }
+
+    private fun flushPendingClients() {
+        for (replayClient in pendingFlushClients) replayClient.client.outputStream.flushDeferred()
+        pendingFlushClients.clear()
+    }
+}
@@ -0,0 +1,33 @@
+package com.winlator.xserver
+
+import com.winlator.xconnector.ShadowClientSocket
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(
+    sdk = [28],
+    shadows = [ShadowDrawable::class, ShadowClientSocket::class],
+    instrumentedPackages = ["com.winlator.xserver", "com.winlator.xconnector"],
+)
+class XServerReplayTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    @Test
+    fun syntheticSession_repliesToEveryRoundTrip() {
+        val xServer = XServer(ScreenInfo(1280, 720))
+        val recording = SyntheticSession.write(tempFolder.newFile("session.xtrc"), xServer, frames = 10)
+        val result = XServerReplay(xServer).replay(recording)
+
+        assertEquals(SyntheticSession.SETUP_REQUESTS + 10 * SyntheticSession.REQUESTS_PER_FRAME, result.requests)
+        assertTrue(result.bytesOut >= 10 * SyntheticSession.ROUND_TRIPS_PER_FRAME * 32L)
+    }
+}